@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.html.dom.HTMLDocumentImpl;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.parse.html.DOMBuilder;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.w3c.dom.DocumentFragment;
+import org.xml.sax.InputSource;
+
+/**
+ * Access to the sample data bundled with the benchmarks (in
+ * <code>src/bench/data</code>, or the directory given by the system property
+ * <code>bench.data.dir</code>), so that benchmarks run offline and on the same
+ * input everywhere.
+ */
+public class BenchmarkData {
+
+  public static final String DATA_DIR = "bench.data.dir";
+
+  public static final String BASE_URL = "http://www.example.com/news/2017/";
+
+  private BenchmarkData() {
+  }
+
+  public static File getDataDir() {
+    return new File(System.getProperty(DATA_DIR, "src/bench/data"));
+  }
+
+  public static Configuration createConfiguration() {
+    return NutchConfiguration.create();
+  }
+
+  /** @return the sample URLs from <code>urls.txt</code> */
+  public static List<String> getUrls() throws IOException {
+    List<String> urls = new ArrayList<>();
+    for (String line : Files.readAllLines(
+        new File(getDataDir(), "urls.txt").toPath(), StandardCharsets.UTF_8)) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      urls.add(line);
+    }
+    return urls;
+  }
+
+  /** @return the sample HTML pages in <code>html/</code> */
+  public static List<Content> getHtmlPages(Configuration conf)
+      throws IOException {
+    File[] files = new File(getDataDir(), "html").listFiles();
+    if (files == null) {
+      throw new IOException("No sample pages found in " + getDataDir());
+    }
+    Arrays.sort(files);
+    List<Content> pages = new ArrayList<>();
+    for (File file : files) {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      String url = BASE_URL + file.getName();
+      Metadata metadata = new Metadata();
+      metadata.set("Content-Type", "text/html; charset=utf-8");
+      pages.add(new Content(url, url, bytes, "text/html", metadata, conf));
+    }
+    return pages;
+  }
+
+  /** Parse an HTML page into a DOM the same way as parse-html with TagSoup. */
+  public static DocumentFragment parseDOM(Content page) throws Exception {
+    HTMLDocumentImpl doc = new HTMLDocumentImpl();
+    DocumentFragment frag = doc.createDocumentFragment();
+    DOMBuilder builder = new DOMBuilder(doc, frag);
+    org.ccil.cowan.tagsoup.Parser reader = new org.ccil.cowan.tagsoup.Parser();
+    reader.setContentHandler(builder);
+    reader.setFeature(org.ccil.cowan.tagsoup.Parser.ignoreBogonsFeature, true);
+    reader.setFeature(org.ccil.cowan.tagsoup.Parser.bogonsEmptyFeature, false);
+    reader.setProperty("http://xml.org/sax/properties/lexical-handler",
+        builder);
+    InputSource input = new InputSource(new ByteArrayInputStream(
+        page.getContent()));
+    input.setEncoding("UTF-8");
+    reader.parse(input);
+    return frag;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.protocol.ProtocolStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization and deserialization of a {@link CrawlDatum}, either without
+ * metadata or with metadata typical for a fetched page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CrawlDatumBenchmark {
+
+  @Param({ "false", "true" })
+  public boolean withMetadata;
+
+  private CrawlDatum datum;
+  private CrawlDatum readDatum = new CrawlDatum();
+  private DataOutputBuffer out = new DataOutputBuffer();
+  private DataInputBuffer in = new DataInputBuffer();
+  private byte[] serialized;
+
+  @Setup
+  public void setUp() throws IOException {
+    datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 2592000, 1.25f);
+    datum.setFetchTime(1500000000000L);
+    datum.setModifiedTime(1490000000000L);
+    datum.setSignature(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12,
+        13, 14, 15, 16 });
+    if (withMetadata) {
+      datum.getMetaData().put(new Text("Content-Type"), new Text("text/html"));
+      datum.getMetaData().put(Nutch.WRITABLE_PROTO_STATUS_KEY,
+          ProtocolStatus.STATUS_SUCCESS);
+      datum.getMetaData().put(new Text("_depth_"), new IntWritable(2));
+      datum.getMetaData().put(new Text("_pst_"), new FloatWritable(0.5f));
+      datum.getMetaData().put(new Text("_rs_"), new IntWritable(742));
+    }
+    out.reset();
+    datum.write(out);
+    serialized = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, serialized, 0, out.getLength());
+  }
+
+  @Benchmark
+  public DataOutputBuffer write() throws IOException {
+    out.reset();
+    datum.write(out);
+    return out;
+  }
+
+  @Benchmark
+  public CrawlDatum read() throws IOException {
+    in.reset(serialized, serialized.length);
+    readDatum.readFields(in);
+    return readDatum;
+  }
+
+  @Benchmark
+  public CrawlDatum copy() throws IOException {
+    out.reset();
+    datum.write(out);
+    in.reset(out.getData(), out.getLength());
+    readDatum.readFields(in);
+    return readDatum;
+  }
+}
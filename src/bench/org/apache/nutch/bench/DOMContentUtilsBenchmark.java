@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.parse.Outlink;
+import org.apache.nutch.parse.html.DOMContentUtils;
+import org.apache.nutch.protocol.Content;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.DocumentFragment;
+
+/**
+ * Text and outlink extraction from the DOM of the sample HTML pages by the
+ * {@link DOMContentUtils} of parse-html. The DOM is built once, only the
+ * traversal is measured (except for <code>parseAndExtract</code>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DOMContentUtilsBenchmark {
+
+  private DOMContentUtils utils;
+  private List<Content> pages;
+  private List<DocumentFragment> doms;
+  private List<URL> baseUrls;
+
+  @Setup
+  public void setUp() throws Exception {
+    Configuration conf = BenchmarkData.createConfiguration();
+    utils = new DOMContentUtils(conf);
+    pages = BenchmarkData.getHtmlPages(conf);
+    doms = new ArrayList<>();
+    baseUrls = new ArrayList<>();
+    for (Content page : pages) {
+      doms.add(BenchmarkData.parseDOM(page));
+      baseUrls.add(new URL(page.getBaseUrl()));
+    }
+  }
+
+  @Benchmark
+  public void getText(Blackhole bh) {
+    for (DocumentFragment dom : doms) {
+      StringBuffer sb = new StringBuffer();
+      utils.getText(sb, dom);
+      bh.consume(sb);
+    }
+  }
+
+  @Benchmark
+  public void getOutlinks(Blackhole bh) {
+    for (int i = 0; i < doms.size(); i++) {
+      ArrayList<Outlink> outlinks = new ArrayList<>();
+      utils.getOutlinks(baseUrls.get(i), outlinks, doms.get(i));
+      bh.consume(outlinks);
+    }
+  }
+
+  @Benchmark
+  public void parseAndExtract(Blackhole bh) throws Exception {
+    for (int i = 0; i < pages.size(); i++) {
+      DocumentFragment dom = BenchmarkData.parseDOM(pages.get(i));
+      StringBuffer sb = new StringBuffer();
+      utils.getText(sb, dom);
+      ArrayList<Outlink> outlinks = new ArrayList<>();
+      utils.getOutlinks(baseUrls.get(i), outlinks, dom);
+      bh.consume(sb);
+      bh.consume(outlinks);
+    }
+  }
+}
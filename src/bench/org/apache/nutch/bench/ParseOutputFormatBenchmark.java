@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.URLExemptionFilters;
+import org.apache.nutch.net.URLFilters;
+import org.apache.nutch.net.URLNormalizers;
+import org.apache.nutch.parse.Outlink;
+import org.apache.nutch.parse.ParseOutputFormat;
+import org.apache.nutch.parse.html.DOMContentUtils;
+import org.apache.nutch.protocol.Content;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Outlink processing as done by {@link ParseOutputFormat} (and by the fetcher
+ * when parsing): every outlink of the sample HTML pages is normalized and
+ * filtered by
+ * {@link ParseOutputFormat#filterNormalize(String, String, String, boolean, boolean, String, URLFilters, URLExemptionFilters, URLNormalizers)}
+ * with the default plugins.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseOutputFormatBenchmark {
+
+  @Param({ "false", "true" })
+  public boolean ignoreExternalLinks;
+
+  private URLFilters filters;
+  private URLExemptionFilters exemptionFilters;
+  private URLNormalizers normalizers;
+  private List<String> fromUrls = new ArrayList<>();
+  private List<String> fromHosts = new ArrayList<>();
+  private List<Outlink[]> outlinks = new ArrayList<>();
+
+  @Setup
+  public void setUp() throws Exception {
+    Configuration conf = BenchmarkData.createConfiguration();
+    filters = new URLFilters(conf);
+    exemptionFilters = new URLExemptionFilters(conf);
+    normalizers = new URLNormalizers(conf, URLNormalizers.SCOPE_OUTLINK);
+    DOMContentUtils utils = new DOMContentUtils(conf);
+    for (Content page : BenchmarkData.getHtmlPages(conf)) {
+      URL base = new URL(page.getBaseUrl());
+      ArrayList<Outlink> links = new ArrayList<>();
+      utils.getOutlinks(base, links, BenchmarkData.parseDOM(page));
+      fromUrls.add(page.getUrl());
+      fromHosts.add(base.getHost().toLowerCase());
+      outlinks.add(links.toArray(new Outlink[links.size()]));
+    }
+  }
+
+  @Benchmark
+  public void filterNormalize(Blackhole bh) {
+    for (int i = 0; i < fromUrls.size(); i++) {
+      String fromUrl = fromUrls.get(i);
+      String fromHost = fromHosts.get(i);
+      for (Outlink link : outlinks.get(i)) {
+        bh.consume(ParseOutputFormat.filterNormalize(fromUrl,
+            link.getToUrl(), fromHost, false, ignoreExternalLinks, "byHost",
+            filters, exemptionFilters, normalizers));
+      }
+    }
+  }
+}
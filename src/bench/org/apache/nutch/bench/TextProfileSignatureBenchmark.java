@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.crawl.TextProfileSignature;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.parse.Outlink;
+import org.apache.nutch.parse.Parse;
+import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.parse.ParseImpl;
+import org.apache.nutch.parse.ParseStatus;
+import org.apache.nutch.parse.html.DOMContentUtils;
+import org.apache.nutch.protocol.Content;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link TextProfileSignature#calculate(Content, Parse)} on the text of the
+ * sample HTML pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextProfileSignatureBenchmark {
+
+  private TextProfileSignature signature;
+  private List<Content> pages;
+  private List<Parse> parses;
+
+  @Setup
+  public void setUp() throws Exception {
+    Configuration conf = BenchmarkData.createConfiguration();
+    signature = new TextProfileSignature();
+    signature.setConf(conf);
+    DOMContentUtils utils = new DOMContentUtils(conf);
+    pages = BenchmarkData.getHtmlPages(conf);
+    parses = new ArrayList<>();
+    for (Content page : pages) {
+      StringBuffer text = new StringBuffer();
+      utils.getText(text, BenchmarkData.parseDOM(page));
+      ParseData data = new ParseData(ParseStatus.STATUS_SUCCESS, "",
+          new Outlink[0], new Metadata());
+      parses.add(new ParseImpl(text.toString(), data));
+    }
+  }
+
+  @Benchmark
+  public void calculate(Blackhole bh) {
+    for (int i = 0; i < pages.size(); i++) {
+      bh.consume(signature.calculate(pages.get(i), parses.get(i)));
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.URLFilterException;
+import org.apache.nutch.net.URLFilters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link URLFilters#filter(String)} for all sample URLs, with the URL filter
+ * plugins given by the parameter <code>filters</code> (a value for
+ * <code>plugin.includes</code>) and their default rule files from
+ * <code>conf/</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class URLFiltersBenchmark {
+
+  @Param({ "urlfilter-regex", "urlfilter-automaton",
+      "urlfilter-(regex|suffix|prefix|domain|validator)" })
+  public String filters;
+
+  private List<String> urls;
+  private URLFilters urlFilters;
+
+  @Setup
+  public void setUp() throws Exception {
+    Configuration conf = BenchmarkData.createConfiguration();
+    conf.set("plugin.includes", filters);
+    urlFilters = new URLFilters(conf);
+    urls = BenchmarkData.getUrls();
+  }
+
+  @Benchmark
+  public void filter(Blackhole bh) throws URLFilterException {
+    for (String url : urls) {
+      bh.consume(urlFilters.filter(url));
+    }
+  }
+}
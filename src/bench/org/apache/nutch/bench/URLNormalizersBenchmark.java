@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.URLNormalizers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link URLNormalizers#normalize(String, String)} for all sample URLs, with
+ * the normalizer plugins given by the parameter <code>normalizers</code> (a
+ * value for <code>plugin.includes</code>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class URLNormalizersBenchmark {
+
+  @Param({ "urlnormalizer-basic", "urlnormalizer-regex",
+      "urlnormalizer-(pass|regex|basic)" })
+  public String normalizers;
+
+  @Param({ URLNormalizers.SCOPE_DEFAULT, URLNormalizers.SCOPE_OUTLINK })
+  public String scope;
+
+  private List<String> urls;
+  private URLNormalizers urlNormalizers;
+
+  @Setup
+  public void setUp() throws Exception {
+    Configuration conf = BenchmarkData.createConfiguration();
+    conf.set("plugin.includes", normalizers);
+    urlNormalizers = new URLNormalizers(conf, scope);
+    urls = BenchmarkData.getUrls();
+  }
+
+  @Benchmark
+  public void normalize(Blackhole bh) {
+    for (String url : urls) {
+      try {
+        bh.consume(urlNormalizers.normalize(url, scope));
+      } catch (MalformedURLException e) {
+        bh.consume(e);
+      }
+    }
+  }
+}
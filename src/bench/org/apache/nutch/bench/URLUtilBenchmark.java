@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.bench;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nutch.util.URLUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Host and domain extraction by {@link URLUtil} for all sample URLs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class URLUtilBenchmark {
+
+  private List<String> urls;
+  private List<URL> parsedUrls;
+
+  @Setup
+  public void setUp() throws Exception {
+    urls = BenchmarkData.getUrls();
+    parsedUrls = new ArrayList<>();
+    for (String url : urls) {
+      try {
+        parsedUrls.add(new URL(url));
+      } catch (Exception e) {
+        // not a valid URL, only used for the string variants
+      }
+    }
+  }
+
+  @Benchmark
+  public void getHost(Blackhole bh) {
+    for (String url : urls) {
+      bh.consume(URLUtil.getHost(url));
+    }
+  }
+
+  @Benchmark
+  public void getDomainName(Blackhole bh) {
+    for (URL url : parsedUrls) {
+      bh.consume(URLUtil.getDomainName(url));
+    }
+  }
+}
@@ -19,7 +19,6 @@ package org.apache.nutch.crawl;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.FloatWritable;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.metadata.Nutch;
 import org.apache.nutch.util.NutchConfiguration;
@@ -107,11 +106,10 @@ public class AdaptiveFetchSchedule extends AbstractFetchSchedule {
     // https://issues.apache.org/jira/browse/NUTCH-1430
     interval = (interval == 0) ? defaultInterval : interval;
 
-    if (datum.getMetaData().containsKey(Nutch.WRITABLE_FIXED_INTERVAL_KEY)) {
+    if (datum.hasMetaData(Nutch.WRITABLE_FIXED_INTERVAL_KEY)) {
       // Is fetch interval preset in CrawlDatum MD? Then use preset interval
-      FloatWritable customIntervalWritable = (FloatWritable) (datum
-          .getMetaData().get(Nutch.WRITABLE_FIXED_INTERVAL_KEY));
-      interval = customIntervalWritable.get();
+      interval = datum.getMetaFloat(Nutch.WRITABLE_FIXED_INTERVAL_KEY,
+          interval);
     } else {
       if (modifiedTime <= 0)
         modifiedTime = fetchTime;
@@ -37,6 +37,9 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
 
   private final static byte CUR_VERSION = 7;
 
+  /** Version of the compact format, see {@link CrawlDatumSerialization}. */
+  private final static byte COMPACT_VERSION = 8;
+
   /** Compatibility values for on-the-fly conversion from versions < 5. */
   private static final byte OLD_STATUS_SIGNATURE = 0;
   private static final byte OLD_STATUS_DB_UNFETCHED = 1;
@@ -129,6 +132,10 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   private byte[] signature = null;
   private long modifiedTime;
   private org.apache.hadoop.io.MapWritable metaData;
+  /** metadata read in the compact format, decoded on first access */
+  private byte[] rawMetaData;
+  /** metaData is shared with another instance, copy before modification */
+  private boolean metaDataShared;
 
   public static boolean hasDbStatus(CrawlDatum datum) {
     if (datum.status <= STATUS_DB_MAX)
@@ -239,7 +246,13 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   }
 
   public void setMetaData(org.apache.hadoop.io.MapWritable mapWritable) {
-    this.metaData = new org.apache.hadoop.io.MapWritable(mapWritable);
+    if (mapWritable.isEmpty()) {
+      this.metaData = null;
+    } else {
+      this.metaData = new org.apache.hadoop.io.MapWritable(mapWritable);
+    }
+    this.rawMetaData = null;
+    this.metaDataShared = false;
   }
 
   /**
@@ -249,22 +262,176 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
    *          CrawlDatum
    */
   public void putAllMetaData(CrawlDatum other) {
-    for (Entry<Writable, Writable> e : other.getMetaData().entrySet()) {
-      getMetaData().put(e.getKey(), e.getValue());
+    if (!other.hasMetaData()) {
+      return;
+    }
+    if (!hasMetaData()) {
+      // share the metadata until one of both is modified
+      if (other.rawMetaData != null) {
+        this.rawMetaData = other.rawMetaData;
+        this.metaData = null;
+        this.metaDataShared = false;
+      } else {
+        this.metaData = other.metaData;
+        this.metaDataShared = other.metaDataShared = true;
+      }
+      return;
+    }
+    other.decodeMetaData();
+    org.apache.hadoop.io.MapWritable target = getMetaData();
+    for (Entry<Writable, Writable> e : other.metaData.entrySet()) {
+      target.put(e.getKey(), e.getValue());
     }
   }
 
   /**
    * returns a MapWritable if it was set or read in @see readFields(DataInput),
    * returns empty map in case CrawlDatum was freshly created (lazily
-   * instantiated).
+   * instantiated). The map may be modified, use the typed accessors (e.g.
+   * {@link #getMetaInt(Text, int)}) to only read single values: they do not
+   * decode or copy the metadata.
    */
   public org.apache.hadoop.io.MapWritable getMetaData() {
-    if (this.metaData == null)
+    decodeMetaData();
+    if (this.metaData == null) {
       this.metaData = new org.apache.hadoop.io.MapWritable();
+    } else if (metaDataShared) {
+      this.metaData = new org.apache.hadoop.io.MapWritable(metaData);
+      this.metaDataShared = false;
+    }
     return this.metaData;
   }
 
+  /** @return true if there is at least one metadata entry */
+  public boolean hasMetaData() {
+    return rawMetaData != null || (metaData != null && !metaData.isEmpty());
+  }
+
+  /** @return true if the metadata contains the key */
+  public boolean hasMetaData(Text key) {
+    if (rawMetaData != null) {
+      int pos = CrawlDatumSerialization.findValue(rawMetaData, key);
+      if (pos != CrawlDatumSerialization.NOT_SCANNABLE) {
+        return pos != CrawlDatumSerialization.NOT_FOUND;
+      }
+    }
+    return lookupMetaData(key) != null;
+  }
+
+  /**
+   * Get a metadata value without copying the metadata. The returned value
+   * must not be modified.
+   * 
+   * @return the value or null if the key is not contained
+   */
+  public Writable getMetaData(Text key) {
+    return lookupMetaData(key);
+  }
+
+  /**
+   * @return the value of an {@link IntWritable} stored under the key, or the
+   *         default value if there is no such value
+   */
+  public int getMetaInt(Text key, int defaultValue) {
+    if (rawMetaData != null) {
+      int pos = CrawlDatumSerialization.findValue(rawMetaData, key);
+      if (pos == CrawlDatumSerialization.NOT_FOUND) {
+        return defaultValue;
+      } else if (pos >= 0) {
+        return CrawlDatumSerialization.readInt(rawMetaData, pos, defaultValue);
+      }
+    }
+    Writable value = lookupMetaData(key);
+    if (value instanceof IntWritable) {
+      return ((IntWritable) value).get();
+    }
+    return defaultValue;
+  }
+
+  /**
+   * @return the value of a {@link LongWritable} stored under the key, or the
+   *         default value if there is no such value
+   */
+  public long getMetaLong(Text key, long defaultValue) {
+    if (rawMetaData != null) {
+      int pos = CrawlDatumSerialization.findValue(rawMetaData, key);
+      if (pos == CrawlDatumSerialization.NOT_FOUND) {
+        return defaultValue;
+      } else if (pos >= 0) {
+        return CrawlDatumSerialization.readLong(rawMetaData, pos, defaultValue);
+      }
+    }
+    Writable value = lookupMetaData(key);
+    if (value instanceof LongWritable) {
+      return ((LongWritable) value).get();
+    }
+    return defaultValue;
+  }
+
+  /**
+   * @return the value of a {@link FloatWritable} stored under the key, or the
+   *         default value if there is no such value
+   */
+  public float getMetaFloat(Text key, float defaultValue) {
+    if (rawMetaData != null) {
+      int pos = CrawlDatumSerialization.findValue(rawMetaData, key);
+      if (pos == CrawlDatumSerialization.NOT_FOUND) {
+        return defaultValue;
+      } else if (pos >= 0) {
+        return CrawlDatumSerialization.readFloat(rawMetaData, pos, defaultValue);
+      }
+    }
+    Writable value = lookupMetaData(key);
+    if (value instanceof FloatWritable) {
+      return ((FloatWritable) value).get();
+    }
+    return defaultValue;
+  }
+
+  /** Store an {@link IntWritable}, unless the same value is already stored. */
+  public void setMetaInt(Text key, int value) {
+    if (hasMetaData(key) && getMetaInt(key, ~value) == value) {
+      return;
+    }
+    getMetaData().put(key, new IntWritable(value));
+  }
+
+  /** Store a {@link LongWritable}, unless the same value is already stored. */
+  public void setMetaLong(Text key, long value) {
+    if (hasMetaData(key) && getMetaLong(key, ~value) == value) {
+      return;
+    }
+    getMetaData().put(key, new LongWritable(value));
+  }
+
+  /** Store a {@link FloatWritable}, unless the same value is already stored. */
+  public void setMetaFloat(Text key, float value) {
+    if (hasMetaData(key)
+        && Float.floatToIntBits(getMetaFloat(key, Float.NaN)) == Float
+            .floatToIntBits(value)) {
+      return;
+    }
+    getMetaData().put(key, new FloatWritable(value));
+  }
+
+  /** look up a value, decoding but not copying the metadata */
+  private Writable lookupMetaData(Text key) {
+    decodeMetaData();
+    return metaData == null ? null : metaData.get(key);
+  }
+
+  private void decodeMetaData() {
+    if (rawMetaData != null) {
+      try {
+        metaData = CrawlDatumSerialization.readMetaData(rawMetaData);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to decode metadata", e);
+      }
+      rawMetaData = null;
+      metaDataShared = false;
+    }
+  }
+
   //
   // writable methods
   //
@@ -277,8 +444,10 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
 
   public void readFields(DataInput in) throws IOException {
     byte version = in.readByte(); // read version
-    if (version > CUR_VERSION) // check version
-      throw new VersionMismatchException(CUR_VERSION, version);
+    if (version > COMPACT_VERSION) // check version
+      throw new VersionMismatchException(COMPACT_VERSION, version);
+    rawMetaData = null;
+    metaDataShared = false;
 
     status = in.readByte();
     fetchTime = in.readLong();
@@ -298,7 +467,15 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
         signature = null;
     }
 
-    if (version > 3) {
+    if (version == COMPACT_VERSION) {
+      // keep the metadata block until it is accessed
+      metaData = null;
+      int length = WritableUtils.readVInt(in);
+      if (length > 0) {
+        rawMetaData = new byte[length];
+        in.readFully(rawMetaData);
+      }
+    } else if (version > 3) {
       boolean hasMetadata = false;
       if (version < 7) {
         org.apache.hadoop.io.MapWritable oldMetaData = new org.apache.hadoop.io.MapWritable();
@@ -335,7 +512,43 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   private static final int SIG_OFFSET = SCORE_OFFSET + 12;
 
   public void write(DataOutput out) throws IOException {
+    decodeMetaData();
     out.writeByte(CUR_VERSION); // store current version
+    writeFixedFields(out);
+    if (metaData != null && metaData.size() > 0) {
+      out.writeBoolean(true);
+      metaData.write(out);
+    } else {
+      out.writeBoolean(false);
+    }
+  }
+
+  /**
+   * Write in the compact format, see {@link CrawlDatumSerialization}. Metadata
+   * read in the compact format and not accessed is written as read.
+   */
+  void writeCompact(DataOutput out) throws IOException {
+    out.writeByte(COMPACT_VERSION);
+    writeFixedFields(out);
+    if (rawMetaData != null) {
+      WritableUtils.writeVInt(out, rawMetaData.length);
+      out.write(rawMetaData);
+    } else if (metaData != null && metaData.size() > 0) {
+      DataOutputBuffer buffer = COMPACT_BUFFER.get();
+      buffer.reset();
+      CrawlDatumSerialization.writeMetaData(metaData, buffer);
+      WritableUtils.writeVInt(out, buffer.getLength());
+      out.write(buffer.getData(), 0, buffer.getLength());
+    } else {
+      WritableUtils.writeVInt(out, 0);
+    }
+  }
+
+  private static final ThreadLocal<DataOutputBuffer> COMPACT_BUFFER = ThreadLocal
+      .withInitial(DataOutputBuffer::new);
+
+  /** fields at fixed offsets, shared by all formats */
+  private void writeFixedFields(DataOutput out) throws IOException {
     out.writeByte(status);
     out.writeLong(fetchTime);
     out.writeByte(retries);
@@ -348,12 +561,6 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
       out.writeByte(signature.length);
       out.write(signature);
     }
-    if (metaData != null && metaData.size() > 0) {
-      out.writeBoolean(true);
-      metaData.write(out);
-    } else {
-      out.writeBoolean(false);
-    }
   }
 
   /** Copy the contents of another instance into this instance. */
@@ -365,13 +572,15 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     this.score = that.score;
     this.modifiedTime = that.modifiedTime;
     this.signature = that.signature;
-    if (that.metaData != null) {
-      this.metaData = new org.apache.hadoop.io.MapWritable(that.metaData); // make
-                                                                           // a
-                                                                           // deep
-                                                                           // copy
+    // the serialized metadata is never modified and can be shared
+    this.rawMetaData = that.rawMetaData;
+    if (that.metaData != null && !that.metaData.isEmpty()) {
+      // copy on write, see getMetaData()
+      this.metaData = that.metaData;
+      this.metaDataShared = that.metaDataShared = true;
     } else {
       this.metaData = null;
+      this.metaDataShared = false;
     }
   }
 
@@ -456,6 +665,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     buf.append("Score: " + getScore() + "\n");
     buf.append("Signature: " + StringUtil.toHexString(getSignature()) + "\n");
     buf.append("Metadata: \n ");
+    decodeMetaData();
     if (metaData != null) {
       for (Entry<Writable, Writable> e : metaData.entrySet()) {
         buf.append("\t");
@@ -487,6 +697,8 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     if (!(o instanceof CrawlDatum))
       return false;
     CrawlDatum other = (CrawlDatum) o;
+    decodeMetaData();
+    other.decodeMetaData();
     boolean res = (this.status == other.status)
         && (this.fetchTime == other.fetchTime)
         && (this.modifiedTime == other.modifiedTime)
@@ -506,6 +718,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
         res ^= (signature[i] << 24 + signature[i + 1] << 16 + signature[i + 2] << 8 + signature[i + 3]);
       }
     }
+    decodeMetaData();
     if (metaData != null) {
       res ^= metaData.entrySet().hashCode();
     }
@@ -536,7 +749,9 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
       jcontext.set("signature", StringUtil.toHexString(getSignature()));
             
       // Set metadata variables
-      for (Map.Entry<Writable, Writable> entry : getMetaData().entrySet()) {
+      decodeMetaData();
+      for (Map.Entry<Writable, Writable> entry : (metaData == null ? Collections
+          .<Writable, Writable> emptyMap() : metaData).entrySet()) {
         Object value = entry.getValue();
         
         if (value instanceof FloatWritable) {
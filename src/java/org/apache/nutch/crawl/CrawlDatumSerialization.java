@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.ByteWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VIntWritable;
+import org.apache.hadoop.io.VLongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.serializer.Deserializer;
+import org.apache.hadoop.io.serializer.Serialization;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.protocol.ProtocolStatus;
+
+/**
+ * Hadoop {@link Serialization} of {@link CrawlDatum}s which writes either the
+ * regular format ({@link CrawlDatum#write(DataOutput)}) or, if
+ * <code>db.crawldatum.compact</code> is true, the compact format. Both
+ * formats are read by {@link CrawlDatum#readFields(DataInput)}.
+ *
+ * <p>
+ * The compact format shares the fixed-size fields with the regular format
+ * (the raw {@link CrawlDatum.Comparator} works on both) but replaces the
+ * {@link MapWritable} holding the metadata, which writes the names of all
+ * non-standard classes with every record, by a length-prefixed block:
+ * </p>
+ * <ul>
+ * <li>keys used by Nutch are encoded by their index in a fixed dictionary,
+ * other keys are written as Writables,</li>
+ * <li>values are prefixed by the index of their class in a fixed dictionary,
+ * or by the class name if the class is not in the dictionary.</li>
+ * </ul>
+ * <p>
+ * Because of the length prefix the metadata block is not decoded when a
+ * record is read, but only when the metadata is accessed. Jobs which look
+ * only at status, fetch time or score (and pass the metadata on unchanged)
+ * never decode it.
+ * </p>
+ *
+ * <p>
+ * The dictionaries are part of the format: entries may be appended but
+ * never removed or reordered.
+ * </p>
+ */
+public class CrawlDatumSerialization extends Configured implements
+    Serialization<CrawlDatum> {
+
+  public static final String COMPACT = "db.crawldatum.compact";
+
+  /** metadata keys encoded by their index (plus one) */
+  private static final Text[] KEYS = { Nutch.WRITABLE_GENERATE_TIME_KEY,
+      Nutch.WRITABLE_PROTO_STATUS_KEY, Nutch.WRITABLE_REPR_URL_KEY,
+      Nutch.WRITABLE_FIXED_INTERVAL_KEY, new Text("_depth_"),
+      new Text("_maxdepth_"), new Text(Metadata.CONTENT_TYPE),
+      new Text("_rs_"), new Text("_variableFetchDelay_"),
+      Nutch.PROTOCOL_STATUS_CODE_KEY, new Text(Nutch.FETCH_TIME_KEY),
+      new Text(Nutch.FETCH_STATUS_KEY) };
+
+  /** classes of metadata values encoded by their index (plus one) */
+  private static final List<Class<? extends Writable>> CLASSES = Arrays
+      .asList(Text.class, IntWritable.class, LongWritable.class,
+          FloatWritable.class, DoubleWritable.class, BooleanWritable.class,
+          ByteWritable.class, BytesWritable.class, VIntWritable.class,
+          VLongWritable.class, NullWritable.class, ProtocolStatus.class);
+
+  /* ids of the classes with a fixed or length-prefixed size */
+  private static final int TEXT_ID = 1;
+  private static final int INT_ID = 2;
+  private static final int LONG_ID = 3;
+  private static final int FLOAT_ID = 4;
+  private static final int DOUBLE_ID = 5;
+  private static final int BOOLEAN_ID = 6;
+  private static final int BYTE_ID = 7;
+  private static final int BYTES_ID = 8;
+  private static final int VINT_ID = 9;
+  private static final int VLONG_ID = 10;
+  private static final int NULL_ID = 11;
+
+  /** returned by {@link #findValue(byte[], Text)} if the key is absent */
+  static final int NOT_FOUND = -1;
+  /**
+   * returned by {@link #findValue(byte[], Text)} if the metadata must be
+   * decoded to look up the key
+   */
+  static final int NOT_SCANNABLE = -2;
+
+  private static final Map<Text, Integer> KEY_IDS = new HashMap<>();
+  private static final Map<Class<?>, Integer> CLASS_IDS = new HashMap<>();
+  static {
+    for (int i = 0; i < KEYS.length; i++) {
+      KEY_IDS.put(KEYS[i], i + 1);
+    }
+    for (int i = 0; i < CLASSES.size(); i++) {
+      CLASS_IDS.put(CLASSES.get(i), i + 1);
+    }
+  }
+
+  private static final Map<String, Class<?>> classCache = new ConcurrentHashMap<>();
+
+  /**
+   * Add this serialization to the serializations of a configuration, unless
+   * it is already registered.
+   */
+  public static void register(Configuration conf) {
+    String[] serializations = conf.getStrings("io.serializations",
+        new String[0]);
+    String name = CrawlDatumSerialization.class.getName();
+    if (Arrays.asList(serializations).contains(name)) {
+      return;
+    }
+    String[] registered = new String[serializations.length + 1];
+    registered[0] = name;
+    System.arraycopy(serializations, 0, registered, 1, serializations.length);
+    conf.setStrings("io.serializations", registered);
+  }
+
+  public boolean accept(Class<?> c) {
+    return CrawlDatum.class.isAssignableFrom(c);
+  }
+
+  public Serializer<CrawlDatum> getSerializer(Class<CrawlDatum> c) {
+    final boolean compact = getConf() != null
+        && getConf().getBoolean(COMPACT, false);
+    return new Serializer<CrawlDatum>() {
+      private DataOutputStream out;
+
+      public void open(OutputStream out) {
+        if (out instanceof DataOutputStream) {
+          this.out = (DataOutputStream) out;
+        } else {
+          this.out = new DataOutputStream(out);
+        }
+      }
+
+      public void serialize(CrawlDatum datum) throws IOException {
+        if (compact) {
+          datum.writeCompact(out);
+        } else {
+          datum.write(out);
+        }
+      }
+
+      public void close() throws IOException {
+        out.close();
+      }
+    };
+  }
+
+  public Deserializer<CrawlDatum> getDeserializer(final Class<CrawlDatum> c) {
+    return new Deserializer<CrawlDatum>() {
+      private DataInputStream in;
+
+      public void open(InputStream in) {
+        if (in instanceof DataInputStream) {
+          this.in = (DataInputStream) in;
+        } else {
+          this.in = new DataInputStream(in);
+        }
+      }
+
+      public CrawlDatum deserialize(CrawlDatum datum) throws IOException {
+        if (datum == null) {
+          datum = ReflectionUtils.newInstance(c, getConf());
+        }
+        datum.readFields(in);
+        return datum;
+      }
+
+      public void close() throws IOException {
+        in.close();
+      }
+    };
+  }
+
+  /** Encode metadata in the compact format (without length prefix). */
+  static void writeMetaData(MapWritable metaData, DataOutput out)
+      throws IOException {
+    WritableUtils.writeVInt(out, metaData.size());
+    for (Map.Entry<Writable, Writable> e : metaData.entrySet()) {
+      Integer keyId = KEY_IDS.get(e.getKey());
+      if (keyId != null) {
+        WritableUtils.writeVInt(out, keyId);
+      } else {
+        WritableUtils.writeVInt(out, 0);
+        writeWritable(e.getKey(), out);
+      }
+      writeWritable(e.getValue(), out);
+    }
+  }
+
+  /** Decode metadata written by {@link #writeMetaData(MapWritable, DataOutput)}. */
+  static MapWritable readMetaData(byte[] bytes) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    MapWritable metaData = new MapWritable();
+    int size = WritableUtils.readVInt(in);
+    for (int i = 0; i < size; i++) {
+      int keyId = WritableUtils.readVInt(in);
+      Writable key;
+      if (keyId > 0) {
+        // copy, keys of the map may be modified
+        key = new Text(KEYS[keyId - 1]);
+      } else {
+        key = readWritable(in);
+      }
+      metaData.put(key, readWritable(in));
+    }
+    return metaData;
+  }
+
+  /**
+   * Look up a key in metadata written by
+   * {@link #writeMetaData(MapWritable, DataOutput)} without decoding it. Only
+   * values of classes with a known size can be skipped, if a key or value of
+   * another class precedes the key {@link #NOT_SCANNABLE} is returned.
+   *
+   * @return offset of the value (starting with its class id),
+   *         {@link #NOT_FOUND} or {@link #NOT_SCANNABLE}
+   */
+  static int findValue(byte[] bytes, Text key) {
+    try {
+      Integer dictId = KEY_IDS.get(key);
+      int pos = 0;
+      int size = WritableComparator.readVInt(bytes, pos);
+      pos += WritableUtils.decodeVIntSize(bytes[pos]);
+      for (int i = 0; i < size; i++) {
+        int keyId = WritableComparator.readVInt(bytes, pos);
+        pos += WritableUtils.decodeVIntSize(bytes[pos]);
+        boolean match;
+        if (keyId > 0) {
+          match = dictId != null && keyId == dictId;
+        } else {
+          int classId = WritableComparator.readVInt(bytes, pos);
+          pos += WritableUtils.decodeVIntSize(bytes[pos]);
+          if (classId != TEXT_ID) {
+            return NOT_SCANNABLE;
+          }
+          int length = WritableComparator.readVInt(bytes, pos);
+          pos += WritableUtils.decodeVIntSize(bytes[pos]);
+          // keys of the dictionary are never written inline
+          match = dictId == null
+              && WritableComparator.compareBytes(bytes, pos, length,
+                  key.getBytes(), 0, key.getLength()) == 0;
+          pos += length;
+        }
+        if (match) {
+          return pos;
+        }
+        pos = skipValue(bytes, pos);
+        if (pos < 0) {
+          return NOT_SCANNABLE;
+        }
+      }
+      return NOT_FOUND;
+    } catch (IOException e) {
+      return NOT_SCANNABLE;
+    }
+  }
+
+  /** @return offset after the value at <code>pos</code>, or -1 if unknown */
+  private static int skipValue(byte[] bytes, int pos) throws IOException {
+    int classId = WritableComparator.readVInt(bytes, pos);
+    pos += WritableUtils.decodeVIntSize(bytes[pos]);
+    switch (classId) {
+    case TEXT_ID:
+      int length = WritableComparator.readVInt(bytes, pos);
+      return pos + WritableUtils.decodeVIntSize(bytes[pos]) + length;
+    case INT_ID:
+    case FLOAT_ID:
+      return pos + 4;
+    case LONG_ID:
+    case DOUBLE_ID:
+      return pos + 8;
+    case BOOLEAN_ID:
+    case BYTE_ID:
+      return pos + 1;
+    case BYTES_ID:
+      return pos + 4 + WritableComparator.readInt(bytes, pos);
+    case VINT_ID:
+    case VLONG_ID:
+      return pos + WritableUtils.decodeVIntSize(bytes[pos]);
+    case NULL_ID:
+      return pos;
+    default:
+      return -1;
+    }
+  }
+
+  /*
+   * Readers of values found by findValue(byte[], Text). Class ids are small
+   * and always encoded in one byte, the value follows.
+   */
+
+  static int readInt(byte[] bytes, int pos, int defaultValue) {
+    if (bytes[pos] != INT_ID) {
+      return defaultValue;
+    }
+    return WritableComparator.readInt(bytes, pos + 1);
+  }
+
+  static long readLong(byte[] bytes, int pos, long defaultValue) {
+    if (bytes[pos] != LONG_ID) {
+      return defaultValue;
+    }
+    return WritableComparator.readLong(bytes, pos + 1);
+  }
+
+  static float readFloat(byte[] bytes, int pos, float defaultValue) {
+    if (bytes[pos] != FLOAT_ID) {
+      return defaultValue;
+    }
+    return WritableComparator.readFloat(bytes, pos + 1);
+  }
+
+  private static void writeWritable(Writable w, DataOutput out)
+      throws IOException {
+    Integer classId = CLASS_IDS.get(w.getClass());
+    if (classId != null) {
+      WritableUtils.writeVInt(out, classId);
+    } else {
+      WritableUtils.writeVInt(out, 0);
+      Text.writeString(out, w.getClass().getName());
+    }
+    w.write(out);
+  }
+
+  private static Writable readWritable(DataInput in) throws IOException {
+    int classId = WritableUtils.readVInt(in);
+    Class<?> c;
+    if (classId > 0) {
+      c = CLASSES.get(classId - 1);
+    } else {
+      c = getClass(Text.readString(in));
+    }
+    if (c == NullWritable.class) {
+      return NullWritable.get();
+    }
+    Writable w = (Writable) ReflectionUtils.newInstance(c, null);
+    w.readFields(in);
+    return w;
+  }
+
+  private static Class<?> getClass(String name) throws IOException {
+    Class<?> c = classCache.get(name);
+    if (c == null) {
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      if (loader == null) {
+        loader = CrawlDatum.class.getClassLoader();
+      }
+      try {
+        c = Class.forName(name, true, loader);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Can't find class " + name, e);
+      }
+      classCache.put(name, c);
+    }
+    return c;
+  }
+}
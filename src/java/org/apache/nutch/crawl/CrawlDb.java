@@ -56,6 +56,16 @@ public class CrawlDb extends NutchTool implements Tool {
 
   public static final String LOCK_NAME = ".locked";
 
+  /** directory holding the delta layers written by incremental updates */
+  public static final String DELTAS_NAME = "deltas";
+
+  public static final String CRAWLDB_DELTA = "db.update.delta";
+
+  public static final String CRAWLDB_DELTA_MAX = "db.update.delta.max";
+
+  /** CrawlDb updated by an incremental update job */
+  static final String CRAWLDB_DELTA_DB = "db.update.delta.crawldb";
+
   public CrawlDb() {
   }
 
@@ -73,12 +83,37 @@ public class CrawlDb extends NutchTool implements Tool {
   public void update(Path crawlDb, Path[] segments, boolean normalize,
       boolean filter, boolean additionsAllowed, boolean force)
       throws IOException {
+    update(crawlDb, segments, normalize, filter, additionsAllowed, force,
+        getConf().getBoolean(CRAWLDB_DELTA, false));
+  }
+
+  /**
+   * Update the CrawlDb from segments.
+   *
+   * @param delta
+   *          if true only the records of URLs contained in the segments are
+   *          written, as a new delta layer of the CrawlDb. URL filters and
+   *          normalizers are then applied only to the segment data.
+   */
+  public void update(Path crawlDb, Path[] segments, boolean normalize,
+      boolean filter, boolean additionsAllowed, boolean force, boolean delta)
+      throws IOException {
     Path lock = lock(getConf(), crawlDb, force);
 
     SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
     long start = System.currentTimeMillis();
 
-    JobConf job = CrawlDb.createJob(getConf(), crawlDb);
+    FileSystem fs = crawlDb.getFileSystem(getConf());
+    if (delta && !fs.exists(new Path(crawlDb, CURRENT_NAME))) {
+      LOG.info("CrawlDb update: no CrawlDb found, writing a new base");
+      delta = false;
+    }
+    JobConf job;
+    if (delta) {
+      job = CrawlDb.createDeltaJob(getConf(), crawlDb);
+    } else {
+      job = CrawlDb.createJob(getConf(), crawlDb);
+    }
     job.setBoolean(CRAWLDB_ADDITIONS_ALLOWED, additionsAllowed);
     job.setBoolean(CrawlDbFilter.URL_FILTERING, filter);
     job.setBoolean(CrawlDbFilter.URL_NORMALIZING, normalize);
@@ -93,6 +128,7 @@ public class CrawlDb extends NutchTool implements Tool {
       LOG.info("CrawlDb update: URL normalizing: " + normalize);
       LOG.info("CrawlDb update: URL filtering: " + filter);
       LOG.info("CrawlDb update: 404 purging: " + url404Purging);
+      LOG.info("CrawlDb update: delta: " + delta);
     }
 
     for (int i = 0; i < segments.length; i++) {
@@ -118,7 +154,6 @@ public class CrawlDb extends NutchTool implements Tool {
     try {
     	crawlDBJob = JobClient.runJob(job);
     } catch (IOException e) {
-      FileSystem fs = crawlDb.getFileSystem(getConf());
       LockUtil.removeLockFile(fs, lock);
       Path outPath = FileOutputFormat.getOutputPath(job);
       if (fs.exists(outPath))
@@ -126,7 +161,15 @@ public class CrawlDb extends NutchTool implements Tool {
       throw e;
     }
 
-    CrawlDb.install(job, crawlDb);
+    if (delta) {
+      CrawlDb.installDelta(job, crawlDb);
+      int maxDeltas = getConf().getInt(CRAWLDB_DELTA_MAX, 10);
+      if (maxDeltas >= 0 && getDeltas(getConf(), crawlDb).length > maxDeltas) {
+        compact(crawlDb, false);
+      }
+    } else {
+      CrawlDb.install(job, crawlDb);
+    }
     long end = System.currentTimeMillis();
     long urlsFilteredByRegex = crawlDBJob.getCounters().findCounter("CrawlDB", "urls_filtered_by_regex").getValue();
     LOG.info("CrawlDb update: Total number of URLs filtered by regex filters: " + urlsFilteredByRegex);
@@ -145,11 +188,11 @@ public class CrawlDb extends NutchTool implements Tool {
     JobConf job = new NutchJob(config);
     job.setJobName("crawldb " + crawlDb);
 
+    job.setInputFormat(SequenceFileInputFormat.class);
     Path current = new Path(crawlDb, CURRENT_NAME);
     if (current.getFileSystem(job).exists(current)) {
-      FileInputFormat.addInputPath(job, current);
+      addInputPath(job, crawlDb);
     }
-    job.setInputFormat(SequenceFileInputFormat.class);
 
     job.setMapperClass(CrawlDbFilter.class);
     job.setReducerClass(CrawlDbReducer.class);
@@ -165,6 +208,184 @@ public class CrawlDb extends NutchTool implements Tool {
     return job;
   }
 
+  /*
+   * Configure an incremental update writing a new delta in a temp folder at
+   * crawlDb/<rand>. The segments are the only input, the current records are
+   * looked up by the reducer.
+   */
+  static JobConf createDeltaJob(Configuration config, Path crawlDb)
+      throws IOException {
+    Path newDelta = new Path(crawlDb, Integer.toString(new Random()
+        .nextInt(Integer.MAX_VALUE)));
+
+    JobConf job = new NutchJob(config);
+    job.setJobName("crawldb delta " + crawlDb);
+
+    Path[] layers = getLayers(job, crawlDb);
+    CrawlDbDeltaInputFormat.setLayers(job, crawlDb, layers);
+    job.set(CRAWLDB_DELTA_DB, crawlDb.toString());
+    // partition the delta like the base
+    job.setNumReduceTasks(CrawlDbDeltaInputFormat.getPartitions(job,
+        layers[0]).length);
+    job.setInputFormat(SequenceFileInputFormat.class);
+
+    job.setMapperClass(CrawlDbFilter.class);
+    job.setReducerClass(CrawlDbDeltaReducer.class);
+
+    FileOutputFormat.setOutputPath(job, newDelta);
+    job.setOutputFormat(MapFileOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(CrawlDatum.class);
+
+    job.setBoolean("mapreduce.fileoutputcommitter.marksuccessfuljobs", false);
+
+    return job;
+  }
+
+  /**
+   * @return the deltas of a CrawlDb in the order they have been written,
+   *         empty if there are none
+   */
+  public static Path[] getDeltas(Configuration conf, Path crawlDb)
+      throws IOException {
+    Path deltas = new Path(crawlDb, DELTAS_NAME);
+    FileSystem fs = deltas.getFileSystem(conf);
+    if (!fs.exists(deltas)) {
+      return new Path[0];
+    }
+    FileStatus[] stats = fs.listStatus(deltas, getDeltaFilter(fs));
+    Path[] paths = HadoopFSUtil.getPaths(stats);
+    // named by the time they have been written
+    Arrays.sort(paths, (p1, p2) -> Long.compare(Long.parseLong(p1.getName()),
+        Long.parseLong(p2.getName())));
+    return paths;
+  }
+
+  /**
+   * Accepts delta directories only, i.e. directories with a numeric name.
+   * Temporary or abandoned output (<code>_temporary</code>, <code>tmp-*</code>,
+   * checksum files) is ignored.
+   */
+  private static PathFilter getDeltaFilter(final FileSystem fs) {
+    final PathFilter dirs = HadoopFSUtil.getPassDirectoriesFilter(fs);
+    return path -> {
+      String name = path.getName();
+      if (name.isEmpty() || name.length() > 18) {
+        return false;
+      }
+      for (int i = 0; i < name.length(); i++) {
+        if (!Character.isDigit(name.charAt(i))) {
+          return false;
+        }
+      }
+      return dirs.accept(path);
+    };
+  }
+
+  /** @return base and deltas of a CrawlDb */
+  static Path[] getLayers(Configuration conf, Path crawlDb)
+      throws IOException {
+    Path[] deltas = getDeltas(conf, crawlDb);
+    Path[] layers = new Path[deltas.length + 1];
+    layers[0] = new Path(crawlDb, CURRENT_NAME);
+    System.arraycopy(deltas, 0, layers, 1, deltas.length);
+    return layers;
+  }
+
+  /**
+   * Add a CrawlDb to the input of a job. If the CrawlDb has deltas, the
+   * deltas are merged with the base by {@link CrawlDbDeltaInputFormat}, which
+   * is set as input format of the job, otherwise only the base
+   * (<code>current</code>) is added as input path. Must be called after the
+   * input format of the job has been set.
+   */
+  public static void addInputPath(JobConf job, Path crawlDb)
+      throws IOException {
+    Path[] layers = getLayers(job, crawlDb);
+    if (layers.length == 1) {
+      FileInputFormat.addInputPath(job, layers[0]);
+      return;
+    }
+    LOG.info("Reading CrawlDb {} merged with {} deltas", crawlDb,
+        layers.length - 1);
+    CrawlDbDeltaInputFormat.setLayers(job, crawlDb, layers);
+    job.setInputFormat(CrawlDbDeltaInputFormat.class);
+  }
+
+  /**
+   * Add a CrawlDb to the input of a job using the new MapReduce API. The
+   * CrawlDb is read by {@link CrawlDbInputFormat}, which merges the deltas
+   * with the base. Jobs reading multiple inputs register the CrawlDb with
+   * {@link org.apache.hadoop.mapreduce.lib.input.MultipleInputs} instead, see
+   * {@link CrawlDbInputFormat#addCrawlDb(Job, Path)}.
+   */
+  public static void addInputPath(Job job, Path crawlDb) throws IOException {
+    CrawlDbInputFormat.addCrawlDb(job, crawlDb);
+    org.apache.hadoop.mapreduce.lib.input.FileInputFormat.addInputPath(job,
+        crawlDb);
+    job.setInputFormatClass(CrawlDbInputFormat.class);
+  }
+
+  /**
+   * Fold all deltas into the base of the CrawlDb. Does nothing if the
+   * CrawlDb has no deltas.
+   */
+  public void compact(Path crawlDb, boolean force) throws IOException {
+    if (getDeltas(getConf(), crawlDb).length == 0) {
+      LOG.info("CrawlDb compact: no deltas in " + crawlDb);
+      return;
+    }
+    Path lock = lock(getConf(), crawlDb, force);
+    long start = System.currentTimeMillis();
+    LOG.info("CrawlDb compact: db: " + crawlDb);
+
+    JobConf job = CrawlDb.createJob(getConf(), crawlDb);
+    job.setJobName("crawldb compact " + crawlDb);
+    job.setBoolean(CrawlDbFilter.URL_FILTERING, false);
+    job.setBoolean(CrawlDbFilter.URL_NORMALIZING, false);
+    try {
+      JobClient.runJob(job);
+    } catch (IOException e) {
+      FileSystem fs = crawlDb.getFileSystem(getConf());
+      LockUtil.removeLockFile(fs, lock);
+      Path outPath = FileOutputFormat.getOutputPath(job);
+      if (fs.exists(outPath))
+        fs.delete(outPath, true);
+      throw e;
+    }
+    CrawlDb.install(job, crawlDb);
+    LOG.info("CrawlDb compact: finished, elapsed: "
+        + TimingUtil.elapsedTime(start, System.currentTimeMillis()));
+  }
+
+  /**
+   * Fold the deltas of a CrawlDb into its base. To be called before jobs
+   * which read or rewrite the CrawlDb but cannot merge the deltas on the fly.
+   */
+  public static void compact(Configuration conf, Path crawlDb)
+      throws IOException {
+    new CrawlDb(conf).compact(crawlDb, false);
+  }
+
+  private static void installDelta(JobConf job, Path crawlDb)
+      throws IOException {
+    FileSystem fs = crawlDb.getFileSystem(job);
+    Path deltas = new Path(crawlDb, DELTAS_NAME);
+    fs.mkdirs(deltas);
+    Path[] existing = getDeltas(job, crawlDb);
+    long name = System.currentTimeMillis();
+    if (existing.length > 0) {
+      name = Math.max(name,
+          Long.parseLong(existing[existing.length - 1].getName()) + 1);
+    }
+    Path delta = new Path(deltas, Long.toString(name));
+    if (!fs.rename(FileOutputFormat.getOutputPath(job), delta)) {
+      throw new IOException("Failed to install delta " + delta);
+    }
+    LOG.info("CrawlDb update: installed delta " + delta);
+    LockUtil.removeLockFile(fs, new Path(crawlDb, LOCK_NAME));
+  }
+
   public static Path lock(Configuration job, Path crawlDb, boolean force) throws IOException {
     Path lock = new Path(crawlDb, LOCK_NAME);
     LockUtil.createLockFile(job, lock, force);
@@ -181,6 +402,13 @@ public class CrawlDb extends NutchTool implements Tool {
       FSUtils.replace(fs, old, current, true);
     }
     FSUtils.replace(fs, current, tempCrawlDb, true);
+    // the deltas read by the job are contained in the new base
+    Path[] layers = CrawlDbDeltaInputFormat.getLayers(conf, crawlDb);
+    if (layers != null) {
+      for (int i = 1; i < layers.length; i++) {
+        fs.delete(layers[i], true);
+      }
+    }
     Path lock = new Path(crawlDb, LOCK_NAME);
     LockUtil.removeLockFile(fs, lock);
     if (!preserveBackup && fs.exists(old)) {
@@ -210,7 +438,7 @@ public class CrawlDb extends NutchTool implements Tool {
   public int run(String[] args) throws Exception {
     if (args.length < 1) {
       System.err
-          .println("Usage: CrawlDb <crawldb> (-dir <segments> | <seg1> <seg2> ...) [-force] [-normalize] [-filter] [-noAdditions]");
+          .println("Usage: CrawlDb <crawldb> (-dir <segments> | <seg1> <seg2> ... | -compact) [-force] [-normalize] [-filter] [-noAdditions] [-delta]");
       System.err.println("\tcrawldb\tCrawlDb to update");
       System.err
           .println("\t-dir segments\tparent directory containing all segments to update from");
@@ -224,6 +452,10 @@ public class CrawlDb extends NutchTool implements Tool {
           .println("\t-filter\tuse URLFilters on urls in CrawlDb and segment");
       System.err
           .println("\t-noAdditions\tonly update already existing URLs, don't add any newly discovered URLs");
+      System.err
+          .println("\t-delta\twrite the updated URLs as delta of the CrawlDb instead of rewriting it");
+      System.err
+          .println("\t-compact\tfold all deltas into the CrawlDb, no segments are read");
 
       return -1;
     }
@@ -232,6 +464,8 @@ public class CrawlDb extends NutchTool implements Tool {
     boolean filter = getConf().getBoolean(CrawlDbFilter.URL_FILTERING, false);
     boolean additionsAllowed = getConf().getBoolean(CRAWLDB_ADDITIONS_ALLOWED,
         true);
+    boolean delta = getConf().getBoolean(CRAWLDB_DELTA, false);
+    boolean compact = false;
     boolean force = false;
     HashSet<Path> dirs = new HashSet<>();
     for (int i = 1; i < args.length; i++) {
@@ -243,6 +477,10 @@ public class CrawlDb extends NutchTool implements Tool {
         force = true;
       } else if (args[i].equals("-noAdditions")) {
         additionsAllowed = false;
+      } else if (args[i].equals("-delta")) {
+        delta = true;
+      } else if (args[i].equals("-compact")) {
+        compact = true;
       } else if (args[i].equals("-dir")) {
         Path dirPath = new Path(args[++i]);
         FileSystem fs = dirPath.getFileSystem(getConf());
@@ -254,8 +492,12 @@ public class CrawlDb extends NutchTool implements Tool {
       }
     }
     try {
+      if (compact) {
+        compact(new Path(args[0]), force);
+        return 0;
+      }
       update(new Path(args[0]), dirs.toArray(new Path[dirs.size()]), normalize,
-          filter, additionsAllowed, force);
+          filter, additionsAllowed, force, delta);
       return 0;
     } catch (Exception e) {
       LOG.error("CrawlDb update: " + StringUtils.stringifyException(e));
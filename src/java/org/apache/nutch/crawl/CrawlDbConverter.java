@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.text.SimpleDateFormat;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.nutch.util.LockUtil;
+import org.apache.nutch.util.NutchConfiguration;
+import org.apache.nutch.util.TimingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites a CrawlDb in the compact or the regular storage format of
+ * {@link CrawlDatum}s (see {@link CrawlDatumSerialization}). The records are
+ * not modified, deltas of the CrawlDb are folded into the converted CrawlDb.
+ */
+public class CrawlDbConverter extends Configured implements Tool {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public CrawlDbConverter() {
+  }
+
+  public CrawlDbConverter(Configuration conf) {
+    setConf(conf);
+  }
+
+  public void convert(Path crawlDb, boolean compact, boolean force)
+      throws IOException {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    long start = System.currentTimeMillis();
+    LOG.info("CrawlDb convert: starting at " + sdf.format(start));
+    LOG.info("CrawlDb convert: db: " + crawlDb);
+    LOG.info("CrawlDb convert: format: " + (compact ? "compact" : "regular"));
+
+    Path lock = CrawlDb.lock(getConf(), crawlDb, force);
+    JobConf job = CrawlDb.createJob(getConf(), crawlDb);
+    job.setJobName("crawldb convert " + crawlDb);
+    job.setBoolean(CrawlDbFilter.URL_FILTERING, false);
+    job.setBoolean(CrawlDbFilter.URL_NORMALIZING, false);
+    job.setBoolean(CrawlDb.CRAWLDB_PURGE_404, false);
+    job.setBoolean(CrawlDatumSerialization.COMPACT, compact);
+    CrawlDatumSerialization.register(job);
+    try {
+      JobClient.runJob(job);
+    } catch (IOException e) {
+      FileSystem fs = crawlDb.getFileSystem(getConf());
+      LockUtil.removeLockFile(fs, lock);
+      Path outPath = FileOutputFormat.getOutputPath(job);
+      if (fs.exists(outPath))
+        fs.delete(outPath, true);
+      throw e;
+    }
+    CrawlDb.install(job, crawlDb);
+
+    long end = System.currentTimeMillis();
+    LOG.info("CrawlDb convert: finished at " + sdf.format(end)
+        + ", elapsed: " + TimingUtil.elapsedTime(start, end));
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner.run(NutchConfiguration.create(),
+        new CrawlDbConverter(), args);
+    System.exit(res);
+  }
+
+  public int run(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err
+          .println("Usage: CrawlDbConverter <crawldb> (-compact | -legacy) [-force]");
+      System.err.println("\tcrawldb\tCrawlDb to convert");
+      System.err
+          .println("\t-compact\tconvert to the compact format (see db.crawldatum.compact)");
+      System.err
+          .println("\t-legacy\tconvert to the regular format, readable by all Nutch versions");
+      System.err
+          .println("\t-force\tforce conversion even if CrawlDb appears to be locked (CAUTION advised)");
+      return -1;
+    }
+    Boolean compact = null;
+    boolean force = false;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("-compact")) {
+        compact = true;
+      } else if (args[i].equals("-legacy")) {
+        compact = false;
+      } else if (args[i].equals("-force")) {
+        force = true;
+      } else {
+        System.err.println("Unknown argument: " + args[i]);
+        return -1;
+      }
+    }
+    if (compact == null) {
+      System.err.println("Either -compact or -legacy is required");
+      return -1;
+    }
+    try {
+      convert(new Path(args[0]), compact, force);
+      return 0;
+    } catch (Exception e) {
+      LOG.error("CrawlDb convert: " + StringUtils.stringifyException(e));
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+
+/**
+ * Reads a CrawlDb which consists of a base (<code>current</code>) and delta
+ * layers written by incremental updates (see {@link CrawlDb#DELTAS_NAME}),
+ * merging the layers on the fly: for every URL the record of the newest layer
+ * containing the URL is returned. All layers of a CrawlDb are partitioned the
+ * same way, one split is created per partition and the sorted partition files
+ * of all layers are merged.
+ *
+ * <p>
+ * The layers are not added as input paths but registered in the job
+ * configuration by {@link CrawlDb#addInputPath(JobConf, Path)}. Other input
+ * paths of the job are read as sequence files.
+ * </p>
+ */
+public class CrawlDbDeltaInputFormat extends
+    SequenceFileInputFormat<Writable, Writable> {
+
+  /** CrawlDbs read by a job */
+  static final String CRAWLDBS = "crawldb.delta.dbs";
+
+  /** prefix of the properties holding the layers of a CrawlDb */
+  static final String LAYERS = "crawldb.delta.layers.";
+
+  private static final PathFilter PART_FILTER = new PathFilter() {
+    public boolean accept(Path path) {
+      return path.getName().startsWith("part-");
+    }
+  };
+
+  /**
+   * Register the layers of a CrawlDb in the job configuration.
+   *
+   * @param layers
+   *          the layers of the CrawlDb, base first, deltas in the order they
+   *          have been written
+   */
+  static void setLayers(Configuration job, Path crawlDb, Path[] layers) {
+    String[] dbs = job.getStrings(CRAWLDBS, new String[0]);
+    String[] newDbs = Arrays.copyOf(dbs, dbs.length + 1);
+    newDbs[dbs.length] = crawlDb.toString();
+    job.setStrings(CRAWLDBS, newDbs);
+    String[] paths = new String[layers.length];
+    for (int i = 0; i < layers.length; i++) {
+      paths[i] = layers[i].toString();
+    }
+    job.setStrings(LAYERS + dbs.length, paths);
+  }
+
+  /**
+   * @return the layers of a CrawlDb registered in the job configuration, or
+   *         null if the CrawlDb is not registered
+   */
+  static Path[] getLayers(Configuration conf, Path crawlDb) throws IOException {
+    String[] dbs = conf.getStrings(CRAWLDBS, new String[0]);
+    FileSystem fs = crawlDb.getFileSystem(conf);
+    Path qualified = fs.makeQualified(crawlDb);
+    for (int i = 0; i < dbs.length; i++) {
+      Path db = new Path(dbs[i]);
+      if (db.getFileSystem(conf).makeQualified(db).equals(qualified)) {
+        return getLayers(conf, i);
+      }
+    }
+    return null;
+  }
+
+  private static Path[] getLayers(Configuration conf, int db) {
+    String[] paths = conf.getStrings(LAYERS + db, new String[0]);
+    Path[] layers = new Path[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      layers[i] = new Path(paths[i]);
+    }
+    return layers;
+  }
+
+  /** @return the partitions (MapFile directories) of a layer, sorted */
+  static Path[] getPartitions(Configuration conf, Path layer)
+      throws IOException {
+    FileSystem fs = layer.getFileSystem(conf);
+    FileStatus[] stats = fs.listStatus(layer, PART_FILTER);
+    Path[] parts = new Path[stats.length];
+    for (int i = 0; i < stats.length; i++) {
+      parts[i] = stats[i].getPath();
+    }
+    Arrays.sort(parts);
+    return parts;
+  }
+
+  @Override
+  public InputSplit[] getSplits(JobConf job, int numSplits) throws IOException {
+    List<InputSplit> splits = new ArrayList<>();
+    if (FileInputFormat.getInputPaths(job).length > 0) {
+      splits.addAll(Arrays.asList(super.getSplits(job, numSplits)));
+    }
+    String[] dbs = job.getStrings(CRAWLDBS, new String[0]);
+    for (int db = 0; db < dbs.length; db++) {
+      splits.addAll(getMergeSplits(job, getLayers(job, db)));
+    }
+    return splits.toArray(new InputSplit[splits.size()]);
+  }
+
+  /** @return one split per partition merging all layers of a CrawlDb */
+  static List<MergeSplit> getMergeSplits(Configuration conf, Path[] layers)
+      throws IOException {
+    List<MergeSplit> splits = new ArrayList<>();
+    Path[][] parts = new Path[layers.length][];
+    for (int l = 0; l < layers.length; l++) {
+      parts[l] = getPartitions(conf, layers[l]);
+      if (parts[l].length != parts[0].length) {
+        throw new IOException("CrawlDb layer " + layers[l] + " has "
+            + parts[l].length + " partitions, expected " + parts[0].length);
+      }
+    }
+    for (int p = 0; parts.length > 0 && p < parts[0].length; p++) {
+      Path[] files = new Path[layers.length];
+      long length = 0;
+      String[] hosts = new String[0];
+      for (int l = 0; l < layers.length; l++) {
+        files[l] = new Path(parts[l][p], MapFile.DATA_FILE_NAME);
+        FileSystem fs = files[l].getFileSystem(conf);
+        FileStatus stat = fs.getFileStatus(files[l]);
+        length += stat.getLen();
+        if (l == 0 && stat.getLen() > 0) {
+          // prefer the hosts of the base, it is the largest layer
+          BlockLocation[] blocks = fs.getFileBlockLocations(stat, 0,
+              stat.getLen());
+          if (blocks.length > 0) {
+            hosts = blocks[0].getHosts();
+          }
+        }
+      }
+      splits.add(new MergeSplit(files, length, hosts));
+    }
+    return splits;
+  }
+
+  @Override
+  public RecordReader<Writable, Writable> getRecordReader(InputSplit split,
+      JobConf job, Reporter reporter) throws IOException {
+    if (split instanceof MergeSplit) {
+      reporter.setStatus(split.toString());
+      return new MergeRecordReader(job, (MergeSplit) split);
+    }
+    return super.getRecordReader(split, job, reporter);
+  }
+
+  /** One partition of all layers of a CrawlDb. */
+  public static class MergeSplit implements InputSplit {
+
+    private Path[] files;
+    private long length;
+    private String[] hosts;
+
+    public MergeSplit() {
+    }
+
+    MergeSplit(Path[] files, long length, String[] hosts) {
+      this.files = files;
+      this.length = length;
+      this.hosts = hosts;
+    }
+
+    Path[] getFiles() {
+      return files;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    public String[] getLocations() {
+      return hosts;
+    }
+
+    public void write(DataOutput out) throws IOException {
+      out.writeInt(files.length);
+      for (Path file : files) {
+        Text.writeString(out, file.toString());
+      }
+      out.writeLong(length);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+      files = new Path[in.readInt()];
+      for (int i = 0; i < files.length; i++) {
+        files[i] = new Path(Text.readString(in));
+      }
+      length = in.readLong();
+      hosts = new String[0];
+    }
+
+    @Override
+    public String toString() {
+      return Arrays.toString(files);
+    }
+  }
+
+  /**
+   * Merges the sorted data files of one partition. If a URL is contained in
+   * multiple layers, the record of the newest layer is returned.
+   */
+  static class MergeRecordReader implements RecordReader<Writable, Writable> {
+
+    private final SequenceFile.Reader[] readers;
+    private final Text[] keys;
+    private final CrawlDatum[] values;
+    private final boolean[] hasNext;
+    private final long length;
+
+    MergeRecordReader(Configuration conf, MergeSplit split)
+        throws IOException {
+      Path[] files = split.getFiles();
+      readers = new SequenceFile.Reader[files.length];
+      keys = new Text[files.length];
+      values = new CrawlDatum[files.length];
+      hasNext = new boolean[files.length];
+      length = split.getLength();
+      try {
+        for (int i = 0; i < files.length; i++) {
+          readers[i] = new SequenceFile.Reader(conf,
+              SequenceFile.Reader.file(files[i]));
+          keys[i] = new Text();
+          values[i] = new CrawlDatum();
+          hasNext[i] = readers[i].next(keys[i], values[i]);
+        }
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    public boolean next(Writable key, Writable value) throws IOException {
+      int newest = -1;
+      for (int i = 0; i < readers.length; i++) {
+        if (!hasNext[i]) {
+          continue;
+        }
+        // later layers are newer and win on equal keys
+        if (newest == -1 || keys[i].compareTo(keys[newest]) <= 0) {
+          newest = i;
+        }
+      }
+      if (newest == -1) {
+        return false;
+      }
+      ((Text) key).set(keys[newest]);
+      ((CrawlDatum) value).set(values[newest]);
+      for (int i = 0; i < readers.length; i++) {
+        if (hasNext[i] && keys[i].equals(key)) {
+          hasNext[i] = readers[i].next(keys[i], values[i]);
+        }
+      }
+      return true;
+    }
+
+    public Writable createKey() {
+      return new Text();
+    }
+
+    public Writable createValue() {
+      return new CrawlDatum();
+    }
+
+    public long getPos() throws IOException {
+      long pos = 0;
+      for (SequenceFile.Reader reader : readers) {
+        pos += reader.getPosition();
+      }
+      return pos;
+    }
+
+    public float getProgress() throws IOException {
+      return length == 0 ? 1.0f : Math.min(1.0f, getPos() / (float) length);
+    }
+
+    public void close() throws IOException {
+      for (SequenceFile.Reader reader : readers) {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.lib.HashPartitioner;
+
+/**
+ * Reducer of an incremental CrawlDb update: only the URLs contained in the
+ * segments are reduced. The current record of a URL is looked up in the
+ * layers of the CrawlDb (newest delta first, then the base) and passed to
+ * {@link CrawlDbReducer} together with the segment data, the output forms a
+ * new delta.
+ *
+ * <p>
+ * The job must be partitioned by {@link HashPartitioner} into as many
+ * partitions as the CrawlDb layers have: a reduce task then only needs to
+ * open the MapFiles of its own partition, the keys arrive in the order of
+ * the MapFiles.
+ * </p>
+ */
+public class CrawlDbDeltaReducer extends CrawlDbReducer {
+
+  private JobConf job;
+  private Path[] layers;
+  /** readers of the partition in all layers, newest first */
+  private MapFile.Reader[] readers = null;
+  private CrawlDatum old = new CrawlDatum();
+
+  @Override
+  public void configure(JobConf job) {
+    super.configure(job);
+    this.job = job;
+    try {
+      layers = CrawlDbDeltaInputFormat.getLayers(job,
+          new Path(job.get(CrawlDb.CRAWLDB_DELTA_DB)));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (readers == null) {
+      return;
+    }
+    for (MapFile.Reader reader : readers) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  private void openReaders(Text key) throws IOException {
+    readers = new MapFile.Reader[layers.length];
+    int partition = -1;
+    for (int l = 0; l < layers.length; l++) {
+      Path[] parts = CrawlDbDeltaInputFormat.getPartitions(job, layers[l]);
+      if (partition == -1) {
+        partition = new HashPartitioner<Text, CrawlDatum>().getPartition(key,
+            null, parts.length);
+      }
+      readers[layers.length - 1 - l] = new MapFile.Reader(parts[partition],
+          job);
+    }
+  }
+
+  @Override
+  public void reduce(Text key, final Iterator<CrawlDatum> values,
+      OutputCollector<Text, CrawlDatum> output, Reporter reporter)
+      throws IOException {
+    if (readers == null) {
+      openReaders(key);
+    }
+    boolean found = false;
+    for (MapFile.Reader reader : readers) {
+      if (reader.get(key, old) != null) {
+        found = true;
+        break;
+      }
+    }
+    if (!found) {
+      super.reduce(key, values, output, reporter);
+      return;
+    }
+    // prepend the current record to the segment data
+    Iterator<CrawlDatum> withOld = new Iterator<CrawlDatum>() {
+      private boolean oldReturned = false;
+
+      public boolean hasNext() {
+        return !oldReturned || values.hasNext();
+      }
+
+      public CrawlDatum next() {
+        if (!oldReturned) {
+          oldReturned = true;
+          return old;
+        }
+        return values.next();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+    super.reduce(key, withOld, output, reporter);
+  }
+}
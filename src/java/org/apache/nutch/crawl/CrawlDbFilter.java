@@ -29,6 +29,8 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
+import org.apache.nutch.net.URLResultCache;
+import org.apache.nutch.plugin.PluginMetrics;
 
 /**
  * This class provides a way to separate the URL normalization and filtering
@@ -111,5 +113,7 @@ public class CrawlDbFilter implements
     } else {
       reporter.getCounter("CrawlDB", "urls_filtered_by_regex").increment(1);
     }
+    URLResultCache.reportCounters(reporter);
+    PluginMetrics.reportCounters(reporter);
   }
 }
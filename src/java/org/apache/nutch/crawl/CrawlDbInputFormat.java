@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * New MapReduce API counterpart of {@link CrawlDbDeltaInputFormat}. Every
+ * input path is a CrawlDb directory; its base and deltas are merged on the
+ * fly, the newest layer winning per URL. A CrawlDb without deltas is read as
+ * plain sequence files from <code>current</code>.
+ *
+ * <p>
+ * The layers are registered in the job configuration when the CrawlDb is
+ * added, see {@link #addCrawlDb(Job, Path)}, so that jobs rewriting the
+ * CrawlDb drop exactly the folded deltas on
+ * {@link CrawlDb#install(Job, Path)}.
+ * </p>
+ */
+public class CrawlDbInputFormat extends SequenceFileInputFormat<Text, CrawlDatum> {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Register the layers of a CrawlDb in the configuration of a job. The
+   * CrawlDb directory itself must be added as input path, either by
+   * {@link CrawlDb#addInputPath(Job, Path)} or via
+   * {@link org.apache.hadoop.mapreduce.lib.input.MultipleInputs} with this
+   * input format.
+   */
+  public static void addCrawlDb(Job job, Path crawlDb) throws IOException {
+    Configuration conf = job.getConfiguration();
+    Path[] layers = CrawlDb.getLayers(conf, crawlDb);
+    if (layers.length > 1) {
+      LOG.info("Reading CrawlDb {} merged with {} deltas", crawlDb,
+          layers.length - 1);
+    }
+    CrawlDbDeltaInputFormat.setLayers(conf, crawlDb, layers);
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext job) throws IOException {
+    Configuration conf = job.getConfiguration();
+    List<InputSplit> splits = new ArrayList<>();
+    for (Path crawlDb : FileInputFormat.getInputPaths(job)) {
+      Path[] layers = CrawlDbDeltaInputFormat.getLayers(conf, crawlDb);
+      if (layers == null) {
+        layers = CrawlDb.getLayers(conf, crawlDb);
+      }
+      if (layers.length == 1) {
+        Job base = Job.getInstance(conf);
+        FileInputFormat.setInputPaths(base, layers[0]);
+        splits.addAll(super.getSplits(base));
+        continue;
+      }
+      for (CrawlDbDeltaInputFormat.MergeSplit split : CrawlDbDeltaInputFormat
+          .getMergeSplits(conf, layers)) {
+        splits.add(new MergeInputSplit(split));
+      }
+    }
+    return splits;
+  }
+
+  @Override
+  public RecordReader<Text, CrawlDatum> createRecordReader(InputSplit split,
+      TaskAttemptContext context) throws IOException {
+    if (split instanceof MergeInputSplit) {
+      return new MergeReader();
+    }
+    return super.createRecordReader(split, context);
+  }
+
+  /** One partition of all layers of a CrawlDb. */
+  public static class MergeInputSplit extends InputSplit implements Writable {
+
+    private CrawlDbDeltaInputFormat.MergeSplit split;
+
+    public MergeInputSplit() {
+      split = new CrawlDbDeltaInputFormat.MergeSplit();
+    }
+
+    MergeInputSplit(CrawlDbDeltaInputFormat.MergeSplit split) {
+      this.split = split;
+    }
+
+    @Override
+    public long getLength() {
+      return split.getLength();
+    }
+
+    @Override
+    public String[] getLocations() {
+      return split.getLocations();
+    }
+
+    public void write(DataOutput out) throws IOException {
+      split.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+      split.readFields(in);
+    }
+
+    @Override
+    public String toString() {
+      return split.toString();
+    }
+  }
+
+  private static class MergeReader extends RecordReader<Text, CrawlDatum> {
+
+    private CrawlDbDeltaInputFormat.MergeRecordReader reader;
+    private final Text key = new Text();
+    private final CrawlDatum value = new CrawlDatum();
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context)
+        throws IOException {
+      reader = new CrawlDbDeltaInputFormat.MergeRecordReader(
+          context.getConfiguration(), ((MergeInputSplit) split).split);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      return reader.next(key, value);
+    }
+
+    @Override
+    public Text getCurrentKey() {
+      return key;
+    }
+
+    @Override
+    public CrawlDatum getCurrentValue() {
+      return value;
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+      return reader.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (reader != null) {
+        reader.close();
+      }
+    }
+  }
+}
@@ -134,7 +134,7 @@ public class CrawlDbMerger extends Configured implements Tool {
       if (LOG.isInfoEnabled()) {
         LOG.info("Adding " + dbs[i]);
       }
-      FileInputFormat.addInputPath(job, new Path(dbs[i], CrawlDb.CURRENT_NAME));
+      CrawlDb.addInputPath(job, dbs[i]);
     }
     try {
       JobClient.runJob(job);
@@ -23,9 +23,11 @@ import java.io.IOException;
 import java.io.Closeable;
 import java.lang.invoke.MethodHandles;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
@@ -86,25 +88,34 @@ public class CrawlDbReader extends Configured implements Closeable, Tool {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
-  private MapFile.Reader[] readers = null;
+  /** readers of the deltas, newest first, and of the base */
+  private List<MapFile.Reader[]> readers = null;
 
   private void openReaders(String crawlDb, JobConf config)
       throws IOException {
     if (readers != null)
       return;
+    readers = new ArrayList<>();
+    Path[] deltas = CrawlDb.getDeltas(config, new Path(crawlDb));
+    for (int i = deltas.length - 1; i >= 0; i--) {
+      FileSystem fs = deltas[i].getFileSystem(config);
+      readers.add(MapFileOutputFormat.getReaders(fs, deltas[i], config));
+    }
     Path crawlDbPath = new Path(crawlDb, CrawlDb.CURRENT_NAME);
     FileSystem fs = crawlDbPath.getFileSystem(config);
-    readers = MapFileOutputFormat.getReaders(fs, crawlDbPath, config);
+    readers.add(MapFileOutputFormat.getReaders(fs, crawlDbPath, config));
   }
 
   private void closeReaders() {
     if (readers == null)
       return;
-    for (int i = 0; i < readers.length; i++) {
-      try {
-        readers[i].close();
-      } catch (Exception e) {
+    for (MapFile.Reader[] layer : readers) {
+      for (int i = 0; i < layer.length; i++) {
+        try {
+          layer[i].close();
+        } catch (Exception e) {
 
+        }
       }
     }
   }
@@ -375,8 +386,8 @@ public class CrawlDbReader extends Configured implements Closeable, Tool {
 	  job.setJobName("stats " + crawlDb);
 	  job.setBoolean("db.reader.stats.sort", sort);
 
-	  FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
 	  job.setInputFormat(SequenceFileInputFormat.class);
+	  CrawlDb.addInputPath(job, new Path(crawlDb));
 
 	  job.setMapperClass(CrawlDbStatMapper.class);
 	  job.setCombinerClass(CrawlDbStatCombiner.class);
@@ -493,9 +504,14 @@ public class CrawlDbReader extends Configured implements Closeable, Tool {
     Text key = new Text(url);
     CrawlDatum val = new CrawlDatum();
     openReaders(crawlDb, config);
-    CrawlDatum res = (CrawlDatum) MapFileOutputFormat.getEntry(readers,
-        new HashPartitioner<>(), key, val);
-    return res;
+    for (MapFile.Reader[] layer : readers) {
+      CrawlDatum res = (CrawlDatum) MapFileOutputFormat.getEntry(layer,
+          new HashPartitioner<>(), key, val);
+      if (res != null) {
+        return res;
+      }
+    }
+    return null;
   }
 
   public void readUrl(String crawlDb, String url, JobConf config)
@@ -522,8 +538,8 @@ public class CrawlDbReader extends Configured implements Closeable, Tool {
     JobConf job = new NutchJob(config);
     job.setJobName("dump " + crawlDb);
 
-    FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
     job.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(job, new Path(crawlDb));
     FileOutputFormat.setOutputPath(job, outFolder);
 
     if (format.equals("csv")) {
@@ -629,8 +645,8 @@ public class CrawlDbReader extends Configured implements Closeable, Tool {
 
     JobConf job = new NutchJob(config);
     job.setJobName("topN prepare " + crawlDb);
-    FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
     job.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(job, new Path(crawlDb));
     job.setMapperClass(CrawlDbTopNMapper.class);
     job.setReducerClass(IdentityReducer.class);
 
@@ -32,6 +32,7 @@ import org.apache.hadoop.io.*;
 import org.apache.hadoop.mapred.*;
 import org.apache.hadoop.util.PriorityQueue;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.scoring.ScoringFilterException;
 import org.apache.nutch.scoring.ScoringFilters;
 
@@ -174,10 +175,10 @@ public class CrawlDbReducer implements
     result.set(fetch);
     if (oldSet) {
       // copy metadata from old, if exists
-      if (old.getMetaData().size() > 0) {
+      if (old.hasMetaData()) {
         result.putAllMetaData(old);
         // overlay with new, if any
-        if (fetch.getMetaData().size() > 0)
+        if (fetch.hasMetaData())
           result.putAllMetaData(fetch);
       }
       // set the most recent valid value of modifiedTime
@@ -318,6 +319,7 @@ public class CrawlDbReducer implements
     // remove generation time, if any
     result.getMetaData().remove(Nutch.WRITABLE_GENERATE_TIME_KEY);
     output.collect(key, result);
+    PluginMetrics.reportCounters(reporter);
     reporter.getCounter("CrawlDB status",
         CrawlDatum.getStatusName(result.getStatus())).increment(1);
   }
@@ -17,16 +17,23 @@
 package org.apache.nutch.crawl;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
 import java.net.URLDecoder;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Arrays;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
@@ -43,6 +50,7 @@ import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.RunningJob;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -65,6 +73,18 @@ import org.slf4j.LoggerFactory;
  * with the latest timestamp is kept. If the documents have the same timestamp
  * then the one with the shortest URL is kept. The documents marked as duplicate
  * can then be deleted with the command CleaningJob.
+ * 
+ * <p>
+ * With <code>-nearDuplicates</code> documents with a {@link SimHashSignature}
+ * are also grouped if the signatures differ in at most
+ * <code>maxDistance</code> bits. Documents are grouped by band keys of their
+ * signatures (locality-sensitive hashing, see {@link SimHashTables}), so that
+ * signatures are compared only within a group. A document is marked as
+ * duplicate if a document which is kept, i.e. which has no better document
+ * within the distance itself, is within the distance and better according to
+ * the compare order. This is resolved by a second job, see
+ * {@link NearDuplicateResolver}.
+ * </p>
  ***/
 public class DeduplicationJob extends NutchTool implements Tool {
 
@@ -74,6 +94,75 @@ public class DeduplicationJob extends NutchTool implements Tool {
   private final static Text urlKey = new Text("_URLTEMPKEY_");
   private final static String DEDUPLICATION_GROUP_MODE = "deduplication.group.mode";
   private final static String DEDUPLICATION_COMPARE_ORDER = "deduplication.compare.order";
+  private final static String DEDUPLICATION_MAX_DISTANCE = "deduplication.simhash.max.distance";
+  private final static String DEDUPLICATION_KEY_BITS = "deduplication.simhash.key.bits";
+  private final static String DEDUPLICATION_MAX_GROUP = "deduplication.simhash.max.group";
+  private final static String DEDUPLICATION_MAX_TABLES = "deduplication.simhash.max.tables";
+
+  /** bytes of host or domain to group by, empty if not grouped */
+  private static byte[] getGroup(String groupMode, String url)
+      throws MalformedURLException {
+    switch (groupMode) {
+      case "host":
+        return URLUtil.getHost(url).getBytes();
+      case "domain":
+        return URLUtil.getDomainName(url).getBytes();
+      default:
+        return new byte[0];
+    }
+  }
+
+  /**
+   * Compare two documents with the same or a similar signature.
+   * 
+   * @return a positive value if the first document is kept and the second is
+   *         a duplicate, a negative value for the opposite, 0 if both are kept
+   */
+  static int compare(CrawlDatum doc1, CrawlDatum doc2, String[] compareOrder)
+      throws IOException {
+    for (int i = 0; i < compareOrder.length; i++) {
+      switch (compareOrder[i]) {
+        case "score":
+          // compare based on score
+          if (doc1.getScore() != doc2.getScore()) {
+            return doc1.getScore() > doc2.getScore() ? 1 : -1;
+          }
+          break;
+        case "fetchTime":
+          // same score? delete the one which is oldest
+          if (doc1.getFetchTime() != doc2.getFetchTime()) {
+            return doc1.getFetchTime() > doc2.getFetchTime() ? 1 : -1;
+          }
+          break;
+        case "urlLength":
+          // same time? keep the one which has the shortest URL
+          String url1;
+          String url2;
+          try {
+            url1 = URLDecoder.decode(doc1.getMetaData(urlKey).toString(), "UTF8");
+            url2 = URLDecoder.decode(doc2.getMetaData(urlKey).toString(), "UTF8");
+          } catch (UnsupportedEncodingException e) {
+            LOG.error("Error decoding: " + urlKey);
+            throw new IOException("UnsupportedEncodingException for " + urlKey);
+          }
+          if (url1.length() != url2.length()) {
+            return url1.length() < url2.length() ? 1 : -1;
+          }
+          break;
+      }
+    }
+    return 0;
+  }
+
+  private static void writeOutAsDuplicate(CrawlDatum datum,
+      OutputCollector<Text, CrawlDatum> output, Reporter reporter)
+      throws IOException {
+    datum.setStatus(CrawlDatum.STATUS_DB_DUPLICATE);
+    Text key = (Text) datum.getMetaData().remove(urlKey);
+    reporter.incrCounter("DeduplicationJobStatus",
+        "Documents marked as duplicate", 1);
+    output.collect(key, datum);
+  }
 
   public static class DBFilter implements
       Mapper<Text, CrawlDatum, BytesWritable, CrawlDatum> {
@@ -101,27 +190,11 @@ public class DeduplicationJob extends NutchTool implements Tool {
         if (signature == null)
           return;
         String url = key.toString();
-        BytesWritable sig = null;
-        byte[] data;
-        switch (groupMode) {
-          case "none":
-            sig = new BytesWritable(signature);
-            break;
-          case "host":
-            byte[] host = URLUtil.getHost(url).getBytes();
-            data = new byte[signature.length + host.length];
-            System.arraycopy(signature, 0, data, 0, signature.length);
-            System.arraycopy(host, 0, data, signature.length, host.length);
-            sig = new BytesWritable(data);
-            break;
-          case "domain":
-            byte[] domain = URLUtil.getDomainName(url).getBytes();
-            data = new byte[signature.length + domain.length];
-            System.arraycopy(signature, 0, data, 0, signature.length);
-            System.arraycopy(domain, 0, data, signature.length, domain.length);
-            sig = new BytesWritable(data);
-            break;
-        }
+        byte[] group = getGroup(groupMode, url);
+        byte[] data = new byte[signature.length + group.length];
+        System.arraycopy(signature, 0, data, 0, signature.length);
+        System.arraycopy(group, 0, data, signature.length, group.length);
+        BytesWritable sig = new BytesWritable(data);
         // add the URL as a temporary MD
         value.getMetaData().put(urlKey, key);
         // reduce on the signature optionall grouped on host or domain or not at all
@@ -140,23 +213,12 @@ public class DeduplicationJob extends NutchTool implements Tool {
       compareOrder = arg0.get(DEDUPLICATION_COMPARE_ORDER).split(",");
     }
 
-    private void writeOutAsDuplicate(CrawlDatum datum,
-        OutputCollector<Text, CrawlDatum> output, Reporter reporter)
-        throws IOException {
-      datum.setStatus(CrawlDatum.STATUS_DB_DUPLICATE);
-      Text key = (Text) datum.getMetaData().remove(urlKey);
-      reporter.incrCounter("DeduplicationJobStatus",
-          "Documents marked as duplicate", 1);
-      output.collect(key, datum);
-    }
-
     @Override
     public void reduce(BytesWritable key, Iterator<CrawlDatum> values,
         OutputCollector<Text, CrawlDatum> output, Reporter reporter)
         throws IOException {
       CrawlDatum existingDoc = null;
 
-      outerloop:
       while (values.hasNext()) {
         if (existingDoc == null) {
           existingDoc = new CrawlDatum();
@@ -165,67 +227,415 @@ public class DeduplicationJob extends NutchTool implements Tool {
         }
         CrawlDatum newDoc = values.next();
 
-        for (int i = 0; i < compareOrder.length; i++) {
-          switch (compareOrder[i]) {
-            case "score":
-              // compare based on score
-              if (existingDoc.getScore() < newDoc.getScore()) {
-                writeOutAsDuplicate(existingDoc, output, reporter);
-                existingDoc = new CrawlDatum();
-                existingDoc.set(newDoc);
-                continue outerloop;
-              } else if (existingDoc.getScore() > newDoc.getScore()) {
-                // mark new one as duplicate
-                writeOutAsDuplicate(newDoc, output, reporter);
-                continue outerloop;
-              }
-              break;
-            case "fetchTime":
-              // same score? delete the one which is oldest
-              if (existingDoc.getFetchTime() > newDoc.getFetchTime()) {
-                // mark new one as duplicate
-                writeOutAsDuplicate(newDoc, output, reporter);
-                continue outerloop;
-              } else if (existingDoc.getFetchTime() < newDoc.getFetchTime()) {
-                // mark existing one as duplicate
-                writeOutAsDuplicate(existingDoc, output, reporter);
-                existingDoc = new CrawlDatum();
-                existingDoc.set(newDoc);
-                continue outerloop;
-              }
-              break;
-            case "urlLength":
-              // same time? keep the one which has the shortest URL
-              String urlExisting;
-              String urlnewDoc;
-              try {
-                urlExisting = URLDecoder.decode(existingDoc.getMetaData().get(urlKey).toString(), "UTF8");
-                urlnewDoc = URLDecoder.decode(newDoc.getMetaData().get(urlKey).toString(), "UTF8");
-              } catch (UnsupportedEncodingException e) {
-                LOG.error("Error decoding: " + urlKey);
-                throw new IOException("UnsupportedEncodingException for " + urlKey);
-              }
-              if (urlExisting.length() < urlnewDoc.length()) {
-                // mark new one as duplicate
-                writeOutAsDuplicate(newDoc, output, reporter);
-                continue outerloop;
-              } else if (urlExisting.length() > urlnewDoc.length()) {
-                // mark existing one as duplicate
-                writeOutAsDuplicate(existingDoc, output, reporter);
-                existingDoc = new CrawlDatum();
-                existingDoc.set(newDoc);
-                continue outerloop;
-              }
-              break;
+        int cmp = compare(existingDoc, newDoc, compareOrder);
+        if (cmp > 0) {
+          // mark new one as duplicate
+          writeOutAsDuplicate(newDoc, output, reporter);
+        } else if (cmp < 0) {
+          // mark existing one as duplicate
+          writeOutAsDuplicate(existingDoc, output, reporter);
+          existingDoc = new CrawlDatum();
+          existingDoc.set(newDoc);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+    }
+  }
+
+  /**
+   * Band keys of SimHash signatures. The 64 bits are split into
+   * <code>n</code> blocks and every table keys a signature by the bits of
+   * <code>n - maxDistance</code> blocks, one table per choice of the
+   * <code>maxDistance</code> blocks left out. Signatures which differ in at
+   * most <code>maxDistance</code> bits differ in at most as many blocks and
+   * share the key of at least one table. More blocks give longer, more
+   * selective keys but more tables: <code>n</code> is the smallest number of
+   * blocks giving keys of <code>deduplication.simhash.key.bits</code> bits.
+   * Every table adds one copy of every document to the map output, distances
+   * requiring more than <code>deduplication.simhash.max.tables</code> tables
+   * are rejected.
+   */
+  static class SimHashTables {
+
+    private final long[] masks;
+    private final int keyBits;
+
+    /**
+     * @throws IllegalArgumentException
+     *           if keys of <code>minKeyBits</code> bits require more than
+     *           <code>maxTables</code> tables
+     */
+    SimHashTables(int maxDistance, int minKeyBits, int maxTables) {
+      if (maxDistance < 0 || maxDistance > 63) {
+        throw new IllegalArgumentException(
+            "maxDistance must be between 0 and 63: " + maxDistance);
+      }
+      int blocks = -1;
+      for (int n = maxDistance + 1; n <= 64; n++) {
+        if (tables(n, maxDistance, maxTables) > maxTables) {
+          break;
+        }
+        if (keyBits(n, maxDistance) >= Math.min(minKeyBits, 64)) {
+          blocks = n;
+          break;
+        }
+      }
+      if (blocks < 0) {
+        throw new IllegalArgumentException("Near-duplicates within "
+            + maxDistance + " bits require more than " + maxTables
+            + " band tables with keys of " + minKeyBits + " bits, lower the"
+            + " distance or " + DEDUPLICATION_KEY_BITS + ", or raise "
+            + DEDUPLICATION_MAX_TABLES);
+      }
+      long[] blockMasks = new long[blocks];
+      for (int b = 0; b < blocks; b++) {
+        int from = b * 64 / blocks;
+        int to = (b + 1) * 64 / blocks;
+        blockMasks[b] = (-1L >>> (64 - (to - from))) << from;
+      }
+      List<Long> tables = new ArrayList<>();
+      addMasks(blockMasks, 0, maxDistance, -1L, tables);
+      masks = new long[tables.size()];
+      for (int t = 0; t < masks.length; t++) {
+        masks[t] = tables.get(t);
+      }
+      keyBits = keyBits(blocks, maxDistance);
+    }
+
+    /**
+     * @return the number of ways to leave out k of n blocks, or any number
+     *         above max
+     */
+    private static long tables(int n, int k, int max) {
+      long c = 1;
+      for (int i = 1; i <= k && c <= max; i++) {
+        c = c * (n - k + i) / i;
+      }
+      return c;
+    }
+
+    /** @return bits of the shortest key if k of n blocks are left out */
+    private static int keyBits(int n, int k) {
+      int[] sizes = new int[n];
+      for (int b = 0; b < n; b++) {
+        sizes[b] = (b + 1) * 64 / n - b * 64 / n;
+      }
+      Arrays.sort(sizes);
+      int bits = 0;
+      for (int b = 0; b < n - k; b++) {
+        bits += sizes[b];
+      }
+      return bits;
+    }
+
+    private static void addMasks(long[] blockMasks, int from, int leaveOut,
+        long mask, List<Long> tables) {
+      if (leaveOut == 0) {
+        tables.add(mask);
+        return;
+      }
+      for (int b = from; b <= blockMasks.length - leaveOut; b++) {
+        addMasks(blockMasks, b + 1, leaveOut - 1, mask & ~blockMasks[b],
+            tables);
+      }
+    }
+
+    int size() {
+      return masks.length;
+    }
+
+    int getKeyBits() {
+      return keyBits;
+    }
+
+    long key(int table, long simHash) {
+      return simHash & masks[table];
+    }
+  }
+
+  static SimHashTables createTables(Configuration conf) {
+    return new SimHashTables(conf.getInt(DEDUPLICATION_MAX_DISTANCE, 3),
+        conf.getInt(DEDUPLICATION_KEY_BITS, 24),
+        conf.getInt(DEDUPLICATION_MAX_TABLES, 100));
+  }
+
+  /**
+   * Emits every document with a {@link SimHashSignature} once per table of
+   * {@link SimHashTables}, keyed by table index and band key. Documents with
+   * other signatures are emitted once, keyed by the signature.
+   */
+  public static class BandFilter implements
+      Mapper<Text, CrawlDatum, BytesWritable, CrawlDatum> {
+
+    private String groupMode;
+    private SimHashTables tables;
+
+    @Override
+    public void configure(JobConf job) {
+      groupMode = job.get(DEDUPLICATION_GROUP_MODE);
+      tables = createTables(job);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private static byte[] key(int table, byte[] bits, byte[] group) {
+      byte[] data = new byte[4 + bits.length + group.length];
+      data[0] = (byte) (table >>> 24);
+      data[1] = (byte) (table >>> 16);
+      data[2] = (byte) (table >>> 8);
+      data[3] = (byte) table;
+      System.arraycopy(bits, 0, data, 4, bits.length);
+      System.arraycopy(group, 0, data, 4 + bits.length, group.length);
+      return data;
+    }
+
+    @Override
+    public void map(Text key, CrawlDatum value,
+        OutputCollector<BytesWritable, CrawlDatum> output, Reporter reporter)
+        throws IOException {
+      if (value.getStatus() != CrawlDatum.STATUS_DB_FETCHED
+          && value.getStatus() != CrawlDatum.STATUS_DB_NOTMODIFIED)
+        return;
+      byte[] signature = value.getSignature();
+      if (signature == null)
+        return;
+      byte[] group = getGroup(groupMode, key.toString());
+      // add the URL as a temporary MD
+      value.getMetaData().put(urlKey, key);
+
+      if (signature.length != SimHashSignature.LENGTH) {
+        // exact grouping, -1 never is a table index
+        output.collect(new BytesWritable(key(-1, signature, group)), value);
+        return;
+      }
+      long simHash = SimHashSignature.toLong(signature);
+      for (int t = 0; t < tables.size(); t++) {
+        byte[] bits = SimHashSignature.toBytes(tables.key(t, simHash));
+        output.collect(new BytesWritable(key(t, bits, group)), value);
+      }
+    }
+  }
+
+  /**
+   * Finds the near-duplicates among the documents sharing a band key, without
+   * marking them yet. For every document which has a better document within
+   * the maximum distance, the reducer emits
+   * <ul>
+   * <li>a marker keyed by the URL of the document, i.e. the document is not
+   * kept for sure, and</li>
+   * <li>the document keyed by the URL of every better document within the
+   * distance which has no better document itself in this group.</li>
+   * </ul>
+   * The documents kept for sure are not marked in any group, they are the
+   * documents without a better document within the distance. A document which
+   * meets one of them in any group is a duplicate, see
+   * {@link NearDuplicateResolver}.
+   *
+   * <p>
+   * Documents with identical signatures (distance 0, and all documents with
+   * other than SimHash signatures) are streamed as in {@link DedupReducer}:
+   * only the best of them is kept in the group, the others are emitted as
+   * duplicates of it, keyed by their own URL, however large the group is.
+   * </p>
+   *
+   * <p>
+   * Of the remaining documents, if more than
+   * <code>deduplication.simhash.max.group</code>, only the best according to
+   * the compare order are clustered. The other documents are not compared in
+   * this group, they are kept unless they meet a kept document in another
+   * group.
+   * </p>
+   */
+  public static class NearDuplicateReducer implements
+      Reducer<BytesWritable, CrawlDatum, Text, CrawlDatum> {
+
+    private String[] compareOrder;
+    private int maxDistance;
+    private int maxGroup;
+    private Comparator<CrawlDatum> worstFirst;
+    private PriorityQueue<CrawlDatum> group;
+    private List<CrawlDatum> docs = new ArrayList<>();
+    /** best document in the group per SimHash */
+    private Map<Long, CrawlDatum> bySimHash = new HashMap<>();
+
+    @Override
+    public void configure(JobConf job) {
+      compareOrder = job.get(DEDUPLICATION_COMPARE_ORDER).split(",");
+      maxDistance = job.getInt(DEDUPLICATION_MAX_DISTANCE, 3);
+      maxGroup = job.getInt(DEDUPLICATION_MAX_GROUP, 1000);
+      worstFirst = (d1, d2) -> {
+        try {
+          return compare(d1, d2, compareOrder);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      };
+      group = new PriorityQueue<>(worstFirst);
+    }
+
+    private static long simHash(CrawlDatum datum) {
+      byte[] signature = datum.getSignature();
+      // other signatures are grouped exactly
+      return signature.length == SimHashSignature.LENGTH ? SimHashSignature
+          .toLong(signature) : 0L;
+    }
+
+    @Override
+    public void reduce(BytesWritable key, Iterator<CrawlDatum> values,
+        OutputCollector<Text, CrawlDatum> output, Reporter reporter)
+        throws IOException {
+      group.clear();
+      docs.clear();
+      bySimHash.clear();
+      boolean truncated = false;
+      try {
+        while (values.hasNext()) {
+          CrawlDatum value = values.next();
+          long simHash = simHash(value);
+          CrawlDatum same = bySimHash.get(simHash);
+          if (same != null) {
+            int cmp = compare(same, value, compareOrder);
+            if (cmp > 0) {
+              writeOutAsExactDuplicate(value, output);
+              continue;
+            } else if (cmp < 0) {
+              group.remove(same);
+              bySimHash.remove(simHash);
+              writeOutAsExactDuplicate(same, output);
+            }
+            // same rank: both are kept as in DedupReducer
+          }
+          if (group.size() >= maxGroup) {
+            truncated = true;
+            if (worstFirst.compare(value, group.peek()) <= 0) {
+              continue;
+            }
+            CrawlDatum dropped = group.poll();
+            bySimHash.remove(simHash(dropped), dropped);
           }
+          CrawlDatum doc = new CrawlDatum();
+          doc.set(value);
+          group.add(doc);
+          bySimHash.putIfAbsent(simHash, doc);
         }
+        if (group.size() == 1) {
+          return;
+        }
+        docs.addAll(group);
+        docs.sort(worstFirst.reversed());
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      if (truncated) {
+        reporter.incrCounter("DeduplicationJobStatus",
+            "Near-duplicate groups truncated", 1);
+      }
 
+      long[] simHashes = new long[docs.size()];
+      boolean[] best = new boolean[docs.size()];
+      for (int j = 0; j < docs.size(); j++) {
+        CrawlDatum doc = docs.get(j);
+        simHashes[j] = simHash(doc);
+        best[j] = true;
+        for (int i = 0; i < j; i++) {
+          if (SimHashSignature.distance(simHashes[i], simHashes[j]) > maxDistance
+              || compare(docs.get(i), doc, compareOrder) <= 0) {
+            continue;
+          }
+          best[j] = false;
+          if (best[i]) {
+            output.collect((Text) docs.get(i).getMetaData().get(urlKey), doc);
+          }
+        }
+        if (!best[j]) {
+          output.collect((Text) doc.getMetaData().get(urlKey), NOT_KEPT);
+        }
       }
     }
 
     @Override
     public void close() throws IOException {
+    }
+  }
+
+  /** Marks a document which has a better near-duplicate. */
+  private static final CrawlDatum NOT_KEPT = new CrawlDatum(
+      CrawlDatum.STATUS_DB_DUPLICATE, 0);
+
+  /**
+   * Emit a document which has a better document with the same signature: it
+   * is not kept and, keyed by its own URL, marked unconditionally by
+   * {@link NearDuplicateResolver}.
+   */
+  private static void writeOutAsExactDuplicate(CrawlDatum doc,
+      OutputCollector<Text, CrawlDatum> output) throws IOException {
+    Text url = (Text) doc.getMetaData().get(urlKey);
+    output.collect(url, NOT_KEPT);
+    output.collect(url, doc);
+  }
+
+  /**
+   * Marks the near-duplicates of the documents kept for sure: the input is
+   * keyed by the URL of a document, the values are the documents within the
+   * maximum distance ranked below it and markers if the document itself has
+   * a better document within the distance. The documents are marked as
+   * duplicate only if there is no marker, so that every removed document has
+   * a kept document within the distance. A document may be marked by several
+   * kept documents, see {@link StatusUpdateReducer}. A document keyed by its
+   * own URL has a better document with the same signature and is always
+   * marked, as in {@link DedupReducer}.
+   */
+  public static class NearDuplicateResolver implements
+      Reducer<Text, CrawlDatum, Text, CrawlDatum> {
 
+    private Map<Text, CrawlDatum> duplicates = new HashMap<>();
+
+    @Override
+    public void configure(JobConf job) {
+    }
+
+    @Override
+    public void reduce(Text key, Iterator<CrawlDatum> values,
+        OutputCollector<Text, CrawlDatum> output, Reporter reporter)
+        throws IOException {
+      duplicates.clear();
+      boolean kept = true;
+      CrawlDatum exactDuplicate = null;
+      while (values.hasNext()) {
+        CrawlDatum value = values.next();
+        Text url = (Text) value.getMetaData().get(urlKey);
+        if (value.getStatus() == CrawlDatum.STATUS_DB_DUPLICATE) {
+          kept = false;
+          duplicates.clear();
+        } else if (key.equals(url)) {
+          if (exactDuplicate == null) {
+            exactDuplicate = new CrawlDatum();
+            exactDuplicate.set(value);
+          }
+        } else if (kept) {
+          if (!duplicates.containsKey(url)) {
+            CrawlDatum duplicate = new CrawlDatum();
+            duplicate.set(value);
+            duplicates.put(new Text(url), duplicate);
+          }
+        }
+      }
+      for (CrawlDatum duplicate : duplicates.values()) {
+        writeOutAsDuplicate(duplicate, output, reporter);
+      }
+      if (exactDuplicate != null) {
+        writeOutAsDuplicate(exactDuplicate, output, reporter);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
     }
   }
 
@@ -259,6 +669,8 @@ public class DeduplicationJob extends NutchTool implements Tool {
 
       // keep the duplicate if there is one
       if (duplicateSet) {
+        reporter.incrCounter("DeduplicationJobStatus",
+            "Documents updated as duplicate", 1);
         output.collect(key, duplicate);
         return;
       }
@@ -270,17 +682,28 @@ public class DeduplicationJob extends NutchTool implements Tool {
 
   public int run(String[] args) throws IOException {
     if (args.length < 1) {
-      System.err.println("Usage: DeduplicationJob <crawldb> [-group <none|host|domain>] [-compareOrder <score>,<fetchTime>,<urlLength>]");
+      System.err.println("Usage: DeduplicationJob <crawldb> [-group <none|host|domain>] [-compareOrder <score>,<fetchTime>,<urlLength>] [-nearDuplicates [-maxDistance <bits>]]");
       return 1;
     }
 
     String group = "none";
     String crawldb = args[0];
     String compareOrder = "score,fetchTime,urlLength";
+    boolean nearDuplicates = false;
+    int maxDistance = getConf().getInt(DEDUPLICATION_MAX_DISTANCE, 3);
 
     for (int i = 1; i < args.length; i++) {
       if (args[i].equals("-group")) 
         group = args[++i];
+      if (args[i].equals("-nearDuplicates"))
+        nearDuplicates = true;
+      if (args[i].equals("-maxDistance")) {
+        maxDistance = Integer.parseInt(args[++i]);
+        if (maxDistance < 0 || maxDistance > 63) {
+          System.err.println("DeduplicationJob: maxDistance must be between 0 and 63.");
+          return 1;
+        }
+      }
       if (args[i].equals("-compareOrder")) {
         compareOrder = args[++i];
 
@@ -306,11 +729,16 @@ public class DeduplicationJob extends NutchTool implements Tool {
     job.setJobName("Deduplication on " + crawldb);
     job.set(DEDUPLICATION_GROUP_MODE, group);
     job.set(DEDUPLICATION_COMPARE_ORDER, compareOrder);
+    job.setInt(DEDUPLICATION_MAX_DISTANCE, maxDistance);
 
-    FileInputFormat.addInputPath(job, new Path(crawldb, CrawlDb.CURRENT_NAME));
     job.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(job, new Path(crawldb));
 
-    FileOutputFormat.setOutputPath(job, tempDir);
+    // near-duplicate candidates are resolved by a second job
+    Path candidates = new Path(tempDir, "candidates");
+    Path duplicates = nearDuplicates ? new Path(tempDir, "duplicates")
+        : tempDir;
+    FileOutputFormat.setOutputPath(job, nearDuplicates ? candidates : tempDir);
     job.setOutputFormat(SequenceFileOutputFormat.class);
 
     job.setMapOutputKeyClass(BytesWritable.class);
@@ -319,13 +747,29 @@ public class DeduplicationJob extends NutchTool implements Tool {
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(CrawlDatum.class);
 
-    job.setMapperClass(DBFilter.class);
-    job.setReducerClass(DedupReducer.class);
+    if (nearDuplicates) {
+      SimHashTables tables;
+      try {
+        tables = createTables(job);
+      } catch (IllegalArgumentException e) {
+        System.err.println("DeduplicationJob: " + e.getMessage());
+        return 1;
+      }
+      // every table adds a copy of each document to the shuffle
+      LOG.info("DeduplicationJob: near-duplicates within " + maxDistance
+          + " bits, " + tables.size() + " band tables with keys of "
+          + tables.getKeyBits() + " bits");
+      job.setMapperClass(BandFilter.class);
+      job.setReducerClass(NearDuplicateReducer.class);
+    } else {
+      job.setMapperClass(DBFilter.class);
+      job.setReducerClass(DedupReducer.class);
+    }
 
     try {
       RunningJob rj = JobClient.runJob(job);
       Group g = rj.getCounters().getGroup("DeduplicationJobStatus");
-      if (g != null) {
+      if (g != null && !nearDuplicates) {
         long dups = g.getCounter("Documents marked as duplicate");
         LOG.info("Deduplication: " + (int) dups
             + " documents marked as duplicates");
@@ -335,6 +779,25 @@ public class DeduplicationJob extends NutchTool implements Tool {
       return -1;
     }
 
+    if (nearDuplicates) {
+      JobConf resolveJob = new NutchJob(getConf());
+      resolveJob.setJobName("Near-duplicate resolution on " + crawldb);
+      resolveJob.setInputFormat(SequenceFileInputFormat.class);
+      FileInputFormat.addInputPath(resolveJob, candidates);
+      resolveJob.setMapperClass(IdentityMapper.class);
+      resolveJob.setReducerClass(NearDuplicateResolver.class);
+      FileOutputFormat.setOutputPath(resolveJob, duplicates);
+      resolveJob.setOutputFormat(SequenceFileOutputFormat.class);
+      resolveJob.setOutputKeyClass(Text.class);
+      resolveJob.setOutputValueClass(CrawlDatum.class);
+      try {
+        JobClient.runJob(resolveJob);
+      } catch (final Exception e) {
+        LOG.error("DeduplicationJob: " + StringUtils.stringifyException(e));
+        return -1;
+      }
+    }
+
     // merge with existing crawl db
     if (LOG.isInfoEnabled()) {
       LOG.info("Deduplication: Updating status of duplicate urls into crawl db.");
@@ -342,11 +805,18 @@ public class DeduplicationJob extends NutchTool implements Tool {
 
     Path dbPath = new Path(crawldb);
     JobConf mergeJob = CrawlDb.createJob(getConf(), dbPath);
-    FileInputFormat.addInputPath(mergeJob, tempDir);
+    FileInputFormat.addInputPath(mergeJob, duplicates);
     mergeJob.setReducerClass(StatusUpdateReducer.class);
 
     try {
-      JobClient.runJob(mergeJob);
+      RunningJob rj = JobClient.runJob(mergeJob);
+      // near-duplicates may be marked by several documents, count them once
+      Group g = rj.getCounters().getGroup("DeduplicationJobStatus");
+      if (g != null && nearDuplicates) {
+        long dups = g.getCounter("Documents updated as duplicate");
+        LOG.info("Deduplication: " + (int) dups
+            + " documents marked as duplicates");
+      }
     } catch (final Exception e) {
       LOG.error("DeduplicationMergeJob: " + StringUtils.stringifyException(e));
       return -1;
@@ -34,22 +34,21 @@ public class FetchScheduleFactory {
   } // no public ctor
 
   /** Return the FetchSchedule implementation. */
-  public synchronized static FetchSchedule getFetchSchedule(Configuration conf) {
+  public static FetchSchedule getFetchSchedule(Configuration conf) {
     String clazz = conf.get("db.fetch.schedule.class",
         DefaultFetchSchedule.class.getName());
     ObjectCache objectCache = ObjectCache.get(conf);
-    FetchSchedule impl = (FetchSchedule) objectCache.getObject(clazz);
-    if (impl == null) {
-      try {
-        LOG.info("Using FetchSchedule impl: " + clazz);
-        Class<?> implClass = Class.forName(clazz);
-        impl = (FetchSchedule) implClass.newInstance();
-        impl.setConf(conf);
-        objectCache.setObject(clazz, impl);
-      } catch (Exception e) {
-        throw new RuntimeException("Couldn't create " + clazz, e);
-      }
-    }
-    return impl;
+    return objectCache.get(ObjectCache.Key.of(clazz, FetchSchedule.class),
+        () -> {
+          try {
+            LOG.info("Using FetchSchedule impl: " + clazz);
+            Class<?> implClass = Class.forName(clazz);
+            FetchSchedule impl = (FetchSchedule) implClass.newInstance();
+            impl.setConf(conf);
+            return impl;
+          } catch (Exception e) {
+            throw new RuntimeException("Couldn't create " + clazz, e);
+          }
+        });
   }
 }
@@ -75,6 +75,7 @@ public class Generator extends NutchTool implements Tool {
   public static final String GENERATOR_COUNT_MODE = "generate.count.mode";
   public static final String GENERATOR_COUNT_VALUE_DOMAIN = "domain";
   public static final String GENERATOR_COUNT_VALUE_HOST = "host";
+  public static final String GENERATOR_COUNT_MEMORY_MAX = "generate.count.memory.max";
   public static final String GENERATOR_TOP_N = "generate.topN";
   public static final String GENERATOR_CUR_TIME = "generate.curTime";
   public static final String GENERATOR_DELAY = "crawl.gen.delay";
@@ -122,7 +123,9 @@ public class Generator extends NutchTool implements Tool {
     private long curTime;
     private long limit;
     private long count;
-    private HashMap<String, int[]> hostCounts = new HashMap<>();
+    private HostCountMap hostCounts;
+    /** start and end of the host name in the current URL */
+    private int[] hostBounds = new int[2];
     private int segCounts[];
     private int maxCount;
     private boolean byDomain = false;
@@ -177,6 +180,8 @@ public class Generator extends NutchTool implements Tool {
       expr = JexlUtil.parseExpression(job.get(GENERATOR_EXPR, null));
       maxNumSegments = job.getInt(GENERATOR_MAX_NUM_SEGMENTS, 1);
       segCounts = new int[maxNumSegments];
+      hostCounts = new HostCountMap(job.getLong(GENERATOR_COUNT_MEMORY_MAX,
+          2000000), new File(System.getProperty("java.io.tmpdir")));
       
       if (job.get(GENERATOR_HOSTDB) != null) {
         try {
@@ -191,6 +196,9 @@ public class Generator extends NutchTool implements Tool {
     }
 
     public void close() {
+      if (hostCounts != null) {
+        hostCounts.close();
+      }
       if (hostdbReaders != null) {
         try {
           for (int i = 0; i < hostdbReaders.length; i++) {
@@ -229,10 +237,10 @@ public class Generator extends NutchTool implements Tool {
         return;
       }
 
-      LongWritable oldGenTime = (LongWritable) crawlDatum.getMetaData().get(
-          Nutch.WRITABLE_GENERATE_TIME_KEY);
-      if (oldGenTime != null) { // awaiting fetch & update
-        if (oldGenTime.get() + genDelay > curTime) // still wait for
+      long oldGenTime = crawlDatum.getMetaLong(
+          Nutch.WRITABLE_GENERATE_TIME_KEY, 0L);
+      if (oldGenTime > 0L) { // awaiting fetch & update
+        if (oldGenTime + genDelay > curTime) // still wait for
           // update
           return;
       }
@@ -336,6 +344,51 @@ public class Generator extends NutchTool implements Tool {
       return context;
     }
 
+    /**
+     * Locate the host name in a plain http or https URL without parsing the
+     * URL. The host name ends where {@link URL#getHost()} would end it.
+     * 
+     * @param bounds
+     *          filled with start and end of the host name
+     * @return false if the URL needs to be parsed by {@link URL}
+     */
+    static boolean findHost(String url, int[] bounds) {
+      int start;
+      if (url.regionMatches(true, 0, "http://", 0, 7)) {
+        start = 7;
+      } else if (url.regionMatches(true, 0, "https://", 0, 8)) {
+        start = 8;
+      } else {
+        return false;
+      }
+      int length = url.length();
+      int end = start;
+      while (end < length) {
+        char c = url.charAt(end);
+        if (c == '/' || c == '?' || c == '#') {
+          break;
+        } else if (c == ':') {
+          // port must be numeric
+          for (int i = end + 1; i < length; i++) {
+            char p = url.charAt(i);
+            if (p == '/' || p == '?' || p == '#') {
+              break;
+            } else if (p < '0' || p > '9') {
+              return false;
+            }
+          }
+          break;
+        } else if (c == '@' || c == '[' || c <= ' ') {
+          // user info, IPv6 address, white space
+          return false;
+        }
+        end++;
+      }
+      bounds[0] = start;
+      bounds[1] = end;
+      return true;
+    }
+
     /** Collect until limit is reached. */
     public void reduce(FloatWritable key, Iterator<SelectorEntry> values,
         OutputCollector<FloatWritable, SelectorEntry> output, Reporter reporter)
@@ -393,17 +446,33 @@ public class Generator extends NutchTool implements Tool {
         }
 
         String hostordomain = null;
+        long hostId;
 
         try {
           if (normalise && normalizers != null) {
             urlString = normalizers.normalize(urlString,
                 URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
           }
-          u = new URL(urlString);
-          if (byDomain) {
-            hostordomain = URLUtil.getDomainName(u);
+          if (findHost(urlString, hostBounds)) {
+            // plain http(s) URL, no need to parse it
+            if (byDomain) {
+              hostordomain = URLUtil.getDomainNameOfHost(
+                  urlString.substring(hostBounds[0], hostBounds[1]))
+                  .toLowerCase();
+              hostId = HostCountMap.hash(hostordomain);
+            } else {
+              hostId = HostCountMap.hash(urlString, hostBounds[0],
+                  hostBounds[1]);
+            }
           } else {
-            hostordomain = new URL(urlString).getHost();
+            u = new URL(urlString);
+            if (byDomain) {
+              hostordomain = URLUtil.getDomainName(u);
+            } else {
+              hostordomain = u.getHost();
+            }
+            hostordomain = hostordomain.toLowerCase();
+            hostId = HostCountMap.hash(hostordomain);
           }
         } catch (Exception e) {
           LOG.warn("Malformed URL: '" + urlString + "', skipping ("
@@ -412,34 +481,38 @@ public class Generator extends NutchTool implements Tool {
           continue;
         }
 
-        hostordomain = hostordomain.toLowerCase();
-
         // only filter if we are counting hosts or domains
         if (maxCount > 0) {
-          int[] hostCount = hostCounts.get(hostordomain);
-          if (hostCount == null) {
-            hostCount = new int[] { 1, 0 };
-            hostCounts.put(hostordomain, hostCount);
+          long hostCount = hostCounts.get(hostId);
+          int segment = 1;
+          int urlCount = 0;
+          if (hostCount != HostCountMap.NOT_FOUND) {
+            segment = HostCountMap.segment(hostCount);
+            urlCount = HostCountMap.count(hostCount);
           }
 
           // increment hostCount
-          hostCount[1]++;
+          urlCount++;
 
           // check if topN reached, select next segment if it is
-          while (segCounts[hostCount[0] - 1] >= limit
-              && hostCount[0] < maxNumSegments) {
-            hostCount[0]++;
-            hostCount[1] = 0;
+          while (segCounts[segment - 1] >= limit
+              && segment < maxNumSegments) {
+            segment++;
+            urlCount = 0;
           }
 
           // reached the limit of allowed URLs per host / domain
           // see if we can put it in the next segment?
-          if (hostCount[1] >= maxCount) {
-            if (hostCount[0] < maxNumSegments) {
-              hostCount[0]++;
-              hostCount[1] = 0;
+          if (urlCount >= maxCount) {
+            if (segment < maxNumSegments) {
+              segment++;
+              urlCount = 0;
             } else {
-              if (hostCount[1] == maxCount + 1 && LOG.isInfoEnabled()) {
+              if (urlCount == maxCount + 1 && LOG.isInfoEnabled()) {
+                if (hostordomain == null) {
+                  hostordomain = urlString.substring(hostBounds[0],
+                      hostBounds[1]).toLowerCase();
+                }
                 LOG.info("Host or domain "
                     + hostordomain
                     + " has more than "
@@ -448,14 +521,16 @@ public class Generator extends NutchTool implements Tool {
                     + maxNumSegments
                     + " segments. Additional URLs won't be included in the fetchlist.");
               }
+              hostCounts.put(hostId, HostCountMap.value(segment, urlCount));
               // skip this entry
               continue;
             }
           }
-          entry.segnum = new IntWritable(hostCount[0]);
-          segCounts[hostCount[0] - 1]++;
+          hostCounts.put(hostId, HostCountMap.value(segment, urlCount));
+          entry.segnum.set(segment);
+          segCounts[segment - 1]++;
         } else {
-          entry.segnum = new IntWritable(currentsegmentnum);
+          entry.segnum.set(currentsegmentnum);
           segCounts[currentsegmentnum - 1]++;
         }
 
@@ -575,10 +650,8 @@ public class Generator extends NutchTool implements Tool {
       genTime.set(0L);
       while (values.hasNext()) {
         CrawlDatum val = values.next();
-        if (val.getMetaData().containsKey(Nutch.WRITABLE_GENERATE_TIME_KEY)) {
-          LongWritable gt = (LongWritable) val.getMetaData().get(
-              Nutch.WRITABLE_GENERATE_TIME_KEY);
-          genTime.set(gt.get());
+        if (val.hasMetaData(Nutch.WRITABLE_GENERATE_TIME_KEY)) {
+          genTime.set(val.getMetaLong(Nutch.WRITABLE_GENERATE_TIME_KEY, 0L));
           if (genTime.get() != generateTime) {
             orig.set(val);
             genTime.set(0L);
@@ -703,8 +776,8 @@ public class Generator extends NutchTool implements Tool {
     if (hostdb != null) {
       job.set(GENERATOR_HOSTDB, hostdb);
     }
-    FileInputFormat.addInputPath(job, new Path(dbDir, CrawlDb.CURRENT_NAME));
     job.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(job, dbDir);
 
     job.setMapperClass(Selector.class);
     job.setPartitionerClass(Selector.class);
@@ -764,8 +837,8 @@ public class Generator extends NutchTool implements Tool {
         Path subGenDir = new Path(segmpaths, CrawlDatum.GENERATE_DIR_NAME);
         FileInputFormat.addInputPath(job, subGenDir);
       }
-      FileInputFormat.addInputPath(job, new Path(dbDir, CrawlDb.CURRENT_NAME));
       job.setInputFormat(SequenceFileInputFormat.class);
+      CrawlDb.addInputPath(job, dbDir);
       job.setMapperClass(CrawlDbUpdater.class);
       job.setReducerClass(CrawlDbUpdater.class);
       job.setOutputFormat(MapFileOutputFormat.class);
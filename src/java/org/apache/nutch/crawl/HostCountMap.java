@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Open-addressing hash map from 64-bit host (or domain) IDs to the segment
+ * number and URL count of the host, used by {@link Generator.Selector} to
+ * enforce <code>generate.max.count</code>. Keys and values are held in
+ * primitive arrays, no objects are allocated per host.
+ *
+ * <p>
+ * If the number of hosts exceeds a threshold, the table is moved into a
+ * memory-mapped temporary file, so that the heap used by the reducer stays
+ * flat however many hosts are counted.
+ * </p>
+ *
+ * <p>
+ * Host IDs are 64-bit hashes (see {@link #hash(CharSequence, int, int)}):
+ * for 100 million hosts the probability of any collision is below 0.1%,
+ * colliding hosts would share their count.
+ * </p>
+ */
+class HostCountMap implements Closeable {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** returned by {@link #get(long)} if the host is not contained */
+  static final long NOT_FOUND = -1L;
+
+  /** marks empty slots, host IDs are never 0 */
+  private static final long EMPTY = 0L;
+
+  /** longs per memory-mapped chunk (1 GB) */
+  private static final int CHUNK_BITS = 27;
+  private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+
+  /** Slots of the table: pairs of longs (key, value). */
+  private interface Table {
+    long get(long index);
+
+    void set(long index, long value);
+
+    void close();
+  }
+
+  private static class HeapTable implements Table {
+    private final long[] slots;
+
+    HeapTable(long capacity) {
+      slots = new long[(int) (2 * capacity)];
+    }
+
+    public long get(long index) {
+      return slots[(int) index];
+    }
+
+    public void set(long index, long value) {
+      slots[(int) index] = value;
+    }
+
+    public void close() {
+    }
+  }
+
+  private static class MappedTable implements Table {
+    private final File file;
+    private final List<LongBuffer> chunks = new ArrayList<>();
+
+    MappedTable(File dir, long capacity) throws IOException {
+      file = File.createTempFile("hostcounts-", ".tmp", dir);
+      file.deleteOnExit();
+      long longs = 2 * capacity;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(8 * longs);
+        FileChannel channel = raf.getChannel();
+        for (long pos = 0; pos < longs; pos += CHUNK_SIZE) {
+          long size = Math.min(CHUNK_SIZE, longs - pos);
+          chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, 8 * pos,
+              8 * size).asLongBuffer());
+        }
+      }
+    }
+
+    public long get(long index) {
+      return chunks.get((int) (index >>> CHUNK_BITS)).get(
+          (int) (index & (CHUNK_SIZE - 1)));
+    }
+
+    public void set(long index, long value) {
+      chunks.get((int) (index >>> CHUNK_BITS)).put(
+          (int) (index & (CHUNK_SIZE - 1)), value);
+    }
+
+    public void close() {
+      chunks.clear();
+      if (!file.delete()) {
+        LOG.warn("Failed to delete {}", file);
+      }
+    }
+  }
+
+  private final long maxInMemory;
+  private final File spillDir;
+  private Table table;
+  private boolean spilled = false;
+  /** number of slots, a power of 2 */
+  private long capacity;
+  private long size = 0;
+
+  /**
+   * @param maxInMemory
+   *          max. number of hosts held in memory
+   * @param spillDir
+   *          directory for the memory-mapped table
+   */
+  HostCountMap(long maxInMemory, File spillDir) {
+    // a heap table holds at most 2^30 slots
+    this.maxInMemory = Math.min(maxInMemory, 1L << 28);
+    this.spillDir = spillDir;
+    this.capacity = 1024;
+    this.table = new HeapTable(capacity);
+  }
+
+  /**
+   * 64-bit hash of the lower-cased characters of a host name.
+   *
+   * @return the host ID, never 0
+   */
+  static long hash(CharSequence s, int start, int end) {
+    // FNV-1a
+    long h = 0xcbf29ce484222325L;
+    for (int i = start; i < end; i++) {
+      h ^= Character.toLowerCase(s.charAt(i));
+      h *= 0x100000001b3L;
+    }
+    // final mix to spread the bits used as table index
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h == EMPTY ? 1 : h;
+  }
+
+  static long hash(CharSequence s) {
+    return hash(s, 0, s.length());
+  }
+
+  /** Pack a segment number and a count into a value. */
+  static long value(int segment, int count) {
+    return ((long) segment << 32) | (count & 0xffffffffL);
+  }
+
+  static int segment(long value) {
+    return (int) (value >>> 32);
+  }
+
+  static int count(long value) {
+    return (int) value;
+  }
+
+  private long slot(long id) {
+    long mask = capacity - 1;
+    long i = id & mask;
+    long key;
+    while ((key = table.get(2 * i)) != EMPTY && key != id) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /** @return the value of the host or {@link #NOT_FOUND} */
+  long get(long id) {
+    long i = slot(id);
+    if (table.get(2 * i) == EMPTY) {
+      return NOT_FOUND;
+    }
+    return table.get(2 * i + 1);
+  }
+
+  void put(long id, long value) throws IOException {
+    long i = slot(id);
+    if (table.get(2 * i) == EMPTY) {
+      table.set(2 * i, id);
+      size++;
+      if (2 * size > capacity) {
+        table.set(2 * i + 1, value);
+        resize(2 * capacity);
+        return;
+      }
+    }
+    table.set(2 * i + 1, value);
+  }
+
+  long size() {
+    return size;
+  }
+
+  boolean isSpilled() {
+    return spilled;
+  }
+
+  private void resize(long newCapacity) throws IOException {
+    Table old = table;
+    long oldCapacity = capacity;
+    if (!spilled && size > maxInMemory) {
+      LOG.info("Counted more than {} hosts, moving counts to disk", maxInMemory);
+      spilled = true;
+    }
+    table = spilled ? new MappedTable(spillDir, newCapacity) : new HeapTable(
+        newCapacity);
+    capacity = newCapacity;
+    for (long i = 0; i < oldCapacity; i++) {
+      long key = old.get(2 * i);
+      if (key != EMPTY) {
+        long j = slot(key);
+        table.set(2 * j, key);
+        table.set(2 * j + 1, old.get(2 * i + 1));
+      }
+    }
+    old.close();
+  }
+
+  public void close() {
+    if (table != null) {
+      table.close();
+      table = null;
+    }
+  }
+}
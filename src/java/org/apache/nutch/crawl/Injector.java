@@ -374,6 +374,9 @@ public class Injector extends NutchTool implements Tool {
     conf.setBoolean(URL_FILTER_NORMALIZE_ALL, filterNormalizeAll);
     conf.setBoolean("mapreduce.fileoutputcommitter.marksuccessfuljobs", false);
 
+    // deltas cannot be merged when reading multiple inputs
+    CrawlDb.compact(conf, crawlDb);
+
     // create all the required paths
     FileSystem fs = crawlDb.getFileSystem(conf);
     Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
@@ -35,7 +35,9 @@ import org.apache.hadoop.util.*;
 import org.apache.nutch.metadata.Nutch;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
+import org.apache.nutch.net.URLResultCache;
 import org.apache.nutch.parse.*;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.util.HadoopFSUtil;
 import org.apache.nutch.util.LockUtil;
 import org.apache.nutch.util.NutchConfiguration;
@@ -108,10 +110,14 @@ public class LinkDb extends NutchTool implements Tool,
         fromUrl = null;
       }
     }
-    if (fromUrl == null)
+    if (fromUrl == null) {
+      URLResultCache.reportCounters(reporter);
+      PluginMetrics.reportCounters(reporter);
       return; // discard all outlinks
+    }
     Outlink[] outlinks = parseData.getOutlinks();
-    Inlinks inlinks = new Inlinks();
+    // one Inlinks per target, the same target may be linked several times
+    Map<String, Inlinks> targets = new LinkedHashMap<>();
     for (int i = 0; i < outlinks.length; i++) {
       Outlink outlink = outlinks[i];
       String toUrl = outlink.getToUrl();
@@ -147,14 +153,22 @@ public class LinkDb extends NutchTool implements Tool,
       }
       if (toUrl == null)
         continue;
-      inlinks.clear();
       String anchor = outlink.getAnchor(); // truncate long anchors
       if (anchor.length() > maxAnchorLength) {
         anchor = anchor.substring(0, maxAnchorLength);
       }
+      Inlinks inlinks = targets.get(toUrl);
+      if (inlinks == null) {
+        inlinks = new Inlinks();
+        targets.put(toUrl, inlinks);
+      }
       inlinks.add(new Inlink(fromUrl, anchor)); // collect inverted link
-      output.collect(new Text(toUrl), inlinks);
     }
+    for (Map.Entry<String, Inlinks> target : targets.entrySet()) {
+      output.collect(new Text(target.getKey()), target.getValue());
+    }
+    URLResultCache.reportCounters(reporter);
+    PluginMetrics.reportCounters(reporter);
   }
 
   private String getHost(String url) {
@@ -226,7 +240,7 @@ public class LinkDb extends NutchTool implements Tool,
       FileInputFormat.addInputPath(job, currentLinkDb);
       FileInputFormat.addInputPath(job, newLinkDb);
       try {
-        JobClient.runJob(job);
+        LinkDbMerger.runMergeJob(job);
       } catch (IOException e) {
         LockUtil.removeLockFile(fs, lock);
         fs.delete(newLinkDb, true);
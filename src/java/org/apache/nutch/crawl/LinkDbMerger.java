@@ -18,10 +18,16 @@ package org.apache.nutch.crawl;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +35,11 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobClient;
@@ -39,9 +49,12 @@ import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapred.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
+import org.apache.nutch.util.HadoopFSUtil;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
 import org.apache.nutch.util.TimingUtil;
@@ -57,7 +70,8 @@ import org.apache.nutch.util.TimingUtil;
  * <p>
  * If more than one LinkDb contains information about the same URL, all inlinks
  * are accumulated, but only at most <code>linkdb.max.inlinks</code> inlinks will
- * ever be added.
+ * ever be added. If <code>linkdb.dedup.anchors</code> is true, only one inlink
+ * with a given anchor text is kept per host of the linking page.
  * </p>
  * <p>
  * If activated, URLFilters will be applied to both the target URLs and to any
@@ -73,7 +87,11 @@ public class LinkDbMerger extends Configured implements Tool,
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  public static final String DEDUP_ANCHORS = "linkdb.dedup.anchors";
+  public static final String MERGE_STREAMING = "linkdb.merge.streaming";
+
   private int maxInlinks;
+  private boolean dedupAnchors;
 
   public LinkDbMerger() {
 
@@ -88,15 +106,20 @@ public class LinkDbMerger extends Configured implements Tool,
       throws IOException {
 
     Inlinks result = new Inlinks();
+    Set<String> anchors = dedupAnchors ? new HashSet<>() : null;
 
-    while (values.hasNext()) {
+    // stop reading values once the maximum is reached
+    while (values.hasNext() && result.size() < maxInlinks) {
       Inlinks inlinks = values.next();
 
-      int end = Math.min(maxInlinks - result.size(), inlinks.size());
       Iterator<Inlink> it = inlinks.iterator();
-      int i = 0;
-      while (it.hasNext() && i++ < end) {
-        result.add(it.next());
+      while (it.hasNext() && result.size() < maxInlinks) {
+        Inlink inlink = it.next();
+        if (anchors != null && !anchors.add(getHost(inlink.getFromUrl())
+            + '\n' + inlink.getAnchor())) {
+          continue; // same anchor from same host
+        }
+        result.add(inlink);
       }
     }
     if (result.size() == 0)
@@ -105,8 +128,17 @@ public class LinkDbMerger extends Configured implements Tool,
 
   }
 
+  private static String getHost(String url) {
+    try {
+      return new URL(url).getHost();
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
   public void configure(JobConf job) {
     maxInlinks = job.getInt("linkdb.max.inlinks", 10000);
+    dedupAnchors = job.getBoolean(DEDUP_ANCHORS, false);
   }
 
   public void close() throws IOException {
@@ -122,7 +154,7 @@ public class LinkDbMerger extends Configured implements Tool,
     for (int i = 0; i < dbs.length; i++) {
       FileInputFormat.addInputPath(job, new Path(dbs[i], LinkDb.CURRENT_NAME));
     }
-    JobClient.runJob(job);
+    runMergeJob(job);
     FileSystem fs = output.getFileSystem(getConf());
     fs.mkdirs(output);
     fs.rename(FileOutputFormat.getOutputPath(job), new Path(output,
@@ -146,6 +178,7 @@ public class LinkDbMerger extends Configured implements Tool,
     job.setMapperClass(LinkDbFilter.class);
     job.setBoolean(LinkDbFilter.URL_NORMALIZING, normalize);
     job.setBoolean(LinkDbFilter.URL_FILTERING, filter);
+    job.setCombinerClass(LinkDbMerger.class);
     job.setReducerClass(LinkDbMerger.class);
 
     FileOutputFormat.setOutputPath(job, newLinkDb);
@@ -160,6 +193,135 @@ public class LinkDbMerger extends Configured implements Tool,
     return job;
   }
 
+  /**
+   * Runs a merge job created by
+   * {@link #createMergeJob(Configuration, Path, boolean, boolean)}. If
+   * <code>linkdb.merge.streaming</code> is true, URLs are not normalized and
+   * all input LinkDbs have the same parts, the inputs are merged part by part
+   * without a MapReduce job instead: the sorted parts are read side by side
+   * and only the inlinks of a single URL are held in memory.
+   */
+  public static void runMergeJob(JobConf job) throws IOException {
+    Path[] inputs = FileInputFormat.getInputPaths(job);
+    String[] parts = null;
+    if (job.getBoolean(MERGE_STREAMING, false)
+        && !job.getBoolean(LinkDbFilter.URL_NORMALIZING, false)) {
+      parts = getCommonParts(job, inputs);
+    }
+    if (parts == null) {
+      JobClient.runJob(job);
+      return;
+    }
+    LOG.info("LinkDb merge: merging " + parts.length
+        + " parts without MapReduce job");
+    Path output = FileOutputFormat.getOutputPath(job);
+    for (String part : parts) {
+      mergePart(job, inputs, part, new Path(output, part));
+    }
+  }
+
+  /**
+   * @return the names of the parts of the LinkDbs or null if the LinkDbs are
+   *         partitioned differently
+   */
+  private static String[] getCommonParts(JobConf job, Path[] inputs)
+      throws IOException {
+    String[] parts = null;
+    for (Path input : inputs) {
+      FileSystem fs = input.getFileSystem(job);
+      Path[] dirs = HadoopFSUtil.getPaths(fs.listStatus(input,
+          HadoopFSUtil.getPassDirectoriesFilter(fs)));
+      String[] names = new String[dirs.length];
+      for (int i = 0; i < dirs.length; i++) {
+        names[i] = dirs[i].getName();
+      }
+      Arrays.sort(names);
+      if (parts == null) {
+        parts = names;
+      } else if (!Arrays.equals(parts, names)) {
+        return null;
+      }
+    }
+    return parts;
+  }
+
+  /** Merges one part of all input LinkDbs, applying filters if configured. */
+  private static void mergePart(JobConf job, Path[] inputs, String part,
+      Path output) throws IOException {
+    LinkDbFilter filter = null;
+    if (job.getBoolean(LinkDbFilter.URL_FILTERING, false)) {
+      filter = new LinkDbFilter();
+      filter.configure(job);
+    }
+    LinkDbMerger merger = new LinkDbMerger(job);
+    merger.configure(job);
+
+    CompressionType compressionType = CompressionType.NONE;
+    CompressionCodec codec = null;
+    if (FileOutputFormat.getCompressOutput(job)) {
+      compressionType = SequenceFileOutputFormat.getOutputCompressionType(job);
+      codec = ReflectionUtils.newInstance(FileOutputFormat
+          .getOutputCompressorClass(job, DefaultCodec.class), job);
+    }
+
+    MapFile.Reader[] readers = new MapFile.Reader[inputs.length];
+    Text[] keys = new Text[inputs.length];
+    Inlinks[] values = new Inlinks[inputs.length];
+    boolean[] hasNext = new boolean[inputs.length];
+    try (MapFile.Writer writer = new MapFile.Writer(job, output,
+        MapFile.Writer.keyClass(Text.class),
+        MapFile.Writer.valueClass(Inlinks.class),
+        MapFile.Writer.compression(compressionType, codec))) {
+      for (int i = 0; i < inputs.length; i++) {
+        readers[i] = new MapFile.Reader(new Path(inputs[i], part), job);
+        keys[i] = new Text();
+        values[i] = new Inlinks();
+        hasNext[i] = readers[i].next(keys[i], values[i]);
+      }
+      OutputCollector<Text, Inlinks> collector = (k, v) -> writer.append(k, v);
+      List<Inlinks> merged = new ArrayList<>();
+      Text key = new Text();
+      while (true) {
+        // the smallest key of all inputs
+        int min = -1;
+        for (int i = 0; i < inputs.length; i++) {
+          if (hasNext[i] && (min < 0 || keys[i].compareTo(keys[min]) < 0)) {
+            min = i;
+          }
+        }
+        if (min < 0) {
+          break;
+        }
+        key.set(keys[min]);
+        merged.clear();
+        for (int i = 0; i < inputs.length; i++) {
+          if (hasNext[i] && keys[i].equals(key)) {
+            if (filter != null) {
+              filter.map(keys[i], values[i], (k, v) -> merged.add(v),
+                  Reporter.NULL);
+            } else {
+              merged.add(values[i]);
+            }
+          }
+        }
+        if (!merged.isEmpty()) {
+          merger.reduce(key, merged.iterator(), collector, Reporter.NULL);
+        }
+        for (int i = 0; i < inputs.length; i++) {
+          if (hasNext[i] && keys[i].equals(key)) {
+            hasNext[i] = readers[i].next(keys[i], values[i]);
+          }
+        }
+      }
+    } finally {
+      for (MapFile.Reader reader : readers) {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+    }
+  }
+
   /**
    * @param args
    */
@@ -26,6 +26,7 @@ import java.util.HashMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.metadata.HttpHeaders;
 import org.apache.nutch.util.MimeUtil;
@@ -109,10 +110,10 @@ public class MimeAdaptiveFetchSchedule extends AdaptiveFetchSchedule {
     DEC_RATE = defaultDecRate;
 
     // Check if the Content-Type field is available in the CrawlDatum
-    if (datum.getMetaData().containsKey(HttpHeaders.WRITABLE_CONTENT_TYPE)) {
+    Writable contentType = datum.getMetaData(HttpHeaders.WRITABLE_CONTENT_TYPE);
+    if (contentType != null) {
       // Get the MIME-type of the current URL
-      String currentMime = MimeUtil.cleanMimeType(datum.getMetaData()
-          .get(HttpHeaders.WRITABLE_CONTENT_TYPE).toString());
+      String currentMime = MimeUtil.cleanMimeType(contentType.toString());
 
       // Check if this MIME-type exists in our map
       if (mimeMap.containsKey(currentMime)) {
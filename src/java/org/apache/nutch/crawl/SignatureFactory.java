@@ -42,23 +42,21 @@ public class SignatureFactory {
   } // no public ctor
 
   /** Return the default Signature implementation. */
-  public synchronized static Signature getSignature(Configuration conf) {
+  public static Signature getSignature(Configuration conf) {
     String clazz = conf.get("db.signature.class", MD5Signature.class.getName());
     ObjectCache objectCache = ObjectCache.get(conf);
-    Signature impl = (Signature) objectCache.getObject(clazz);
-    if (impl == null) {
+    return objectCache.get(ObjectCache.Key.of(clazz, Signature.class), () -> {
       try {
         if (LOG.isInfoEnabled()) {
           LOG.info("Using Signature impl: " + clazz);
         }
         Class<?> implClass = Class.forName(clazz);
-        impl = (Signature) implClass.newInstance();
+        Signature impl = (Signature) implClass.newInstance();
         impl.setConf(conf);
-        objectCache.setObject(clazz, impl);
+        return impl;
       } catch (Exception e) {
         throw new RuntimeException("Couldn't create " + clazz, e);
       }
-    }
-    return impl;
+    });
   }
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import org.apache.nutch.parse.Parse;
+import org.apache.nutch.protocol.Content;
+
+/**
+ * <p>
+ * A page signature for near-duplicate detection: a 64-bit SimHash (Charikar)
+ * of the plain text of a page. In case there is no text, it calculates a hash
+ * using the {@link MD5Signature}.
+ * </p>
+ * <p>
+ * The text is split into tokens as by {@link TextProfileSignature} (letters
+ * and digits, lower-cased, longer than
+ * <code>db.signature.simhash.min_token_len</code>). Every token occurrence
+ * adds its 64-bit hash to a vector of bit counters (+1 for a set bit, -1
+ * otherwise), bit <i>i</i> of the signature is set if counter <i>i</i> is
+ * positive. Pages which share most of their tokens get signatures with a small
+ * Hamming distance, see {@link DeduplicationJob} for the detection of
+ * near-duplicates.
+ * </p>
+ */
+public class SimHashSignature extends Signature {
+
+  /** length of the signature in bytes */
+  public static final int LENGTH = 8;
+
+  Signature fallback = new MD5Signature();
+
+  public byte[] calculate(Content content, Parse parse) {
+    String text = null;
+    if (parse != null)
+      text = parse.getText();
+    if (text == null || text.length() == 0)
+      return fallback.calculate(content, parse);
+    int minTokenLen = getConf().getInt("db.signature.simhash.min_token_len",
+        2);
+
+    int[] counters = new int[64];
+    boolean hasTokens = false;
+    long hash = FNV_OFFSET;
+    int tokenLength = 0;
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+        tokenLength++;
+      } else if (tokenLength > 0) {
+        if (tokenLength > minTokenLen) {
+          add(counters, mix(hash));
+          hasTokens = true;
+        }
+        hash = FNV_OFFSET;
+        tokenLength = 0;
+      }
+    }
+    if (!hasTokens)
+      return fallback.calculate(content, parse);
+
+    long simHash = 0L;
+    for (int b = 0; b < 64; b++) {
+      if (counters[b] > 0) {
+        simHash |= 1L << b;
+      }
+    }
+    return toBytes(simHash);
+  }
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /** spread the bits of the FNV-1a hash (finalizer of MurmurHash3) */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static void add(int[] counters, long hash) {
+    for (int b = 0; b < 64; b++) {
+      if ((hash & (1L << b)) != 0) {
+        counters[b]++;
+      } else {
+        counters[b]--;
+      }
+    }
+  }
+
+  static byte[] toBytes(long simHash) {
+    byte[] bytes = new byte[LENGTH];
+    for (int i = LENGTH - 1; i >= 0; i--) {
+      bytes[i] = (byte) simHash;
+      simHash >>>= 8;
+    }
+    return bytes;
+  }
+
+  /** @return the SimHash of a signature of {@link #LENGTH} bytes */
+  public static long toLong(byte[] signature) {
+    long simHash = 0L;
+    for (int i = 0; i < LENGTH; i++) {
+      simHash = (simHash << 8) | (signature[i] & 0xff);
+    }
+    return simHash;
+  }
+
+  /** @return the number of differing bits of two SimHashes */
+  public static int distance(long simHash1, long simHash2) {
+    return Long.bitCount(simHash1 ^ simHash2);
+  }
+}
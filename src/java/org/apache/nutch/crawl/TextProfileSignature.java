@@ -21,7 +21,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -73,12 +76,307 @@ public class TextProfileSignature extends Signature {
         "db.signature.text_profile.min_token_len", 2);
     float QUANT_RATE = getConf().getFloat(
         "db.signature.text_profile.quant_rate", 0.01f);
-    HashMap<String, Token> tokens = new HashMap<>();
     String text = null;
     if (parse != null)
       text = parse.getText();
     if (text == null || text.length() == 0)
       return fallback.calculate(content, parse);
+    byte[] signature = PROFILE.get().calculate(text, MIN_TOKEN_LEN, QUANT_RATE);
+    if (signature == null) {
+      signature = calculateProfile(text, MIN_TOKEN_LEN, QUANT_RATE);
+    }
+    return signature;
+  }
+
+  private static final ThreadLocal<Profile> PROFILE = ThreadLocal
+      .withInitial(Profile::new);
+
+  /**
+   * Single-pass calculation of the profile signature: tokens are counted in
+   * an open-addressing hash table over a shared char buffer, the profile is
+   * ordered by a bucket sort on the quantized frequencies and fed to the
+   * digest token by token. Per thread, the buffers are reused for all
+   * documents.
+   *
+   * <p>
+   * The signature is identical to the one calculated by
+   * {@link TextProfileSignature#calculateProfile(String, int, float)}: tokens
+   * of equal frequency are ordered as they are iterated in a
+   * {@link HashMap}, i.e. by the bucket of the string hash in a table of the
+   * same capacity, and within a bucket by first occurrence. If the HashMap
+   * would have converted a bucket into a tree, which changes the order,
+   * <code>null</code> is returned.
+   * </p>
+   */
+  private static class Profile {
+
+    /** HashMap turns a bucket into a tree if it grows to this size */
+    private static final int TREEIFY_SIZE = 9;
+
+    private final MessageDigest digest;
+
+    /* tokens by id (order of first occurrence) */
+    private char[] chars = new char[4096];
+    private int charsLength;
+    private int[] offsets = new int[256];
+    private int[] lengths = new int[256];
+    private int[] counts = new int[256];
+    private int[] hashes = new int[256];
+    private int size;
+
+    /** hash table: token id + 1, 0 if empty */
+    private int[] table = new int[512];
+
+    /* current token */
+    private char[] token = new char[64];
+    private int tokenLength;
+    private int tokenHash;
+
+    /* scratch buffers */
+    private int[] buckets = new int[16];
+    private long[] order = new long[256];
+    private int[] sorted = new int[256];
+    private byte[] line = new byte[256];
+
+    Profile() {
+      try {
+        digest = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    byte[] calculate(String text, int minTokenLen, float quantRate) {
+      reset();
+      int maxFreq = 0;
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        if (Character.isLetterOrDigit(c)) {
+          c = Character.toLowerCase(c);
+          if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, tokenLength * 2);
+          }
+          token[tokenLength++] = c;
+          tokenHash = 31 * tokenHash + c;
+        } else if (tokenLength > 0) {
+          if (tokenLength > minTokenLen) {
+            maxFreq = Math.max(maxFreq, addToken());
+          }
+          tokenLength = 0;
+          tokenHash = 0;
+        }
+      }
+      // check the last token
+      if (tokenLength > minTokenLen) {
+        maxFreq = Math.max(maxFreq, addToken());
+      }
+
+      // calculate the QUANT value
+      int QUANT = Math.round(maxFreq * quantRate);
+      if (QUANT < 2) {
+        if (maxFreq > 1)
+          QUANT = 2;
+        else
+          QUANT = 1;
+      }
+
+      int capacity = hashMapCapacity();
+      if (capacity < 0) {
+        return null;
+      }
+
+      // tokens above QUANT in HashMap iteration order
+      int selected = 0;
+      for (int id = 0; id < size; id++) {
+        if (counts[id] >= QUANT) {
+          long bucket = spread(hashes[id]) & (capacity - 1);
+          order[selected++] = (bucket << 32) | id;
+        }
+      }
+      Arrays.sort(order, 0, selected);
+
+      // stable bucket sort by decreasing quantized frequency
+      int maxLevel = maxFreq / QUANT;
+      if (buckets.length < maxLevel + 2) {
+        buckets = new int[maxLevel + 2];
+      }
+      Arrays.fill(buckets, 0, maxLevel + 2, 0);
+      for (int i = 0; i < selected; i++) {
+        int id = (int) order[i];
+        buckets[maxLevel - counts[id] / QUANT + 1]++;
+      }
+      for (int l = 1; l <= maxLevel + 1; l++) {
+        buckets[l] += buckets[l - 1];
+      }
+      for (int i = 0; i < selected; i++) {
+        int id = (int) order[i];
+        sorted[buckets[maxLevel - counts[id] / QUANT]++] = id;
+      }
+
+      for (int i = 0; i < selected; i++) {
+        int id = sorted[i];
+        update(id, (counts[id] / QUANT) * QUANT, i > 0);
+      }
+      return digest.digest();
+    }
+
+    private void reset() {
+      charsLength = 0;
+      if (size > 0) {
+        Arrays.fill(table, 0);
+      }
+      size = 0;
+      tokenLength = 0;
+      tokenHash = 0;
+      digest.reset();
+    }
+
+    /** same as {@link HashMap}.hash() */
+    private static int spread(int h) {
+      return h ^ (h >>> 16);
+    }
+
+    /** @return the count of the current token */
+    private int addToken() {
+      int mask = table.length - 1;
+      int slot = spread(tokenHash) & mask;
+      while (table[slot] != 0) {
+        int id = table[slot] - 1;
+        if (hashes[id] == tokenHash && lengths[id] == tokenLength
+            && equalsToken(offsets[id])) {
+          return ++counts[id];
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (size == offsets.length) {
+        int length = size * 2;
+        offsets = Arrays.copyOf(offsets, length);
+        lengths = Arrays.copyOf(lengths, length);
+        counts = Arrays.copyOf(counts, length);
+        hashes = Arrays.copyOf(hashes, length);
+        order = new long[length];
+        sorted = new int[length];
+      }
+      if (charsLength + tokenLength > chars.length) {
+        chars = Arrays.copyOf(chars,
+            Math.max(chars.length * 2, charsLength + tokenLength));
+      }
+      System.arraycopy(token, 0, chars, charsLength, tokenLength);
+      int id = size++;
+      offsets[id] = charsLength;
+      lengths[id] = tokenLength;
+      counts[id] = 1;
+      hashes[id] = tokenHash;
+      charsLength += tokenLength;
+      table[slot] = id + 1;
+      if (size * 2 > table.length) {
+        rehash();
+      }
+      return 1;
+    }
+
+    private boolean equalsToken(int offset) {
+      for (int i = 0; i < tokenLength; i++) {
+        if (chars[offset + i] != token[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void rehash() {
+      table = new int[table.length * 2];
+      int mask = table.length - 1;
+      for (int id = 0; id < size; id++) {
+        int slot = spread(hashes[id]) & mask;
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+      }
+    }
+
+    /**
+     * Replay the growth of a HashMap (default capacity and load factor)
+     * holding the tokens.
+     * 
+     * @return the final capacity, or -1 if a bucket would have been
+     *         converted into a tree
+     */
+    private int hashMapCapacity() {
+      int capacity = 16;
+      while (true) {
+        int threshold = capacity / 4 * 3;
+        // the token exceeding the threshold is added before the resize
+        int present = size > threshold ? threshold + 1 : size;
+        if (present >= TREEIFY_SIZE) {
+          if (buckets.length < capacity) {
+            buckets = new int[capacity];
+          }
+          Arrays.fill(buckets, 0, capacity, 0);
+          for (int id = 0; id < present; id++) {
+            if (++buckets[spread(hashes[id]) & (capacity - 1)] >= TREEIFY_SIZE) {
+              return -1;
+            }
+          }
+        }
+        if (size <= threshold) {
+          return capacity;
+        }
+        capacity *= 2;
+      }
+    }
+
+    /**
+     * Feed "token count" to the digest, encoded as by
+     * {@link MD5Hash#digest(String)}.
+     */
+    private void update(int id, int count, boolean newLine) {
+      int length = lengths[id];
+      // at most 3 bytes per char, separators and the count
+      if (line.length < length * 3 + 13) {
+        line = new byte[length * 3 + 13];
+      }
+      int pos = 0;
+      if (newLine) {
+        line[pos++] = '\n';
+      }
+      int offset = offsets[id];
+      for (int i = 0; i < length; i++) {
+        char c = chars[offset + i];
+        if (c <= 0x7F) {
+          line[pos++] = (byte) c;
+        } else if (c <= 0x7FF) {
+          line[pos++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+          line[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+          line[pos++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+          line[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          line[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+      line[pos++] = ' ';
+      int start = pos;
+      do {
+        line[pos++] = (byte) ('0' + count % 10);
+        count /= 10;
+      } while (count > 0);
+      for (int i = start, j = pos - 1; i < j; i++, j--) {
+        byte b = line[i];
+        line[i] = line[j];
+        line[j] = b;
+      }
+      digest.update(line, 0, pos);
+    }
+  }
+
+  /**
+   * Calculate the signature with the original algorithm, based on a
+   * {@link HashMap} of tokens.
+   */
+  static byte[] calculateProfile(String text, int MIN_TOKEN_LEN,
+      float QUANT_RATE) {
+    HashMap<String, Token> tokens = new HashMap<>();
     StringBuffer curToken = new StringBuffer();
     int maxFreq = 0;
     for (int i = 0; i < text.length(); i++) {
@@ -51,6 +51,8 @@ public class FetchItemQueues {
   public static final String QUEUE_MODE_DOMAIN = "byDomain";
   public static final String QUEUE_MODE_IP = "byIP";
 
+  public static final String QUEUES_CLASS = "fetcher.queues.class";
+
   String queueMode;
 
   public FetchItemQueues(Configuration conf) {
@@ -75,6 +77,24 @@ public class FetchItemQueues {
         "fetcher.max.exceptions.per.queue", -1);
   }
 
+  /**
+   * Create the queues implementation configured by
+   * <code>fetcher.queues.class</code>, by default this class.
+   */
+  public static FetchItemQueues create(Configuration conf) {
+    Class<? extends FetchItemQueues> clazz = conf.getClass(QUEUES_CLASS,
+        FetchItemQueues.class, FetchItemQueues.class);
+    if (clazz == FetchItemQueues.class) {
+      return new FetchItemQueues(conf);
+    }
+    LOG.info("Using fetch item queues implementation: " + clazz.getName());
+    try {
+      return clazz.getConstructor(Configuration.class).newInstance(conf);
+    } catch (Exception e) {
+      throw new RuntimeException("Couldn't create " + clazz.getName(), e);
+    }
+  }
+
   public int getTotalSize() {
     return totalSize.get();
   }
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.nutch.crawl.NutchWritable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Alternative to a pool of {@link FetcherThread}s: a single thread takes the
+ * items which are ready to be fetched from the {@link FetchItemQueues} and
+ * runs every fetch as a task on an executor. Politeness is entirely enforced
+ * by the queues, no thread is waiting for a host to become ready, and the
+ * number of fetches in flight is bounded by <code>fetcher.tasks.max</code>.
+ *
+ * <p>
+ * If <code>fetcher.tasks.virtual</code> is true and the JVM supports virtual
+ * threads, every fetch runs in its own virtual thread, so that blocking
+ * protocol implementations do not pin one platform thread per slow host.
+ * Otherwise platform threads are used and reused.
+ *
+ * <p>
+ * The fetches are done by {@link FetcherThread#fetch(FetchItem)} on pooled
+ * FetcherThread instances which are never started and are only used to hold
+ * the plugins and the state of one fetch, so the output is exactly the same
+ * as in thread mode.
+ */
+public class FetchTaskDispatcher extends Thread {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String TASKS_ENABLED = "fetcher.tasks";
+  public static final String TASKS_MAX = "fetcher.tasks.max";
+  public static final String TASKS_VIRTUAL = "fetcher.tasks.virtual";
+
+  /** max. time to wait for a queue to become ready before looking again */
+  private static final long MAX_WAIT = 100;
+
+  private Configuration conf;
+  private AtomicInteger activeThreads;
+  private FetchItemQueues fetchQueues;
+  private QueueFeeder feeder;
+  private AtomicInteger spinWaiting;
+  private AtomicLong lastRequestStart;
+  private Reporter reporter;
+  private AtomicInteger errors;
+  private String segmentName;
+  private boolean parsing;
+  private OutputCollector<Text, NutchWritable> output;
+  private boolean storingContent;
+  private AtomicInteger pages;
+  private AtomicLong bytes;
+
+  private final int maxTasks;
+  private final Semaphore taskPermits;
+  private final ExecutorService executor;
+  private final ConcurrentLinkedQueue<FetcherThread> idleWorkers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger workerCount = new AtomicInteger(0);
+  private final Object taskFinished = new Object();
+
+  private ParsePipeline parsePipeline;
+
+  private volatile boolean halted = false;
+
+  public FetchTaskDispatcher(Configuration conf, AtomicInteger activeThreads,
+      FetchItemQueues fetchQueues, QueueFeeder feeder,
+      AtomicInteger spinWaiting, AtomicLong lastRequestStart,
+      Reporter reporter, AtomicInteger errors, String segmentName,
+      boolean parsing, OutputCollector<Text, NutchWritable> output,
+      boolean storingContent, AtomicInteger pages, AtomicLong bytes) {
+    this.setDaemon(true);
+    this.setName("FetchTaskDispatcher");
+    this.conf = conf;
+    this.activeThreads = activeThreads;
+    this.fetchQueues = fetchQueues;
+    this.feeder = feeder;
+    this.spinWaiting = spinWaiting;
+    this.lastRequestStart = lastRequestStart;
+    this.reporter = reporter;
+    this.errors = errors;
+    this.segmentName = segmentName;
+    this.parsing = parsing;
+    this.output = output;
+    this.storingContent = storingContent;
+    this.pages = pages;
+    this.bytes = bytes;
+
+    this.maxTasks = getMaxTasks(conf);
+    this.taskPermits = new Semaphore(maxTasks);
+    this.executor = createExecutor(conf.getBoolean(TASKS_VIRTUAL, true));
+    LOG.info("Fetcher: max. fetch tasks: {}", maxTasks);
+  }
+
+  /**
+   * Max. number of fetch tasks in flight: <code>fetcher.tasks.max</code> or,
+   * if not positive, <code>fetcher.threads.fetch</code>.
+   */
+  public static int getMaxTasks(Configuration conf) {
+    int maxTasks = conf.getInt(TASKS_MAX, -1);
+    if (maxTasks < 1) {
+      maxTasks = conf.getInt("fetcher.threads.fetch", 10);
+    }
+    return maxTasks;
+  }
+
+  /**
+   * Create an executor which runs each task in a new virtual thread if
+   * requested and supported by the JVM (Java 21 and later), otherwise an
+   * executor with a pool of daemon threads.
+   */
+  private static ExecutorService createExecutor(boolean virtual) {
+    if (virtual) {
+      try {
+        Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        ExecutorService executor = (ExecutorService) m.invoke(null);
+        LOG.info("Fetcher: running fetch tasks in virtual threads");
+        return executor;
+      } catch (NoSuchMethodException e) {
+        LOG.info("Fetcher: virtual threads not supported by JVM {}, using platform threads",
+            System.getProperty("java.version"));
+      } catch (Exception e) {
+        LOG.warn("Fetcher: failed to create virtual thread executor, using platform threads", e);
+      }
+    }
+    return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("FetcherTask-%d").setDaemon(true).build());
+  }
+
+  /** Number of fetch tasks in flight. */
+  public int getRunningTasks() {
+    return maxTasks - taskPermits.availablePermits();
+  }
+
+  /** Let the fetch tasks hand over fetched pages to parse threads. */
+  public void setParsePipeline(ParsePipeline parsePipeline) {
+    this.parsePipeline = parsePipeline;
+  }
+
+  /**
+   * Stop taking items from the queues. The fetches in flight are finished
+   * before the dispatcher exits.
+   */
+  public void setHalted(boolean halted) {
+    this.halted = halted;
+    synchronized (taskFinished) {
+      taskFinished.notify();
+    }
+  }
+
+  public boolean isHalted() {
+    return halted;
+  }
+
+  public void run() {
+    activeThreads.incrementAndGet();
+    try {
+      while (!halted) {
+        // bound the number of fetches in flight
+        taskPermits.acquire();
+        if (halted) {
+          taskPermits.release();
+          break;
+        }
+        FetchItem fit = fetchQueues.getFetchItem();
+        if (fit == null) {
+          taskPermits.release();
+          if (feeder.isAlive() || fetchQueues.getTotalSize() > 0
+              || getRunningTasks() > 0
+              || (parsePipeline != null && parsePipeline.getPending() > 0)) {
+            // no queue is ready: wait for a fetch to finish (which may
+            // release its queue or add an item to be retried) or for the
+            // next queue to become ready
+            spinWaiting.incrementAndGet();
+            synchronized (taskFinished) {
+              taskFinished.wait(MAX_WAIT);
+            }
+            spinWaiting.decrementAndGet();
+            continue;
+          } else {
+            LOG.info("Thread " + getName() + " has no more work available");
+            break;
+          }
+        }
+        submit(fit);
+      }
+      // if halted: wait for the fetches in flight
+      taskPermits.acquire(maxTasks);
+      taskPermits.release(maxTasks);
+    } catch (InterruptedException e) {
+      LOG.warn("Fetcher: dispatcher interrupted, {} fetch tasks still running",
+          getRunningTasks());
+    } catch (Throwable e) {
+      LOG.error("fetcher caught:" + e.toString());
+    } finally {
+      executor.shutdown();
+      activeThreads.decrementAndGet();
+      LOG.info("-finishing thread " + getName() + ", activeThreads="
+          + activeThreads);
+    }
+  }
+
+  private void submit(final FetchItem fit) {
+    final FetcherThread worker = getWorker();
+    activeThreads.incrementAndGet();
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            worker.fetch(fit);
+          } catch (Throwable t) {
+            // the item's queue is already released by FetcherThread.fetch()
+            LOG.error("fetcher caught:" + t.toString());
+          } finally {
+            release(worker);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      fetchQueues.finishFetchItem(fit);
+      release(worker);
+      throw e;
+    }
+  }
+
+  private FetcherThread getWorker() {
+    FetcherThread worker = idleWorkers.poll();
+    if (worker == null) {
+      worker = new FetcherThread(conf, activeThreads, fetchQueues, feeder,
+          spinWaiting, lastRequestStart, reporter, errors, segmentName,
+          parsing, output, storingContent, pages, bytes);
+      worker.setName("FetcherTask-" + workerCount.incrementAndGet());
+      worker.setParsePipeline(parsePipeline);
+    }
+    return worker;
+  }
+
+  private void release(FetcherThread worker) {
+    idleWorkers.add(worker);
+    activeThreads.decrementAndGet();
+    taskPermits.release();
+    synchronized (taskFinished) {
+      taskFinished.notify();
+    }
+  }
+}
@@ -37,6 +37,8 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.crawl.NutchWritable;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.net.URLResultCache;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.protocol.*;
 import org.apache.nutch.util.*;
 
@@ -76,6 +78,16 @@ import org.apache.nutch.util.*;
  * available, or a timeout is reached (at which point the Fetcher will abort,
  * assuming the task is hung).
  * 
+ * <p>
+ * If <code>fetcher.tasks</code> is true, FetcherThread-s are replaced by a
+ * {@link FetchTaskDispatcher} which takes the items as soon as their queue is
+ * ready and runs each fetch as a task, optionally in a virtual thread.
+ * 
+ * <p>
+ * If <code>fetcher.parse</code> and <code>fetcher.parse.pipeline</code> are
+ * true, fetched pages are parsed by the {@link ParsePipeline}'s parse threads
+ * instead of the fetching threads.
+ * 
  * @author Andrzej Bialecki
  */
 public class Fetcher extends NutchTool implements Tool,
@@ -124,6 +136,8 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
   private boolean parsing;
   FetchItemQueues fetchQueues;
   QueueFeeder feeder;
+  FetchTaskDispatcher dispatcher;
+  ParsePipeline parsePipeline;
 
   LinkedList<FetcherThread> fetcherThreads = new LinkedList<>();
 
@@ -147,6 +161,11 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
     .append(" waiting), ");
     status.append(fetchQueues.getQueueCount()).append(" queues, ");
     status.append(fetchQueues.getTotalSize()).append(" URLs queued, ");
+    if (parsePipeline != null) {
+      status.append(parsePipeline.getPending()).append(" pages parsing (")
+      .append(parsePipeline.getBusyThreads()).append(" of ")
+      .append(parsePipeline.getThreadCount()).append(" parse threads busy), ");
+    }
     status.append(pages).append(" pages, ").append(errors).append(" errors, ");
     status.append(String.format("%.2f", avgPagesSec)).append(" pages/s (");
     status.append(pagesLastSec).append(" last sec), ");
@@ -154,6 +173,8 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
     .append((bytesLastSec / 128)).append(" last sec)");
 
     reporter.setStatus(status.toString());
+    URLResultCache.reportCounters(reporter);
+    PluginMetrics.reportCounters(reporter);
   }
 
   public void configure(JobConf job) {
@@ -185,7 +206,7 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
 
     this.output = output;
     this.reporter = reporter;
-    this.fetchQueues = new FetchItemQueues(getConf());
+    this.fetchQueues = FetchItemQueues.create(getConf());
 
     int threadCount = getConf().getInt("fetcher.threads.fetch", 10);
     if (LOG.isInfoEnabled()) {
@@ -200,7 +221,12 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
     int queueDepthMuliplier = getConf().getInt(
         "fetcher.queue.depth.multiplier", 50);
 
-    feeder = new QueueFeeder(input, fetchQueues, threadCount
+    // in task mode the queues must hold enough items for all fetch tasks
+    boolean tasks = getConf().getBoolean(FetchTaskDispatcher.TASKS_ENABLED,
+        false);
+    int fetchers = tasks ? FetchTaskDispatcher.getMaxTasks(getConf())
+        : threadCount;
+    feeder = new QueueFeeder(input, fetchQueues, fetchers
         * queueDepthMuliplier);
     // feeder.setPriority((Thread.MAX_PRIORITY + Thread.NORM_PRIORITY) / 2);
 
@@ -211,12 +237,42 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
       feeder.setTimeLimit(timelimit);
     feeder.start();
 
-    for (int i = 0; i < threadCount; i++) { // spawn threads
-      FetcherThread t = new FetcherThread(getConf(), getActiveThreads(), fetchQueues, 
-          feeder, spinWaiting, lastRequestStart, reporter, errors, segmentName,
-          parsing, output, storingContent, pages, bytes);
-      fetcherThreads.add(t);
-      t.start();
+    if (parsing && getConf().getBoolean(ParsePipeline.PIPELINE_ENABLED, false)) {
+      // parse in separate threads, fetching threads only fetch
+      int parseThreads = getConf().getInt(ParsePipeline.PARSE_THREADS, -1);
+      if (parseThreads < 1) {
+        parseThreads = ParsePipeline.getDefaultThreads();
+      }
+      int parseQueueSize = getConf().getInt(ParsePipeline.QUEUE_SIZE, -1);
+      if (parseQueueSize < 1) {
+        parseQueueSize = 4 * parseThreads;
+      }
+      List<FetcherThread> parseWorkers = new ArrayList<>(parseThreads);
+      for (int i = 0; i < parseThreads; i++) {
+        parseWorkers.add(new FetcherThread(getConf(), getActiveThreads(),
+            fetchQueues, feeder, spinWaiting, lastRequestStart, reporter,
+            errors, segmentName, parsing, output, storingContent, pages, bytes));
+      }
+      parsePipeline = new ParsePipeline(parseWorkers, parseQueueSize, reporter);
+      parsePipeline.start();
+    }
+
+    if (tasks) {
+      // run fetches as tasks instead of spawning threads
+      dispatcher = new FetchTaskDispatcher(getConf(), getActiveThreads(),
+          fetchQueues, feeder, spinWaiting, lastRequestStart, reporter, errors,
+          segmentName, parsing, output, storingContent, pages, bytes);
+      dispatcher.setParsePipeline(parsePipeline);
+      dispatcher.start();
+    } else {
+      for (int i = 0; i < threadCount; i++) { // spawn threads
+        FetcherThread t = new FetcherThread(getConf(), getActiveThreads(), fetchQueues, 
+            feeder, spinWaiting, lastRequestStart, reporter, errors, segmentName,
+            parsing, output, storingContent, pages, bytes);
+        t.setParsePipeline(parsePipeline);
+        fetcherThreads.add(t);
+        t.start();
+      }
     }
 
     // select a timeout that avoids a task timeout
@@ -307,6 +363,9 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
             // Empty the queues cleanly and get number of items that were
             // dropped
             int hitByThrougputThreshold = fetchQueues.emptyQueues();
+            if (dispatcher != null) {
+              dispatcher.setHalted(true);
+            }
 
             if (hitByThrougputThreshold != 0)
               reporter.incrCounter("FetcherStatus", "hitByThrougputThreshold",
@@ -316,7 +375,8 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
       }
 
       // adjust the number of threads if a target bandwidth has been set
-      if (targetBandwidth > 0) {
+      // (not in task mode, where the number of fetch tasks is bounded only)
+      if (targetBandwidth > 0 && dispatcher == null) {
         if (bandwidthTargetCheckCounter < bandwidthTargetCheckEveryNSecs)
           bandwidthTargetCheckCounter++;
         else if (bandwidthTargetCheckCounter == bandwidthTargetCheckEveryNSecs) {
@@ -355,6 +415,7 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
                 FetcherThread thread = new FetcherThread(getConf(), getActiveThreads(), fetchQueues, 
                     feeder, spinWaiting, lastRequestStart, reporter, errors, segmentName, parsing,
                     output, storingContent, pages, bytes);
+                thread.setParsePipeline(parsePipeline);
                 fetcherThreads.add(thread);
                 thread.start();
               }
@@ -380,6 +441,10 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
       }
 
       // check timelimit
+      if (dispatcher != null && timelimit != -1
+          && System.currentTimeMillis() >= timelimit) {
+        dispatcher.setHalted(true);
+      }
       if (!feeder.isAlive()) {
         int hitByTimeLimit = fetchQueues.checkTimelimit();
         if (hitByTimeLimit != 0)
@@ -391,6 +456,9 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
       if ((System.currentTimeMillis() - lastRequestStart.get()) > timeout) {
         if (LOG.isWarnEnabled()) {
           LOG.warn("Aborting with {} hung threads.", activeThreads);
+          if (dispatcher != null) {
+            LOG.warn("{} fetch tasks hung", dispatcher.getRunningTasks());
+          }
           for (int i = 0; i < fetcherThreads.size(); i++) {
             FetcherThread thread = fetcherThreads.get(i);
             if (thread.isAlive()) {
@@ -407,12 +475,27 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
             }
           }
         }
+        if (dispatcher != null) {
+          dispatcher.setHalted(true);
+        }
+        if (parsePipeline != null) {
+          parsePipeline.halt();
+        }
+        RobotRulesParser.saveCacheSnapshot(getConf());
         return;
       }
 
     } while (activeThreads.get() > 0);
     LOG.info("-activeThreads={}", activeThreads);
 
+    if (parsePipeline != null) {
+      // parse the pages still waiting
+      parsePipeline.finish(timeout);
+    }
+
+    // keep robots.txt rules for the next fetch jobs
+    RobotRulesParser.saveCacheSnapshot(getConf());
+
   }
 
   public void fetch(Path segment, int threads) throws IOException {
@@ -485,6 +568,9 @@ MapRunnable<Text, CrawlDatum, Text, NutchWritable> {
 
     JobClient.runJob(job);
 
+    // merge the robots.txt rules saved by the tasks
+    RobotRulesParser.mergeCacheSnapshots(getConf());
+
     long end = System.currentTimeMillis();
     LOG.info("Fetcher: finished at {}, elapsed: {}", sdf.format(end),
         TimingUtil.elapsedTime(start, end));
@@ -146,6 +146,9 @@ public class FetcherThread extends Thread {
   private FetcherThreadPublisher publisher;
   private boolean activatePublisher;
 
+  // if not null fetched pages are parsed by the pipeline's parse threads
+  private ParsePipeline parsePipeline;
+
   public FetcherThread(Configuration conf, AtomicInteger activeThreads, FetchItemQueues fetchQueues, 
       QueueFeeder feeder, AtomicInteger spinWaiting, AtomicLong lastRequestStart, Reporter reporter,
       AtomicInteger errors, String segmentName, boolean parsing, OutputCollector<Text, NutchWritable> output,
@@ -185,6 +188,10 @@ public class FetcherThread extends Thread {
             URLNormalizers.SCOPE_OUTLINK);
     }
 
+    // checking for the server to be running and fetcher.parse to be true
+    if (parsing && NutchServer.getInstance().isRunning())
+      reportToNutchServer = true;
+
     if((activatePublisher=conf.getBoolean("fetcher.publisher", false)))
       this.publisher = new FetcherThreadPublisher(conf);
     
@@ -224,23 +231,12 @@ public class FetcherThread extends Thread {
     }
   }
 
-  @SuppressWarnings("fallthrough")
   public void run() {
     activeThreads.incrementAndGet(); // count threads
 
     FetchItem fit = null;
     try {
-      // checking for the server to be running and fetcher.parse to be true
-      if (parsing && NutchServer.getInstance().isRunning())
-        reportToNutchServer = true;
-      
       while (true) {
-        // creating FetchNode for storing in FetchNodeDb
-        if (reportToNutchServer)
-          this.fetchNode = new FetchNode();
-        else
-          this.fetchNode = null;
-
         // check whether must be stopped
         if (isHalted()) {
           LOG.debug(getName() + " set to halted");
@@ -250,7 +246,8 @@ public class FetcherThread extends Thread {
 
         fit = ((FetchItemQueues) fetchQueues).getFetchItem();
         if (fit == null) {
-          if (feeder.isAlive() || ((FetchItemQueues) fetchQueues).getTotalSize() > 0) {
+          if (feeder.isAlive() || ((FetchItemQueues) fetchQueues).getTotalSize() > 0
+              || (parsePipeline != null && parsePipeline.getPending() > 0)) {
             LOG.debug(getName() + " spin-waiting ...");
             // spin-wait.
             ((AtomicInteger) spinWaiting).incrementAndGet();
@@ -266,203 +263,7 @@ public class FetcherThread extends Thread {
             return;
           }
         }
-        lastRequestStart.set(System.currentTimeMillis());
-        Text reprUrlWritable = (Text) fit.datum.getMetaData().get(
-            Nutch.WRITABLE_REPR_URL_KEY);
-        if (reprUrlWritable == null) {
-          setReprUrl(fit.url.toString());
-        } else {
-          setReprUrl(reprUrlWritable.toString());
-        }
-        try {
-          // fetch the page
-          redirecting = false;
-          redirectCount = 0;
-          
-          //Publisher event
-          if(activatePublisher) {
-            FetcherThreadEvent startEvent = new FetcherThreadEvent(PublishEventType.START, fit.getUrl().toString());
-            publisher.publish(startEvent, conf);
-          }
-          
-          do {
-            if (LOG.isInfoEnabled()) {
-              LOG.info("fetching " + fit.url + " (queue crawl delay="
-                  + ((FetchItemQueues) fetchQueues).getFetchItemQueue(fit.queueID).crawlDelay
-                  + "ms)");
-            }
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("redirectCount=" + redirectCount);
-            }
-            redirecting = false;
-            Protocol protocol = this.protocolFactory.getProtocol(fit.url
-                .toString());
-            BaseRobotRules rules = protocol.getRobotRules(fit.url, fit.datum, robotsTxtContent);
-            if (robotsTxtContent != null) {
-              outputRobotsTxt(robotsTxtContent);
-              robotsTxtContent.clear();
-            }
-            if (!rules.isAllowed(fit.u.toString())) {
-              // unblock
-              ((FetchItemQueues) fetchQueues).finishFetchItem(fit, true);
-              if (LOG.isDebugEnabled()) {
-                LOG.debug("Denied by robots.txt: " + fit.url);
-              }
-              output(fit.url, fit.datum, null,
-                  ProtocolStatus.STATUS_ROBOTS_DENIED,
-                  CrawlDatum.STATUS_FETCH_GONE);
-              reporter.incrCounter("FetcherStatus", "robots_denied", 1);
-              continue;
-            }
-            if (rules.getCrawlDelay() > 0) {
-              if (rules.getCrawlDelay() > maxCrawlDelay && maxCrawlDelay >= 0) {
-                // unblock
-                ((FetchItemQueues) fetchQueues).finishFetchItem(fit, true);
-                LOG.debug("Crawl-Delay for " + fit.url + " too long ("
-                    + rules.getCrawlDelay() + "), skipping");
-                output(fit.url, fit.datum, null,
-                    ProtocolStatus.STATUS_ROBOTS_DENIED,
-                    CrawlDatum.STATUS_FETCH_GONE);
-                reporter.incrCounter("FetcherStatus",
-                    "robots_denied_maxcrawldelay", 1);
-                continue;
-              } else {
-                FetchItemQueue fiq = ((FetchItemQueues) fetchQueues)
-                    .getFetchItemQueue(fit.queueID);
-                fiq.crawlDelay = rules.getCrawlDelay();
-                if (LOG.isDebugEnabled()) {
-                  LOG.debug("Crawl delay for queue: " + fit.queueID
-                      + " is set to " + fiq.crawlDelay
-                      + " as per robots.txt. url: " + fit.url);
-                }
-              }
-            }
-            ProtocolOutput output = protocol.getProtocolOutput(fit.url,
-                fit.datum);
-            ProtocolStatus status = output.getStatus();
-            Content content = output.getContent();
-            ParseStatus pstatus = null;
-            // unblock queue
-            ((FetchItemQueues) fetchQueues).finishFetchItem(fit);
-
-            String urlString = fit.url.toString();
-            
-            // used for FetchNode
-            if (fetchNode != null) {
-              fetchNode.setStatus(status.getCode());
-              fetchNode.setFetchTime(System.currentTimeMillis());
-              fetchNode.setUrl(fit.url);
-            }
-            
-            //Publish fetch finish event
-            if(activatePublisher) {
-              FetcherThreadEvent endEvent = new FetcherThreadEvent(PublishEventType.END, fit.getUrl().toString());
-              endEvent.addEventData("status", status.getName());
-              publisher.publish(endEvent, conf);
-            }
-            reporter.incrCounter("FetcherStatus", status.getName(), 1);
-
-            switch (status.getCode()) {
-
-            case ProtocolStatus.WOULDBLOCK:
-              // retry ?
-              ((FetchItemQueues) fetchQueues).addFetchItem(fit);
-              break;
-
-            case ProtocolStatus.SUCCESS: // got a page
-              pstatus = output(fit.url, fit.datum, content, status,
-                  CrawlDatum.STATUS_FETCH_SUCCESS, fit.outlinkDepth);
-              updateStatus(content.getContent().length);
-              if (pstatus != null && pstatus.isSuccess()
-                  && pstatus.getMinorCode() == ParseStatus.SUCCESS_REDIRECT) {
-                String newUrl = pstatus.getMessage();
-                int refreshTime = Integer.valueOf(pstatus.getArgs()[1]);
-                Text redirUrl = handleRedirect(fit.url, fit.datum, urlString,
-                    newUrl, refreshTime < Fetcher.PERM_REFRESH_TIME,
-                    Fetcher.CONTENT_REDIR);
-                if (redirUrl != null) {
-                  fit = queueRedirect(redirUrl, fit);
-                }
-              }
-              break;
-
-            case ProtocolStatus.MOVED: // redirect
-            case ProtocolStatus.TEMP_MOVED:
-              int code;
-              boolean temp;
-              if (status.getCode() == ProtocolStatus.MOVED) {
-                code = CrawlDatum.STATUS_FETCH_REDIR_PERM;
-                temp = false;
-              } else {
-                code = CrawlDatum.STATUS_FETCH_REDIR_TEMP;
-                temp = true;
-              }
-              output(fit.url, fit.datum, content, status, code);
-              String newUrl = status.getMessage();
-              Text redirUrl = handleRedirect(fit.url, fit.datum, urlString,
-                  newUrl, temp, Fetcher.PROTOCOL_REDIR);
-              if (redirUrl != null) {
-                fit = queueRedirect(redirUrl, fit);
-              } else {
-                // stop redirecting
-                redirecting = false;
-              }
-              break;
-
-            case ProtocolStatus.EXCEPTION:
-              logError(fit.url, status.getMessage());
-              int killedURLs = ((FetchItemQueues) fetchQueues).checkExceptionThreshold(fit
-                  .getQueueID());
-              if (killedURLs != 0)
-                reporter.incrCounter("FetcherStatus",
-                    "AboveExceptionThresholdInQueue", killedURLs);
-              /* FALLTHROUGH */
-            case ProtocolStatus.RETRY: // retry
-            case ProtocolStatus.BLOCKED:
-              output(fit.url, fit.datum, null, status,
-                  CrawlDatum.STATUS_FETCH_RETRY);
-              break;
-
-            case ProtocolStatus.GONE: // gone
-            case ProtocolStatus.NOTFOUND:
-            case ProtocolStatus.ACCESS_DENIED:
-            case ProtocolStatus.ROBOTS_DENIED:
-              output(fit.url, fit.datum, null, status,
-                  CrawlDatum.STATUS_FETCH_GONE);
-              break;
-
-            case ProtocolStatus.NOTMODIFIED:
-              output(fit.url, fit.datum, null, status,
-                  CrawlDatum.STATUS_FETCH_NOTMODIFIED);
-              break;
-
-            default:
-              if (LOG.isWarnEnabled()) {
-                LOG.warn("Unknown ProtocolStatus: " + status.getCode());
-              }
-              output(fit.url, fit.datum, null, status,
-                  CrawlDatum.STATUS_FETCH_RETRY);
-            }
-
-            if (redirecting && redirectCount > maxRedirect) {
-              ((FetchItemQueues) fetchQueues).finishFetchItem(fit);
-              if (LOG.isInfoEnabled()) {
-                LOG.info(" - redirect count exceeded " + fit.url);
-              }
-              output(fit.url, fit.datum, null,
-                  ProtocolStatus.STATUS_REDIR_EXCEEDED,
-                  CrawlDatum.STATUS_FETCH_GONE);
-            }
-
-          } while (redirecting && (redirectCount <= maxRedirect));
-
-        } catch (Throwable t) { // unexpected exception
-          // unblock
-          ((FetchItemQueues) fetchQueues).finishFetchItem(fit);
-          logError(fit.url, StringUtils.stringifyException(t));
-          output(fit.url, fit.datum, null, ProtocolStatus.STATUS_FAILED,
-              CrawlDatum.STATUS_FETCH_RETRY);
-        }
+        fetch(fit);
       }
 
     } catch (Throwable e) {
@@ -478,6 +279,218 @@ public class FetcherThread extends Thread {
     }
   }
 
+  /**
+   * Fetch a single item obtained from the queues and follow its redirects
+   * (if configured), then release the item's queue. Used by {@link #run()}
+   * and, when running fetches as tasks, by {@link FetchTaskDispatcher}.
+   */
+  @SuppressWarnings("fallthrough")
+  void fetch(FetchItem fit) {
+    // creating FetchNode for storing in FetchNodeDb
+    if (reportToNutchServer)
+      this.fetchNode = new FetchNode();
+    else
+      this.fetchNode = null;
+
+    lastRequestStart.set(System.currentTimeMillis());
+    Text reprUrlWritable = (Text) fit.datum
+        .getMetaData(Nutch.WRITABLE_REPR_URL_KEY);
+    if (reprUrlWritable == null) {
+      setReprUrl(fit.url.toString());
+    } else {
+      setReprUrl(reprUrlWritable.toString());
+    }
+    try {
+      // fetch the page
+      redirecting = false;
+      redirectCount = 0;
+      
+      //Publisher event
+      if(activatePublisher) {
+        FetcherThreadEvent startEvent = new FetcherThreadEvent(PublishEventType.START, fit.getUrl().toString());
+        publisher.publish(startEvent, conf);
+      }
+      
+      do {
+        if (LOG.isInfoEnabled()) {
+          LOG.info("fetching " + fit.url + " (queue crawl delay="
+              + ((FetchItemQueues) fetchQueues).getFetchItemQueue(fit.queueID).crawlDelay
+              + "ms)");
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("redirectCount=" + redirectCount);
+        }
+        redirecting = false;
+        Protocol protocol = this.protocolFactory.getProtocol(fit.url
+            .toString());
+        BaseRobotRules rules = protocol.getRobotRules(fit.url, fit.datum, robotsTxtContent);
+        if (robotsTxtContent != null) {
+          outputRobotsTxt(robotsTxtContent);
+          robotsTxtContent.clear();
+        }
+        if (!rules.isAllowed(fit.u.toString())) {
+          // unblock
+          ((FetchItemQueues) fetchQueues).finishFetchItem(fit, true);
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Denied by robots.txt: " + fit.url);
+          }
+          output(fit.url, fit.datum, null,
+              ProtocolStatus.STATUS_ROBOTS_DENIED,
+              CrawlDatum.STATUS_FETCH_GONE);
+          reporter.incrCounter("FetcherStatus", "robots_denied", 1);
+          continue;
+        }
+        if (rules.getCrawlDelay() > 0) {
+          if (rules.getCrawlDelay() > maxCrawlDelay && maxCrawlDelay >= 0) {
+            // unblock
+            ((FetchItemQueues) fetchQueues).finishFetchItem(fit, true);
+            LOG.debug("Crawl-Delay for " + fit.url + " too long ("
+                + rules.getCrawlDelay() + "), skipping");
+            output(fit.url, fit.datum, null,
+                ProtocolStatus.STATUS_ROBOTS_DENIED,
+                CrawlDatum.STATUS_FETCH_GONE);
+            reporter.incrCounter("FetcherStatus",
+                "robots_denied_maxcrawldelay", 1);
+            continue;
+          } else {
+            FetchItemQueue fiq = ((FetchItemQueues) fetchQueues)
+                .getFetchItemQueue(fit.queueID);
+            fiq.crawlDelay = rules.getCrawlDelay();
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Crawl delay for queue: " + fit.queueID
+                  + " is set to " + fiq.crawlDelay
+                  + " as per robots.txt. url: " + fit.url);
+            }
+          }
+        }
+        ProtocolOutput output = protocol.getProtocolOutput(fit.url,
+            fit.datum);
+        ProtocolStatus status = output.getStatus();
+        Content content = output.getContent();
+        ParseStatus pstatus = null;
+        // unblock queue
+        ((FetchItemQueues) fetchQueues).finishFetchItem(fit);
+
+        String urlString = fit.url.toString();
+        
+        // used for FetchNode
+        if (fetchNode != null) {
+          fetchNode.setStatus(status.getCode());
+          fetchNode.setFetchTime(System.currentTimeMillis());
+          fetchNode.setUrl(fit.url);
+        }
+        
+        //Publish fetch finish event
+        if(activatePublisher) {
+          FetcherThreadEvent endEvent = new FetcherThreadEvent(PublishEventType.END, fit.getUrl().toString());
+          endEvent.addEventData("status", status.getName());
+          publisher.publish(endEvent, conf);
+        }
+        reporter.incrCounter("FetcherStatus", status.getName(), 1);
+
+        switch (status.getCode()) {
+
+        case ProtocolStatus.WOULDBLOCK:
+          // retry ?
+          ((FetchItemQueues) fetchQueues).addFetchItem(fit);
+          break;
+
+        case ProtocolStatus.SUCCESS: // got a page
+          pstatus = output(fit.url, fit.datum, content, status,
+              CrawlDatum.STATUS_FETCH_SUCCESS, fit.outlinkDepth);
+          updateStatus(content.getContent().length);
+          if (pstatus != null && pstatus.isSuccess()
+              && pstatus.getMinorCode() == ParseStatus.SUCCESS_REDIRECT) {
+            String newUrl = pstatus.getMessage();
+            int refreshTime = Integer.valueOf(pstatus.getArgs()[1]);
+            Text redirUrl = handleRedirect(fit.url, fit.datum, urlString,
+                newUrl, refreshTime < Fetcher.PERM_REFRESH_TIME,
+                Fetcher.CONTENT_REDIR);
+            if (redirUrl != null) {
+              fit = queueRedirect(redirUrl, fit);
+            }
+          }
+          break;
+
+        case ProtocolStatus.MOVED: // redirect
+        case ProtocolStatus.TEMP_MOVED:
+          int code;
+          boolean temp;
+          if (status.getCode() == ProtocolStatus.MOVED) {
+            code = CrawlDatum.STATUS_FETCH_REDIR_PERM;
+            temp = false;
+          } else {
+            code = CrawlDatum.STATUS_FETCH_REDIR_TEMP;
+            temp = true;
+          }
+          output(fit.url, fit.datum, content, status, code);
+          String newUrl = status.getMessage();
+          Text redirUrl = handleRedirect(fit.url, fit.datum, urlString,
+              newUrl, temp, Fetcher.PROTOCOL_REDIR);
+          if (redirUrl != null) {
+            fit = queueRedirect(redirUrl, fit);
+          } else {
+            // stop redirecting
+            redirecting = false;
+          }
+          break;
+
+        case ProtocolStatus.EXCEPTION:
+          logError(fit.url, status.getMessage());
+          int killedURLs = ((FetchItemQueues) fetchQueues).checkExceptionThreshold(fit
+              .getQueueID());
+          if (killedURLs != 0)
+            reporter.incrCounter("FetcherStatus",
+                "AboveExceptionThresholdInQueue", killedURLs);
+          /* FALLTHROUGH */
+        case ProtocolStatus.RETRY: // retry
+        case ProtocolStatus.BLOCKED:
+          output(fit.url, fit.datum, null, status,
+              CrawlDatum.STATUS_FETCH_RETRY);
+          break;
+
+        case ProtocolStatus.GONE: // gone
+        case ProtocolStatus.NOTFOUND:
+        case ProtocolStatus.ACCESS_DENIED:
+        case ProtocolStatus.ROBOTS_DENIED:
+          output(fit.url, fit.datum, null, status,
+              CrawlDatum.STATUS_FETCH_GONE);
+          break;
+
+        case ProtocolStatus.NOTMODIFIED:
+          output(fit.url, fit.datum, null, status,
+              CrawlDatum.STATUS_FETCH_NOTMODIFIED);
+          break;
+
+        default:
+          if (LOG.isWarnEnabled()) {
+            LOG.warn("Unknown ProtocolStatus: " + status.getCode());
+          }
+          output(fit.url, fit.datum, null, status,
+              CrawlDatum.STATUS_FETCH_RETRY);
+        }
+
+        if (redirecting && redirectCount > maxRedirect) {
+          ((FetchItemQueues) fetchQueues).finishFetchItem(fit);
+          if (LOG.isInfoEnabled()) {
+            LOG.info(" - redirect count exceeded " + fit.url);
+          }
+          output(fit.url, fit.datum, null,
+              ProtocolStatus.STATUS_REDIR_EXCEEDED,
+              CrawlDatum.STATUS_FETCH_GONE);
+        }
+
+      } while (redirecting && (redirectCount <= maxRedirect));
+
+    } catch (Throwable t) { // unexpected exception
+      // unblock
+      ((FetchItemQueues) fetchQueues).finishFetchItem(fit);
+      logError(fit.url, StringUtils.stringifyException(t));
+      output(fit.url, fit.datum, null, ProtocolStatus.STATUS_FAILED,
+          CrawlDatum.STATUS_FETCH_RETRY);
+    }
+  }
+
   private Text handleRedirect(Text url, CrawlDatum datum, String urlString,
       String newUrl, boolean temp, String redirType)
       throws MalformedURLException, URLFilterException {
@@ -522,24 +535,7 @@ public class FetcherThread extends Thread {
         }
         return url;
       } else {
-        CrawlDatum newDatum = new CrawlDatum(CrawlDatum.STATUS_LINKED,
-            datum.getFetchInterval(), datum.getScore());
-        // transfer existing metadata
-        newDatum.getMetaData().putAll(datum.getMetaData());
-        try {
-          scfilters.initialScore(url, newDatum);
-        } catch (ScoringFilterException e) {
-          e.printStackTrace();
-        }
-        if (reprUrl != null) {
-          newDatum.getMetaData().put(Nutch.WRITABLE_REPR_URL_KEY,
-              new Text(reprUrl));
-        }
-        output(url, newDatum, null, null, CrawlDatum.STATUS_LINKED);
-        if (LOG.isDebugEnabled()) {
-          LOG.debug(" - " + redirType + " redirect to " + url
-              + " (fetching later)");
-        }
+        outputRedirect(url, datum, redirType);
         return null;
       }
     } else {
@@ -551,6 +547,28 @@ public class FetcherThread extends Thread {
     }
   }
 
+  /** Output a redirect target to be fetched in the next cycle. */
+  private void outputRedirect(Text url, CrawlDatum datum, String redirType) {
+    CrawlDatum newDatum = new CrawlDatum(CrawlDatum.STATUS_LINKED,
+        datum.getFetchInterval(), datum.getScore());
+    // transfer existing metadata
+    newDatum.getMetaData().putAll(datum.getMetaData());
+    try {
+      scfilters.initialScore(url, newDatum);
+    } catch (ScoringFilterException e) {
+      e.printStackTrace();
+    }
+    if (reprUrl != null) {
+      newDatum.getMetaData().put(Nutch.WRITABLE_REPR_URL_KEY,
+          new Text(reprUrl));
+    }
+    output(url, newDatum, null, null, CrawlDatum.STATUS_LINKED);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(" - " + redirType + " redirect to " + url
+          + " (fetching later)");
+    }
+  }
+
   private FetchItem queueRedirect(Text redirUrl, FetchItem fit)
       throws ScoringFilterException {
     CrawlDatum newDatum = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED,
@@ -596,7 +614,6 @@ public class FetcherThread extends Thread {
     if (pstatus != null)
       datum.getMetaData().put(Nutch.WRITABLE_PROTO_STATUS_KEY, pstatus);
 
-    ParseResult parseResult = null;
     if (content != null) {
       Metadata metadata = content.getMetadata();
 
@@ -615,6 +632,63 @@ public class FetcherThread extends Thread {
           LOG.warn("Couldn't pass score, url " + key + " (" + e + ")");
         }
       }
+      if (parsePipeline != null && parsing
+          && status == CrawlDatum.STATUS_FETCH_SUCCESS) {
+        // parsed and written by one of the parse threads
+        try {
+          parsePipeline.put(new ParsePipeline.ParseTask(key, datum, content,
+              outlinkDepth, reprUrl, fetchNode));
+          return null;
+        } catch (InterruptedException e) {
+          LOG.warn("Interrupted while passing {} to the parse threads", key);
+          // parse it here
+        }
+      }
+    }
+
+    return parseAndOutput(key, datum, content, status, outlinkDepth);
+  }
+
+  ParseUtil getParseUtil() {
+    return parseUtil;
+  }
+
+  /**
+   * Parse the fetched content of a page handed over by a fetching thread and
+   * write the output. Called by the parse threads of {@link ParsePipeline}.
+   */
+  void parse(ParsePipeline.ParseTask task) throws IOException,
+      URLFilterException {
+    this.fetchNode = task.fetchNode;
+    setReprUrl(task.reprUrl);
+    long timeouts = parseUtil.getTimeouts();
+    ParseStatus pstatus = parseAndOutput(task.key, task.datum, task.content,
+        CrawlDatum.STATUS_FETCH_SUCCESS, task.outlinkDepth);
+    timeouts = parseUtil.getTimeouts() - timeouts;
+    if (timeouts > 0) {
+      reporter.incrCounter(ParsePipeline.COUNTER_GROUP, "parse_timeouts",
+          timeouts);
+    }
+    if (pstatus != null && pstatus.isSuccess()
+        && pstatus.getMinorCode() == ParseStatus.SUCCESS_REDIRECT) {
+      String newUrl = pstatus.getMessage();
+      int refreshTime = Integer.valueOf(pstatus.getArgs()[1]);
+      String urlString = task.key.toString();
+      Text redirUrl = handleRedirect(task.key, task.datum, urlString, newUrl,
+          refreshTime < Fetcher.PERM_REFRESH_TIME, Fetcher.CONTENT_REDIR);
+      if (redirUrl != null) {
+        // the page's fetch queue has already been released: instead of
+        // fetching the target now, record it to be fetched in the next cycle
+        outputRedirect(redirUrl, task.datum, Fetcher.CONTENT_REDIR);
+      }
+    }
+  }
+
+  private ParseStatus parseAndOutput(Text key, CrawlDatum datum,
+      Content content, int status, int outlinkDepth) {
+
+    ParseResult parseResult = null;
+    if (content != null) {
       /*
        * Note: Fetcher will only follow meta-redirects coming from the
        * original URL.
@@ -832,6 +906,10 @@ public class FetcherThread extends Thread {
     return halted;
   }
 
+  void setParsePipeline(ParsePipeline parsePipeline) {
+    this.parsePipeline = parsePipeline;
+  }
+
   public String getReprUrl() {
     return reprUrl;
   }
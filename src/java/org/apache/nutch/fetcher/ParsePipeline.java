@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.protocol.Content;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses fetched content in a fixed number of parse threads while the
+ * fetching threads go on fetching (<code>fetcher.parse.pipeline</code>).
+ * Fetched pages are handed over through a bounded queue: if parsing does not
+ * keep up with fetching, the fetching threads block when adding a page to the
+ * full queue, after the page's fetch queue has been released.
+ *
+ * <p>
+ * Every parse thread holds its own {@link FetcherThread} instance, never
+ * started, which provides the parsers and filters and writes the output
+ * exactly as if the page was parsed by the fetching thread. The only
+ * difference is that meta-redirects are not followed immediately but recorded
+ * as links to be fetched in the next cycle.
+ *
+ * <p>
+ * The parsers run in the parse threads themselves, not in the pool of
+ * {@link org.apache.nutch.parse.ParseUtil}: a parse exceeding
+ * <code>parser.timeout</code> is interrupted and no thread is left behind, so
+ * at most one parse per parse thread is running.
+ *
+ * <p>
+ * Counters in the group <code>FetcherParse</code>: <code>threads</code> (the
+ * number of parse threads), <code>parse_timeouts</code> (parses hitting
+ * <code>parser.timeout</code>) and <code>queue_full_wait_ms</code> (time the
+ * fetching threads were blocked because the queue was full).
+ */
+public class ParsePipeline {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String PIPELINE_ENABLED = "fetcher.parse.pipeline";
+  public static final String PARSE_THREADS = "fetcher.parse.threads";
+  public static final String QUEUE_SIZE = "fetcher.parse.queue.size";
+
+  static final String COUNTER_GROUP = "FetcherParse";
+
+  /** A fetched page waiting to be parsed. */
+  static class ParseTask {
+    final Text key;
+    final CrawlDatum datum;
+    final Content content;
+    final int outlinkDepth;
+    final String reprUrl;
+    final FetchNode fetchNode;
+
+    ParseTask(Text key, CrawlDatum datum, Content content, int outlinkDepth,
+        String reprUrl, FetchNode fetchNode) {
+      this.key = key;
+      this.datum = datum;
+      this.content = content;
+      this.outlinkDepth = outlinkDepth;
+      this.reprUrl = reprUrl;
+      this.fetchNode = fetchNode;
+    }
+  }
+
+  /** marks the end of the input */
+  private static final ParseTask END = new ParseTask(null, null, null, 0,
+      null, null);
+
+  private final BlockingQueue<ParseTask> queue;
+  private final List<Thread> parseThreads = new ArrayList<>();
+  /** tasks added but not yet written */
+  private final AtomicInteger pending = new AtomicInteger(0);
+  private final AtomicInteger busy = new AtomicInteger(0);
+  private final Reporter reporter;
+  private volatile boolean halted = false;
+
+  /**
+   * @param workers
+   *          one FetcherThread per parse thread, not started
+   */
+  public ParsePipeline(List<FetcherThread> workers, int queueSize,
+      Reporter reporter) {
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    this.reporter = reporter;
+    for (int i = 0; i < workers.size(); i++) {
+      final FetcherThread worker = workers.get(i);
+      worker.getParseUtil().setParseInCallerThread(true);
+      Thread t = new Thread() {
+        public void run() {
+          runWorker(worker);
+        }
+      };
+      t.setDaemon(true);
+      t.setName("ParserThread-" + i);
+      parseThreads.add(t);
+    }
+    LOG.info("Fetcher: parsing in {} threads, parse queue size {}",
+        workers.size(), queueSize);
+  }
+
+  /**
+   * Default number of parse threads: the number of available processors
+   * minus one for the fetching threads, at least one.
+   */
+  public static int getDefaultThreads() {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  }
+
+  public void start() {
+    reporter.incrCounter(COUNTER_GROUP, "threads", parseThreads.size());
+    for (Thread t : parseThreads) {
+      t.start();
+    }
+  }
+
+  /**
+   * Hand over a fetched page, blocking while the queue is full.
+   */
+  void put(ParseTask task) throws InterruptedException {
+    pending.incrementAndGet();
+    if (queue.offer(task)) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    try {
+      queue.put(task);
+    } catch (InterruptedException e) {
+      pending.decrementAndGet();
+      throw e;
+    }
+    reporter.incrCounter(COUNTER_GROUP, "queue_full_wait_ms",
+        System.currentTimeMillis() - start);
+  }
+
+  private void runWorker(FetcherThread worker) {
+    try {
+      while (!halted) {
+        ParseTask task = queue.take();
+        if (task == END) {
+          // let the other parse threads finish as well
+          queue.put(END);
+          break;
+        }
+        busy.incrementAndGet();
+        try {
+          worker.parse(task);
+        } catch (Throwable t) {
+          LOG.error("Error parsing " + task.key + ": " + t.toString());
+        } finally {
+          busy.decrementAndGet();
+          pending.decrementAndGet();
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("{} interrupted", Thread.currentThread().getName());
+    }
+  }
+
+  /** @return number of pages handed over but not yet parsed and written */
+  public int getPending() {
+    return pending.get();
+  }
+
+  /** @return number of pages waiting in the queue */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  /** @return number of pages being parsed */
+  public int getBusyThreads() {
+    return busy.get();
+  }
+
+  public int getThreadCount() {
+    return parseThreads.size();
+  }
+
+  /**
+   * Parse all remaining pages and stop the parse threads.
+   *
+   * @param timeout
+   *          max. time in milliseconds to wait for the parse threads
+   * @return true if all pages have been parsed
+   */
+  public boolean finish(long timeout) {
+    try {
+      queue.put(END);
+      long deadline = System.currentTimeMillis() + timeout;
+      for (Thread t : parseThreads) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining > 0) {
+          TimeUnit.MILLISECONDS.timedJoin(t, remaining);
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting for parse threads");
+    }
+    int left = pending.get();
+    if (left > 0) {
+      LOG.warn("Aborting with {} pages not parsed", left);
+      halt();
+      return false;
+    }
+    return true;
+  }
+
+  /** Stop the parse threads immediately, pages not yet parsed are lost. */
+  public void halt() {
+    halted = true;
+    queue.clear();
+    for (Thread t : parseThreads) {
+      t.interrupt();
+    }
+  }
+}
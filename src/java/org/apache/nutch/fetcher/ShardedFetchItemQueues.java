@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link FetchItemQueues} implementation for fetchers running many threads
+ * against many hosts. Queues are distributed over a fixed number of stripes by
+ * the hash of their queue ID, each stripe being guarded by its own lock. Every
+ * stripe keeps its non-empty queues in a heap ordered by the time at which the
+ * queue is next allowed to be fetched from, so that picking the next item is
+ * O(log n) in the number of queues of the stripe and no global lock is ever
+ * held.
+ *
+ * <p>
+ * A queue sits in the heap only while it has items waiting and fewer than
+ * <code>fetcher.threads.per.queue</code> items in progress. Queues which
+ * reached that limit are put back by {@link #finishFetchItem(FetchItem,
+ * boolean)}, empty queues are reaped as soon as nothing is in progress.
+ *
+ * <p>
+ * Enable it by setting <code>fetcher.queues.class</code> to
+ * <code>org.apache.nutch.fetcher.ShardedFetchItemQueues</code>. The number of
+ * stripes is set by <code>fetcher.queues.stripes</code>.
+ */
+public class ShardedFetchItemQueues extends FetchItemQueues {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String STRIPES = "fetcher.queues.stripes";
+
+  /** A queue together with its position in the ready-heap of its stripe. */
+  private static class Slot {
+    final String id;
+    final FetchItemQueue queue;
+    /** time at which the queue was ready when it was put on the heap */
+    long readyAt;
+    /** true while the slot is in the heap of its stripe */
+    boolean scheduled;
+
+    Slot(String id, FetchItemQueue queue) {
+      this.id = id;
+      this.queue = queue;
+    }
+  }
+
+  private static final Comparator<Slot> READY_ORDER = new Comparator<Slot>() {
+    public int compare(Slot s1, Slot s2) {
+      return Long.compare(s1.readyAt, s2.readyAt);
+    }
+  };
+
+  private static class Stripe {
+    final ReentrantLock lock = new ReentrantLock();
+    final Map<String, Slot> slots = new HashMap<>();
+    final PriorityQueue<Slot> ready = new PriorityQueue<>(16, READY_ORDER);
+  }
+
+  private final Stripe[] stripes;
+  private final AtomicInteger queueCount = new AtomicInteger(0);
+
+  public ShardedFetchItemQueues(Configuration conf) {
+    super(conf);
+    int numStripes = conf.getInt(STRIPES, 16);
+    if (numStripes < 1) {
+      LOG.warn(STRIPES + " must be positive, using 1 instead of " + numStripes);
+      numStripes = 1;
+    }
+    stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new Stripe();
+    }
+    LOG.info("Using {} queue stripes", numStripes);
+  }
+
+  private Stripe stripeFor(String id) {
+    return stripes[(id.hashCode() & Integer.MAX_VALUE) % stripes.length];
+  }
+
+  /** Get the slot of a queue, creating it if needed. Requires stripe lock. */
+  private Slot getOrCreateSlot(Stripe stripe, String id) {
+    Slot slot = stripe.slots.get(id);
+    if (slot == null) {
+      slot = new Slot(id, new FetchItemQueue(conf, maxThreads, crawlDelay,
+          minCrawlDelay));
+      stripe.slots.put(id, slot);
+      queueCount.incrementAndGet();
+    }
+    return slot;
+  }
+
+  /**
+   * Put a slot (back) on the ready-heap of its stripe if it has items to be
+   * fetched and may take more in-progress items, or reap it if it is idle.
+   * Requires stripe lock.
+   */
+  private void reschedule(Stripe stripe, Slot slot) {
+    FetchItemQueue fiq = slot.queue;
+    if (slot.scheduled) {
+      if (fiq.nextFetchTime.get() >= slot.readyAt) {
+        // a later fetch time is picked up when the slot is polled
+        return;
+      }
+      // released "asap", move up the slot
+      stripe.ready.remove(slot);
+      slot.scheduled = false;
+    }
+    if (fiq.getQueueSize() == 0) {
+      if (fiq.getInProgressSize() == 0
+          && stripe.slots.remove(slot.id) != null) {
+        queueCount.decrementAndGet();
+      }
+      return;
+    }
+    if (fiq.getInProgressSize() >= fiq.maxThreads) {
+      return;
+    }
+    slot.readyAt = fiq.nextFetchTime.get();
+    slot.scheduled = true;
+    stripe.ready.add(slot);
+  }
+
+  @Override
+  public int getQueueCount() {
+    return queueCount.get();
+  }
+
+  @Override
+  public void addFetchItem(FetchItem it) {
+    Stripe stripe = stripeFor(it.queueID);
+    stripe.lock.lock();
+    try {
+      Slot slot = getOrCreateSlot(stripe, it.queueID);
+      slot.queue.addFetchItem(it);
+      totalSize.incrementAndGet();
+      reschedule(stripe, slot);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  @Override
+  public void finishFetchItem(FetchItem it, boolean asap) {
+    Stripe stripe = stripeFor(it.queueID);
+    stripe.lock.lock();
+    try {
+      Slot slot = stripe.slots.get(it.queueID);
+      if (slot == null) {
+        LOG.warn("Attempting to finish item from unknown queue: " + it);
+        return;
+      }
+      slot.queue.finishFetchItem(it, asap);
+      reschedule(stripe, slot);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  @Override
+  public FetchItemQueue getFetchItemQueue(String id) {
+    Stripe stripe = stripeFor(id);
+    stripe.lock.lock();
+    try {
+      return getOrCreateSlot(stripe, id).queue;
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  @Override
+  public FetchItem getFetchItem() {
+    // start at a random stripe to spread the threads over the locks
+    int start = ThreadLocalRandom.current().nextInt(stripes.length);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < stripes.length; i++) {
+      Stripe stripe = stripes[(start + i) % stripes.length];
+      stripe.lock.lock();
+      try {
+        Slot slot;
+        while ((slot = stripe.ready.peek()) != null && slot.readyAt <= now) {
+          stripe.ready.poll();
+          slot.scheduled = false;
+          // the queue decides itself whether it is ready, a queue whose
+          // next fetch time moved is simply put back with the new time
+          FetchItem fit = slot.queue.getFetchItem();
+          reschedule(stripe, slot);
+          if (fit != null) {
+            totalSize.decrementAndGet();
+            return fit;
+          }
+        }
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int checkTimelimit() {
+    int count = 0;
+    if (System.currentTimeMillis() >= timelimit && timelimit != -1) {
+      count = emptyQueues();
+      if (totalSize.get() != 0 && queueCount.get() == 0)
+        totalSize.set(0);
+    }
+    return count;
+  }
+
+  @Override
+  public int emptyQueues() {
+    int count = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        for (Slot slot : stripe.slots.values()) {
+          if (slot.queue.getQueueSize() == 0)
+            continue;
+          LOG.info("* queue: " + slot.id + " >> dropping! ");
+          int deleted = slot.queue.emptyQueue();
+          totalSize.addAndGet(-deleted);
+          count += deleted;
+        }
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public int checkExceptionThreshold(String queueid) {
+    Stripe stripe = stripeFor(queueid);
+    stripe.lock.lock();
+    try {
+      Slot slot = stripe.slots.get(queueid);
+      if (slot == null || slot.queue.getQueueSize() == 0) {
+        return 0;
+      }
+      int excCount = slot.queue.incrementExceptionCounter();
+      if (maxExceptionsPerQueue != -1 && excCount >= maxExceptionsPerQueue) {
+        // too many exceptions for items in this queue - purge it
+        int deleted = slot.queue.emptyQueue();
+        LOG.info("* queue: " + queueid + " >> removed " + deleted
+            + " URLs from queue because " + excCount + " exceptions occurred");
+        totalSize.addAndGet(-deleted);
+        return deleted;
+      }
+      return 0;
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  @Override
+  public void dump() {
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        for (Slot slot : stripe.slots.values()) {
+          if (slot.queue.getQueueSize() == 0)
+            continue;
+          LOG.info("* queue: " + slot.id);
+          slot.queue.dump();
+        }
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+  }
+}
@@ -121,6 +121,8 @@ public class UpdateHostDb extends Configured implements Tool {
       MultipleInputs.addInputPath(job, topHosts, KeyValueTextInputFormat.class);
     }
     if (crawlDb != null) {
+      // deltas cannot be merged when reading multiple inputs
+      CrawlDb.compact(job, crawlDb);
       // Tell the job we read from CrawlDB
       job.setBoolean("hostdb.reading.crawldb", true);
       MultipleInputs.addInputPath(job, new Path(crawlDb,
@@ -25,7 +25,6 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.ByteWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.Mapper;
@@ -157,9 +156,9 @@ public class CleaningJob implements Tool {
 
     JobConf job = new NutchJob(getConf());
 
-    FileInputFormat.addInputPath(job, new Path(crawldb, CrawlDb.CURRENT_NAME));
     job.setBoolean("noCommit", noCommit);
     job.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(job, new Path(crawldb));
     job.setOutputFormat(NullOutputFormat.class);
     job.setMapOutputKeyClass(ByteWritable.class);
     job.setMapOutputValueClass(Text.class);
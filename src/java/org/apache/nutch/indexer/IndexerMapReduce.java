@@ -50,6 +50,7 @@ import org.apache.nutch.parse.Parse;
 import org.apache.nutch.parse.ParseData;
 import org.apache.nutch.parse.ParseImpl;
 import org.apache.nutch.parse.ParseText;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.scoring.ScoringFilterException;
 import org.apache.nutch.scoring.ScoringFilters;
@@ -335,6 +336,8 @@ public class IndexerMapReduce extends Configured implements
       }
       reporter.incrCounter("IndexerStatus", "errors (IndexingFilter)", 1);
       return;
+    } finally {
+      PluginMetrics.reportCounters(reporter);
     }
 
     // skip documents discarded by indexing filters
@@ -372,7 +375,8 @@ public class IndexerMapReduce extends Configured implements
   }
 
   public static void initMRJob(Path crawlDb, Path linkDb,
-      Collection<Path> segments, JobConf job, boolean addBinaryContent) {
+      Collection<Path> segments, JobConf job, boolean addBinaryContent)
+      throws IOException {
 
     LOG.info("IndexerMapReduce: crawldb: {}", crawlDb);
 
@@ -393,8 +397,6 @@ public class IndexerMapReduce extends Configured implements
       }
     }
 
-    FileInputFormat.addInputPath(job, new Path(crawlDb, CrawlDb.CURRENT_NAME));
-
     if (linkDb != null) {
       Path currentLinkDb = new Path(linkDb, LinkDb.CURRENT_NAME);
       try {
@@ -411,6 +413,7 @@ public class IndexerMapReduce extends Configured implements
     }
 
     job.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(job, crawlDb);
 
     job.setMapperClass(IndexerMapReduce.class);
     job.setReducerClass(IndexerMapReduce.class);
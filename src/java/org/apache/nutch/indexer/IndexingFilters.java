@@ -21,6 +21,7 @@ package org.apache.nutch.indexer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.plugin.PluginRepository;
 import org.apache.nutch.parse.Parse;
 import org.apache.hadoop.conf.Configuration;
@@ -39,18 +40,24 @@ public class IndexingFilters {
       .getLogger(MethodHandles.lookup().lookupClass());
 
   private IndexingFilter[] indexingFilters;
+  private PluginMetrics.Timer[] timers;
 
   public IndexingFilters(Configuration conf) {
     indexingFilters = (IndexingFilter[]) PluginRepository.get(conf)
         .getOrderedPlugins(IndexingFilter.class, IndexingFilter.X_POINT_ID,
             INDEXINGFILTER_ORDER);
+    timers = PluginMetrics.getTimers(conf, IndexingFilter.X_POINT_ID,
+        indexingFilters);
   }
 
   /** Run all defined filters. */
   public NutchDocument filter(NutchDocument doc, Parse parse, Text url,
       CrawlDatum datum, Inlinks inlinks) throws IndexingException {
     for (int i = 0; i < this.indexingFilters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       doc = this.indexingFilters[i].filter(doc, parse, url, datum, inlinks);
+      if (timers != null)
+        timers[i].record(start, doc == null);
       // break the loop if an indexing filter discards the doc
       if (doc == null)
         return null;
@@ -18,26 +18,57 @@
 package org.apache.nutch.net;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.plugin.PluginRepository;
 
-/** Creates and caches {@link URLFilter} implementing plugins. */
+/**
+ * Creates and caches {@link URLFilter} implementing plugins. If
+ * <code>urlfilter.cache.size</code> is positive, the results are cached per
+ * thread, see {@link URLResultCache}.
+ */
 public class URLFilters {
 
   public static final String URLFILTER_ORDER = "urlfilter.order";
+  public static final String URLFILTER_CACHE_SIZE = "urlfilter.cache.size";
   private URLFilter[] filters;
+  private PluginMetrics.Timer[] timers;
+  private ThreadLocal<URLResultCache> cache;
 
   public URLFilters(Configuration conf) {
     this.filters = (URLFilter[]) PluginRepository.get(conf).getOrderedPlugins(
         URLFilter.class, URLFilter.X_POINT_ID, URLFILTER_ORDER);
+    this.timers = PluginMetrics.getTimers(conf, URLFilter.X_POINT_ID, filters);
+    final int cacheSize = conf.getInt(URLFILTER_CACHE_SIZE, 0);
+    if (cacheSize > 0) {
+      cache = ThreadLocal.withInitial(() -> new URLResultCache(
+          URLResultCache.Kind.FILTER, cacheSize));
+    }
   }
 
   /** Run all defined filters. Assume logical AND. */
   public String filter(String urlString) throws URLFilterException {
+    if (cache == null || urlString == null) {
+      return filterUncached(urlString);
+    }
+    URLResultCache results = cache.get();
+    String result = results.get(urlString);
+    if (result == null) {
+      result = filterUncached(urlString);
+      results.put(urlString, result);
+    } else if (result == URLResultCache.REJECTED) {
+      result = null;
+    }
+    return result;
+  }
+
+  private String filterUncached(String urlString) throws URLFilterException {
     for (int i = 0; i < this.filters.length; i++) {
       if (urlString == null)
         return null;
+      long start = timers == null ? 0 : System.nanoTime();
       urlString = this.filters[i].filter(urlString);
-
+      if (timers != null)
+        timers[i].record(start, urlString == null);
     }
     return urlString;
   }
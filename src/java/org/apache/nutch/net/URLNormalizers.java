@@ -35,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.nutch.plugin.Extension;
 import org.apache.nutch.plugin.ExtensionPoint;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.plugin.PluginRepository;
 import org.apache.nutch.plugin.PluginRuntimeException;
 import org.apache.nutch.util.ObjectCache;
@@ -87,6 +88,11 @@ import org.apache.nutch.util.ObjectCache;
  * As soon as the url is unchanged the loop will stop and return the result.
  * </p>
  * 
+ * <p>
+ * If <tt>urlnormalizer.cache.size</tt> is positive, the normalized URLs are
+ * cached per thread and scope, see {@link URLResultCache}.
+ * </p>
+ * 
  * @author Andrzej Bialecki
  */
 public final class URLNormalizers {
@@ -119,6 +125,11 @@ public final class URLNormalizers {
   /** Scope used when indexing URLs. */
   public static final String SCOPE_INDEXER = "indexer";
 
+  /**
+   * Number of normalized URLs cached per thread, see {@link URLResultCache}
+   */
+  public static final String URLNORMALIZER_CACHE_SIZE = "urlnormalizer.cache.size";
+
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
@@ -126,7 +137,7 @@ public final class URLNormalizers {
   private final List<Extension> EMPTY_EXTENSION_LIST = Collections
       .<Extension> emptyList();
 
-  private final URLNormalizer[] EMPTY_NORMALIZERS = new URLNormalizer[0];
+  private static final URLNormalizer[] EMPTY_NORMALIZERS = new URLNormalizer[0];
 
   private Configuration conf;
 
@@ -136,6 +147,10 @@ public final class URLNormalizers {
 
   private int loopCount;
 
+  private PluginMetrics.Timer[] timers;
+
+  private ThreadLocal<URLResultCache> cache;
+
   public URLNormalizers(Configuration conf, String scope) {
     this.conf = conf;
     this.extensionPoint = PluginRepository.get(conf).getExtensionPoint(
@@ -147,20 +162,27 @@ public final class URLNormalizers {
           + " not found.");
     }
 
-    normalizers = (URLNormalizer[]) objectCache
-        .getObject(URLNormalizer.X_POINT_ID + "_" + scope);
-    if (normalizers == null) {
-      normalizers = getURLNormalizers(scope);
-    }
+    normalizers = objectCache.get(normalizersKey(scope),
+        () -> getURLNormalizers(scope));
     if (normalizers == EMPTY_NORMALIZERS) {
-      normalizers = (URLNormalizer[]) objectCache
-          .getObject(URLNormalizer.X_POINT_ID + "_" + SCOPE_DEFAULT);
-      if (normalizers == null) {
-        normalizers = getURLNormalizers(SCOPE_DEFAULT);
-      }
+      normalizers = objectCache.get(normalizersKey(SCOPE_DEFAULT),
+          () -> getURLNormalizers(SCOPE_DEFAULT));
     }
 
     loopCount = conf.getInt("urlnormalizer.loop.count", 1);
+    timers = PluginMetrics.getTimers(conf, URLNormalizer.X_POINT_ID,
+        normalizers);
+
+    final int cacheSize = conf.getInt(URLNORMALIZER_CACHE_SIZE, 0);
+    if (cacheSize > 0) {
+      cache = ThreadLocal.withInitial(() -> new URLResultCache(
+          URLResultCache.Kind.NORMALIZE, cacheSize));
+    }
+  }
+
+  private static ObjectCache.Key<URLNormalizer[]> normalizersKey(String scope) {
+    return ObjectCache.Key.of(URLNormalizer.X_POINT_ID + "_" + scope,
+        URLNormalizer[].class);
   }
 
   /**
@@ -190,13 +212,10 @@ public final class URLNormalizers {
       Extension ext = it.next();
       URLNormalizer normalizer = null;
       try {
-        // check to see if we've cached this URLNormalizer instance yet
-        normalizer = (URLNormalizer) objectCache.getObject(ext.getId());
-        if (normalizer == null) {
-          // go ahead and instantiate it and then cache it
-          normalizer = (URLNormalizer) ext.getExtensionInstance();
-          objectCache.setObject(ext.getId(), normalizer);
-        }
+        // instantiate the URLNormalizer unless cached
+        normalizer = objectCache.get(
+            ObjectCache.Key.of(ext.getId(), URLNormalizer.class),
+            () -> (URLNormalizer) ext.getExtensionInstance());
         normalizers.add(normalizer);
       } catch (PluginRuntimeException e) {
         e.printStackTrace();
@@ -219,32 +238,15 @@ public final class URLNormalizers {
    *         empty list.
    * @throws PluginRuntimeException
    */
-  @SuppressWarnings("unchecked")
   private List<Extension> getExtensions(String scope) {
     ObjectCache objectCache = ObjectCache.get(conf);
-    List<Extension> extensions = (List<Extension>) objectCache
-        .getObject(URLNormalizer.X_POINT_ID + "_x_" + scope);
-
-    // Just compare the reference:
-    // if this is the empty list, we know we will find no extension.
-    if (extensions == EMPTY_EXTENSION_LIST) {
-      return EMPTY_EXTENSION_LIST;
-    }
-
-    if (extensions == null) {
-      extensions = findExtensions(scope);
-      if (extensions != null) {
-        objectCache.setObject(URLNormalizer.X_POINT_ID + "_x_" + scope,
-            extensions);
-      } else {
-        // Put the empty extension list into cache
-        // to remember we don't know any related extension.
-        objectCache.setObject(URLNormalizer.X_POINT_ID + "_x_" + scope,
-            EMPTY_EXTENSION_LIST);
-        extensions = EMPTY_EXTENSION_LIST;
-      }
-    }
-    return extensions;
+    return objectCache.get(ObjectCache.Key.<List<Extension>> of(
+        URLNormalizer.X_POINT_ID + "_x_" + scope, List.class), () -> {
+          List<Extension> extensions = findExtensions(scope);
+          // Put the empty extension list into cache
+          // to remember we don't know any related extension.
+          return extensions != null ? extensions : EMPTY_EXTENSION_LIST;
+        });
   }
 
   /**
@@ -310,13 +312,34 @@ public final class URLNormalizers {
    */
   public String normalize(String urlString, String scope)
       throws MalformedURLException {
+    if (cache == null || urlString == null) {
+      return normalizeUncached(urlString, scope);
+    }
+    URLResultCache results = cache.get();
+    // normalizers may behave differently per scope
+    String key = scope + ' ' + urlString;
+    String result = results.get(key);
+    if (result == null) {
+      result = normalizeUncached(urlString, scope);
+      results.put(key, result);
+    } else if (result == URLResultCache.REJECTED) {
+      result = null;
+    }
+    return result;
+  }
+
+  private String normalizeUncached(String urlString, String scope)
+      throws MalformedURLException {
     // optionally loop several times, and break if no further changes
     String initialString = urlString;
     for (int k = 0; k < loopCount; k++) {
       for (int i = 0; i < this.normalizers.length; i++) {
         if (urlString == null)
           return null;
+        long start = timers == null ? 0 : System.nanoTime();
         urlString = this.normalizers[i].normalize(urlString, scope);
+        if (timers != null)
+          timers[i].record(start, urlString == null);
       }
       if (initialString.equals(urlString))
         break;
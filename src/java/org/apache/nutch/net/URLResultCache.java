@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.net;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Bounded LRU cache of the results of {@link URLFilters} or
+ * {@link URLNormalizers}, including rejected URLs. A cache is used by a single
+ * thread and belongs to the filter or normalizer instance, which is bound to
+ * the configuration and plugins it has been created with: instances created
+ * for another or a changed configuration start with an empty cache.
+ *
+ * <p>
+ * Hits and misses of all caches in the JVM are counted and reported as
+ * counters of the group <code>URLCache</code> by
+ * {@link #reportCounters(Reporter)}.
+ * </p>
+ */
+public class URLResultCache {
+
+  public static final String COUNTER_GROUP = "URLCache";
+
+  /** Result type, determines the counter names */
+  enum Kind {
+    FILTER("filter"), NORMALIZE("normalize");
+
+    final String name;
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    long reportedHits = 0;
+    long reportedMisses = 0;
+
+    Kind(String name) {
+      this.name = name;
+    }
+  }
+
+  /** cached null result, i.e. the URL has been rejected */
+  static final String REJECTED = new String("");
+
+  private static volatile boolean used = false;
+
+  private final Kind kind;
+  private final Map<String, String> results;
+
+  URLResultCache(Kind kind, final int maxSize) {
+    this.kind = kind;
+    this.results = new LinkedHashMap<String, String>(Math.min(maxSize, 1024),
+        0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > maxSize;
+      }
+    };
+    used = true;
+  }
+
+  /**
+   * @return the cached result, {@link #REJECTED} if the URL has been rejected
+   *         or null if there is no result cached
+   */
+  String get(String key) {
+    String result = results.get(key);
+    if (result == null) {
+      kind.misses.increment();
+    } else {
+      kind.hits.increment();
+    }
+    return result;
+  }
+
+  void put(String key, String result) {
+    results.put(key, result == null ? REJECTED : result);
+  }
+
+  int size() {
+    return results.size();
+  }
+
+  /**
+   * Increment the counters by the hits and misses since the last call. Does
+   * nothing if no cache is used.
+   */
+  public static void reportCounters(Reporter reporter) {
+    if (!used || reporter == null) {
+      return;
+    }
+    synchronized (Kind.class) {
+      for (Kind kind : Kind.values()) {
+        long hits = kind.hits.sum();
+        long misses = kind.misses.sum();
+        if (hits > kind.reportedHits) {
+          reporter.incrCounter(COUNTER_GROUP, kind.name + "_hits",
+              hits - kind.reportedHits);
+          kind.reportedHits = hits;
+        }
+        if (misses > kind.reportedMisses) {
+          reporter.incrCounter(COUNTER_GROUP, kind.name + "_misses",
+              misses - kind.reportedMisses);
+          kind.reportedMisses = misses;
+        }
+      }
+    }
+  }
+}
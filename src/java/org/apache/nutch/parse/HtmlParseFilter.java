@@ -42,4 +42,16 @@ public interface HtmlParseFilter extends Pluggable, Configurable {
    */
   ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc);
+
+  /**
+   * Whether the filter needs the DOM tree of the page. If no filter needs it,
+   * a parser may extract text, title, outlinks and meta tags in a single
+   * streaming pass without building a DOM tree, and the filters are called
+   * with a null <code>doc</code>.
+   * 
+   * @return true (default) if {@link #filter} requires the DOM tree
+   */
+  default boolean needsDOM() {
+    return true;
+  }
 }
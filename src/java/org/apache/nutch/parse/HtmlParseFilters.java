@@ -18,6 +18,7 @@
 package org.apache.nutch.parse;
 
 import org.apache.nutch.protocol.Content;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.plugin.PluginRepository;
 import org.apache.hadoop.conf.Configuration;
 
@@ -27,6 +28,8 @@ import org.w3c.dom.DocumentFragment;
 public class HtmlParseFilters {
 
   private HtmlParseFilter[] htmlParseFilters;
+  private PluginMetrics.Timer[] timers;
+  private boolean needsDOM;
 
   public static final String HTMLPARSEFILTER_ORDER = "htmlparsefilter.order";
 
@@ -34,6 +37,19 @@ public class HtmlParseFilters {
     htmlParseFilters = (HtmlParseFilter[]) PluginRepository.get(conf)
         .getOrderedPlugins(HtmlParseFilter.class, HtmlParseFilter.X_POINT_ID,
             HTMLPARSEFILTER_ORDER);
+    timers = PluginMetrics.getTimers(conf, HtmlParseFilter.X_POINT_ID,
+        htmlParseFilters);
+    for (HtmlParseFilter filter : htmlParseFilters) {
+      needsDOM |= filter.needsDOM();
+    }
+  }
+
+  /**
+   * @return true if any of the filters needs the DOM tree, see
+   *         {@link HtmlParseFilter#needsDOM()}
+   */
+  public boolean needsDOM() {
+    return needsDOM;
   }
 
   /** Run all defined filters. */
@@ -43,8 +59,11 @@ public class HtmlParseFilters {
     // loop on each filter
     for (int i = 0; i < this.htmlParseFilters.length; i++) {
       // call filter interface
+      long start = timers == null ? 0 : System.nanoTime();
       parseResult = htmlParseFilters[i].filter(content, parseResult, metaTags,
           doc);
+      if (timers != null)
+        timers[i].record(start, !parseResult.isSuccess());
 
       // any failure on parse obj, return
       if (!parseResult.isSuccess()) {
@@ -36,6 +36,7 @@ import org.apache.nutch.util.StringUtil;
 import org.apache.nutch.util.URLUtil;
 import org.apache.nutch.metadata.Nutch;
 import org.apache.nutch.net.*;
+import org.apache.nutch.plugin.PluginMetrics;
 
 import java.io.*;
 import java.lang.invoke.MethodHandles;
@@ -311,6 +312,8 @@ public class ParseOutputFormat implements OutputFormat<Text, Parse> {
       }
 
       public void close(Reporter reporter) throws IOException {
+        URLResultCache.reportCounters(reporter);
+        PluginMetrics.reportCounters(reporter);
         textOut.close();
         dataOut.close();
         crawlOut.close();
@@ -30,6 +30,7 @@ import org.apache.hadoop.conf.*;
 import org.apache.nutch.metadata.Metadata;
 import org.apache.nutch.metadata.Nutch;
 import org.apache.nutch.net.protocols.Response;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.protocol.*;
 import org.apache.nutch.scoring.ScoringFilterException;
 import org.apache.nutch.scoring.ScoringFilters;
@@ -41,6 +42,13 @@ import java.lang.invoke.MethodHandles;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /* Parse content in a segment. */
 public class ParseSegment extends NutchTool implements Tool,
@@ -51,6 +59,11 @@ public class ParseSegment extends NutchTool implements Tool,
       .getLogger(MethodHandles.lookup().lookupClass());
 
   public static final String SKIP_TRUNCATED = "parser.skip.truncated";
+  public static final String THREADS = "parser.threads";
+  public static final String QUEUE_DEPTH = "parser.queue.depth";
+
+  /** maximum number of content types reported as ParserFallback counters */
+  static final int MAX_FALLBACK_COUNTERS = 20;
 
   private ScoringFilters scfilters;
 
@@ -75,15 +88,146 @@ public class ParseSegment extends NutchTool implements Tool,
   public void close() {
   }
 
-  private Text newKey = new Text();
+  /**
+   * Reports the number of calls and the time spent per parser as counters,
+   * and the number of documents per content type parsed by the default
+   * parsers because no parser is mapped to it (at most
+   * {@link #MAX_FALLBACK_COUNTERS} types, the remaining are summed up as
+   * <code>other</code>).
+   */
+  private void reportParserStats(Reporter reporter) {
+    if (parseUtil == null)
+      return;
+    for (Entry<String, long[]> entry : parseUtil.getParserStats().entrySet()) {
+      reporter.incrCounter("ParserCalls", entry.getKey(),
+          entry.getValue()[0]);
+      reporter.incrCounter("ParserTime (ms)", entry.getKey(),
+          entry.getValue()[1]);
+    }
+    List<Entry<String, Long>> fallbacks = new ArrayList<>(parseUtil
+        .getFallbackCounts().entrySet());
+    fallbacks.sort((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()));
+    for (int i = 0; i < fallbacks.size(); i++) {
+      reporter.incrCounter("ParserFallback",
+          i < MAX_FALLBACK_COUNTERS ? fallbacks.get(i).getKey() : "other",
+          fallbacks.get(i).getValue());
+    }
+  }
+
+  /**
+   * Runs {@link ParseSegment#map(WritableComparable, Content, OutputCollector,
+   * Reporter)} on <code>parser.threads</code> threads in a single map task.
+   * The threads take the records from a shared queue holding up to
+   * <code>parser.queue.depth</code> records, so a thread busy with a large
+   * document does not hold up the others. The parses are written in the order
+   * they complete, the reducer sorts them anyway.
+   */
+  public static class ParseMapRunner implements
+      MapRunnable<WritableComparable<?>, Content, Text, ParseImpl> {
+
+    private ParseSegment mapper;
+    private int threads;
+    private int queueDepth;
+
+    public void configure(JobConf job) {
+      mapper = new ParseSegment();
+      mapper.configure(job);
+      threads = Math.max(1, job.getInt(THREADS, 1));
+      queueDepth = job.getInt(QUEUE_DEPTH, 0);
+      if (queueDepth <= 0) {
+        queueDepth = 2 * threads;
+      }
+    }
+
+    public void run(
+        RecordReader<WritableComparable<?>, Content> input,
+        OutputCollector<Text, ParseImpl> output, Reporter reporter)
+        throws IOException {
+      try {
+        if (threads == 1) {
+          WritableComparable<?> key = input.createKey();
+          Content value = input.createValue();
+          while (input.next(key, value)) {
+            mapper.map(key, value, output, reporter);
+          }
+        } else {
+          runThreads(input, output, reporter);
+        }
+        mapper.reportParserStats(reporter);
+        PluginMetrics.reportCounters(reporter);
+      } finally {
+        mapper.close();
+      }
+    }
+
+    private void runThreads(
+        RecordReader<WritableComparable<?>, Content> input,
+        final OutputCollector<Text, ParseImpl> output, final Reporter reporter)
+        throws IOException {
+      reporter.incrCounter("ParseSegment", "threads", threads);
+      ExecutorService executor = Executors.newFixedThreadPool(threads,
+          new ThreadFactoryBuilder().setNameFormat("parse-segment-%d")
+              .setDaemon(true).build());
+      // records being parsed or waiting for a thread
+      final Semaphore slots = new Semaphore(threads + queueDepth);
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+      int maxQueued = 0;
+      try {
+        while (failure.get() == null) {
+          // a new key and value per record, they are used concurrently
+          final WritableComparable<?> key = input.createKey();
+          final Content value = input.createValue();
+          if (!input.next(key, value)) {
+            break;
+          }
+          if (!slots.tryAcquire()) {
+            reporter.incrCounter("ParseSegment", "waits for full queue", 1);
+            while (!slots.tryAcquire(1, TimeUnit.SECONDS)) {
+              reporter.progress();
+            }
+          }
+          int inFlight = threads + queueDepth - slots.availablePermits();
+          maxQueued = Math.max(maxQueued, inFlight - threads);
+          executor.execute(() -> {
+            try {
+              mapper.map(key, value, output, reporter);
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            } finally {
+              slots.release();
+            }
+          });
+        }
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+          reporter.progress();
+        }
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        executor.shutdownNow();
+      }
+      reporter.incrCounter("ParseSegment", "max queued records",
+          Math.max(0, maxQueued));
+      if (failure.get() != null) {
+        throw new IOException("Parsing failed", failure.get());
+      }
+    }
+  }
+
+  /** the ParseUtil is shared by all threads of a {@link ParseMapRunner} */
+  private synchronized ParseUtil getParseUtil() {
+    if (parseUtil == null)
+      parseUtil = new ParseUtil(getConf());
+    return parseUtil;
+  }
 
   public void map(WritableComparable<?> key, Content content,
       OutputCollector<Text, ParseImpl> output, Reporter reporter)
       throws IOException {
     // convert on the fly from old UTF8 keys
     if (key instanceof Text) {
-      newKey.set(key.toString());
-      key = newKey;
+      key = new Text(key.toString());
     }
 
     String fetchStatus = content.getMetadata().get(Nutch.FETCH_STATUS_KEY);
@@ -104,9 +248,7 @@ public class ParseSegment extends NutchTool implements Tool,
     long start = System.currentTimeMillis();
     ParseResult parseResult = null;
     try {
-      if (parseUtil == null)
-        parseUtil = new ParseUtil(getConf());
-      parseResult = parseUtil.parse(content);
+      parseResult = getParseUtil().parse(content);
     } catch (Exception e) {
       LOG.warn("Error parsing: " + key + ": "
           + StringUtils.stringifyException(e));
@@ -223,6 +365,7 @@ public class ParseSegment extends NutchTool implements Tool,
     job.set(Nutch.SEGMENT_NAME_KEY, segment.getName());
     job.setInputFormat(SequenceFileInputFormat.class);
     job.setMapperClass(ParseSegment.class);
+    job.setMapRunnerClass(ParseMapRunner.class);
     job.setReducerClass(ParseSegment.class);
 
     FileOutputFormat.setOutputPath(job, segment);
@@ -19,10 +19,18 @@ package org.apache.nutch.parse;
 // Commons Logging imports
 
 import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,6 +57,14 @@ public class ParseUtil {
   /** Parser timeout set to 30 sec by default. Set -1 to deactivate **/
   private int maxParseTime = 30;
   private ExecutorService executorService;
+  /** run parsers in the calling thread, see {@link #setParseInCallerThread} */
+  private boolean parseInCallerThread = false;
+  /** interrupts parses run in the calling thread when the timeout is hit */
+  private static ScheduledThreadPoolExecutor watchdog;
+  /** number of parses cancelled because they exceeded the timeout */
+  private final AtomicLong timeouts = new AtomicLong(0);
+  /** number of calls and cumulative time (nanoseconds) per parser */
+  private final Map<String, LongAdder[]> parserStats = new ConcurrentHashMap<>();
 
   /**
    * 
@@ -57,8 +73,18 @@ public class ParseUtil {
   public ParseUtil(Configuration conf) {
     this.parserFactory = new ParserFactory(conf);
     maxParseTime = conf.getInt("parser.timeout", 30);
-    executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
-        .setNameFormat("parse-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Run the parsers in the thread calling {@link #parse(Content)} instead of
+   * a pool of parse threads. A parser exceeding <code>parser.timeout</code>
+   * is interrupted; if it does not react on the interrupt, the calling thread
+   * stays busy until the parser returns. In any case no threads are left
+   * running in the background, so the number of concurrent parses is bounded
+   * by the number of calling threads.
+   */
+  public void setParseInCallerThread(boolean parseInCallerThread) {
+    this.parseInCallerThread = parseInCallerThread;
   }
 
   /**
@@ -93,10 +119,12 @@ public class ParseUtil {
         LOG.debug("Parsing [" + content.getUrl() + "] with [" + parsers[i]
             + "]");
       }
+      long start = System.nanoTime();
       if (maxParseTime != -1)
         parseResult = runParser(parsers[i], content);
       else
         parseResult = parsers[i].getParse(content);
+      record(parsers[i], System.nanoTime() - start);
 
       if (parseResult != null && !parseResult.isEmpty())
         return parseResult;
@@ -148,10 +176,12 @@ public class ParseUtil {
     }
 
     ParseResult parseResult = null;
+    long start = System.nanoTime();
     if (maxParseTime != -1)
       parseResult = runParser(p, content);
     else
       parseResult = p.getParse(content);
+    record(p, System.nanoTime() - start);
     if (parseResult != null && !parseResult.isEmpty()) {
       return parseResult;
     } else {
@@ -165,12 +195,64 @@ public class ParseUtil {
     }
   }
 
-  private ParseResult runParser(Parser p, Content content) {
+  /**
+   * @return number of parses cancelled because they took longer than
+   *         <code>parser.timeout</code>
+   */
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  private void record(Parser parser, long nanos) {
+    LongAdder[] stats = parserStats.computeIfAbsent(parser.getClass()
+        .getSimpleName(), k -> new LongAdder[] { new LongAdder(),
+        new LongAdder() });
+    stats[0].increment();
+    stats[1].add(nanos);
+  }
+
+  /**
+   * @return the number of calls and the cumulative time in milliseconds per
+   *         parser (by class name), since this ParseUtil was created
+   */
+  public Map<String, long[]> getParserStats() {
+    Map<String, long[]> result = new TreeMap<>();
+    for (Map.Entry<String, LongAdder[]> entry : parserStats.entrySet()) {
+      result.put(entry.getKey(), new long[] { entry.getValue()[0].sum(),
+          entry.getValue()[1].sum() / 1000000 });
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of documents per content type which is not mapped to
+   *         a parser and is parsed by the default parsers, see
+   *         {@link ParserFactory#getFallbackCounts()}
+   */
+  public Map<String, Long> getFallbackCounts() {
+    return parserFactory.getFallbackCounts();
+  }
+
+  ParseResult runParser(Parser p, Content content) {
+    if (parseInCallerThread) {
+      return runParserInCallerThread(p, content);
+    }
+    synchronized (this) {
+      if (executorService == null) {
+        executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("parse-%d").setDaemon(true).build());
+      }
+    }
     ParseCallable pc = new ParseCallable(p, content);
     Future<ParseResult> task = executorService.submit(pc);
     ParseResult res = null;
     try {
       res = task.get(maxParseTime, TimeUnit.SECONDS);
+    } catch (TimeoutException e) {
+      LOG.warn("Timeout parsing " + content.getUrl() + " with " + p
+          + " after " + maxParseTime + " sec.");
+      timeouts.incrementAndGet();
+      task.cancel(true);
     } catch (Exception e) {
       LOG.warn("Error parsing " + content.getUrl() + " with " + p, e);
       task.cancel(true);
@@ -180,4 +262,62 @@ public class ParseUtil {
     return res;
   }
 
+  private static synchronized ScheduledThreadPoolExecutor getWatchdog() {
+    if (watchdog == null) {
+      watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+          .setNameFormat("parse-watchdog").setDaemon(true).build());
+      watchdog.setRemoveOnCancelPolicy(true);
+    }
+    return watchdog;
+  }
+
+  private ParseResult runParserInCallerThread(Parser p, Content content) {
+    ParseInterrupter interrupter = new ParseInterrupter(Thread.currentThread());
+    ScheduledFuture<?> timer = getWatchdog().schedule(interrupter,
+        maxParseTime, TimeUnit.SECONDS);
+    ParseResult res = null;
+    try {
+      res = p.getParse(content);
+    } catch (Exception e) {
+      LOG.warn("Error parsing " + content.getUrl() + " with " + p, e);
+    } finally {
+      timer.cancel(false);
+    }
+    if (interrupter.finish()) {
+      // clear the interrupt of the watchdog
+      Thread.interrupted();
+      LOG.warn("Timeout parsing " + content.getUrl() + " with " + p
+          + " after " + maxParseTime + " sec.");
+      timeouts.incrementAndGet();
+      res = null;
+    }
+    return res;
+  }
+
+  /** Interrupts a parse unless it has finished before. */
+  private static class ParseInterrupter implements Runnable {
+
+    private final Thread thread;
+    private boolean finished = false;
+    private boolean interrupted = false;
+
+    ParseInterrupter(Thread thread) {
+      this.thread = thread;
+    }
+
+    @Override
+    public synchronized void run() {
+      if (!finished) {
+        interrupted = true;
+        thread.interrupt();
+      }
+    }
+
+    /** @return true if the parse has been interrupted */
+    synchronized boolean finish() {
+      finished = true;
+      return interrupted;
+    }
+  }
+
 }
@@ -20,9 +20,11 @@ package org.apache.nutch.parse;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 // Commons Logging imports
 import org.slf4j.Logger;
@@ -39,7 +41,12 @@ import org.apache.nutch.plugin.PluginRepository;
 import org.apache.nutch.util.MimeUtil;
 import org.apache.nutch.util.ObjectCache;
 
-/** Creates and caches {@link Parser} plugins. */
+/**
+ * Creates and caches {@link Parser} plugins. The parsers resolved for a MIME
+ * type are kept in a table shared by all factories of a configuration, so
+ * that {@link #getParsers(String, String)} is a single lookup once a type has
+ * been seen.
+ */
 public final class ParserFactory {
 
   private static final Logger LOG = LoggerFactory
@@ -52,23 +59,40 @@ public final class ParserFactory {
   private final List<Extension> EMPTY_EXTENSION_LIST = Collections
       .<Extension> emptyList();
 
+  /** Immutable list of parsers resolved for a MIME type. */
+  private static class ParserChain {
+    final Parser[] parsers;
+    /** calls falling back to the default parsers, null if not a fallback */
+    final LongAdder fallbacks;
+
+    ParserChain(Parser[] parsers, boolean fallback) {
+      this.parsers = parsers;
+      this.fallbacks = fallback ? new LongAdder() : null;
+    }
+  }
+
+  private static final ObjectCache.Key<ConcurrentHashMap<String, ParserChain>> PARSER_CHAINS = ObjectCache.Key
+      .<ConcurrentHashMap<String, ParserChain>> of(
+          ParserChain.class.getName(), ConcurrentHashMap.class);
+
   private Configuration conf;
   private ExtensionPoint extensionPoint;
   private ParsePluginList parsePluginList;
+  /** parser chains per MIME type, shared by all instances per configuration */
+  private ConcurrentHashMap<String, ParserChain> parserChains;
+
+  private static final ObjectCache.Key<ParsePluginList> PARSE_PLUGIN_LIST = ObjectCache.Key
+      .of(ParsePluginList.class.getName(), ParsePluginList.class);
 
   public ParserFactory(Configuration conf) {
     this.conf = conf;
     ObjectCache objectCache = ObjectCache.get(conf);
     this.extensionPoint = PluginRepository.get(conf).getExtensionPoint(
         Parser.X_POINT_ID);
-    this.parsePluginList = (ParsePluginList) objectCache
-        .getObject(ParsePluginList.class.getName());
-
-    if (this.parsePluginList == null) {
-      this.parsePluginList = new ParsePluginsReader().parse(conf);
-      objectCache.setObject(ParsePluginList.class.getName(),
-          this.parsePluginList);
-    }
+    this.parsePluginList = objectCache.get(PARSE_PLUGIN_LIST,
+        () -> new ParsePluginsReader().parse(conf));
+    this.parserChains = objectCache.get(PARSER_CHAINS,
+        () -> new ConcurrentHashMap<>());
 
     if (this.extensionPoint == null) {
       throw new RuntimeException("x point " + Parser.X_POINT_ID + " not found.");
@@ -108,11 +132,6 @@ public final class ParserFactory {
   public Parser[] getParsers(String contentType, String url)
       throws ParserNotFound {
 
-    List<Parser> parsers = null;
-    List<Extension> parserExts = null;
-
-    ObjectCache objectCache = ObjectCache.get(conf);
-
     // TODO once the MimeTypes is available
     // parsers = getExtensions(MimeUtils.map(contentType));
     // if (parsers != null) {
@@ -121,34 +140,95 @@ public final class ParserFactory {
     // Last Chance: Guess content-type from file url...
     // parsers = getExtensions(MimeUtils.getMimeType(url));
 
-    parserExts = getExtensions(contentType);
-    if (parserExts == null) {
+    String type = MimeUtil.cleanMimeType(contentType);
+    ParserChain chain = parserChains.get(type);
+    if (chain == null) {
+      chain = resolveParserChain(type);
+    }
+    if (chain.fallbacks != null) {
+      chain.fallbacks.increment();
+    }
+    if (chain.parsers.length == 0) {
       throw new ParserNotFound(url, contentType);
     }
+    return chain.parsers.clone();
+  }
+
+  /**
+   * Resolve the parsers of a MIME type and add them to the table of parser
+   * chains. The parsers mapped to the type in <code>parse-plugins.xml</code>
+   * or claiming to support it in their <code>plugin.xml</code> are used, if
+   * there are none, the default parsers (mapped to <code>*</code>).
+   */
+  private ParserChain resolveParserChain(String type) {
+    ObjectCache objectCache = ObjectCache.get(conf);
+
+    List<Extension> parserExts = null;
+    List<String> mapped = parsePluginList.getPluginList(type);
+    if (!DEFAULT_PLUGIN.equals(type)) {
+      parserExts = matchExtensions(mapped, extensionPoint.getExtensions(),
+          type);
+    }
+    // a fallback if neither mapped nor claimed by a specific parser
+    boolean fallback = true;
+    if (parserExts == null) {
+      parserExts = getExtensions(DEFAULT_PLUGIN);
+    } else if (mapped == null) {
+      for (Extension ext : parserExts) {
+        if (!DEFAULT_PLUGIN.equals(ext.getAttribute("contentType"))) {
+          fallback = false;
+        }
+      }
+    } else {
+      fallback = false;
+    }
+    if (fallback && parserExts != null && LOG.isInfoEnabled()) {
+      LOG.info("No parser mapped to content type " + type
+          + ", using the default parsers");
+    }
 
-    parsers = new Vector<>(parserExts.size());
-    for (Iterator<Extension> i = parserExts.iterator(); i.hasNext();) {
-      Extension ext = i.next();
-      Parser p = null;
-      try {
-        // check to see if we've cached this parser instance yet
-        p = (Parser) objectCache.getObject(ext.getId());
-        if (p == null) {
-          // go ahead and instantiate it and then cache it
-          p = (Parser) ext.getExtensionInstance();
-          objectCache.setObject(ext.getId(), p);
+    List<Parser> parsers = new ArrayList<>();
+    if (parserExts != null) {
+      for (Extension ext : parserExts) {
+        try {
+          // instantiate the parser unless cached
+          parsers.add(objectCache.get(
+              ObjectCache.Key.of(ext.getId(), Parser.class),
+              () -> (Parser) ext.getExtensionInstance()));
+        } catch (PluginRuntimeException e) {
+          if (LOG.isWarnEnabled()) {
+            LOG.warn("ParserFactory:PluginRuntimeException when "
+                + "initializing parser plugin "
+                + ext.getDescriptor().getPluginId() + " instance in getParsers "
+                + "function: attempting to continue instantiating parsers");
+          }
         }
-        parsers.add(p);
-      } catch (PluginRuntimeException e) {
-        if (LOG.isWarnEnabled()) {
-          LOG.warn("ParserFactory:PluginRuntimeException when "
-              + "initializing parser plugin "
-              + ext.getDescriptor().getPluginId() + " instance in getParsers "
-              + "function: attempting to continue instantiating parsers");
+      }
+    }
+    ParserChain chain = new ParserChain(
+        parsers.toArray(new Parser[parsers.size()]), fallback
+            && parserExts != null);
+    ParserChain previous = parserChains.putIfAbsent(type, chain);
+    return previous != null ? previous : chain;
+  }
+
+  /**
+   * @return the number of calls of {@link #getParsers(String, String)} per
+   *         content type which is not mapped to a parser and falls back to the
+   *         default parsers (usually <code>parse-tika</code>), for all
+   *         ParserFactory instances sharing the configuration
+   */
+  public Map<String, Long> getFallbackCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    for (Map.Entry<String, ParserChain> entry : parserChains.entrySet()) {
+      if (entry.getValue().fallbacks != null) {
+        long count = entry.getValue().fallbacks.sum();
+        if (count > 0) {
+          counts.put(entry.getKey(), count);
         }
       }
     }
-    return parsers.toArray(new Parser[] {});
+    return counts;
   }
 
   /**
@@ -191,24 +271,18 @@ public final class ParserFactory {
       throw new ParserNotFound("No Parser Found for id [" + id + "]");
     }
 
-    // first check the cache
-    if (objectCache.getObject(parserExt.getId()) != null) {
-      return (Parser) objectCache.getObject(parserExt.getId());
-
-      // if not found in cache, instantiate the Parser
-    } else {
-      try {
-        Parser p = (Parser) parserExt.getExtensionInstance();
-        objectCache.setObject(parserExt.getId(), p);
-        return p;
-      } catch (PluginRuntimeException e) {
-        if (LOG.isWarnEnabled()) {
-          LOG.warn("Canno initialize parser "
-              + parserExt.getDescriptor().getPluginId() + " (cause: "
-              + e.toString());
-        }
-        throw new ParserNotFound("Cannot init parser for id [" + id + "]");
+    // instantiate the Parser if not found in cache
+    final Extension ext = parserExt;
+    try {
+      return objectCache.get(ObjectCache.Key.of(ext.getId(), Parser.class),
+          () -> (Parser) ext.getExtensionInstance());
+    } catch (PluginRuntimeException e) {
+      if (LOG.isWarnEnabled()) {
+        LOG.warn("Canno initialize parser "
+            + parserExt.getDescriptor().getPluginId() + " (cause: "
+            + e.toString());
       }
+      throw new ParserNotFound("Cannot init parser for id [" + id + "]");
     }
   }
 
@@ -220,32 +294,25 @@ public final class ParserFactory {
    * @return a list of extensions to be used for this contentType. If none,
    *         returns <code>null</code>.
    */
-  @SuppressWarnings("unchecked")
   protected List<Extension> getExtensions(String contentType) {
 
     ObjectCache objectCache = ObjectCache.get(conf);
     // First of all, tries to clean the content-type
-    String type = null;
-    type = MimeUtil.cleanMimeType(contentType);
+    String type = MimeUtil.cleanMimeType(contentType);
 
-    List<Extension> extensions = (List<Extension>) objectCache.getObject(type);
+    List<Extension> extensions = objectCache.get(
+        ObjectCache.Key.<List<Extension>> of(type, List.class), () -> {
+          List<Extension> found = findExtensions(type);
+          // Put the empty extension list into cache
+          // to remember we don't know any related extension.
+          return found != null ? found : EMPTY_EXTENSION_LIST;
+        });
 
     // Just compare the reference:
     // if this is the empty list, we know we will find no extension.
     if (extensions == EMPTY_EXTENSION_LIST) {
       return null;
     }
-
-    if (extensions == null) {
-      extensions = findExtensions(type);
-      if (extensions != null) {
-        objectCache.setObject(type, extensions);
-      } else {
-        // Put the empty extension list into cache
-        // to remember we don't know any related extension.
-        objectCache.setObject(type, EMPTY_EXTENSION_LIST);
-      }
-    }
     return extensions;
   }
 
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+
+import org.apache.hadoop.conf.Configured;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the {@link PluginMetrics} as tab-separated text when the JVM exits:
+ * one line per plugin with calls, rejections, total and mean time and the
+ * latency histogram. The file is written to the directory
+ * <code>plugin.metrics.file.dir</code> (default: <code>java.io.tmpdir</code>)
+ * and named <code>plugin-metrics-&lt;pid&gt;@&lt;host&gt;.txt</code>, so that
+ * task JVMs on the same machine do not overwrite each others' metrics.
+ */
+public class FilePluginMetricsReporter extends Configured implements
+    PluginMetricsReporter {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String DIR = "plugin.metrics.file.dir";
+
+  public void register(PluginMetrics.Timer timer) {
+  }
+
+  File getFile() {
+    String dir = getConf().getTrimmed(DIR, "");
+    if (dir.isEmpty()) {
+      dir = System.getProperty("java.io.tmpdir");
+    }
+    return new File(dir, "plugin-metrics-"
+        + ManagementFactory.getRuntimeMXBean().getName() + ".txt");
+  }
+
+  public void report(Collection<PluginMetrics.Timer> timers)
+      throws IOException {
+    if (timers.isEmpty()) {
+      return;
+    }
+    File file = getFile();
+    try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+        Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))) {
+      write(timers, out);
+    }
+    LOG.info("Plugin metrics written to " + file);
+  }
+
+  static void write(Collection<PluginMetrics.Timer> timers, PrintWriter out) {
+    out.print("plugin\tcalls\trejected\ttime_ms\tmean_us");
+    for (int i = 0; i < PluginMetrics.NUM_BUCKETS; i++) {
+      long limit = PluginMetrics.getBucketLimit(i);
+      out.print(limit == Long.MAX_VALUE ? "\tmore_us" : "\tlt_" + limit + "_us");
+    }
+    out.println();
+    for (PluginMetrics.Timer timer : timers) {
+      long calls = timer.getCalls();
+      long nanos = timer.getNanos();
+      out.print(timer.getName() + "\t" + calls + "\t" + timer.getRejected()
+          + "\t" + (nanos / 1000000) + "\t"
+          + (calls == 0 ? 0 : nanos / 1000 / calls));
+      for (long count : timer.getHistogram()) {
+        out.print("\t" + count);
+      }
+      out.println();
+    }
+  }
+}
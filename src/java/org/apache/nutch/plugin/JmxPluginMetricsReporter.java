@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.plugin;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.hadoop.conf.Configured;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers an MXBean per {@link PluginMetrics.Timer} with the platform MBean
+ * server, named
+ * <code>org.apache.nutch:type=PluginMetrics,extensionPoint=&lt;extension point&gt;,name=&lt;plugin&gt;</code>.
+ * The beans expose the live values, nothing is done when the JVM exits.
+ */
+public class JmxPluginMetricsReporter extends Configured implements
+    PluginMetricsReporter {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Management interface of a plugin timer */
+  public interface PluginTimerMXBean {
+
+    long getCalls();
+
+    long getRejected();
+
+    long getTotalTimeMillis();
+
+    double getMeanTimeMicros();
+
+    /** @return calls per latency bucket, see {@link PluginMetrics#NUM_BUCKETS} */
+    long[] getHistogram();
+
+    /** @return upper bounds of the latency buckets in microseconds */
+    long[] getHistogramLimitsMicros();
+  }
+
+  static class PluginTimer implements PluginTimerMXBean {
+
+    private final PluginMetrics.Timer timer;
+
+    PluginTimer(PluginMetrics.Timer timer) {
+      this.timer = timer;
+    }
+
+    public long getCalls() {
+      return timer.getCalls();
+    }
+
+    public long getRejected() {
+      return timer.getRejected();
+    }
+
+    public long getTotalTimeMillis() {
+      return timer.getNanos() / 1000000;
+    }
+
+    public double getMeanTimeMicros() {
+      long calls = timer.getCalls();
+      return calls == 0 ? 0.0 : timer.getNanos() / 1000.0 / calls;
+    }
+
+    public long[] getHistogram() {
+      return timer.getHistogram();
+    }
+
+    public long[] getHistogramLimitsMicros() {
+      long[] limits = new long[PluginMetrics.NUM_BUCKETS];
+      for (int i = 0; i < limits.length; i++) {
+        limits[i] = PluginMetrics.getBucketLimit(i);
+      }
+      return limits;
+    }
+  }
+
+  static ObjectName getObjectName(PluginMetrics.Timer timer)
+      throws JMException {
+    return new ObjectName("org.apache.nutch:type=PluginMetrics,extensionPoint="
+        + timer.getExtensionPoint() + ",name=" + timer.getPlugin());
+  }
+
+  public void register(PluginMetrics.Timer timer) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(
+          new PluginTimer(timer), getObjectName(timer));
+    } catch (InstanceAlreadyExistsException e) {
+      // registered by a previous class loader
+    } catch (JMException e) {
+      LOG.warn("Failed to register MBean for plugin " + timer.getName()
+          + ": " + e);
+    }
+  }
+
+  public void report(Collection<PluginMetrics.Timer> timers) {
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.plugin;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Call counts, time spent, rejections and a latency histogram per plugin of
+ * the filter and normalizer chains ({@link org.apache.nutch.net.URLFilters},
+ * {@link org.apache.nutch.net.URLNormalizers},
+ * {@link org.apache.nutch.parse.HtmlParseFilters},
+ * {@link org.apache.nutch.indexer.IndexingFilters} and
+ * {@link org.apache.nutch.scoring.ScoringFilters}).
+ *
+ * <p>
+ * Metrics are only collected if <code>plugin.metrics.enabled</code> is true.
+ * A chain then holds one {@link Timer} per plugin and records every call with
+ * two calls of {@link System#nanoTime()} and a few {@link LongAdder}
+ * increments. Timers are JVM-wide and identified by the extension point and
+ * the class name of the plugin, e.g. <code>URLFilter.RegexURLFilter</code>:
+ * plugin instances of the same class created for different configurations
+ * share a timer.
+ * </p>
+ *
+ * <p>
+ * Calls, time and rejections are reported as counters of the group
+ * <code>PluginMetrics</code> by {@link #reportCounters(Reporter)}. The
+ * {@link PluginMetricsReporter}s listed in
+ * <code>plugin.metrics.reporters</code> publish all metrics including the
+ * histograms, e.g., via JMX ({@link JmxPluginMetricsReporter}) or as a file
+ * dump when the JVM exits ({@link FilePluginMetricsReporter}).
+ * </p>
+ */
+public class PluginMetrics {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String ENABLED = "plugin.metrics.enabled";
+  public static final String REPORTERS = "plugin.metrics.reporters";
+
+  public static final String COUNTER_GROUP = "PluginMetrics";
+
+  /**
+   * Number of buckets of the latency histograms. Bucket 0 counts calls taking
+   * less than 1 microsecond, bucket <i>b</i> calls taking less than
+   * 4<sup><i>b</i></sup> microseconds, the last bucket all slower calls (more
+   * than 1 second).
+   */
+  public static final int NUM_BUCKETS = 12;
+
+  /** Metrics of a single plugin */
+  public static class Timer {
+
+    private final String extensionPoint;
+    private final String plugin;
+    private final String name;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder[] histogram = new LongAdder[NUM_BUCKETS];
+
+    // values already reported as counters, guarded by TIMERS
+    private long reportedCalls = 0;
+    private long reportedMillis = 0;
+    private long reportedRejected = 0;
+
+    Timer(String extensionPoint, String plugin) {
+      this.extensionPoint = extensionPoint;
+      this.plugin = plugin;
+      this.name = extensionPoint + "." + plugin;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        histogram[i] = new LongAdder();
+      }
+    }
+
+    /**
+     * Record a call started at <code>start</code> (as returned by
+     * {@link System#nanoTime()}).
+     *
+     * @param start
+     *          start time of the call
+     * @param isRejected
+     *          whether the plugin rejected the input (URL filtered or
+     *          normalized to null, document skipped, parse failed)
+     */
+    public void record(long start, boolean isRejected) {
+      long elapsed = System.nanoTime() - start;
+      calls.increment();
+      nanos.add(elapsed);
+      histogram[bucket(elapsed)].increment();
+      if (isRejected) {
+        rejected.increment();
+      }
+    }
+
+    /** @return short name of the extension point, e.g. <code>URLFilter</code> */
+    public String getExtensionPoint() {
+      return extensionPoint;
+    }
+
+    /** @return simple class name of the plugin */
+    public String getPlugin() {
+      return plugin;
+    }
+
+    /** @return &lt;extension point&gt;.&lt;plugin&gt; */
+    public String getName() {
+      return name;
+    }
+
+    public long getCalls() {
+      return calls.sum();
+    }
+
+    public long getNanos() {
+      return nanos.sum();
+    }
+
+    public long getRejected() {
+      return rejected.sum();
+    }
+
+    /** @return number of calls per latency bucket, see {@link #NUM_BUCKETS} */
+    public long[] getHistogram() {
+      long[] counts = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        counts[i] = histogram[i].sum();
+      }
+      return counts;
+    }
+  }
+
+  private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+
+  private static final List<PluginMetricsReporter> REPORTERS_LIST = new ArrayList<>();
+
+  private static boolean reportersConfigured = false;
+
+  static int bucket(long nanos) {
+    long micros = nanos / 1000;
+    if (micros <= 0) {
+      return 0;
+    }
+    return Math.min(NUM_BUCKETS - 1,
+        1 + (63 - Long.numberOfLeadingZeros(micros)) / 2);
+  }
+
+  /**
+   * @return upper bound (exclusive) in microseconds of the latency bucket, or
+   *         {@link Long#MAX_VALUE} for the last bucket
+   */
+  public static long getBucketLimit(int bucket) {
+    if (bucket >= NUM_BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    return 1L << (2 * bucket);
+  }
+
+  /**
+   * Get the timers of a plugin chain.
+   *
+   * @param conf
+   *          configuration of the chain
+   * @param extensionPoint
+   *          id of the extension point
+   * @param plugins
+   *          plugin instances in chain order
+   * @return one timer per plugin, or null if metrics are disabled
+   */
+  public static Timer[] getTimers(Configuration conf, String extensionPoint,
+      Object[] plugins) {
+    if (!conf.getBoolean(ENABLED, false)) {
+      return null;
+    }
+    configureReporters(conf);
+    String xpoint = extensionPoint.substring(extensionPoint.lastIndexOf('.') + 1);
+    Timer[] timers = new Timer[plugins.length];
+    for (int i = 0; i < plugins.length; i++) {
+      timers[i] = getTimer(xpoint, plugins[i].getClass().getSimpleName());
+    }
+    return timers;
+  }
+
+  private static Timer getTimer(String extensionPoint, String plugin) {
+    String name = extensionPoint + "." + plugin;
+    Timer timer = TIMERS.get(name);
+    if (timer != null) {
+      return timer;
+    }
+    synchronized (REPORTERS_LIST) {
+      timer = TIMERS.get(name);
+      if (timer == null) {
+        timer = new Timer(extensionPoint, plugin);
+        TIMERS.put(name, timer);
+        for (PluginMetricsReporter reporter : REPORTERS_LIST) {
+          reporter.register(timer);
+        }
+      }
+    }
+    return timer;
+  }
+
+  private static void configureReporters(Configuration conf) {
+    synchronized (REPORTERS_LIST) {
+      if (reportersConfigured) {
+        return;
+      }
+      reportersConfigured = true;
+      for (String className : conf.getTrimmedStrings(REPORTERS)) {
+        try {
+          Class<?> clazz = conf.getClassByName(className);
+          REPORTERS_LIST.add((PluginMetricsReporter) ReflectionUtils
+              .newInstance(clazz, conf));
+        } catch (ClassNotFoundException | ClassCastException e) {
+          LOG.warn("Failed to load plugin metrics reporter " + className
+              + ": " + e);
+        }
+      }
+      if (!REPORTERS_LIST.isEmpty()) {
+        Runtime.getRuntime().addShutdownHook(
+            new Thread(PluginMetrics::report, "PluginMetrics"));
+      }
+    }
+  }
+
+  /** @return all timers of this JVM, sorted by name */
+  public static Collection<Timer> getTimers() {
+    return TIMERS.values();
+  }
+
+  /**
+   * Pass the current metrics to all configured reporters. Called when the JVM
+   * exits.
+   */
+  public static void report() {
+    synchronized (REPORTERS_LIST) {
+      for (PluginMetricsReporter reporter : REPORTERS_LIST) {
+        try {
+          reporter.report(getTimers());
+        } catch (Exception e) {
+          LOG.warn("Failed to report plugin metrics: " + e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Increment the counters by the calls, time (milliseconds) and rejections
+   * per plugin since the last call. Does nothing if metrics are disabled.
+   */
+  public static void reportCounters(Reporter reporter) {
+    if (TIMERS.isEmpty() || reporter == null) {
+      return;
+    }
+    synchronized (TIMERS) {
+      for (Timer timer : TIMERS.values()) {
+        long calls = timer.getCalls();
+        if (calls == timer.reportedCalls) {
+          continue;
+        }
+        reporter.incrCounter(COUNTER_GROUP, timer.name + "_calls", calls
+            - timer.reportedCalls);
+        timer.reportedCalls = calls;
+        long millis = timer.getNanos() / 1000000;
+        if (millis > timer.reportedMillis) {
+          reporter.incrCounter(COUNTER_GROUP, timer.name + "_time_ms", millis
+              - timer.reportedMillis);
+          timer.reportedMillis = millis;
+        }
+        long rejected = timer.getRejected();
+        if (rejected > timer.reportedRejected) {
+          reporter.incrCounter(COUNTER_GROUP, timer.name + "_rejected",
+              rejected - timer.reportedRejected);
+          timer.reportedRejected = rejected;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.plugin;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.hadoop.conf.Configurable;
+
+/**
+ * Publishes the {@link PluginMetrics} of a JVM. Reporters are listed in
+ * <code>plugin.metrics.reporters</code> and configured once per JVM with the
+ * configuration of the first instrumented plugin chain.
+ */
+public interface PluginMetricsReporter extends Configurable {
+
+  /** Called once for every timer when it is created. */
+  void register(PluginMetrics.Timer timer);
+
+  /**
+   * Report the current values of all timers. Called when the JVM exits.
+   *
+   * @param timers
+   *          all timers, sorted by name
+   */
+  void report(Collection<PluginMetrics.Timer> timers) throws IOException;
+}
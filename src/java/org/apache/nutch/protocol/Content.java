@@ -28,13 +28,17 @@ import java.util.zip.InflaterInputStream;
 
 //Hadoop imports
 import org.apache.commons.cli.Options;
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.ArrayFile;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.VersionMismatchException;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.util.GenericOptionsParser;
 
 //Nutch imports
@@ -42,10 +46,25 @@ import org.apache.nutch.metadata.Metadata;
 import org.apache.nutch.util.MimeUtil;
 import org.apache.nutch.util.NutchConfiguration;
 
-public final class Content implements Writable {
+/**
+ * The content of a fetched document together with the response metadata.
+ * 
+ * <p>
+ * If <code>content.lazy</code> is enabled in the configuration passed via
+ * {@link #setConf(Configuration)} (or {@link #setLazy(boolean)} is called)
+ * the serialized record is kept as read and decoded only when a field is
+ * accessed. A record which is not modified is written back as read. Jobs
+ * which only route or count records (e.g. the SegmentMerger) never decode
+ * them.
+ * </p>
+ */
+public final class Content implements Writable, Configurable {
 
   public static final String DIR_NAME = "content";
 
+  /** keep read records serialized until a field is accessed */
+  public static final String LAZY = "content.lazy";
+
   private final static int VERSION = -1;
 
   private int version;
@@ -62,6 +81,19 @@ public final class Content implements Writable {
 
   private MimeUtil mimeTypes;
 
+  private Configuration conf;
+
+  private boolean lazy = false;
+
+  /**
+   * serialized record (without version) in lazy mode, valid as long as the
+   * record is not modified
+   */
+  private DataOutputBuffer raw = null;
+
+  /** fields are not yet decoded from {@link #raw} */
+  private boolean encoded = false;
+
   public Content() {
     metadata = new Metadata();
   }
@@ -83,7 +115,7 @@ public final class Content implements Writable {
     this.content = content;
     this.metadata = metadata;
 
-    this.mimeTypes = new MimeUtil(conf);
+    this.mimeTypes = MimeUtil.get(conf);
     this.contentType = getContentType(contentType, url, content);
   }
 
@@ -128,11 +160,19 @@ public final class Content implements Writable {
 
   public final void readFields(DataInput in) throws IOException {
     metadata.clear();
+    encoded = false;
+    if (raw != null) {
+      raw.reset();
+    }
     int sizeOrVersion = in.readInt();
     if (sizeOrVersion < 0) { // version
       version = sizeOrVersion;
       switch (version) {
       case VERSION:
+        if (lazy) {
+          readRaw(in);
+          break;
+        }
         url = Text.readString(in);
         base = Text.readString(in);
 
@@ -155,8 +195,74 @@ public final class Content implements Writable {
     }
   }
 
+  /**
+   * Copy the record into {@link #raw}, the structure is followed only to
+   * find the end of the record.
+   */
+  private void readRaw(DataInput in) throws IOException {
+    if (raw == null) {
+      raw = new DataOutputBuffer();
+    }
+    copyString(in); // url
+    copyString(in); // base
+    int length = in.readInt(); // content
+    raw.writeInt(length);
+    raw.write(in, length);
+    copyString(in); // contentType
+    int keys = in.readInt(); // metadata
+    raw.writeInt(keys);
+    for (int i = 0; i < keys; i++) {
+      copyString(in);
+      int values = in.readInt();
+      raw.writeInt(values);
+      for (int j = 0; j < values; j++) {
+        copyString(in);
+      }
+    }
+    encoded = true;
+  }
+
+  private void copyString(DataInput in) throws IOException {
+    int length = WritableUtils.readVInt(in);
+    WritableUtils.writeVInt(raw, length);
+    raw.write(in, length);
+  }
+
+  /** Decode the fields of a record read in lazy mode. */
+  private void decode() {
+    if (!encoded) {
+      return;
+    }
+    encoded = false;
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(raw.getData(), raw.getLength());
+    try {
+      url = Text.readString(in);
+      base = Text.readString(in);
+      content = new byte[in.readInt()];
+      in.readFully(content);
+      contentType = Text.readString(in);
+      metadata.readFields(in);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to decode content", e);
+    }
+  }
+
+  /** The record is (or may be) modified, it must be written from the fields. */
+  private void modified() {
+    decode();
+    if (raw != null) {
+      raw.reset();
+    }
+  }
+
   public final void write(DataOutput out) throws IOException {
     out.writeInt(VERSION);
+    if (raw != null && raw.getLength() > 0) {
+      // not modified since read
+      out.write(raw.getData(), 0, raw.getLength());
+      return;
+    }
 
     Text.writeString(out, url); // write url
     Text.writeString(out, base); // write base
@@ -181,6 +287,7 @@ public final class Content implements Writable {
 
   /** The url fetched. */
   public String getUrl() {
+    decode();
     return url;
   }
 
@@ -189,15 +296,18 @@ public final class Content implements Writable {
    * different from url if the request redirected.
    */
   public String getBaseUrl() {
+    decode();
     return base;
   }
 
-  /** The binary content retrieved. */
+  /** The binary content retrieved. The array must not be modified. */
   public byte[] getContent() {
+    decode();
     return content;
   }
 
   public void setContent(byte[] content) {
+    modified();
     this.content = content;
   }
 
@@ -208,28 +318,58 @@ public final class Content implements Writable {
    *      http://www.iana.org/assignments/media-types/</a>
    */
   public String getContentType() {
+    decode();
     return contentType;
   }
 
   public void setContentType(String contentType) {
+    modified();
     this.contentType = contentType;
   }
 
   /** Other protocol-specific data. */
   public Metadata getMetadata() {
+    // the metadata may be modified by the caller
+    modified();
     return metadata;
   }
 
   /** Other protocol-specific data. */
   public void setMetadata(Metadata metadata) {
+    modified();
     this.metadata = metadata;
   }
 
+  /**
+   * Keep records read by {@link #readFields(DataInput)} serialized until a
+   * field is accessed.
+   */
+  public void setLazy(boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  public boolean isLazy() {
+    return lazy;
+  }
+
+  public Configuration getConf() {
+    return conf;
+  }
+
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    if (conf != null) {
+      this.lazy = conf.getBoolean(LAZY, false);
+    }
+  }
+
   public boolean equals(Object o) {
     if (!(o instanceof Content)) {
       return false;
     }
     Content that = (Content) o;
+    this.decode();
+    that.decode();
     return this.url.equals(that.url) && this.base.equals(that.base)
         && Arrays.equals(this.getContent(), that.getContent())
         && this.contentType.equals(that.contentType)
@@ -237,6 +377,7 @@ public final class Content implements Writable {
   }
 
   public String toString() {
+    decode();
     StringBuffer buffer = new StringBuffer();
 
     buffer.append("Version: " + version + "\n");
@@ -65,34 +65,29 @@ public class ProtocolFactory {
    * @throws ProtocolNotFound
    *           when Protocol can not be found for urlString
    */
-  public synchronized Protocol getProtocol(String urlString)
-      throws ProtocolNotFound {
-    ObjectCache objectCache = ObjectCache.get(conf);
+  public Protocol getProtocol(String urlString) throws ProtocolNotFound {
+    String protocolName;
     try {
-      URL url = new URL(urlString);
-      String protocolName = url.getProtocol();
-      if (protocolName == null)
-        throw new ProtocolNotFound(urlString);
-
-      String cacheId = Protocol.X_POINT_ID + protocolName;
-      Protocol protocol = (Protocol) objectCache.getObject(cacheId);
-      if (protocol != null) {
-        return protocol;
-      }
-
-      Extension extension = findExtension(protocolName);
-      if (extension == null) {
-        throw new ProtocolNotFound(protocolName);
-      }
-
-      protocol = (Protocol) extension.getExtensionInstance();
-      objectCache.setObject(cacheId, protocol);
-      return protocol;
+      protocolName = new URL(urlString).getProtocol();
     } catch (MalformedURLException e) {
       throw new ProtocolNotFound(urlString, e.toString());
-    } catch (PluginRuntimeException e) {
-      throw new ProtocolNotFound(urlString, e.toString());
     }
+    if (protocolName == null)
+      throw new ProtocolNotFound(urlString);
+
+    String cacheId = Protocol.X_POINT_ID + protocolName;
+    return ObjectCache.get(conf).get(
+        ObjectCache.Key.of(cacheId, Protocol.class), () -> {
+          try {
+            Extension extension = findExtension(protocolName);
+            if (extension == null) {
+              throw new ProtocolNotFound(protocolName);
+            }
+            return (Protocol) extension.getExtensionInstance();
+          } catch (PluginRuntimeException e) {
+            throw new ProtocolNotFound(urlString, e.toString());
+          }
+        });
   }
 
   private Extension findExtension(String name) throws PluginRuntimeException {
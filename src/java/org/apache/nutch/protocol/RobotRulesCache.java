@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import crawlercommons.robots.BaseRobotRules;
+
+/**
+ * Size-bounded concurrent cache for robot rules. Every entry expires after a
+ * time to live, by default <code>http.robots.cache.ttl</code> seconds, and at
+ * most <code>http.robots.cache.size</code> entries are kept: if the cache is
+ * full the entries cached first are evicted.
+ *
+ * <p>
+ * If <code>http.robots.cache.snapshot</code> points to a {@link MapFile}, the
+ * cache is filled from the snapshot when the first robots.txt parser is
+ * configured. At the end of a fetch task the content of the cache is written
+ * to a file of its own by {@link #saveSnapshot(Configuration)}, and after the
+ * job the driver merges these files into the snapshot by
+ * {@link #mergeSnapshots(Configuration)}. Successive fetch jobs then do not
+ * need to fetch robots.txt again for hosts whose rules are not yet expired.
+ */
+public class RobotRulesCache {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String CACHE_SIZE = "http.robots.cache.size";
+  public static final String CACHE_TTL = "http.robots.cache.ttl";
+  public static final String CACHE_TTL_MIN = "http.robots.cache.ttl.min";
+  public static final String CACHE_SNAPSHOT = "http.robots.cache.snapshot";
+
+  private static class Entry {
+    final String key;
+    final BaseRobotRules rules;
+    final long expires;
+
+    Entry(String key, BaseRobotRules rules, long expires) {
+      this.key = key;
+      this.rules = rules;
+      this.expires = expires;
+    }
+  }
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  /** entries in the order they have been added, used for eviction */
+  private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger(0);
+
+  private volatile int maxSize = 50000;
+  private volatile long ttl = 24 * 3600 * 1000L;
+  private volatile long minTtl = 3600 * 1000L;
+
+  /** snapshot already loaded (or failed to load) */
+  private String loadedSnapshot = null;
+  /** entries added since the snapshot has been loaded or saved */
+  private volatile boolean modified = false;
+
+  /**
+   * Apply the cache settings and fill the cache from the configured snapshot
+   * unless this has already been done.
+   */
+  public void setConf(Configuration conf) {
+    maxSize = conf.getInt(CACHE_SIZE, 50000);
+    ttl = conf.getLong(CACHE_TTL, 24 * 3600) * 1000L;
+    minTtl = Math.min(conf.getLong(CACHE_TTL_MIN, 3600) * 1000L, ttl);
+    String snapshot = conf.get(CACHE_SNAPSHOT, "").trim();
+    if (snapshot.isEmpty()) {
+      return;
+    }
+    synchronized (this) {
+      if (snapshot.equals(loadedSnapshot)) {
+        return;
+      }
+      loadedSnapshot = snapshot;
+    }
+    try {
+      loadSnapshot(conf, new Path(snapshot));
+    } catch (IOException e) {
+      LOG.warn("Failed to load robots.txt cache snapshot {}: {}", snapshot,
+          e.toString());
+    }
+  }
+
+  /**
+   * @return the cached rules or null if there are none or they have expired
+   */
+  public BaseRobotRules get(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expires <= System.currentTimeMillis()) {
+      entries.remove(key, entry);
+      return null;
+    }
+    return entry.rules;
+  }
+
+  /** Cache rules with the default time to live. */
+  public void put(String key, BaseRobotRules rules) {
+    put(key, rules, -1);
+  }
+
+  /**
+   * Cache rules for a given time. The time to live is bounded by
+   * <code>http.robots.cache.ttl.min</code> and <code>http.robots.cache.ttl</code>
+   * but is never shorter than the crawl-delay of the rules, so that robots.txt
+   * is not requested more often than the pages of the site.
+   *
+   * @param ttl
+   *          time to live in milliseconds, e.g., derived from the HTTP cache
+   *          headers of the robots.txt response, or -1 to use the default
+   */
+  public void put(String key, BaseRobotRules rules, long ttl) {
+    if (ttl < 0) {
+      ttl = this.ttl;
+    }
+    ttl = Math.max(minTtl, Math.min(this.ttl, ttl));
+    if (rules.getCrawlDelay() > ttl) {
+      ttl = rules.getCrawlDelay();
+    }
+    add(new Entry(key, rules, System.currentTimeMillis() + ttl));
+    modified = true;
+  }
+
+  private void add(Entry entry) {
+    entries.put(entry.key, entry);
+    insertionOrder.add(entry);
+    queued.incrementAndGet();
+    while (entries.size() > maxSize) {
+      Entry eldest = insertionOrder.poll();
+      if (eldest == null) {
+        break;
+      }
+      queued.decrementAndGet();
+      // no-op if the entry has been replaced in the meantime
+      entries.remove(eldest.key, eldest);
+    }
+    if (queued.get() > 2 * maxSize) {
+      // drop replaced and expired entries from the eviction queue
+      long now = System.currentTimeMillis();
+      Iterator<Entry> it = insertionOrder.iterator();
+      while (it.hasNext()) {
+        Entry e = it.next();
+        if (entries.get(e.key) != e
+            || (e.expires <= now && entries.remove(e.key, e))) {
+          it.remove();
+          queued.decrementAndGet();
+        }
+      }
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public void clear() {
+    entries.clear();
+    insertionOrder.clear();
+    queued.set(0);
+  }
+
+  /**
+   * Fill the cache with all entries of a snapshot which have not yet expired.
+   */
+  public void loadSnapshot(Configuration conf, Path snapshot)
+      throws IOException {
+    FileSystem fs = snapshot.getFileSystem(conf);
+    if (!fs.exists(snapshot)) {
+      LOG.info("robots.txt cache snapshot {} does not exist", snapshot);
+      return;
+    }
+    long now = System.currentTimeMillis();
+    int loaded = 0;
+    Text key = new Text();
+    BytesWritable value = new BytesWritable();
+    try (MapFile.Reader reader = new MapFile.Reader(snapshot, conf)) {
+      while (reader.next(key, value)) {
+        try (ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(value.getBytes(), 0, value.getLength()))) {
+          long expires = in.readLong();
+          if (expires <= now) {
+            continue;
+          }
+          BaseRobotRules rules = (BaseRobotRules) in.readObject();
+          String k = key.toString();
+          if (!entries.containsKey(k)) {
+            add(new Entry(k, rules, expires));
+            loaded++;
+          }
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        }
+      }
+    }
+    LOG.info("Loaded {} robots.txt rules from cache snapshot {}", loaded,
+        snapshot);
+  }
+
+  /**
+   * Write all entries which have not yet expired to a snapshot. The snapshot
+   * is written to a temporary location first and then replaces a previous
+   * snapshot.
+   */
+  public void saveSnapshot(Configuration conf, Path snapshot)
+      throws IOException {
+    // MapFile requires sorted keys
+    Map<String, Entry> sorted = new TreeMap<>(entries);
+    FileSystem fs = snapshot.getFileSystem(conf);
+    Path tmp = new Path(snapshot.getParent(), snapshot.getName() + "-"
+        + Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
+    long now = System.currentTimeMillis();
+    int saved = 0;
+    try (MapFile.Writer writer = new MapFile.Writer(conf, tmp,
+        MapFile.Writer.keyClass(Text.class),
+        MapFile.Writer.valueClass(BytesWritable.class))) {
+      Text key = new Text();
+      for (Entry entry : sorted.values()) {
+        if (entry.expires <= now) {
+          continue;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+          out.writeLong(entry.expires);
+          out.writeObject(entry.rules);
+        }
+        key.set(entry.key);
+        writer.append(key, new BytesWritable(bytes.toByteArray()));
+        saved++;
+      }
+    }
+    if (fs.exists(snapshot)) {
+      fs.delete(snapshot, true);
+    }
+    if (!fs.rename(tmp, snapshot)) {
+      fs.delete(tmp, true);
+      throw new IOException("Failed to rename " + tmp + " to " + snapshot);
+    }
+    modified = false;
+    LOG.info("Saved {} robots.txt rules to cache snapshot {}", saved, snapshot);
+  }
+
+  /**
+   * @return the directory holding the files written by the tasks of a job
+   *         until they are merged into the snapshot
+   */
+  static Path getTaskSnapshots(Path snapshot) {
+    return new Path(snapshot.getParent(), snapshot.getName() + "-tasks");
+  }
+
+  /**
+   * Save the cache if rules have been added since the snapshot configured by
+   * <code>http.robots.cache.snapshot</code> has been loaded. Every task
+   * attempt writes a file of its own next to the snapshot, the files are
+   * merged into the snapshot by {@link #mergeSnapshots(Configuration)}.
+   * Errors are logged but not thrown.
+   */
+  public void saveSnapshot(Configuration conf) {
+    String snapshot = conf.get(CACHE_SNAPSHOT, "").trim();
+    if (snapshot.isEmpty() || !modified) {
+      return;
+    }
+    String attempt = conf.get("mapreduce.task.attempt.id");
+    if (attempt == null) {
+      attempt = Integer.toString(new Random().nextInt(Integer.MAX_VALUE));
+    }
+    Path part = new Path(getTaskSnapshots(new Path(snapshot)), "part-"
+        + attempt);
+    try {
+      saveSnapshot(conf, part);
+    } catch (IOException e) {
+      LOG.warn("Failed to save robots.txt cache snapshot {}: {}", part,
+          e.toString());
+    }
+  }
+
+  /**
+   * Merge the files written by the tasks of a job into the snapshot
+   * configured by <code>http.robots.cache.snapshot</code>. The snapshot and
+   * the files are sorted and merged on the fly, of rules cached by multiple
+   * tasks those expiring last are kept. To be called by the job driver after
+   * the job. Errors are logged but not thrown.
+   */
+  public static void mergeSnapshots(Configuration conf) {
+    String snapshot = conf.get(CACHE_SNAPSHOT, "").trim();
+    if (snapshot.isEmpty()) {
+      return;
+    }
+    try {
+      mergeSnapshots(conf, new Path(snapshot));
+    } catch (IOException e) {
+      LOG.warn("Failed to merge robots.txt cache snapshot {}: {}", snapshot,
+          e.toString());
+    }
+  }
+
+  static void mergeSnapshots(Configuration conf, Path snapshot)
+      throws IOException {
+    FileSystem fs = snapshot.getFileSystem(conf);
+    Path tasks = getTaskSnapshots(snapshot);
+    if (!fs.exists(tasks)) {
+      return;
+    }
+    List<Path> inputs = new ArrayList<>();
+    if (fs.exists(snapshot)) {
+      inputs.add(snapshot);
+    }
+    for (FileStatus stat : fs.listStatus(tasks)) {
+      if (stat.isDirectory() && stat.getPath().getName().startsWith("part-")) {
+        inputs.add(stat.getPath());
+      }
+    }
+    Path tmp = new Path(snapshot.getParent(), snapshot.getName() + "-"
+        + Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
+    long now = System.currentTimeMillis();
+    int saved = 0;
+    MapFile.Reader[] readers = new MapFile.Reader[inputs.size()];
+    Text[] keys = new Text[readers.length];
+    BytesWritable[] values = new BytesWritable[readers.length];
+    boolean[] hasNext = new boolean[readers.length];
+    try (MapFile.Writer writer = new MapFile.Writer(conf, tmp,
+        MapFile.Writer.keyClass(Text.class),
+        MapFile.Writer.valueClass(BytesWritable.class))) {
+      for (int i = 0; i < readers.length; i++) {
+        readers[i] = new MapFile.Reader(inputs.get(i), conf);
+        keys[i] = new Text();
+        values[i] = new BytesWritable();
+        hasNext[i] = readers[i].next(keys[i], values[i]);
+      }
+      Text key = new Text();
+      BytesWritable value = new BytesWritable();
+      while (true) {
+        int first = -1;
+        for (int i = 0; i < readers.length; i++) {
+          if (hasNext[i]
+              && (first == -1 || keys[i].compareTo(keys[first]) < 0)) {
+            first = i;
+          }
+        }
+        if (first == -1) {
+          break;
+        }
+        key.set(keys[first]);
+        long expires = 0;
+        for (int i = 0; i < readers.length; i++) {
+          if (hasNext[i] && keys[i].equals(key)) {
+            long e = getExpires(values[i]);
+            if (e > expires) {
+              expires = e;
+              value.set(values[i]);
+            }
+            hasNext[i] = readers[i].next(keys[i], values[i]);
+          }
+        }
+        if (expires > now) {
+          writer.append(key, value);
+          saved++;
+        }
+      }
+    } finally {
+      for (MapFile.Reader reader : readers) {
+        if (reader != null) {
+          reader.close();
+        }
+      }
+    }
+    // only the job driver replaces the snapshot
+    if (fs.exists(snapshot)) {
+      fs.delete(snapshot, true);
+    }
+    if (!fs.rename(tmp, snapshot)) {
+      fs.delete(tmp, true);
+      throw new IOException("Failed to rename " + tmp + " to " + snapshot);
+    }
+    fs.delete(tasks, true);
+    LOG.info("Merged {} robots.txt cache files, saved {} rules to cache snapshot {}",
+        inputs.size(), saved, snapshot);
+  }
+
+  private static long getExpires(BytesWritable value) throws IOException {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+        value.getBytes(), 0, value.getLength()))) {
+      return in.readLong();
+    }
+  }
+}
@@ -27,7 +27,6 @@ import java.lang.invoke.MethodHandles;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -64,8 +63,11 @@ public abstract class RobotRulesParser implements Tool {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
-  protected static final Hashtable<String, BaseRobotRules> CACHE = new Hashtable<>();
-  
+  /**
+   * Cache of robot rules shared by all parsers, see {@link RobotRulesCache}.
+   */
+  protected static final RobotRulesCache CACHE = new RobotRulesCache();
+
   /**
    * A {@link BaseRobotRules} object appropriate for use when the
    * {@code robots.txt} file is empty or missing; all requests are allowed.
@@ -149,6 +151,26 @@ public abstract class RobotRulesParser implements Tool {
         LOG.info("Whitelisted hosts: " + whiteList);
       }
     }
+
+    CACHE.setConf(conf);
+  }
+
+  /**
+   * Save the cached robot rules of a task next to the snapshot configured by
+   * <code>http.robots.cache.snapshot</code> (if any) so that subsequent jobs
+   * are able to reuse them, see {@link #mergeCacheSnapshots(Configuration)}.
+   */
+  public static void saveCacheSnapshot(Configuration conf) {
+    CACHE.saveSnapshot(conf);
+  }
+
+  /**
+   * Merge the robot rules saved by the tasks of a job into the snapshot
+   * configured by <code>http.robots.cache.snapshot</code> (if any). Called by
+   * the job driver once the job has finished.
+   */
+  public static void mergeCacheSnapshots(Configuration conf) {
+    RobotRulesCache.mergeSnapshots(conf);
   }
 
   /**
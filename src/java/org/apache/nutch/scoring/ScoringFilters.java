@@ -29,6 +29,7 @@ import org.apache.nutch.crawl.Inlinks;
 import org.apache.nutch.indexer.NutchDocument;
 import org.apache.nutch.parse.Parse;
 import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.plugin.PluginMetrics;
 import org.apache.nutch.plugin.PluginRepository;
 import org.apache.nutch.protocol.Content;
 
@@ -40,19 +41,25 @@ import org.apache.nutch.protocol.Content;
 public class ScoringFilters extends Configured implements ScoringFilter {
 
   private ScoringFilter[] filters;
+  private PluginMetrics.Timer[] timers;
 
   public ScoringFilters(Configuration conf) {
     super(conf);
     this.filters = (ScoringFilter[]) PluginRepository.get(conf)
         .getOrderedPlugins(ScoringFilter.class, ScoringFilter.X_POINT_ID,
             "scoring.filter.order");
+    this.timers = PluginMetrics.getTimers(conf, ScoringFilter.X_POINT_ID,
+        filters);
   }
 
   /** Calculate a sort value for Generate. */
   public float generatorSortValue(Text url, CrawlDatum datum, float initSort)
       throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       initSort = this.filters[i].generatorSortValue(url, datum, initSort);
+      if (timers != null)
+        timers[i].record(start, false);
     }
     return initSort;
   }
@@ -61,7 +68,10 @@ public class ScoringFilters extends Configured implements ScoringFilter {
   public void initialScore(Text url, CrawlDatum datum)
       throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       this.filters[i].initialScore(url, datum);
+      if (timers != null)
+        timers[i].record(start, false);
     }
   }
 
@@ -69,7 +79,10 @@ public class ScoringFilters extends Configured implements ScoringFilter {
   public void injectedScore(Text url, CrawlDatum datum)
       throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       this.filters[i].injectedScore(url, datum);
+      if (timers != null)
+        timers[i].record(start, false);
     }
   }
 
@@ -77,21 +90,30 @@ public class ScoringFilters extends Configured implements ScoringFilter {
   public void updateDbScore(Text url, CrawlDatum old, CrawlDatum datum,
       List<CrawlDatum> inlinked) throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       this.filters[i].updateDbScore(url, old, datum, inlinked);
+      if (timers != null)
+        timers[i].record(start, false);
     }
   }
 
   public void passScoreBeforeParsing(Text url, CrawlDatum datum, Content content)
       throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       this.filters[i].passScoreBeforeParsing(url, datum, content);
+      if (timers != null)
+        timers[i].record(start, false);
     }
   }
 
   public void passScoreAfterParsing(Text url, Content content, Parse parse)
       throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       this.filters[i].passScoreAfterParsing(url, content, parse);
+      if (timers != null)
+        timers[i].record(start, false);
     }
   }
 
@@ -99,8 +121,11 @@ public class ScoringFilters extends Configured implements ScoringFilter {
       ParseData parseData, Collection<Entry<Text, CrawlDatum>> targets,
       CrawlDatum adjust, int allCount) throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       adjust = this.filters[i].distributeScoreToOutlinks(fromUrl, parseData,
           targets, adjust, allCount);
+      if (timers != null)
+        timers[i].record(start, false);
     }
     return adjust;
   }
@@ -109,8 +134,11 @@ public class ScoringFilters extends Configured implements ScoringFilter {
       CrawlDatum fetchDatum, Parse parse, Inlinks inlinks, float initScore)
       throws ScoringFilterException {
     for (int i = 0; i < this.filters.length; i++) {
+      long start = timers == null ? 0 : System.nanoTime();
       initScore = this.filters[i].indexerScore(url, doc, dbDatum, fetchDatum,
           parse, inlinks, initScore);
+      if (timers != null)
+        timers[i].record(start, false);
     }
     return initScore;
   }
@@ -0,0 +1,599 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.scoring.webgraph;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.util.FSUtils;
+import org.apache.nutch.util.HadoopFSUtil;
+import org.apache.nutch.util.TimingUtil;
+import org.apache.nutch.util.URLUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * An alternative engine for {@link LinkRank} which runs the link analysis in
+ * the memory of a single machine instead of a sequence of MapReduce jobs. It
+ * is enabled by <code>link.analyze.in.memory</code> and gives the same scores
+ * as the MapReduce engine.
+ * </p>
+ * <p>
+ * The NodeDb and the OutlinkDb of the {@link WebGraph} are loaded into
+ * primitive arrays: urls are mapped to int ids by a 64-bit fingerprint, the
+ * inlinks are held in compressed sparse row form (the inlinking node ids of
+ * node <i>i</i> are found at <code>inlinks[offsets[i]]</code> to
+ * <code>inlinks[offsets[i + 1] - 1]</code>). Inlinks from duplicate pages or
+ * domains (<code>link.ignore.limit.page</code>,
+ * <code>link.ignore.limit.domain</code>) are removed while loading. Every
+ * iteration then computes the scores of all nodes in parallel on a fork/join
+ * pool of <code>link.analyze.in.memory.threads</code> threads, with
+ * <code>link.analyze.delta.iterations</code> only for the nodes with inlinks
+ * from nodes whose score changed. The final scores are written into the
+ * NodeDb, keeping the partitioning of the input.
+ * </p>
+ */
+public class InMemoryLinkRank extends Configured {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String IN_MEMORY = "link.analyze.in.memory";
+  public static final String THREADS = "link.analyze.in.memory.threads";
+  public static final String DELTA_ITERATIONS = "link.analyze.delta.iterations";
+
+  /** minimum number of nodes processed by a single fork/join task */
+  private static final int GRAIN = 4096;
+
+  private ForkJoinPool pool;
+
+  // the graph
+  private int numNodes;
+  private FingerprintTable ids;
+  private int[] numOutlinks;
+  private int[] offsets;
+  private int[] inlinks;
+  private int[] outOffsets;
+  private int[] outlinks;
+
+  // fingerprints of the domain and the page of each node, while loading
+  private long[] domains;
+  private long[] pages;
+
+  public InMemoryLinkRank(Configuration conf) {
+    super(conf);
+  }
+
+  /**
+   * Runs the link analysis on a WebGraph and replaces its NodeDb with the
+   * scored nodes.
+   *
+   * @param webGraphDb
+   *          The WebGraph to run link analysis on.
+   *
+   * @throws IOException
+   *           If an error occurs during link analysis.
+   */
+  public void analyze(Path webGraphDb) throws IOException {
+
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    long start = System.currentTimeMillis();
+    LOG.info("Analysis: starting in memory at " + sdf.format(start));
+
+    Configuration conf = getConf();
+    Path linkRank = new Path(webGraphDb, "linkrank");
+    FileSystem fs = linkRank.getFileSystem(conf);
+    Path wgOutlinkDb = new Path(webGraphDb, WebGraph.OUTLINK_DIR);
+    Path wgNodeDb = new Path(webGraphDb, WebGraph.NODE_DIR);
+    Path nodeDb = new Path(linkRank, WebGraph.NODE_DIR);
+
+    int threads = conf.getInt(THREADS, 0);
+    if (threads <= 0) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    pool = new ForkJoinPool(threads);
+    try {
+      loadNodes(fs, wgNodeDb);
+      if (numNodes == 0) {
+        throw new IOException("No links to process, is the webgraph empty?");
+      }
+      loadInlinks(fs, wgOutlinkDb);
+      float[] scores = iterate();
+
+      LOG.info("Analysis: Installing web graph nodes");
+      if (fs.exists(linkRank)) {
+        fs.delete(linkRank, true);
+      }
+      writeNodes(fs, wgNodeDb, nodeDb, scores);
+      FSUtils.replace(fs, wgNodeDb, nodeDb, true);
+      fs.delete(linkRank, true);
+    } finally {
+      pool.shutdown();
+      ids = null;
+      numOutlinks = null;
+      offsets = null;
+      inlinks = null;
+      outOffsets = null;
+      outlinks = null;
+    }
+
+    long end = System.currentTimeMillis();
+    LOG.info("Analysis: finished at " + sdf.format(end) + ", elapsed: "
+        + TimingUtil.elapsedTime(start, end));
+  }
+
+  /** @return the MapFile directories of a NodeDb or OutlinkDb in order */
+  private static Path[] getParts(FileSystem fs, Path dir) throws IOException {
+    FileStatus[] stats = fs.listStatus(dir,
+        HadoopFSUtil.getPassDirectoriesFilter(fs));
+    Path[] parts = HadoopFSUtil.getPaths(stats);
+    Arrays.sort(parts);
+    return parts;
+  }
+
+  private static long fingerprint(String s) {
+    return s == null ? 0L : MD5Hash.digest(s).halfDigest();
+  }
+
+  /**
+   * Assigns consecutive ids to the nodes of the NodeDb, in the order of the
+   * parts and keys.
+   */
+  private void loadNodes(FileSystem fs, Path wgNodeDb) throws IOException {
+    Configuration conf = getConf();
+    boolean limitPages = conf.getBoolean("link.ignore.limit.page", true);
+    boolean limitDomains = conf.getBoolean("link.ignore.limit.domain", true);
+
+    ids = new FingerprintTable();
+    IntList outlinkCounts = new IntList();
+    LongList domainList = new LongList();
+    LongList pageList = new LongList();
+    Text key = new Text();
+    Node node = new Node();
+    for (Path part : getParts(fs, wgNodeDb)) {
+      try (MapFile.Reader reader = new MapFile.Reader(part, conf)) {
+        while (reader.next(key, node)) {
+          String url = key.toString();
+          if (!ids.put(fingerprint(url), outlinkCounts.size())) {
+            throw new IOException("Fingerprint collision for " + url
+                + ", use the MapReduce engine of LinkRank");
+          }
+          outlinkCounts.add(node.getNumOutlinks());
+          if (limitDomains) {
+            domainList.add(fingerprint(URLUtil.getDomainName(url)));
+          }
+          if (limitPages) {
+            pageList.add(fingerprint(URLUtil.getPage(url)));
+          }
+        }
+      }
+    }
+    numNodes = outlinkCounts.size();
+    numOutlinks = outlinkCounts.toArray();
+    domains = limitDomains ? domainList.toArray() : null;
+    pages = limitPages ? pageList.toArray() : null;
+    LOG.info("Analysis: Number of nodes: " + numNodes);
+  }
+
+  /**
+   * Inverts the OutlinkDb into the inlinks of all nodes, see
+   * {@link LinkRank}'s Inverter.
+   */
+  private void loadInlinks(FileSystem fs, Path wgOutlinkDb)
+      throws IOException {
+    Configuration conf = getConf();
+    IntList from = new IntList();
+    IntList to = new IntList();
+    long unknown = 0;
+    Text key = new Text();
+    Text lastKey = new Text();
+    LinkDatum datum = new LinkDatum();
+    for (Path part : getParts(fs, wgOutlinkDb)) {
+      try (MapFile.Reader reader = new MapFile.Reader(part, conf)) {
+        int fromId = -1;
+        while (reader.next(key, datum)) {
+          // the outlinks of a url are consecutive
+          if (fromId < 0 || !key.equals(lastKey)) {
+            fromId = ids.get(fingerprint(key.toString()));
+            lastKey.set(key);
+          }
+          int toId = ids.get(fingerprint(datum.getUrl()));
+          if (fromId < 0 || toId < 0) {
+            unknown++;
+            continue;
+          }
+          // nodes without outlinks do not pass on their score
+          if (numOutlinks[fromId] > 0) {
+            from.add(fromId);
+            to.add(toId);
+          }
+        }
+      }
+    }
+    if (unknown > 0) {
+      LOG.warn("Analysis: ignored " + unknown
+          + " outlinks from or to urls not in the NodeDb");
+    }
+
+    // sort the links by target node (counting sort, stable)
+    offsets = new int[numNodes + 1];
+    for (int i = 0; i < to.size(); i++) {
+      offsets[to.get(i) + 1]++;
+    }
+    for (int i = 0; i < numNodes; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    inlinks = new int[to.size()];
+    int[] next = Arrays.copyOf(offsets, numNodes);
+    for (int i = 0; i < to.size(); i++) {
+      inlinks[next[to.get(i)]++] = from.get(i);
+    }
+    from = null;
+    to = null;
+    next = null;
+
+    if (domains != null || pages != null) {
+      limitInlinks();
+    }
+    domains = null;
+    pages = null;
+    LOG.info("Analysis: Number of links: " + inlinks.length);
+  }
+
+  /**
+   * Removes all but the first inlink from the same page or domain, in place.
+   */
+  private void limitInlinks() {
+    final int[] counts = new int[numNodes];
+    pool.invoke(new RangeTask(0, numNodes, (start, end) -> {
+      Set<Long> seenDomains = new HashSet<>();
+      Set<Long> seenPages = new HashSet<>();
+      for (int node = start; node < end; node++) {
+        seenDomains.clear();
+        seenPages.clear();
+        int kept = offsets[node];
+        for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+          int inlink = inlinks[i];
+          if ((pages != null && seenPages.contains(pages[inlink]))
+              || (domains != null && seenDomains.contains(domains[inlink]))) {
+            continue;
+          }
+          if (pages != null) {
+            seenPages.add(pages[inlink]);
+          }
+          if (domains != null) {
+            seenDomains.add(domains[inlink]);
+          }
+          inlinks[kept++] = inlink;
+        }
+        counts[node] = kept - offsets[node];
+      }
+    }));
+
+    // compact the kept inlinks
+    int pos = 0;
+    for (int node = 0; node < numNodes; node++) {
+      int start = offsets[node];
+      offsets[node] = pos;
+      System.arraycopy(inlinks, start, inlinks, pos, counts[node]);
+      pos += counts[node];
+    }
+    offsets[numNodes] = pos;
+    inlinks = Arrays.copyOf(inlinks, pos);
+  }
+
+  /**
+   * Runs the link analysis iterations, see {@link LinkRank}'s Analyzer. Stops
+   * early once no score changes by more than
+   * <code>link.analyze.tolerance</code>. With
+   * <code>link.analyze.delta.iterations</code> only the nodes with an inlink
+   * from a node whose score changed by more than the tolerance are
+   * recomputed, all other nodes keep their score.
+   *
+   * @return the final scores of all nodes
+   */
+  private float[] iterate() {
+    Configuration conf = getConf();
+    final float dampingFactor = conf.getFloat("link.analyze.damping.factor",
+        0.85f);
+    final float rankOne = 1f / (float) numNodes;
+    float initialScore = conf.getFloat("link.analyze.initial.score", 1.0f);
+    int numIterations = conf.getInt("link.analyze.num.iterations", 10);
+    final float tolerance = conf.getFloat(LinkRank.TOLERANCE, 0.0f);
+    LOG.info("Analysis: Rank One: " + rankOne);
+
+    // nodes whose score changed in the last iteration and nodes to recompute
+    final boolean[] changed;
+    final boolean[] dirty;
+    if (conf.getBoolean(DELTA_ITERATIONS, false)) {
+      buildOutlinks();
+      changed = new boolean[numNodes];
+      dirty = new boolean[numNodes];
+      Arrays.fill(dirty, true);
+    } else {
+      changed = null;
+      dirty = null;
+    }
+
+    float[] scores = new float[numNodes];
+    Arrays.fill(scores, initialScore);
+    float[] newScores = new float[numNodes];
+    for (int it = 0; it < numIterations; it++) {
+      final float[] current = scores;
+      final float[] updated = newScores;
+      final DoubleAdder deltaL1 = new DoubleAdder();
+      final DoubleAccumulator deltaMax = new DoubleAccumulator(Math::max, 0d);
+      final LongAdder numChanged = new LongAdder();
+      final LongAdder numComputed = new LongAdder();
+      pool.invoke(new RangeTask(0, numNodes, (start, end) -> {
+        double sum = 0d;
+        float max = 0f;
+        int moved = 0;
+        int computed = 0;
+        for (int node = start; node < end; node++) {
+          float score = current[node];
+          if (dirty == null || dirty[node]) {
+            // a page with zero inlinks has a score of rankOne
+            float totalInlinkScore = rankOne;
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+              int inlink = inlinks[i];
+              totalInlinkScore += current[inlink] / numOutlinks[inlink];
+            }
+            score = (1 - dampingFactor) + (dampingFactor * totalInlinkScore);
+            computed++;
+          }
+          updated[node] = score;
+          float delta = Math.abs(score - current[node]);
+          sum += delta;
+          max = Math.max(max, delta);
+          if (delta > tolerance) {
+            moved++;
+          }
+          if (changed != null) {
+            changed[node] = delta > tolerance;
+          }
+        }
+        deltaL1.add(sum);
+        deltaMax.accumulate(max);
+        numChanged.add(moved);
+        numComputed.add(computed);
+      }));
+      newScores = scores;
+      scores = updated;
+      LOG.info("Analysis: finished iteration " + (it + 1) + " of "
+          + numIterations + ", residual L1: " + deltaL1.sum() + ", Linf: "
+          + deltaMax.get() + ", nodes changed: " + numChanged.sum()
+          + ", computed: " + numComputed.sum());
+
+      // stop once no score changes by more than the tolerance
+      if (tolerance > 0 && numChanged.sum() == 0) {
+        LOG.info("Analysis: converged after " + (it + 1) + " iterations");
+        break;
+      }
+
+      // mark the targets of changed nodes for the next iteration
+      if (dirty != null) {
+        Arrays.fill(dirty, false);
+        pool.invoke(new RangeTask(0, numNodes, (start, end) -> {
+          for (int node = start; node < end; node++) {
+            if (changed[node]) {
+              for (int i = outOffsets[node]; i < outOffsets[node + 1]; i++) {
+                dirty[outlinks[i]] = true;
+              }
+            }
+          }
+        }));
+      }
+    }
+    return scores;
+  }
+
+  /**
+   * Transposes the inlinks into the outlinks of all nodes, only the links
+   * which pass on a score are kept.
+   */
+  private void buildOutlinks() {
+    outOffsets = new int[numNodes + 1];
+    for (int i = 0; i < inlinks.length; i++) {
+      outOffsets[inlinks[i] + 1]++;
+    }
+    for (int i = 0; i < numNodes; i++) {
+      outOffsets[i + 1] += outOffsets[i];
+    }
+    outlinks = new int[inlinks.length];
+    int[] next = Arrays.copyOf(outOffsets, numNodes);
+    for (int node = 0; node < numNodes; node++) {
+      for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+        outlinks[next[inlinks[i]]++] = node;
+      }
+    }
+  }
+
+  /**
+   * Writes the nodes with their new scores, part by part in the same order as
+   * they were loaded.
+   */
+  private void writeNodes(FileSystem fs, Path wgNodeDb, Path nodeDb,
+      float[] scores) throws IOException {
+    Configuration conf = getConf();
+    Text key = new Text();
+    Node node = new Node();
+    int id = 0;
+    for (Path part : getParts(fs, wgNodeDb)) {
+      try (MapFile.Reader reader = new MapFile.Reader(part, conf);
+          MapFile.Writer writer = new MapFile.Writer(conf, new Path(nodeDb,
+              part.getName()), MapFile.Writer.keyClass(Text.class),
+              MapFile.Writer.valueClass(Node.class))) {
+        while (reader.next(key, node)) {
+          node.setInlinkScore(scores[id++]);
+          writer.append(key, node);
+        }
+      }
+    }
+  }
+
+  /** An action on a range of node ids. */
+  private interface RangeAction {
+    void run(int start, int end);
+  }
+
+  /** Splits a range of node ids into tasks of at least {@link #GRAIN} nodes. */
+  private static class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int start;
+    private final int end;
+    private final RangeAction action;
+
+    RangeTask(int start, int end, RangeAction action) {
+      this.start = start;
+      this.end = end;
+      this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= GRAIN) {
+        action.run(start, end);
+      } else {
+        int mid = (start + end) >>> 1;
+        invokeAll(new RangeTask(start, mid, action), new RangeTask(mid, end,
+            action));
+      }
+    }
+  }
+
+  /** Open addressing hash table from url fingerprints to node ids. */
+  private static class FingerprintTable {
+
+    private long[] keys = new long[1024];
+    private int[] values = new int[1024];
+    private boolean[] used = new boolean[1024];
+    private int size;
+
+    private int slot(long key) {
+      int mask = keys.length - 1;
+      int slot = (int) (key ^ (key >>> 32)) & mask;
+      while (used[slot] && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /** @return false if the key is already present */
+    boolean put(long key, int value) {
+      if (2 * (size + 1) > keys.length) {
+        resize();
+      }
+      int slot = slot(key);
+      if (used[slot]) {
+        return false;
+      }
+      used[slot] = true;
+      keys[slot] = key;
+      values[slot] = value;
+      size++;
+      return true;
+    }
+
+    /** @return the value of the key or -1 */
+    int get(long key) {
+      int slot = slot(key);
+      return used[slot] ? values[slot] : -1;
+    }
+
+    private void resize() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      boolean[] oldUsed = used;
+      keys = new long[2 * oldKeys.length];
+      values = new int[keys.length];
+      used = new boolean[keys.length];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldUsed[i]) {
+          int slot = slot(oldKeys[i]);
+          used[slot] = true;
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+        }
+      }
+    }
+  }
+
+  /** A growable array of ints. */
+  private static class IntList {
+
+    private int[] data = new int[1024];
+    private int size;
+
+    void add(int value) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, data.length + (data.length >> 1));
+      }
+      data[size++] = value;
+    }
+
+    int get(int i) {
+      return data[i];
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(data, size);
+    }
+  }
+
+  /** A growable array of longs. */
+  private static class LongList {
+
+    private long[] data = new long[1024];
+    private int size;
+
+    void add(long value) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, data.length + (data.length >> 1));
+      }
+      data[size++] = value;
+    }
+
+    long[] toArray() {
+      return Arrays.copyOf(data, size);
+    }
+  }
+}
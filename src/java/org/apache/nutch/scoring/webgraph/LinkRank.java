@@ -47,6 +47,7 @@ import org.apache.hadoop.io.ObjectWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.FileInputFormat;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobClient;
@@ -56,6 +57,7 @@ import org.apache.hadoop.mapred.Mapper;
 import org.apache.hadoop.mapred.OutputCollector;
 import org.apache.hadoop.mapred.Reducer;
 import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.RunningJob;
 import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.mapred.TextOutputFormat;
@@ -74,6 +76,13 @@ public class LinkRank extends Configured implements Tool {
       .getLogger(MethodHandles.lookup().lookupClass());
   private static final String NUM_NODES = "_num_nodes_";
 
+  public static final String TOLERANCE = "link.analyze.tolerance";
+
+  /** counters of the score changes of an iteration */
+  static final String COUNTER_GROUP = "LinkRank";
+  static final String DELTA_L1 = "score delta L1 (x 1e-6)";
+  static final String CHANGED = "nodes changed above tolerance";
+
   /**
    * Runs the counter job. The counter job determines the number of links in the
    * webgraph. This is used during analysis.
@@ -244,10 +253,12 @@ public class LinkRank extends Configured implements Tool {
    * @param numIterations
    *          The total number of link analysis iterations
    * 
+   * @return The counters of the analysis job, with the score changes of this
+   *         iteration.
    * @throws IOException
    *           If an error occurs during link analysis.
    */
-  private void runAnalysis(Path nodeDb, Path inverted, Path output,
+  private Counters runAnalysis(Path nodeDb, Path inverted, Path output,
       int iteration, int numIterations, float rankOne) throws IOException {
 
     JobConf analyzer = new NutchJob(getConf());
@@ -270,13 +281,15 @@ public class LinkRank extends Configured implements Tool {
         false);
 
     LOG.info("Starting analysis job");
+    RunningJob job;
     try {
-      JobClient.runJob(analyzer);
+      job = JobClient.runJob(analyzer);
     } catch (IOException e) {
       LOG.error(StringUtils.stringifyException(e));
       throw e;
     }
     LOG.info("Finished analysis job.");
+    return job.getCounters();
   }
 
   /**
@@ -434,6 +447,7 @@ public class LinkRank extends Configured implements Tool {
     private JobConf conf;
     private float dampingFactor = 0.85f;
     private float rankOne = 0.0f;
+    private float tolerance = 0.0f;
     private int itNum = 0;
     private boolean limitPages = true;
     private boolean limitDomains = true;
@@ -450,6 +464,7 @@ public class LinkRank extends Configured implements Tool {
             .getFloat("link.analyze.damping.factor", 0.85f);
         this.rankOne = conf.getFloat("link.analyze.rank.one", 0.0f);
         this.itNum = conf.getInt("link.analyze.iteration", 0);
+        this.tolerance = conf.getFloat(TOLERANCE, 0.0f);
         limitPages = conf.getBoolean("link.ignore.limit.page", true);
         limitDomains = conf.getBoolean("link.ignore.limit.domain", true);
       } catch (Exception e) {
@@ -526,6 +541,13 @@ public class LinkRank extends Configured implements Tool {
       LOG.debug(url + ": score: " + linkRankScore + " num inlinks: "
           + numInlinks + " iteration: " + itNum);
 
+      // the node holds the score of the previous iteration
+      float delta = Math.abs(linkRankScore - node.getInlinkScore());
+      reporter.incrCounter(COUNTER_GROUP, DELTA_L1, Math.round(delta * 1e6));
+      if (delta > tolerance) {
+        reporter.incrCounter(COUNTER_GROUP, CHANGED, 1);
+      }
+
       // store the score in a temporary NodeDb
       Node outNode = WritableUtils.clone(node, conf);
       outNode.setInlinkScore(linkRankScore);
@@ -556,8 +578,11 @@ public class LinkRank extends Configured implements Tool {
   /**
    * Runs the complete link analysis job. The complete job determins rank one
    * score. Then runs through a given number of invert and analyze iterations,
-   * by default 10. And finally replaces the NodeDb in the WebGraph with the
-   * link rank output.
+   * by default 10, or until no score changes by more than
+   * <code>link.analyze.tolerance</code>. And finally replaces the NodeDb in
+   * the WebGraph with the link rank output. If
+   * <code>link.analyze.in.memory</code> is set, the analysis is done by the
+   * {@link InMemoryLinkRank} instead.
    * 
    * @param webGraphDb
    *          The WebGraph to run link analysis on.
@@ -567,6 +592,11 @@ public class LinkRank extends Configured implements Tool {
    */
   public void analyze(Path webGraphDb) throws IOException {
 
+    if (getConf().getBoolean(InMemoryLinkRank.IN_MEMORY, false)) {
+      new InMemoryLinkRank(getConf()).analyze(webGraphDb);
+      return;
+    }
+
     SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
     long start = System.currentTimeMillis();
     LOG.info("Analysis: starting at " + sdf.format(start));
@@ -601,6 +631,7 @@ public class LinkRank extends Configured implements Tool {
     // run invert and analysis for a given number of iterations to allow the
     // link rank scores to converge
     int numIterations = conf.getInt("link.analyze.num.iterations", 10);
+    float tolerance = conf.getFloat(TOLERANCE, 0.0f);
     for (int i = 0; i < numIterations; i++) {
 
       // the input to inverting is always the previous output from analysis
@@ -614,14 +645,23 @@ public class LinkRank extends Configured implements Tool {
 
       // run invert and analysis
       runInverter(nodeDb, wgOutlinkDb, tempInverted);
-      runAnalysis(nodeDb, tempInverted, tempNodeDb, i, numIterations,
-          rankOneScore);
+      Counters counters = runAnalysis(nodeDb, tempInverted, tempNodeDb, i,
+          numIterations, rankOneScore);
 
       // replace the temporary NodeDb with the output from analysis
       LOG.info("Analysis: Installing new link scores");
       FSUtils.replace(fs, linkRank, tempRank, true);
+      long changed = counters.findCounter(COUNTER_GROUP, CHANGED).getValue();
       LOG.info("Analysis: finished iteration " + (i + 1) + " of "
-          + numIterations);
+          + numIterations + ", residual L1: "
+          + (counters.findCounter(COUNTER_GROUP, DELTA_L1).getValue() / 1e6)
+          + ", nodes changed: " + changed);
+
+      // stop once no score changes by more than the tolerance
+      if (tolerance > 0 && changed == 0) {
+        LOG.info("Analysis: converged after " + (i + 1) + " iterations");
+        break;
+      }
     }
 
     // replace the NodeDb in the WebGraph with the final output of analysis
@@ -657,6 +697,12 @@ public class LinkRank extends Configured implements Tool {
     Option webgraphOpts = OptionBuilder.create("webgraphdb");
     options.addOption(webgraphOpts);
 
+    OptionBuilder.withArgName("inMemory");
+    OptionBuilder.withDescription("run the analysis in memory instead of "
+        + "MapReduce jobs (see link.analyze.in.memory)");
+    Option inMemoryOpts = OptionBuilder.create("inMemory");
+    options.addOption(inMemoryOpts);
+
     CommandLineParser parser = new GnuParser();
     try {
 
@@ -668,6 +714,9 @@ public class LinkRank extends Configured implements Tool {
       }
 
       String webGraphDb = line.getOptionValue("webgraphdb");
+      if (line.hasOption("inMemory")) {
+        getConf().setBoolean(InMemoryLinkRank.IN_MEMORY, true);
+      }
 
       analyze(new Path(webGraphDb));
       return 0;
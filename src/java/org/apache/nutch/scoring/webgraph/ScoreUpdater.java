@@ -162,17 +162,16 @@ public class ScoreUpdater extends Configured implements Tool,
     // create a temporary crawldb with the new scores
     LOG.info("Running crawldb update " + crawlDb);
     Path nodeDb = new Path(webGraphDb, WebGraph.NODE_DIR);
-    Path crawlDbCurrent = new Path(crawlDb, CrawlDb.CURRENT_NAME);
     Path newCrawlDb = new Path(crawlDb, Integer.toString(new Random()
         .nextInt(Integer.MAX_VALUE)));
 
     // run the updater job outputting to the temp crawl database
     JobConf updater = new NutchJob(conf);
     updater.setJobName("Update CrawlDb from WebGraph");
-    FileInputFormat.addInputPath(updater, crawlDbCurrent);
     FileInputFormat.addInputPath(updater, nodeDb);
     FileOutputFormat.setOutputPath(updater, newCrawlDb);
     updater.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(updater, crawlDb);
     updater.setMapperClass(ScoreUpdater.class);
     updater.setReducerClass(ScoreUpdater.class);
     updater.setMapOutputKeyClass(Text.class);
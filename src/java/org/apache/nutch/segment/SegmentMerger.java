@@ -55,6 +55,7 @@ import org.apache.hadoop.mapred.SequenceFileInputFormat;
 import org.apache.hadoop.mapred.SequenceFileOutputFormat;
 import org.apache.hadoop.mapred.SequenceFileRecordReader;
 import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.crawl.CrawlDatum;
@@ -164,7 +165,7 @@ public class SegmentMerger extends Configured implements Tool,
 
       final Writable w;
       try {
-        w = (Writable) reader.getValueClass().newInstance();
+        w = (Writable) ReflectionUtils.newInstance(reader.getValueClass(), job);
       } catch (Exception e) {
         throw new IOException(e.toString());
       } finally {
@@ -714,6 +715,8 @@ public class SegmentMerger extends Configured implements Tool,
         FileInputFormat.addInputPath(job, ptDir);
       }
     }
+    // content is routed but not modified, pass it through undecoded
+    job.setBoolean(Content.LAZY, true);
     job.setInputFormat(ObjectInputFormat.class);
     job.setMapperClass(SegmentMerger.class);
     job.setReducerClass(SegmentMerger.class);
@@ -288,6 +288,7 @@ public class CommonCrawlDataDumper extends Configured implements Tool {
         Writable key = (Writable) reader.getKeyClass().newInstance();
 
         Content content = null;
+        Tika tika = new Tika();
         while (reader.next(key)) {
           content = new Content();
           reader.getCurrentValue(content);
@@ -355,9 +356,23 @@ public class CommonCrawlDataDumper extends Configured implements Tool {
 
           String jsonData = "";
           try {
-            String mimeType = new Tika().detect(content.getContent());
-            // Maps file to JSON-based structure
+            String mimeType = tika.detect(content.getContent());
+            boolean selected = (mimeType != null) && (mimeTypes != null)
+                && Arrays.asList(mimeTypes).contains(mimeType);
+            if (selected) {
+              filter = true;
+            }
+            collectStats(typeCounts, mimeType);
+            // collects statistics for the given mimetypes
+            if (selected) {
+              collectStats(filteredCounts, mimeType);
+            }
+            if (!warc && !filter) {
+              // not written, skip the conversion
+              continue;
+            }
 
+            // Maps file to JSON-based structure
             Set<String> inUrls = null; //there may be duplicates, so using set
             if (linkDbReader != null) {
               Inlinks inlinks = linkDbReader.getInlinks((Text) key);
@@ -377,14 +392,6 @@ public class CommonCrawlDataDumper extends Configured implements Tool {
               }
               jsonData = format.getJsonData(url, content, metadata);
             }
-
-            collectStats(typeCounts, mimeType);
-            // collects statistics for the given mimetypes
-            if ((mimeType != null) && (mimeTypes != null) && Arrays
-                .asList(mimeTypes).contains(mimeType)) {
-              collectStats(filteredCounts, mimeType);
-              filter = true;
-            }
           } catch (IOException ioe) {
             LOG.error("Fatal error in creating JSON data: " + ioe.getMessage());
             return;
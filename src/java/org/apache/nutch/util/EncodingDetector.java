@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -60,6 +61,13 @@ import com.ibm.icu.text.CharsetMatch;
  * <li>Combine these clues with the caller-dependent "extra clues" available;</li>
  * <li>Run step (2) to guess what the most probable answer is.</li>
  * </ul>
+ * 
+ * <p>
+ * Auto-detection inspects at most the first
+ * <code>encodingdetector.charset.max.bytes</code> of the content. It is
+ * skipped if the content starts with a Unicode Byte Order Mark (BOM), or if
+ * <code>encodingdetector.charset.declared.trusted</code> is true and the
+ * encoding is declared in the HTTP header or in the document.
  */
 public class EncodingDetector {
 
@@ -108,6 +116,10 @@ public class EncodingDetector {
 
   public static final String MIN_CONFIDENCE_KEY = "encodingdetector.charset.min.confidence";
 
+  public static final String MAX_BYTES_KEY = "encodingdetector.charset.max.bytes";
+
+  public static final String DECLARED_TRUSTED_KEY = "encodingdetector.charset.declared.trusted";
+
   private static final HashMap<String, String> ALIASES = new HashMap<>();
 
   private static final HashSet<String> DETECTABLES = new HashSet<>();
@@ -147,20 +159,52 @@ public class EncodingDetector {
 
   private int minConfidence;
 
+  private int maxBytes;
+
+  private boolean declaredTrusted;
+
   private CharsetDetector detector;
 
   private List<EncodingClue> clues;
 
   public EncodingDetector(Configuration conf) {
     minConfidence = conf.getInt(MIN_CONFIDENCE_KEY, -1);
+    maxBytes = conf.getInt(MAX_BYTES_KEY, 65536);
+    declaredTrusted = conf.getBoolean(DECLARED_TRUSTED_KEY, false);
     detector = new CharsetDetector();
     clues = new ArrayList<>();
   }
 
   public void autoDetectClues(Content content, boolean filter) {
+    autoDetectClues(content, filter, null);
+  }
+
+  /**
+   * Auto-detect clues and add the encodings declared in the HTTP header and
+   * in the document.
+   * 
+   * @param content
+   *          Content instance
+   * @param filter
+   *          whether to ignore markup (HTML/XML tags) when auto-detecting
+   * @param sniffed
+   *          encoding declared in the document (e.g., in a HTML meta tag), may
+   *          be null
+   */
+  public void autoDetectClues(Content content, boolean filter, String sniffed) {
     byte[] data = content.getContent();
 
-    if (minConfidence >= 0 && DETECTABLES.contains(content.getContentType())
+    String bom = detectBOM(data);
+    String header = parseCharacterEncoding(content.getMetadata().get(
+        Response.CONTENT_TYPE));
+    if (bom != null) {
+      // a BOM overrides any declaration
+      addClue(bom, "bom");
+    } else if (declaredTrusted
+        && (resolveEncodingAlias(header) != null || resolveEncodingAlias(sniffed) != null)) {
+      // skip auto-detection
+    } else if (minConfidence >= 0
+        && DETECTABLES.contains(content.getContentType())
         && data.length > MIN_LENGTH) {
       CharsetMatch[] matches = null;
 
@@ -168,10 +212,12 @@ public class EncodingDetector {
       // will sometimes throw exceptions
       try {
         detector.enableInputFilter(filter);
-        if (data.length > MIN_LENGTH) {
+        if (maxBytes > 0 && data.length > maxBytes) {
+          detector.setText(Arrays.copyOf(data, maxBytes));
+        } else {
           detector.setText(data);
-          matches = detector.detectAll();
         }
+        matches = detector.detectAll();
       } catch (Exception e) {
         LOG.debug("Exception from ICU4J (ignoring): ", e);
       }
@@ -184,9 +230,29 @@ public class EncodingDetector {
     }
 
     // add character encoding coming from HTTP response header
-    addClue(
-        parseCharacterEncoding(content.getMetadata().get(Response.CONTENT_TYPE)),
-        "header");
+    addClue(header, "header");
+
+    addClue(sniffed, "sniffed");
+  }
+
+  /**
+   * Detect a Unicode Byte Order Mark (BOM) at the start of the content.
+   * 
+   * @return the encoding (UTF-8, UTF-16LE or UTF-16BE) or null if there is no
+   *         BOM
+   */
+  public static String detectBOM(byte[] content) {
+    if (content.length >= 3 && content[0] == (byte) 0xEF
+        && content[1] == (byte) 0xBB && content[2] == (byte) 0xBF) {
+      return "UTF-8";
+    } else if (content.length >= 2) {
+      if (content[0] == (byte) 0xFF && content[1] == (byte) 0xFE) {
+        return "UTF-16LE";
+      } else if (content[0] == (byte) 0xFE && content[1] == (byte) 0xFF) {
+        return "UTF-16BE";
+      }
+    }
+    return null;
   }
 
   public void addClue(String value, String source, int confidence) {
@@ -18,10 +18,16 @@
 package org.apache.nutch.util;
 
 // JDK imports
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 // Hadoop imports
 import org.apache.hadoop.conf.Configuration;
@@ -66,40 +72,69 @@ public final class MimeUtil {
   /* whether or not magic should be employed or not */
   private boolean mimeMagic;
 
+  /* max. number of bytes inspected by magic detection, 0: no limit */
+  private int magicMaxBytes;
+
+  /* types accepted without further detection if sent by the server */
+  private Set<String> trustedTypes;
+
+  /* types detected from the file name, cached by file name extension */
+  private final ConcurrentHashMap<String, String> typesByExtension = new ConcurrentHashMap<>();
+
+  private static final int MAX_CACHED_EXTENSIONS = 10000;
+
+  private static final int MAX_EXTENSION_LENGTH = 12;
+
   /* our log stream */
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  private static final ObjectCache.Key<MimeTypes> MIME_TYPES = ObjectCache.Key
+      .of(MimeTypes.class.getName(), MimeTypes.class);
+
+  private static final ObjectCache.Key<MimeUtil> MIME_UTIL = ObjectCache.Key
+      .of(MimeUtil.class.getName(), MimeUtil.class);
+
+  /**
+   * @return the instance shared by all users of the configuration, a
+   *         <code>MimeUtil</code> is thread-safe
+   */
+  public static MimeUtil get(Configuration conf) {
+    return ObjectCache.get(conf).get(MIME_UTIL, () -> new MimeUtil(conf));
+  }
+
   public MimeUtil(Configuration conf) {
     tika = new Tika();
-    ObjectCache objectCache = ObjectCache.get(conf);
-    MimeTypes mimeTypez = (MimeTypes) objectCache.getObject(MimeTypes.class
-        .getName());
-    if (mimeTypez == null) {
-      try {
-        String customMimeTypeFile = conf.get("mime.types.file");
-        if (customMimeTypeFile != null
-            && customMimeTypeFile.equals("") == false) {
-          try {
-            LOG.info("Using custom mime.types.file: {}", customMimeTypeFile);
-            mimeTypez = MimeTypesFactory.create(conf
-                .getConfResourceAsInputStream(customMimeTypeFile));
-          } catch (Exception e) {
-            LOG.error("Can't load mime.types.file : " + customMimeTypeFile
-                + " using Tika's default");
-          }
+    this.mimeTypes = ObjectCache.get(conf).get(MIME_TYPES,
+        () -> loadMimeTypes(conf));
+    this.mimeMagic = conf.getBoolean("mime.type.magic", true);
+    this.magicMaxBytes = conf.getInt("mime.type.magic.max.bytes", 0);
+    this.trustedTypes = new HashSet<>(Arrays.asList(conf
+        .getTrimmedStrings("mime.type.trusted")));
+  }
+
+  private static MimeTypes loadMimeTypes(Configuration conf) {
+    MimeTypes mimeTypez = null;
+    try {
+      String customMimeTypeFile = conf.get("mime.types.file");
+      if (customMimeTypeFile != null
+          && customMimeTypeFile.equals("") == false) {
+        try {
+          LOG.info("Using custom mime.types.file: {}", customMimeTypeFile);
+          mimeTypez = MimeTypesFactory.create(conf
+              .getConfResourceAsInputStream(customMimeTypeFile));
+        } catch (Exception e) {
+          LOG.error("Can't load mime.types.file : " + customMimeTypeFile
+              + " using Tika's default");
         }
-        if (mimeTypez == null)
-          mimeTypez = MimeTypes.getDefaultMimeTypes();
-      } catch (Exception e) {
-        LOG.error("Exception in MimeUtil " + e.getMessage());
-        throw new RuntimeException(e);
       }
-      objectCache.setObject(MimeTypes.class.getName(), mimeTypez);
+      if (mimeTypez == null)
+        mimeTypez = MimeTypes.getDefaultMimeTypes();
+    } catch (Exception e) {
+      LOG.error("Exception in MimeUtil " + e.getMessage());
+      throw new RuntimeException(e);
     }
-
-    this.mimeTypes = mimeTypez;
-    this.mimeMagic = conf.getBoolean("mime.type.magic", true);
+    return mimeTypez;
   }
 
   /**
@@ -140,6 +175,14 @@ public final class MimeUtil {
    * the mime type. However, if <code>mime.type.magic</code> is enabled in
    * {@link NutchConfiguration}, then mime type magic resolution is used to try
    * and obtain a better-than-the-default approximation of the {@link MimeType}.
+   * Magic resolution inspects at most <code>mime.type.magic.max.bytes</code>
+   * of the data.
+   * 
+   * <p>
+   * If the cleaned mime type is listed in <code>mime.type.trusted</code>, it
+   * is returned without URL and magic resolution. Types resolved from the URL
+   * are cached by the extension of the file name.
+   * </p>
    * 
    * @param typeName
    *          The original mime type, returned from a {@link ProtocolOutput}.
@@ -166,13 +209,18 @@ public final class MimeUtil {
       }
     }
 
+    // trust the type sent by the server
+    if (type != null && trustedTypes.contains(type.getName())) {
+      return type.getName();
+    }
+
     // if returned null, or if it's the default type then try url resolution
     if (type == null
         || (type != null && type.getName().equals(MimeTypes.OCTET_STREAM))) {
       // If no mime-type header, or cannot find a corresponding registered
       // mime-type, then guess a mime-type from the url pattern
       try {
-        retType = tika.detect(url) != null ? tika.detect(url) : null;
+        retType = detectByName(url);
       } catch (Exception e) {
         String message = "Problem loading default Tika configuration";
         LOG.error(message, e);
@@ -194,7 +242,13 @@ public final class MimeUtil {
       tikaMeta.add(Metadata.CONTENT_TYPE,
           (cleanedMimeType != null ? cleanedMimeType : typeName));
       try {
-        try (InputStream stream = TikaInputStream.get(data)) {
+        InputStream in;
+        if (magicMaxBytes > 0 && data.length > magicMaxBytes) {
+          in = new ByteArrayInputStream(data, 0, magicMaxBytes);
+        } else {
+          in = new ByteArrayInputStream(data);
+        }
+        try (InputStream stream = TikaInputStream.get(in)) {
           magicType = mimeTypes.detect(stream, tikaMeta).toString();
         }
       } catch (IOException ignore) {
@@ -222,6 +276,58 @@ public final class MimeUtil {
     return retType;
   }
 
+  /**
+   * Detect the type of a URL by the file name, results are cached by the
+   * extension (everything after the first dot of the file name). Tika's file
+   * name patterns are suffix patterns with few exceptions (e.g. ISA-Tab
+   * <code>i_*.txt</code>) which are then resolved as the plain extension.
+   */
+  private String detectByName(String url) {
+    String extension = getExtension(url);
+    if (extension == null) {
+      return tika.detect(url);
+    }
+    String type = typesByExtension.get(extension);
+    if (type == null) {
+      type = tika.detect(url);
+      if (type != null && typesByExtension.size() < MAX_CACHED_EXTENSIONS) {
+        typesByExtension.put(extension, type);
+      }
+    }
+    return type;
+  }
+
+  /**
+   * @return the lower-cased extension of the file name in the path of a URL,
+   *         starting at the first dot, or null if there is no (short)
+   *         extension or the path is empty
+   */
+  static String getExtension(String url) {
+    int end = url.length();
+    for (int i = 0; i < end; i++) {
+      char c = url.charAt(i);
+      if (c == '?' || c == '#') {
+        end = i;
+      }
+    }
+    int authority = url.indexOf("://");
+    if (authority >= 0 && authority < end
+        && url.indexOf('/', authority + 3) < 0) {
+      // no path, do not mistake the host name for a file name
+      return null;
+    }
+    int start = url.lastIndexOf('/', end - 1) + 1;
+    if (authority >= 0 && start <= authority + 3) {
+      // the path starts after the query or fragment
+      return null;
+    }
+    int dot = url.indexOf('.', start);
+    if (dot < 0 || dot >= end - 1 || end - dot > MAX_EXTENSION_LENGTH) {
+      return null;
+    }
+    return url.substring(dot, end).toLowerCase(Locale.ROOT);
+  }
+
   /**
    * Facade interface to Tika's underlying {@link MimeTypes#getMimeType(String)}
    * method.
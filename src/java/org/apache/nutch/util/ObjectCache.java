@@ -1,4 +1,4 @@
-/**
+/*
  * Licensed to the Apache Software Foundation (ASF) under one or more
  * contributor license agreements.  See the NOTICE file distributed with
  * this work for additional information regarding copyright ownership.
@@ -17,42 +17,291 @@
 package org.apache.nutch.util;
 
 import java.lang.invoke.MethodHandles;
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
 
+/**
+ * Cache of objects (plugin instances, parsed configuration files, etc.) bound
+ * to a {@link Configuration}: objects are created once per configuration and
+ * shared by all threads.
+ *
+ * <p>
+ * Objects are addressed by typed {@link Key}s and created by
+ * {@link #get(Key, Loader)}: if several threads ask for the same missing key,
+ * only one of them calls the loader while the others wait for the result.
+ * Lookups of cached objects do not lock, neither does
+ * {@link #get(Configuration)} if the same configuration is used repeatedly.
+ * </p>
+ *
+ * <p>
+ * If <code>objectcache.max.entries</code> is positive, the number of objects
+ * per configuration is bounded, the oldest objects are evicted first. Hits,
+ * misses and the time spent in loaders are counted, see {@link #getHits()},
+ * {@link #getMisses()} and {@link #getLoadTimeNanos()}.
+ * </p>
+ */
 public class ObjectCache {
 
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  public static final String MAX_ENTRIES = "objectcache.max.entries";
+
+  /**
+   * Typed cache key. Keys are equal if their names are equal, the type is
+   * only used to check the cached object.
+   */
+  public static final class Key<T> {
+
+    private final String name;
+    private final Class<? super T> type;
+
+    private Key(String name, Class<? super T> type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    /**
+     * @param name
+     *          unique name of the key, e.g. the class name of the cached
+     *          object or the id of a plugin extension
+     * @param type
+     *          type of the cached object
+     */
+    public static <T> Key<T> of(String name, Class<? super T> type) {
+      return new Key<T>(name, type);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return (o instanceof Key) && name.equals(((Key<?>) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return name + " (" + type.getSimpleName() + ")";
+    }
+  }
+
+  /** Creates the object of a key, may throw an exception of type E. */
+  @FunctionalInterface
+  public interface Loader<T, E extends Exception> {
+    T load() throws E;
+  }
+
+  /** Placeholder of an object which is being loaded. */
+  private static class Loading {
+    private final Thread thread = Thread.currentThread();
+    private final CountDownLatch done = new CountDownLatch(1);
+  }
+
+  /** The most recently used cache, avoids locking the map of all caches. */
+  private static class Last {
+    private final WeakReference<Configuration> conf;
+    private final ObjectCache cache;
+
+    Last(Configuration conf, ObjectCache cache) {
+      this.conf = new WeakReference<>(conf);
+      this.cache = cache;
+    }
+  }
+
   private static final WeakHashMap<Configuration, ObjectCache> CACHE = new WeakHashMap<>();
 
-  private final HashMap<String, Object> objectMap;
+  private static volatile Last last;
+
+  private final ConcurrentHashMap<String, Object> objectMap = new ConcurrentHashMap<>();
 
-  private ObjectCache() {
-    objectMap = new HashMap<>();
+  private final int maxEntries;
+
+  /** keys in the order of insertion, only used if the cache is bounded */
+  private final Queue<String> insertionOrder;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder loadTime = new LongAdder();
+
+  private ObjectCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    insertionOrder = maxEntries > 0 ? new ConcurrentLinkedQueue<String>()
+        : null;
+  }
+
+  public static ObjectCache get(Configuration conf) {
+    Last l = last;
+    if (l != null && l.conf.get() == conf) {
+      return l.cache;
+    }
+    synchronized (CACHE) {
+      ObjectCache objectCache = CACHE.get(conf);
+      if (objectCache == null) {
+        LOG.debug("No object cache found for conf=" + conf
+            + ", instantiating a new object cache");
+        objectCache = new ObjectCache(conf.getInt(MAX_ENTRIES, 0));
+        CACHE.put(conf, objectCache);
+      }
+      last = new Last(conf, objectCache);
+      return objectCache;
+    }
   }
 
-  public synchronized static ObjectCache get(Configuration conf) {
-    ObjectCache objectCache = CACHE.get(conf);
-    if (objectCache == null) {
-      LOG.debug("No object cache found for conf=" + conf
-          + ", instantiating a new object cache");
-      objectCache = new ObjectCache();
-      CACHE.put(conf, objectCache);
+  /**
+   * Get the cached object of a key, or create it with the loader and cache it.
+   * The loader is called at most once at a time per key. If the loader fails
+   * or returns null, nothing is cached.
+   *
+   * @throws E
+   *           exception thrown by the loader
+   * @throws IllegalStateException
+   *           if the loader of a key asks for the same key
+   */
+  @SuppressWarnings("unchecked")
+  public <T, E extends Exception> T get(Key<T> key, Loader<T, E> loader)
+      throws E {
+    while (true) {
+      Object value = objectMap.get(key.name);
+      if (value == null) {
+        Loading loading = new Loading();
+        value = objectMap.putIfAbsent(key.name, loading);
+        if (value == null) {
+          return load(key, loader, loading);
+        }
+      }
+      if (!(value instanceof Loading)) {
+        hits.increment();
+        return (T) key.type.cast(value);
+      }
+      Loading other = (Loading) value;
+      if (other.thread == Thread.currentThread()) {
+        throw new IllegalStateException("Recursive load of " + key);
+      }
+      try {
+        other.done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while loading " + key, e);
+      }
+      // loaded, or failed: try again
     }
-    return objectCache;
   }
 
-  public synchronized Object getObject(String key) {
-    return objectMap.get(key);
+  private <T, E extends Exception> T load(Key<T> key, Loader<T, E> loader,
+      Loading loading) throws E {
+    misses.increment();
+    long start = System.nanoTime();
+    boolean cached = false;
+    try {
+      T value = loader.load();
+      if (value != null) {
+        key.type.cast(value);
+        objectMap.replace(key.name, loading, value);
+        cached = true;
+        if (insertionOrder != null) {
+          insertionOrder.add(key.name);
+          evict();
+        }
+      }
+      return value;
+    } finally {
+      if (!cached) {
+        objectMap.remove(key.name, loading);
+      }
+      loadTime.add(System.nanoTime() - start);
+      loading.done.countDown();
+    }
+  }
+
+  private void evict() {
+    while (objectMap.size() > maxEntries) {
+      String eldest = insertionOrder.poll();
+      if (eldest == null) {
+        break;
+      }
+      Object value = objectMap.get(eldest);
+      if (value != null && !(value instanceof Loading)) {
+        objectMap.remove(eldest, value);
+      }
+    }
+  }
+
+  /** @return the cached object of the key, or null if not cached */
+  @SuppressWarnings("unchecked")
+  public <T> T getIfPresent(Key<T> key) {
+    Object value = objectMap.get(key.name);
+    if (value == null || value instanceof Loading) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return (T) key.type.cast(value);
+  }
+
+  /** Cache an object, replacing the cached one. Null removes the key. */
+  public <T> void put(Key<T> key, T value) {
+    setObject(key.name, value);
+  }
+
+  /** @deprecated use {@link #getIfPresent(Key)} or {@link #get(Key, Loader)} */
+  @Deprecated
+  public Object getObject(String key) {
+    Object value = objectMap.get(key);
+    return value instanceof Loading ? null : value;
+  }
+
+  /** @deprecated use {@link #put(Key, Object)} or {@link #get(Key, Loader)} */
+  @Deprecated
+  public void setObject(String key, Object value) {
+    if (value == null) {
+      objectMap.remove(key);
+      return;
+    }
+    if (objectMap.put(key, value) == null && insertionOrder != null) {
+      insertionOrder.add(key);
+      evict();
+    }
+  }
+
+  /** @return number of cached objects */
+  public int size() {
+    int size = 0;
+    for (Object value : objectMap.values()) {
+      if (!(value instanceof Loading)) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /** @return number of lookups answered from the cache */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /** @return number of lookups of objects not cached */
+  public long getMisses() {
+    return misses.sum();
   }
 
-  public synchronized void setObject(String key, Object value) {
-    objectMap.put(key, value);
+  /** @return nanoseconds spent in loaders */
+  public long getLoadTimeNanos() {
+    return loadTime.sum();
   }
 }
@@ -44,6 +44,8 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
 import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.crawl.CrawlDb;
+import org.apache.nutch.crawl.CrawlDbInputFormat;
 import org.apache.nutch.hostdb.HostDatum;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
@@ -317,7 +319,6 @@ public class SitemapProcessor extends Configured implements Tool {
     }
 
     FileSystem fs = FileSystem.get(getConf());
-    Path old = new Path(crawldb, "old");
     Path current = new Path(crawldb, "current");
     Path tempCrawlDb = new Path(crawldb, "crawldb-" + Integer.toString(new Random().nextInt(Integer.MAX_VALUE)));
 
@@ -337,8 +338,10 @@ public class SitemapProcessor extends Configured implements Tool {
     Job job = Job.getInstance(conf, "SitemapProcessor_" + crawldb.toString());
     job.setJarByClass(SitemapProcessor.class);
 
-    // add crawlDb, sitemap url directory and hostDb to input paths
-    MultipleInputs.addInputPath(job, current, SequenceFileInputFormat.class);
+    // add crawlDb (base merged with deltas), sitemap url directory and hostDb
+    // to input paths
+    CrawlDbInputFormat.addCrawlDb(job, crawldb);
+    MultipleInputs.addInputPath(job, crawldb, CrawlDbInputFormat.class);
 
     if (sitemapUrlDir != null)
       MultipleInputs.addInputPath(job, sitemapUrlDir, KeyValueTextInputFormat.class);
@@ -360,14 +363,8 @@ public class SitemapProcessor extends Configured implements Tool {
     try {
       job.waitForCompletion(true);
 
-      boolean preserveBackup = conf.getBoolean("db.preserve.backup", true);
-      if (!preserveBackup && fs.exists(old))
-        fs.delete(old, true);
-      else
-        FSUtils.replace(fs, old, current, true);
-
-      FSUtils.replace(fs, current, tempCrawlDb, true);
-      LockUtil.removeLockFile(fs, lock);
+      // installs the new base, drops the merged deltas and removes the lock
+      CrawlDb.install(job, crawldb);
 
       if (LOG.isInfoEnabled()) {
         long filteredRecords = job.getCounters().findCounter("Sitemap", "filtered_records").getValue();
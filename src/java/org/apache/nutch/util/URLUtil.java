@@ -92,8 +92,17 @@ public class URLUtil {
    * <code> apache.org</code>
    * */
   public static String getDomainName(URL url) {
+    return getDomainNameOfHost(url.getHost());
+  }
+
+  /**
+   * Returns the domain name of a host name, i.e. the host name w/o subdomain
+   * names.
+   * 
+   * @see #getDomainName(URL)
+   */
+  public static String getDomainNameOfHost(String host) {
     DomainSuffixes tlds = DomainSuffixes.getInstance();
-    String host = url.getHost();
     // it seems that java returns hostnames ending with .
     if (host.endsWith("."))
       host = host.substring(0, host.length() - 1);
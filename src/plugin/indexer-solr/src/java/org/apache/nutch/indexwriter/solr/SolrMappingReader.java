@@ -47,15 +47,11 @@ public class SolrMappingReader {
   private Map<String, String> copyMap = new HashMap<String, String>();
   private String uniqueKey = "id";
 
-  public static synchronized SolrMappingReader getInstance(Configuration conf) {
-    ObjectCache cache = ObjectCache.get(conf);
-    SolrMappingReader instance = (SolrMappingReader) cache
-        .getObject(SolrMappingReader.class.getName());
-    if (instance == null) {
-      instance = new SolrMappingReader(conf);
-      cache.setObject(SolrMappingReader.class.getName(), instance);
-    }
-    return instance;
+  private static final ObjectCache.Key<SolrMappingReader> KEY = ObjectCache.Key
+      .of(SolrMappingReader.class.getName(), SolrMappingReader.class);
+
+  public static SolrMappingReader getInstance(Configuration conf) {
+    return ObjectCache.get(conf).get(KEY, () -> new SolrMappingReader(conf));
   }
 
   protected SolrMappingReader(Configuration conf) {
@@ -134,6 +134,15 @@ public abstract class HttpBase implements Protocol {
   /** Controls whether or not to set Cookie HTTP header based on CrawlDatum metadata */
   protected boolean enableCookieHeader = true;
 
+  /** Reuse connections to the same host (HTTP keep-alive) */
+  protected boolean keepAlive = false;
+
+  /** Max. number of idle keep-alive connections per host */
+  protected int keepAliveMaxPerHost = 2;
+
+  /** Time in milliseconds after which idle keep-alive connections are closed */
+  protected long keepAliveIdleTimeout = 15000;
+
   /** Creates a new instance of HttpBase */
   public HttpBase() {
     this(null);
@@ -168,6 +177,10 @@ public abstract class HttpBase implements Protocol {
     this.responseTime = conf.getBoolean("http.store.responsetime", true);
     this.enableIfModifiedsinceHeader = conf.getBoolean("http.enable.if.modified.since.header", true);
     this.enableCookieHeader = conf.getBoolean("http.enable.cookie.header", true);
+    this.keepAlive = conf.getBoolean("http.keepalive", false);
+    this.keepAliveMaxPerHost = conf.getInt("http.keepalive.max.per.host", 2);
+    this.keepAliveIdleTimeout = conf.getLong("http.keepalive.idle.timeout",
+        15000);
     this.robots.setConf(conf);
 
     // NUTCH-1941: read list of alternating agent names
@@ -389,6 +402,18 @@ public abstract class HttpBase implements Protocol {
     return maxContent;
   }
 
+  public boolean isKeepAlive() {
+    return keepAlive;
+  }
+
+  public int getKeepAliveMaxPerHost() {
+    return keepAliveMaxPerHost;
+  }
+
+  public long getKeepAliveIdleTimeout() {
+    return keepAliveIdleTimeout;
+  }
+
   public String getUserAgent() {
     if (userAgentNames!=null) {
       return userAgentNames.get(ThreadLocalRandom.current().nextInt(userAgentNames.size()));
@@ -478,6 +503,7 @@ public abstract class HttpBase implements Protocol {
       logger.info("http.accept.language = " + acceptLanguage);
       logger.info("http.accept = " + accept);
       logger.info("http.enable.cookie.header = " + isCookieEnabled());
+      logger.info("http.keepalive = " + keepAlive);
     }
   }
 
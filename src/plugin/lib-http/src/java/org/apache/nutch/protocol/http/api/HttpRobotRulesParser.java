@@ -19,13 +19,17 @@ package org.apache.nutch.protocol.http.api;
 
 import java.lang.invoke.MethodHandles;
 import java.net.URL;
+import java.text.ParseException;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.net.protocols.HttpDateFormat;
 import org.apache.nutch.net.protocols.Response;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.protocol.Protocol;
@@ -42,6 +46,10 @@ public class HttpRobotRulesParser extends RobotRulesParser {
 
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final Pattern MAX_AGE = Pattern
+      .compile("(?:^|[,\\s])(?:s-)?max-age\\s*=\\s*\"?(\\d+)");
+
   protected boolean allowForbidden = false;
 
   HttpRobotRulesParser() {
@@ -73,12 +81,51 @@ public class HttpRobotRulesParser extends RobotRulesParser {
     return cacheKey;
   }
 
+  /**
+   * Determine how long the robots.txt response may be cached from its
+   * <code>Cache-Control: max-age</code> or <code>Expires</code> header.
+   *
+   * @return time to live in milliseconds or -1 if the response does not
+   *         contain any cache header
+   */
+  protected static long getCacheTtl(Response response) {
+    String cacheControl = response.getHeader("Cache-Control");
+    if (cacheControl != null) {
+      cacheControl = cacheControl.toLowerCase();
+      Matcher m = MAX_AGE.matcher(cacheControl);
+      if (m.find()) {
+        try {
+          return Long.parseLong(m.group(1)) * 1000L;
+        } catch (NumberFormatException e) {
+          // ignore, try Expires
+        }
+      } else if (cacheControl.contains("no-cache")
+          || cacheControl.contains("no-store")) {
+        return 0;
+      }
+    }
+    String expires = response.getHeader("Expires");
+    if (expires != null) {
+      try {
+        return Math.max(0,
+            HttpDateFormat.toLong(expires) - System.currentTimeMillis());
+      } catch (ParseException e) {
+        // invalid dates mean "already expired" (RFC 7234, 5.3)
+        return 0;
+      }
+    }
+    return -1;
+  }
+
   /**
    * Get the rules from robots.txt which applies for the given {@code url}.
    * Robot rules are cached for a unique combination of host, protocol, and
    * port. If no rules are found in the cache, a HTTP request is send to fetch
    * {{protocol://host:port/robots.txt}}. The robots.txt is then parsed and the
-   * rules are cached to avoid re-fetching and re-parsing it again.
+   * rules are cached to avoid re-fetching and re-parsing it again, for the
+   * time allowed by the HTTP cache headers of the response within the bounds
+   * given by <code>http.robots.cache.ttl.min</code> and
+   * <code>http.robots.cache.ttl</code>.
    * 
    * @param http
    *          The {@link Protocol} object
@@ -111,6 +158,7 @@ public class HttpRobotRulesParser extends RobotRulesParser {
     }
 
     boolean cacheRule = true;
+    long cacheTtl = -1;
     URL redir = null;
 
     if (isWhiteListed(url)) {
@@ -152,6 +200,8 @@ public class HttpRobotRulesParser extends RobotRulesParser {
           }
         }
 
+        cacheTtl = getCacheTtl(response);
+
         if (response.getCode() == 200) // found rules: parse them
           robotRules = parseRules(url.toString(), response.getContent(),
               response.getHeader("Content-Type"), agentNames);
@@ -173,10 +223,10 @@ public class HttpRobotRulesParser extends RobotRulesParser {
     }
 
     if (cacheRule) {
-      CACHE.put(cacheKey, robotRules); // cache rules for host
+      CACHE.put(cacheKey, robotRules, cacheTtl); // cache rules for host
       if (redir != null && !redir.getHost().equalsIgnoreCase(url.getHost())) {
         // cache also for the redirected host
-        CACHE.put(getCacheKey(redir), robotRules);
+        CACHE.put(getCacheKey(redir), robotRules, cacheTtl);
       }
     }
 
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.urlfilter.api;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts from a regular expression literal strings required by every match:
+ * any string matched by the expression contains at least one of the
+ * literals. The extraction is conservative, constructs which are not
+ * understood are skipped or, if they could change the meaning of the
+ * remaining expression, no literals are extracted at all.
+ *
+ * <p>
+ * Literals are restricted to ASCII characters and returned in lower case, they
+ * must be looked up case-insensitively.
+ * </p>
+ */
+public final class LiteralExtractor {
+
+  /** Syntax of the regular expression */
+  public enum Syntax {
+    /** {@link java.util.regex.Pattern} */
+    JAVA,
+    /** <code>dk.brics.automaton.RegExp</code> with all optional features */
+    AUTOMATON
+  }
+
+  /** characters with special meaning in any of the supported syntaxes */
+  private static final String META = "\\^$.|?*+()[]{}~&@#\"<>";
+
+  /** escapes followed by further characters which belong to the escape */
+  private static final String JAVA_COMPLEX_ESCAPES = "xu0cpPkNQ";
+
+  /** embedded flag enabling comments, white space is ignored */
+  private static final Pattern JAVA_COMMENTS_FLAG = Pattern
+      .compile("\\(\\?[a-zA-Z-]*x");
+
+  private static class UnsupportedSyntax extends Exception {
+    private static final long serialVersionUID = 1L;
+  }
+
+  private final String regex;
+  private final Syntax syntax;
+
+  private LiteralExtractor(String regex, Syntax syntax) {
+    this.regex = regex;
+    this.syntax = syntax;
+  }
+
+  /**
+   * @return literals of which at least one is contained in every string
+   *         matched by the regular expression, or null if no such literals
+   *         are known
+   */
+  public static String[] extract(String regex, Syntax syntax) {
+    if (syntax == Syntax.JAVA && JAVA_COMMENTS_FLAG.matcher(regex).find()) {
+      return null;
+    }
+    try {
+      return new LiteralExtractor(regex, syntax).extract();
+    } catch (UnsupportedSyntax e) {
+      return null;
+    }
+  }
+
+  private String[] extract() throws UnsupportedSyntax {
+    Set<String> literals = new LinkedHashSet<String>();
+    // every alternative must contribute
+    for (int[] branch : split(0, regex.length())) {
+      String[] factor = bestFactor(branch[0], branch[1]);
+      if (factor == null) {
+        return null;
+      }
+      for (String literal : factor) {
+        literals.add(literal);
+      }
+    }
+    return literals.toArray(new String[literals.size()]);
+  }
+
+  /** Split the range [start, end) at alternations not nested in groups. */
+  private List<int[]> split(int start, int end) throws UnsupportedSyntax {
+    List<int[]> branches = new ArrayList<int[]>();
+    int branchStart = start;
+    int i = start;
+    while (i < end) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i += 2;
+      } else if (c == '[') {
+        i = skipClass(i, end);
+      } else if (c == '(') {
+        i = skipGroup(i, end);
+      } else if (c == '|') {
+        branches.add(new int[] { branchStart, i });
+        branchStart = ++i;
+      } else {
+        i++;
+      }
+    }
+    branches.add(new int[] { branchStart, end });
+    return branches;
+  }
+
+  /**
+   * Find the required factor of a concatenation which is the most selective:
+   * either a run of literal characters or a group of literal alternatives.
+   */
+  private String[] bestFactor(int start, int end) throws UnsupportedSyntax {
+    List<String[]> factors = new ArrayList<String[]>();
+    StringBuilder run = new StringBuilder();
+    int i = start;
+    while (i < end) {
+      char c = regex.charAt(i);
+      if (syntax == Syntax.AUTOMATON && (c == '~' || c == '"' || c == '<')) {
+        // complement, quoted strings and numeric intervals
+        throw new UnsupportedSyntax();
+      }
+      int literal = -1;
+      int next;
+      if (c == '\\') {
+        if (i + 1 >= end) {
+          throw new UnsupportedSyntax();
+        }
+        char e = regex.charAt(i + 1);
+        next = i + 2;
+        if (syntax == Syntax.AUTOMATON || !Character.isLetterOrDigit(e)) {
+          literal = e;
+        } else if (JAVA_COMPLEX_ESCAPES.indexOf(e) != -1) {
+          throw new UnsupportedSyntax();
+        } else if (Character.isDigit(e)) {
+          // back reference
+          while (next < end && Character.isDigit(regex.charAt(next))) {
+            next++;
+          }
+        }
+      } else if (c == '(') {
+        next = skipGroup(i, end);
+        String[] alternatives = literalAlternatives(i + 1, next - 1);
+        flush(run, factors);
+        if (alternatives != null && !isOptional(next, end)) {
+          factors.add(alternatives);
+        }
+      } else if (c == '[') {
+        next = skipClass(i, end);
+      } else if (c == '{') {
+        next = skipRepetition(i, end);
+      } else {
+        next = i + 1;
+        if (META.indexOf(c) == -1) {
+          literal = c;
+        }
+      }
+      if (literal == -1 || literal < 0x20 || literal >= 0x80) {
+        flush(run, factors);
+      } else if (isOptional(next, end)) {
+        flush(run, factors);
+      } else {
+        run.append(Character.toLowerCase((char) literal));
+        if (next < end && regex.charAt(next) == '+') {
+          // repetition, the following characters are not adjacent
+          flush(run, factors);
+        }
+      }
+      i = next;
+    }
+    flush(run, factors);
+
+    String[] best = null;
+    int bestLength = 0;
+    for (String[] factor : factors) {
+      int length = Integer.MAX_VALUE;
+      for (String literal : factor) {
+        length = Math.min(length, literal.length());
+      }
+      if (length > bestLength
+          || (length == bestLength && factor.length < best.length)) {
+        best = factor;
+        bestLength = length;
+      }
+    }
+    return best;
+  }
+
+  private static void flush(StringBuilder run, List<String[]> factors) {
+    if (run.length() > 0) {
+      factors.add(new String[] { run.toString() });
+      run.setLength(0);
+    }
+  }
+
+  /** @return true if the atom ending before <code>pos</code> may be absent */
+  private boolean isOptional(int pos, int end) {
+    if (pos >= end) {
+      return false;
+    }
+    char c = regex.charAt(pos);
+    return c == '?' || c == '*' || c == '{';
+  }
+
+  /**
+   * @return the alternatives of the group content [start, end) if all are
+   *         non-empty literals, otherwise null
+   */
+  private String[] literalAlternatives(int start, int end)
+      throws UnsupportedSyntax {
+    if (start < end && regex.charAt(start) == '?') {
+      if (syntax == Syntax.JAVA && start + 1 < end
+          && regex.charAt(start + 1) == ':') {
+        start += 2;
+      } else {
+        // look-around, flags, named groups
+        return null;
+      }
+    }
+    List<int[]> branches = split(start, end);
+    String[] alternatives = new String[branches.size()];
+    for (int b = 0; b < alternatives.length; b++) {
+      StringBuilder literal = new StringBuilder();
+      int i = branches.get(b)[0];
+      int branchEnd = branches.get(b)[1];
+      while (i < branchEnd) {
+        char c = regex.charAt(i++);
+        if (c == '\\' && i < branchEnd) {
+          c = regex.charAt(i++);
+          if (syntax == Syntax.JAVA && Character.isLetterOrDigit(c)) {
+            return null;
+          }
+        } else if (META.indexOf(c) != -1) {
+          return null;
+        }
+        if (c < 0x20 || c >= 0x80) {
+          return null;
+        }
+        literal.append(Character.toLowerCase(c));
+      }
+      if (literal.length() == 0) {
+        return null;
+      }
+      alternatives[b] = literal.toString();
+    }
+    return alternatives;
+  }
+
+  /** @return position after the character class starting at pos */
+  private int skipClass(int pos, int end) throws UnsupportedSyntax {
+    int i = pos + 1;
+    if (i < end && regex.charAt(i) == '^') {
+      i++;
+    }
+    if (i < end && regex.charAt(i) == ']') {
+      // literal ']' at the start of the class
+      i++;
+    }
+    int depth = 1;
+    while (i < end) {
+      char c = regex.charAt(i++);
+      if (c == '\\') {
+        i++;
+      } else if (c == '[' && syntax == Syntax.JAVA) {
+        // union or intersection with a nested class
+        depth++;
+      } else if (c == ']' && --depth == 0) {
+        return i;
+      }
+    }
+    throw new UnsupportedSyntax();
+  }
+
+  /** @return position after the group starting at pos */
+  private int skipGroup(int pos, int end) throws UnsupportedSyntax {
+    int i = pos + 1;
+    while (i < end) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i += 2;
+      } else if (c == '[') {
+        i = skipClass(i, end);
+      } else if (c == '(') {
+        i = skipGroup(i, end);
+      } else if (c == ')') {
+        return i + 1;
+      } else {
+        i++;
+      }
+    }
+    throw new UnsupportedSyntax();
+  }
+
+  /** @return position after the bounded repetition starting at pos */
+  private int skipRepetition(int pos, int end) throws UnsupportedSyntax {
+    int close = regex.indexOf('}', pos);
+    if (close == -1 || close >= end) {
+      throw new UnsupportedSyntax();
+    }
+    return close + 1;
+  }
+}
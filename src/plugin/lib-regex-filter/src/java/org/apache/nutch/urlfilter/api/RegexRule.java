@@ -99,4 +99,17 @@ public abstract class RegexRule {
    */
   protected abstract boolean match(String url);
 
+  /**
+   * Returns literal strings of which at least one is contained in every url
+   * matched by this rule, used to skip the rule for urls which cannot match.
+   * The default implementation extracts the literals from a
+   * {@link java.util.regex.Pattern Java regular expression}.
+   * 
+   * @return the lower-cased literals or <code>null</code> if no literals are
+   *         known and the rule must be checked for every url.
+   */
+  protected String[] requiredLiterals() {
+    return LiteralExtractor.extract(regex, LiteralExtractor.Syntax.JAVA);
+  }
+
 }
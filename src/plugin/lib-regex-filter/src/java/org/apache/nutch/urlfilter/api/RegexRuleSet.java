@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.urlfilter.api;
+
+import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.nutch.util.URLUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An ordered set of {@link RegexRule}s compiled for fast matching. For every
+ * rule the literal strings required by its regular expression are extracted
+ * (see {@link RegexRule#requiredLiterals()}) and combined into a single
+ * Aho-Corasick automaton. A URL is scanned once by the automaton and only the
+ * rules whose required literals occur in the URL (plus the rules without any
+ * known literals) are evaluated, still in the order of the rules: the first
+ * matching rule wins as if all rules were tried one after the other.
+ *
+ * <p>
+ * Instances are immutable and thread-safe if the rules are.
+ * </p>
+ */
+public class RegexRuleSet {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  private final RegexRule[] rules;
+
+  /** rules which must be evaluated whatever literals a URL contains */
+  private final boolean[] unconditional;
+
+  /** null if no rule has required literals */
+  private final LiteralMatcher matcher;
+
+  /**
+   * @param rules
+   *          the rules in the order they are applied
+   * @param prefilter
+   *          if false all rules are evaluated one after the other
+   */
+  public RegexRuleSet(List<RegexRule> rules, boolean prefilter) {
+    this.rules = rules.toArray(new RegexRule[rules.size()]);
+    this.unconditional = new boolean[this.rules.length];
+    Arrays.fill(unconditional, true);
+    if (!prefilter) {
+      matcher = null;
+      return;
+    }
+    Map<String, List<Integer>> literalRules = new HashMap<String, List<Integer>>();
+    for (int r = 0; r < this.rules.length; r++) {
+      String[] literals = this.rules[r].requiredLiterals();
+      if (literals == null || literals.length == 0) {
+        continue;
+      }
+      unconditional[r] = false;
+      for (String literal : literals) {
+        List<Integer> ruleIds = literalRules.get(literal);
+        if (ruleIds == null) {
+          ruleIds = new ArrayList<Integer>();
+          literalRules.put(literal, ruleIds);
+        }
+        ruleIds.add(r);
+      }
+    }
+    matcher = literalRules.isEmpty() ? null : new LiteralMatcher(literalRules);
+    if (LOG.isDebugEnabled()) {
+      int count = 0;
+      for (boolean u : unconditional) {
+        if (!u) {
+          count++;
+        }
+      }
+      LOG.debug("Prefiltering " + count + " of " + this.rules.length
+          + " rules by " + literalRules.size() + " literals");
+    }
+  }
+
+  public int size() {
+    return rules.length;
+  }
+
+  /**
+   * Find the first rule matching a URL. Rules bound to a host or domain are
+   * only applied to URLs of this host or domain.
+   *
+   * @return the first matching rule or null if no rule matches
+   */
+  public RegexRule match(String url) {
+    boolean[] candidates = matcher == null ? unconditional : matcher
+        .candidates(url, unconditional);
+    String host = null;
+    String domain = null;
+    boolean hostKnown = false;
+    for (int r = 0; r < rules.length; r++) {
+      if (!candidates[r]) {
+        continue;
+      }
+      RegexRule rule = rules[r];
+      if (rule.hostOrDomain() != null) {
+        if (!hostKnown) {
+          host = URLUtil.getHost(url);
+          try {
+            domain = URLUtil.getDomainName(url);
+          } catch (MalformedURLException e) {
+            // shouldnt happen here right?
+          }
+          hostKnown = true;
+        }
+        // Skip rules that don't share the same host and domain
+        if (!rule.hostOrDomain().equals(host)
+            && !rule.hostOrDomain().equals(domain)) {
+          continue;
+        }
+      }
+      if (rule.match(url)) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Rule [" + rule.regex() + "] matches " + url);
+        }
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Aho-Corasick automaton over all required literals, matching ASCII
+   * characters case-insensitively.
+   */
+  private static class LiteralMatcher {
+
+    private static final int ROOT = 0;
+
+    /** sorted labels of the outgoing transitions of every state */
+    private char[][] labels;
+    private int[][] targets;
+    private int[] fail;
+    /** literal recognized in a state, -1 if none */
+    private int[] literal;
+    /** next state on the failure path recognizing a literal, -1 if none */
+    private int[] dictionary;
+    /** rules requiring a literal */
+    private final int[][] literalRules;
+
+    LiteralMatcher(Map<String, List<Integer>> rulesByLiteral) {
+      literalRules = new int[rulesByLiteral.size()][];
+      int size = 1;
+      for (String lit : rulesByLiteral.keySet()) {
+        size += lit.length();
+      }
+      labels = new char[size][];
+      targets = new int[size][];
+      literal = new int[size];
+      Arrays.fill(literal, -1);
+      labels[ROOT] = new char[0];
+      targets[ROOT] = new int[0];
+      int states = 1;
+
+      // build the trie
+      int id = 0;
+      for (Map.Entry<String, List<Integer>> entry : rulesByLiteral.entrySet()) {
+        String lit = entry.getKey();
+        int state = ROOT;
+        for (int i = 0; i < lit.length(); i++) {
+          char c = lit.charAt(i);
+          int next = transition(state, c);
+          if (next == -1) {
+            next = states++;
+            labels[next] = new char[0];
+            targets[next] = new int[0];
+            addTransition(state, c, next);
+          }
+          state = next;
+        }
+        literal[state] = id;
+        List<Integer> ruleIds = entry.getValue();
+        literalRules[id] = new int[ruleIds.size()];
+        for (int i = 0; i < ruleIds.size(); i++) {
+          literalRules[id][i] = ruleIds.get(i);
+        }
+        id++;
+      }
+
+      // failure and dictionary links, breadth-first
+      fail = new int[states];
+      dictionary = new int[states];
+      dictionary[ROOT] = -1;
+      ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+      for (int child : targets[ROOT]) {
+        fail[child] = ROOT;
+        dictionary[child] = -1;
+        queue.add(child);
+      }
+      while (!queue.isEmpty()) {
+        int state = queue.poll();
+        for (int t = 0; t < labels[state].length; t++) {
+          char c = labels[state][t];
+          int child = targets[state][t];
+          int f = fail[state];
+          while (f != ROOT && transition(f, c) == -1) {
+            f = fail[f];
+          }
+          int next = transition(f, c);
+          fail[child] = next == -1 ? ROOT : next;
+          dictionary[child] = literal[fail[child]] != -1 ? fail[child]
+              : dictionary[fail[child]];
+          queue.add(child);
+        }
+      }
+    }
+
+    private int transition(int state, char c) {
+      int t = Arrays.binarySearch(labels[state], c);
+      return t < 0 ? -1 : targets[state][t];
+    }
+
+    private void addTransition(int state, char c, int next) {
+      int pos = -(Arrays.binarySearch(labels[state], c) + 1);
+      int length = labels[state].length;
+      char[] l = new char[length + 1];
+      int[] t = new int[length + 1];
+      System.arraycopy(labels[state], 0, l, 0, pos);
+      System.arraycopy(targets[state], 0, t, 0, pos);
+      l[pos] = c;
+      t[pos] = next;
+      System.arraycopy(labels[state], pos, l, pos + 1, length - pos);
+      System.arraycopy(targets[state], pos, t, pos + 1, length - pos);
+      labels[state] = l;
+      targets[state] = t;
+    }
+
+    /**
+     * @return for every rule whether it must be evaluated: the rule is
+     *         unconditional or one of its literals occurs in the URL
+     */
+    boolean[] candidates(String url, boolean[] unconditional) {
+      boolean[] candidates = unconditional.clone();
+      boolean[] seen = new boolean[literalRules.length];
+      int state = ROOT;
+      for (int i = 0; i < url.length(); i++) {
+        char c = url.charAt(i);
+        if (c >= 0x80) {
+          c = Character.toLowerCase(c);
+        } else if (c >= 'A' && c <= 'Z') {
+          c += 'a' - 'A';
+        }
+        int next;
+        while ((next = transition(state, c)) == -1 && state != ROOT) {
+          state = fail[state];
+        }
+        state = next == -1 ? ROOT : next;
+        int s = literal[state] != -1 ? state : dictionary[state];
+        for (; s != -1; s = dictionary[s]) {
+          int lit = literal[s];
+          if (!seen[lit]) {
+            seen[lit] = true;
+            for (int r : literalRules[lit]) {
+              candidates[r] = true;
+            }
+          }
+        }
+      }
+      return candidates;
+    }
+  }
+}
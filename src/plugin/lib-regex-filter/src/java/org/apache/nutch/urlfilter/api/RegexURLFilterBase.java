@@ -25,7 +25,6 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.StringReader;
-import java.net.MalformedURLException;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -38,7 +37,6 @@ import org.apache.hadoop.conf.Configuration;
 
 // Nutch imports
 import org.apache.nutch.net.*;
-import org.apache.nutch.util.URLUtil;
 
 /**
  * Generic {@link org.apache.nutch.net.URLFilter URL filter} based on regular
@@ -59,6 +57,13 @@ import org.apache.nutch.util.URLUtil;
  * <code>-</code>)means no.
  * </p>
  * 
+ * <p>
+ * The first matching rule decides. Rules which cannot match a URL because
+ * literals required by the regular expression are not contained in the URL
+ * are skipped without evaluating the regular expression, see
+ * {@link RegexRuleSet}.
+ * </p>
+ * 
  * @author J&eacute;r&ocirc;me Charron
  */
 public abstract class RegexURLFilterBase implements URLFilter {
@@ -67,8 +72,14 @@ public abstract class RegexURLFilterBase implements URLFilter {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
-  /** An array of applicable rules */
-  private List<RegexRule> rules;
+  /**
+   * Prefilter rules by literals required by the regular expressions, see
+   * {@link RegexRuleSet}
+   */
+  public static final String URLFILTER_PREFILTER = "urlfilter.regex.prefilter";
+
+  /** The applicable rules */
+  private RegexRuleSet rules;
 
   /** The current configuration */
   private Configuration conf;
@@ -111,7 +122,7 @@ public abstract class RegexURLFilterBase implements URLFilter {
    */
   protected RegexURLFilterBase(Reader reader) throws IOException,
       IllegalArgumentException {
-    rules = readRules(reader);
+    rules = new RegexRuleSet(readRules(reader), true);
   }
 
   /**
@@ -159,41 +170,11 @@ public abstract class RegexURLFilterBase implements URLFilter {
 
   // Inherited Javadoc
   public String filter(String url) {
-    String host = URLUtil.getHost(url);
-    String domain = null;
-    
-    try {
-      domain = URLUtil.getDomainName(url);
-    } catch (MalformedURLException e) {
-      // shouldnt happen here right?
-    }
-    
-    if (LOG.isDebugEnabled()) {
-      LOG.debug("URL belongs to host " + host + " and domain " + domain);
-    }
-
-    for (RegexRule rule : rules) {
-      // Skip the skip for rules that don't share the same host and domain
-      if (rule.hostOrDomain() != null &&
-            !rule.hostOrDomain().equals(host) &&
-            !rule.hostOrDomain().equals(domain)) {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Skipping rule [" + rule.regex() + "] for host: " + rule.hostOrDomain());
-        }
-
-        continue;
-      }
-    
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Applying rule [" + rule.regex() + "] for host: " + host + " and domain " + domain);
-      }
-
-      if (rule.match(url)) {
-        return rule.accept() ? url : null;
-      }
+    RegexRule rule = rules.match(url);
+    if (rule == null) {
+      return null;
     }
-    ;
-    return null;
+    return rule.accept() ? url : null;
   }
 
   /*
@@ -218,7 +199,8 @@ public abstract class RegexURLFilterBase implements URLFilter {
       throw new RuntimeException(e.getMessage(), e);
     }
     try {
-      rules = readRules(reader);
+      rules = new RegexRuleSet(readRules(reader),
+          conf.getBoolean(URLFILTER_PREFILTER, true));
     } catch (IOException e) {
       if (LOG.isErrorEnabled()) {
         LOG.error(e.getMessage());
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.urlfilter.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.nutch.urlfilter.api.LiteralExtractor.Syntax;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRegexRuleSet {
+
+  private static final String[] RULES = { "-^(file|ftp|mailto):",
+      "-\\.(gif|GIF|jpg|JPG|png|PNG|css|CSS|js|JS)$", "-[?*!@=]",
+      "-.*(/[^/]+)/[^/]+\\1/[^/]+\\1/", "+^https?://www\\.example\\.com/",
+      "-/(?:login|logout)\\b", "-(?i)/PRIVATE/", "+\\.org/", "-." };
+
+  private static final String[] URLS = { "http://www.example.com/index.html",
+      "http://www.example.com/logo.GIF", "ftp://ftp.example.com/",
+      "https://www.example.com/login", "http://example.com/a?b=c",
+      "http://nutch.apache.org/", "http://foo.com/private/x.html",
+      "http://foo.com/PRIVATE/x.html", "http://foo.com/a/b/a/c/a/d/",
+      "http://www.exampleXcom/", "http://föö.org/",
+      "HTTP://WWW.EXAMPLE.COM/" };
+
+  private static class Rule extends RegexRule {
+    private final Pattern pattern;
+
+    Rule(boolean sign, String regex) {
+      super(sign, regex);
+      pattern = Pattern.compile(regex);
+    }
+
+    protected boolean match(String url) {
+      return pattern.matcher(url.toLowerCase()).find();
+    }
+  }
+
+  private static List<RegexRule> createRules() {
+    List<RegexRule> rules = new ArrayList<RegexRule>();
+    for (String rule : RULES) {
+      rules.add(new Rule(rule.charAt(0) == '+', rule.substring(1)));
+    }
+    return rules;
+  }
+
+  private static void assertLiterals(String regex, Syntax syntax,
+      String... expected) {
+    String[] literals = LiteralExtractor.extract(regex, syntax);
+    if (expected.length == 0) {
+      Assert.assertNull(regex, literals);
+    } else {
+      Assert.assertArrayEquals(regex, expected, literals);
+    }
+  }
+
+  @Test
+  public void testLiteralExtraction() {
+    assertLiterals("^https?://www\\.example\\.com/", Syntax.JAVA,
+        "://www.example.com/");
+    assertLiterals("\\.(gif|GIF|jpg)$", Syntax.JAVA, "gif", "jpg");
+    assertLiterals("^(file|ftp|mailto):", Syntax.JAVA, "file", "ftp",
+        "mailto");
+    assertLiterals("(foo|bar)?baz", Syntax.JAVA, "baz");
+    assertLiterals("ab+cde", Syntax.JAVA, "cde");
+    assertLiterals("abc|xy", Syntax.JAVA, "abc", "xy");
+    assertLiterals("abc|.*", Syntax.JAVA);
+    assertLiterals("[?*!@=]", Syntax.JAVA);
+    assertLiterals("\\x41bc", Syntax.JAVA);
+    assertLiterals("(?x) a b c", Syntax.JAVA);
+    assertLiterals("\\d+\\.html", Syntax.JAVA, ".html");
+    assertLiterals("(?!abc)defg", Syntax.JAVA, "defg");
+    // in automaton syntax every escaped character is a literal
+    assertLiterals(".*\\d\\.html", Syntax.AUTOMATON, "d.html");
+    assertLiterals("~(abc)", Syntax.AUTOMATON);
+    assertLiterals("a<1-100>b", Syntax.AUTOMATON);
+  }
+
+  @Test
+  public void testFirstMatchWins() {
+    RegexRuleSet prefiltered = new RegexRuleSet(createRules(), true);
+    RegexRuleSet sequential = new RegexRuleSet(createRules(), false);
+    for (String url : URLS) {
+      RegexRule expected = sequential.match(url);
+      RegexRule actual = prefiltered.match(url);
+      Assert.assertEquals(url, expected == null ? null : expected.regex(),
+          actual == null ? null : actual.regex());
+    }
+    Assert.assertTrue(prefiltered.match("http://www.example.com/index.html")
+        .accept());
+    Assert.assertEquals("\\.(gif|GIF|jpg|JPG|png|PNG|css|CSS|js|JS)$",
+        prefiltered.match("http://www.example.com/logo.GIF").regex());
+    Assert.assertEquals("(?i)/PRIVATE/",
+        prefiltered.match("http://foo.com/PRIVATE/x.html").regex());
+  }
+}
@@ -93,6 +93,12 @@ public class BayesParseFilter implements HtmlParseFilter {
 	}
 
 
+	/** Classifies the parse text and outlinks, the DOM tree is not used. */
+	@Override
+	public boolean needsDOM() {
+		return false;
+	}
+
 	@Override
 	public ParseResult filter(Content content, ParseResult parseResult,
 			HTMLMetaTags metaTags, DocumentFragment doc) {
@@ -162,22 +162,29 @@ public class DOMContentUtils {
         walker.skipChildren();
       }
       if (nodeType == Node.TEXT_NODE) {
-        // cleanup and trim the value
-        String text = currentNode.getNodeValue();
-        text = text.replaceAll("\\s+", " ");
-        text = text.trim();
-        if (text.length() > 0) {
-          appendSpace(sb);
-          sb.append(text);
-        } else {
-          appendParagraphSeparator(sb);
-        }
+        appendText(sb, currentNode.getNodeValue());
       }
     }
 
     return abort;
   }
 
+  /**
+   * Append the cleaned-up value of a text node, or a paragraph break if the
+   * text node contains only white space.
+   */
+  static void appendText(StringBuffer sb, String text) {
+    // cleanup and trim the value
+    text = text.replaceAll("\\s+", " ");
+    text = text.trim();
+    if (text.length() > 0) {
+      appendSpace(sb);
+      sb.append(text);
+    } else {
+      appendParagraphSeparator(sb);
+    }
+  }
+
   /**
    * Conditionally append a paragraph/line break to StringBuffer unless last
    * character a already indicates a paragraph break. Also remove trailing space
@@ -186,7 +193,7 @@ public class DOMContentUtils {
    * @param buffer
    *          StringBuffer to append paragraph break
    */
-  private void appendParagraphSeparator(StringBuffer buffer) {
+  private static void appendParagraphSeparator(StringBuffer buffer) {
     if (buffer.length() == 0) {
       return;
     }
@@ -210,7 +217,7 @@ public class DOMContentUtils {
    * @param buffer
    *          StringBuffer to append space
    */
-  private void appendSpace(StringBuffer buffer) {
+  private static void appendSpace(StringBuffer buffer) {
     if (buffer.length() == 0) {
       return;
     }
@@ -433,24 +440,8 @@ public class DOMContentUtils {
               }
             }
             if (target != null && !noFollow && !post)
-              try {
-
-                URL url = URLUtil.resolveURL(base, target);
-                Outlink outlink = new Outlink(url.toString(), linkText
-                    .toString().trim());
-                outlinks.add(outlink);
-
-                // NUTCH-2433 - Keep the node name where the URL was found into
-                // the outlink metadata
-                if (keepNodenames) {
-                  MapWritable metadata = new MapWritable();
-                  metadata.put(new Text(srcTagMetaName), new Text(nodeName));
-                  outlink.setMetadata(metadata);
-                }
-
-              } catch (MalformedURLException e) {
-                // don't care
-              }
+              addOutlink(base, outlinks, target, linkText.toString().trim(),
+                  nodeName);
           }
           // this should not have any children, skip them
           if (params.childLen == 0)
@@ -460,4 +451,31 @@ public class DOMContentUtils {
     }
   }
 
+  /** @return parameters of the link element, or null if not a link element */
+  LinkParams getLinkParams(String nodeName) {
+    return linkParams.get(nodeName);
+  }
+
+  /** Resolve the link target and add an {@link Outlink}. */
+  void addOutlink(URL base, ArrayList<Outlink> outlinks, String target,
+      String anchor, String nodeName) {
+    try {
+
+      URL url = URLUtil.resolveURL(base, target);
+      Outlink outlink = new Outlink(url.toString(), anchor);
+      outlinks.add(outlink);
+
+      // NUTCH-2433 - Keep the node name where the URL was found into
+      // the outlink metadata
+      if (keepNodenames) {
+        MapWritable metadata = new MapWritable();
+        metadata.put(new Text(srcTagMetaName), new Text(nodeName));
+        outlink.setMetadata(metadata);
+      }
+
+    } catch (MalformedURLException e) {
+      // don't care
+    }
+  }
+
 }
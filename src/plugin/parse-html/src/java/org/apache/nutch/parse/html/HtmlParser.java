@@ -29,6 +29,7 @@ import java.util.regex.*;
 import org.cyberneko.html.parsers.*;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.w3c.dom.*;
 import org.apache.html.dom.*;
 import org.slf4j.Logger;
@@ -104,16 +105,7 @@ public class HtmlParser implements Parser {
     }
     if (encoding == null) {
       // check for BOM
-      if (content.length >= 3 && content[0] == (byte) 0xEF
-          && content[1] == (byte) 0xBB && content[2] == (byte) 0xBF) {
-        encoding = "UTF-8";
-      } else if (content.length >= 2) {
-        if (content[0] == (byte) 0xFF && content[1] == (byte) 0xFE) {
-          encoding = "UTF-16LE";
-        } else if (content[0] == (byte) 0xFE && content[1] == (byte) 0xFF) {
-          encoding = "UTF-16BE";
-        }
-      }
+      encoding = EncodingDetector.detectBOM(content);
     }
 
     return encoding;
@@ -129,6 +121,8 @@ public class HtmlParser implements Parser {
 
   private String cachingPolicy;
 
+  private boolean streaming;
+
   public ParseResult getParse(Content content) {
     HTMLMetaTags metaTags = new HTMLMetaTags();
 
@@ -146,15 +140,16 @@ public class HtmlParser implements Parser {
     Metadata metadata = new Metadata();
 
     // parse the content
-    DocumentFragment root;
+    DocumentFragment root = null;
+    StreamingContentHandler handler = null;
     try {
       byte[] contentInOctets = content.getContent();
       InputSource input = new InputSource(new ByteArrayInputStream(
           contentInOctets));
 
       EncodingDetector detector = new EncodingDetector(conf);
-      detector.autoDetectClues(content, true);
-      detector.addClue(sniffCharacterEncoding(contentInOctets), "sniffed");
+      detector.autoDetectClues(content, true,
+          sniffCharacterEncoding(contentInOctets));
       String encoding = detector.guessEncoding(content, defaultCharEncoding);
 
       metadata.set(Metadata.ORIGINAL_CHAR_ENCODING, encoding);
@@ -164,7 +159,13 @@ public class HtmlParser implements Parser {
       if (LOG.isTraceEnabled()) {
         LOG.trace("Parsing...");
       }
-      root = parse(input);
+      if (streaming) {
+        // no filter needs the DOM: extract content while parsing
+        handler = new StreamingContentHandler(utils, metaTags, base);
+        parse(input, handler);
+      } else {
+        root = parse(input);
+      }
     } catch (IOException e) {
       return new ParseStatus(e)
           .getEmptyParseResult(content.getUrl(), getConf());
@@ -181,7 +182,9 @@ public class HtmlParser implements Parser {
     }
 
     // get meta directives
-    HTMLMetaProcessor.getMetaTags(metaTags, root, base);
+    if (root != null) {
+      HTMLMetaProcessor.getMetaTags(metaTags, root, base);
+    }
 
     // populate Nutch metadata with HTML meta directives
     metadata.addAll(metaTags.getGeneralTags());
@@ -195,23 +198,35 @@ public class HtmlParser implements Parser {
       if (LOG.isTraceEnabled()) {
         LOG.trace("Getting text...");
       }
-      utils.getText(sb, root); // extract text
-      text = sb.toString();
-      sb.setLength(0);
+      if (root != null) {
+        utils.getText(sb, root); // extract text
+        text = sb.toString();
+        sb.setLength(0);
+      } else {
+        text = handler.getText();
+      }
       if (LOG.isTraceEnabled()) {
         LOG.trace("Getting title...");
       }
-      utils.getTitle(sb, root); // extract title
-      title = sb.toString().trim();
+      if (root != null) {
+        utils.getTitle(sb, root); // extract title
+        title = sb.toString().trim();
+      } else {
+        title = handler.getTitle().trim();
+      }
     }
 
     if (!metaTags.getNoFollow()) { // okay to follow links
       ArrayList<Outlink> l = new ArrayList<Outlink>(); // extract outlinks
-      URL baseTag = utils.getBase(root);
+      URL baseTag = root != null ? utils.getBase(root) : handler.getBase();
       if (LOG.isTraceEnabled()) {
         LOG.trace("Getting links...");
       }
-      utils.getOutlinks(baseTag != null ? baseTag : base, l, root);
+      if (root != null) {
+        utils.getOutlinks(baseTag != null ? baseTag : base, l, root);
+      } else {
+        handler.getOutlinks(baseTag != null ? baseTag : base, l);
+      }
       outlinks = l.toArray(new Outlink[l.size()]);
       if (LOG.isTraceEnabled()) {
         LOG.trace("found " + outlinks.length + " outlinks in "
@@ -248,6 +263,45 @@ public class HtmlParser implements Parser {
       return parseNeko(input);
   }
 
+  /** Parse without building a DOM, passing SAX events to the handler. */
+  private void parse(InputSource input, StreamingContentHandler handler)
+      throws Exception {
+    XMLReader reader;
+    if (parserImpl.equalsIgnoreCase("tagsoup")) {
+      reader = new org.ccil.cowan.tagsoup.Parser();
+      reader.setFeature(org.ccil.cowan.tagsoup.Parser.ignoreBogonsFeature,
+          true);
+      reader.setFeature(org.ccil.cowan.tagsoup.Parser.bogonsEmptyFeature,
+          false);
+    } else {
+      reader = new org.cyberneko.html.parsers.SAXParser();
+      try {
+        reader.setFeature(
+            "http://cyberneko.org/html/features/scanner/allow-selfclosing-iframe",
+            true);
+        reader.setProperty(
+            "http://cyberneko.org/html/properties/default-encoding",
+            defaultCharEncoding);
+        reader.setFeature(
+            "http://cyberneko.org/html/features/scanner/ignore-specified-charset",
+            true);
+        reader.setFeature(
+            "http://cyberneko.org/html/features/balance-tags/ignore-outside-content",
+            false);
+        reader.setFeature(
+            "http://cyberneko.org/html/features/balance-tags/document-fragment",
+            true);
+        reader.setFeature("http://cyberneko.org/html/features/report-errors",
+            LOG.isTraceEnabled());
+      } catch (SAXException e) {
+      }
+    }
+    reader.setContentHandler(handler);
+    reader
+        .setProperty("http://xml.org/sax/properties/lexical-handler", handler);
+    reader.parse(input);
+  }
+
   private DocumentFragment parseTagSoup(InputSource input) throws Exception {
     HTMLDocumentImpl doc = new HTMLDocumentImpl();
     DocumentFragment frag = doc.createDocumentFragment();
@@ -345,6 +399,8 @@ public class HtmlParser implements Parser {
     this.utils = new DOMContentUtils(conf);
     this.cachingPolicy = getConf().get("parser.caching.forbidden.policy",
         Nutch.CACHING_FORBIDDEN_CONTENT);
+    this.streaming = getConf().getBoolean("parser.html.streaming", false)
+        && !htmlParseFilters.needsDOM();
   }
 
   public Configuration getConf() {
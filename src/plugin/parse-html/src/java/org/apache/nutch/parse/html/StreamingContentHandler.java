@@ -0,0 +1,396 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse.html;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.nutch.parse.HTMLMetaTags;
+import org.apache.nutch.parse.Outlink;
+import org.apache.nutch.parse.html.DOMContentUtils.LinkParams;
+import org.xml.sax.Attributes;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Extracts text, title, base URL, meta tags and outlinks in a single pass over
+ * the SAX events of the HTML parser, without building a DOM tree. The results
+ * are the same as those of {@link DOMContentUtils} and
+ * {@link HTMLMetaProcessor} applied to the DOM tree built from the same
+ * events.
+ */
+class StreamingContentHandler extends DefaultHandler implements
+    LexicalHandler {
+
+  /** A child node of a link element, see DOMContentUtils.shouldThrowAwayLink */
+  private static class Child {
+    String elementName;
+    boolean whiteSpaceText;
+  }
+
+  /** A link element and the state required to extract the anchor */
+  private static class Link {
+    String nodeName;
+    LinkParams params;
+    int depth;
+    String target;
+    boolean noFollow;
+    boolean post;
+    int anchors = 0;
+    boolean aborted = false;
+    StringBuffer text = new StringBuffer();
+    StringBuffer fallbackText = new StringBuffer();
+    int childLen = 0;
+    Child[] children = new Child[3];
+    boolean keep = false;
+  }
+
+  private final DOMContentUtils utils;
+  private final HTMLMetaTags metaTags;
+  private final URL currURL;
+
+  private final StringBuffer text = new StringBuffer();
+  private final StringBuffer title = new StringBuffer();
+  private URL baseTag;
+
+  /** all link elements in document order */
+  private final List<Link> links = new ArrayList<>();
+  /** open link elements */
+  private final List<Link> openLinks = new ArrayList<>();
+
+  private final StringBuilder chars = new StringBuilder();
+  private boolean inCData = false;
+
+  private int depth = 0;
+  private int skipDepth = 0;
+  private int bodyDepth = 0;
+  private boolean bodySeen = false;
+  // 0: no title found yet, 1: in title, 2: title done
+  private int titleState = 0;
+  private int titleDepth;
+
+  StreamingContentHandler(DOMContentUtils utils, HTMLMetaTags metaTags,
+      URL currURL) {
+    this.utils = utils;
+    this.metaTags = metaTags;
+    this.currURL = currURL;
+    metaTags.reset();
+  }
+
+  /** @return the text of the page, see {@link DOMContentUtils#getText} */
+  String getText() {
+    return text.toString();
+  }
+
+  /** @return the title (not trimmed), see {@link DOMContentUtils#getTitle} */
+  String getTitle() {
+    return title.toString();
+  }
+
+  /** @return the URL of the BASE tag, see {@link DOMContentUtils#getBase} */
+  URL getBase() {
+    return baseTag;
+  }
+
+  /** Add the outlinks, see {@link DOMContentUtils#getOutlinks} */
+  void getOutlinks(URL base, ArrayList<Outlink> outlinks) {
+    for (Link link : links) {
+      if (link.keep) {
+        String anchor = link.text.toString();
+        if (anchor.trim().length() == 0) {
+          anchor = link.fallbackText.toString();
+        }
+        utils.addOutlink(base, outlinks, link.target, anchor.trim(),
+            link.nodeName);
+      }
+    }
+  }
+
+  private Link getParentLink() {
+    if (openLinks.isEmpty()) {
+      return null;
+    }
+    Link link = openLinks.get(openLinks.size() - 1);
+    return link.depth == depth ? link : null;
+  }
+
+  private static void addChild(Link parent, String elementName,
+      boolean whiteSpaceText) {
+    if (parent == null) {
+      return;
+    }
+    if (parent.childLen < parent.children.length) {
+      Child child = new Child();
+      child.elementName = elementName;
+      child.whiteSpaceText = whiteSpaceText;
+      parent.children[parent.childLen] = child;
+    }
+    parent.childLen++;
+  }
+
+  private static void appendFallbackText(Link link, String s) {
+    if (link.fallbackText.length() > 0) {
+      link.fallbackText.append(' ');
+    }
+    link.fallbackText.append(s);
+  }
+
+  /** Emit the characters since the last event as one text node. */
+  private void flushText() {
+    if (chars.length() == 0) {
+      return;
+    }
+    String s = chars.toString();
+    chars.setLength(0);
+    if (inCData) {
+      // CDATA sections are no text nodes
+      return;
+    }
+
+    addChild(getParentLink(), null, isWhiteSpace(s));
+    if (skipDepth == 0) {
+      DOMContentUtils.appendText(text, s);
+      if (titleState == 1) {
+        DOMContentUtils.appendText(title, s);
+      }
+    }
+    for (Link link : openLinks) {
+      if (skipDepth == 0 && !link.aborted) {
+        DOMContentUtils.appendText(link.text, s);
+      }
+      appendFallbackText(link, s);
+    }
+  }
+
+  private static boolean isWhiteSpace(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (!Character.isWhitespace(s.charAt(i)))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName,
+      Attributes atts) {
+    flushText();
+    String name = qName.toLowerCase();
+    addChild(getParentLink(), name, false);
+    depth++;
+
+    if ("body".equals(name)) {
+      bodySeen = true;
+      bodyDepth++;
+    } else if ("script".equals(name) || "style".equals(name)) {
+      skipDepth++;
+    } else if ("title".equals(name)) {
+      if (!bodySeen && titleState == 0) {
+        titleState = 1;
+        titleDepth = depth;
+      }
+    } else if ("meta".equals(name)) {
+      if (bodyDepth == 0) {
+        String nameValue = null, equivValue = null, contentValue = null;
+        for (int i = 0; i < atts.getLength(); i++) {
+          String attrName = atts.getQName(i).toLowerCase();
+          if (attrName.equals("name")) {
+            nameValue = atts.getValue(i);
+          } else if (attrName.equals("http-equiv")) {
+            equivValue = atts.getValue(i);
+          } else if (attrName.equals("content")) {
+            contentValue = atts.getValue(i);
+          }
+        }
+        HTMLMetaProcessor.processMeta(metaTags, nameValue, equivValue,
+            contentValue, currURL);
+      }
+    } else if ("base".equals(name)) {
+      String href = getValue(atts, "href");
+      if (href != null) {
+        if (bodyDepth == 0) {
+          HTMLMetaProcessor.processBase(metaTags, href, currURL);
+        }
+        if (!bodySeen && baseTag == null) {
+          try {
+            baseTag = new URL(href);
+          } catch (MalformedURLException e) {
+          }
+        }
+      }
+    }
+
+    LinkParams params = utils.getLinkParams(name);
+    if (params != null) {
+      Link link = new Link();
+      link.nodeName = name;
+      link.params = params;
+      link.depth = depth;
+      for (int i = 0; i < atts.getLength(); i++) {
+        String attrName = atts.getQName(i);
+        if (params.attrName.equalsIgnoreCase(attrName)) {
+          link.target = atts.getValue(i);
+        } else if ("rel".equalsIgnoreCase(attrName)
+            && "nofollow".equalsIgnoreCase(atts.getValue(i))) {
+          link.noFollow = true;
+        } else if ("method".equalsIgnoreCase(attrName)
+            && "post".equalsIgnoreCase(atts.getValue(i))) {
+          link.post = true;
+        }
+      }
+      links.add(link);
+      openLinks.add(link);
+    }
+
+    if (!openLinks.isEmpty()) {
+      boolean isAnchor = "a".equals(name);
+      String alt = null;
+      if ("img".equals(name)) {
+        alt = getValue(atts, "alt");
+        if (alt != null && alt.trim().length() == 0) {
+          alt = null;
+        }
+      }
+      for (Link link : openLinks) {
+        if (isAnchor && skipDepth == 0 && ++link.anchors > 1) {
+          // stop at nested anchors
+          link.aborted = true;
+        }
+        if (alt != null) {
+          appendFallbackText(link, alt);
+        }
+      }
+    }
+  }
+
+  private static String getValue(Attributes atts, String name) {
+    for (int i = 0; i < atts.getLength(); i++) {
+      if (name.equalsIgnoreCase(atts.getQName(i))) {
+        return atts.getValue(i);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    flushText();
+    String name = qName.toLowerCase();
+
+    if (!openLinks.isEmpty()) {
+      Link link = openLinks.get(openLinks.size() - 1);
+      if (link.depth == depth) {
+        openLinks.remove(openLinks.size() - 1);
+        link.keep = link.target != null && !link.noFollow && !link.post
+            && !shouldThrowAwayLink(link);
+        if (!link.keep) {
+          links.remove(links.lastIndexOf(link));
+        }
+        link.children = null;
+      }
+    }
+
+    if (titleState == 1 && titleDepth == depth) {
+      titleState = 2;
+    }
+    if ("body".equals(name)) {
+      bodyDepth--;
+    } else if ("script".equals(name) || "style".equals(name)) {
+      skipDepth--;
+    }
+    depth--;
+  }
+
+  /** Same as DOMContentUtils.shouldThrowAwayLink */
+  private static boolean shouldThrowAwayLink(Link link) {
+    String elName = link.params.elName;
+    Child[] c = link.children;
+    if (link.childLen == 0) {
+      // this has no inner structure
+      return link.params.childLen != 0;
+    } else if (link.childLen == 1) {
+      // single nested link
+      return isLinkElement(c[0], elName);
+    } else if (link.childLen == 2) {
+      // single link followed or preceded by whitespace node
+      return (isLinkElement(c[0], elName) && c[1].whiteSpaceText)
+          || (isLinkElement(c[1], elName) && c[0].whiteSpaceText);
+    } else if (link.childLen == 3) {
+      // single link surrounded by whitespace nodes
+      return isLinkElement(c[1], elName) && c[0].whiteSpaceText
+          && c[2].whiteSpaceText;
+    }
+    return false;
+  }
+
+  private static boolean isLinkElement(Child child, String elName) {
+    return child.elementName != null
+        && elName.equalsIgnoreCase(child.elementName);
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    chars.append(ch, start, length);
+  }
+
+  @Override
+  public void ignorableWhitespace(char[] ch, int start, int length) {
+    characters(ch, start, length);
+  }
+
+  @Override
+  public void endDocument() {
+    flushText();
+  }
+
+  @Override
+  public void comment(char[] ch, int start, int length) {
+    flushText();
+    addChild(getParentLink(), null, false);
+  }
+
+  @Override
+  public void startCDATA() {
+    flushText();
+    addChild(getParentLink(), null, false);
+    inCData = true;
+  }
+
+  @Override
+  public void endCDATA() {
+    flushText();
+    inCData = false;
+  }
+
+  @Override
+  public void startDTD(String name, String publicId, String systemId) {
+  }
+
+  @Override
+  public void endDTD() {
+  }
+
+  @Override
+  public void startEntity(String name) {
+  }
+
+  @Override
+  public void endEntity(String name) {
+  }
+
+}
@@ -19,9 +19,12 @@ package org.apache.nutch.parse.html;
 
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.parse.html.HtmlParser;
 import org.apache.nutch.parse.Parse;
 import org.apache.nutch.parse.Parser;
@@ -78,6 +81,33 @@ public class TestHtmlParser {
       { "HTML5, utf-16, BOM", "utf-16",
           "\ufeff<!DOCTYPE html>\n<html>\n<head>\n" + encodingTestContent } };
 
+  private static String[] streamingTestPages = {
+      encodingTestPages[0][2],
+      "<html><head><title> The <b>title</b> </title>"
+          + "<base href=\"http://www.example.com/dir/\">"
+          + "<meta name=\"Description\" content=\"test page\">"
+          + "<meta http-equiv=\"refresh\" content=\"5; url=next.html\">"
+          + "<style>p { color: red; }</style>"
+          + "<script>var s = '<a href=\"no.html\">no</a>';</script>"
+          + "</head><body>\n<h1>Heading</h1>\n<p>Some <i>text</i> and\n"
+          + "<a href=\"a.html\">a <b>link</b></a>, <!-- comment -->"
+          + "<a href=\"b.html\" rel=\"nofollow\">nofollow</a>"
+          + "<a href=\"c.html\"><img src=\"c.png\" alt=\"alt text\"></a>"
+          + "<a href=\"d.html\">outer <a href=\"e.html\">inner</a> after</a>"
+          + "<a href=\"f.html\"> </a><a href=\"g.html\"></a>"
+          + "<a href=\"h.html\"> <a href=\"i.html\">i</a> </a>"
+          + "<form action=\"/search\" method=\"get\"><input name=q>"
+          + "<a href=\"j.html\">j</a><a href=\"k.html\">k</a></form>"
+          + "<form action=\"/post\" method=\"post\">x</form>"
+          + "<iframe src=\"frame.html\"></iframe>"
+          + "<area href=\"area.html\"><title>not the title</title>"
+          + "<meta name=\"in-body\" content=\"ignored\">"
+          + "<p>text <![CDATA[cdata]]> &amp; entities &lt;&gt;\n\n</p>"
+          + "</body></html>",
+      "<html><head><meta name=\"robots\" content=\"noindex\"></head>"
+          + "<body><a href=\"x.html\">x</a></body></html>",
+      "<p>fragment without <a href=\"/html\">html</a> or body" };
+
   private Configuration conf;
   private Parser parser;
 
@@ -94,6 +124,46 @@ public class TestHtmlParser {
             new Metadata(), conf)).get(dummyUrl);
   }
 
+  @Test
+  public void testStreaming() throws Exception {
+    for (String impl : new String[] { "neko", "tagsoup" }) {
+      conf.set("parser.html.impl", impl);
+      conf.setBoolean("parser.html.streaming", false);
+      parser.setConf(conf);
+      Parse[] expected = new Parse[streamingTestPages.length];
+      for (int i = 0; i < streamingTestPages.length; i++) {
+        expected[i] = parse(streamingTestPages[i]
+            .getBytes(StandardCharsets.UTF_8));
+      }
+      conf.setBoolean("parser.html.streaming", true);
+      parser.setConf(conf);
+      for (int i = 0; i < streamingTestPages.length; i++) {
+        Parse parse = parse(streamingTestPages[i]
+            .getBytes(StandardCharsets.UTF_8));
+        String name = impl + ", page " + i;
+        LOG.info(name + ": " + parse.getText());
+        Assert.assertEquals(name, expected[i].getText(), parse.getText());
+        Assert.assertEquals(name, expected[i].getData().getTitle(), parse
+            .getData().getTitle());
+        Assert.assertEquals(name, expected[i].getData().getStatus(), parse
+            .getData().getStatus());
+        Assert.assertEquals(name, expected[i].getData().getParseMeta(), parse
+            .getData().getParseMeta());
+        Outlink[] outlinks = parse.getData().getOutlinks();
+        LOG.info(name + ": " + Arrays.toString(outlinks));
+        Assert.assertArrayEquals(name, expected[i].getData().getOutlinks(),
+            outlinks);
+      }
+    }
+    // base tag and img alt text
+    conf.set("parser.html.impl", "neko");
+    parser.setConf(conf);
+    Assert.assertTrue(Arrays.asList(parse(
+        streamingTestPages[1].getBytes(StandardCharsets.UTF_8)).getData()
+        .getOutlinks()).contains(
+        new Outlink("http://www.example.com/dir/c.html", "alt text")));
+  }
+
   @Test
   public void testEncodingDetection() {
     for (String[] testPage : encodingTestPages) {
@@ -93,6 +93,12 @@ public class MetaTagsParser implements HtmlParseFilter {
     }
   }
 
+  /** Meta tags are passed as {@link HTMLMetaTags}, no DOM tree needed. */
+  @Override
+  public boolean needsDOM() {
+    return false;
+  }
+
   public ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc) {
 
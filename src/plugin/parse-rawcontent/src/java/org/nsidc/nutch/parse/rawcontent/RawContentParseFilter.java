@@ -34,6 +34,12 @@ public class RawContentParseFilter implements HtmlParseFilter {
 		this.conf = conf;
 	}
 
+	/** Only the raw content is used. */
+	@Override
+	public boolean needsDOM() {
+		return false;
+	}
+
 	@Override
 	public ParseResult filter(Content content, ParseResult parseResult,
 			HTMLMetaTags metaTags, DocumentFragment doc) {
@@ -154,6 +154,12 @@ public class NaiveBayesParseFilter implements HtmlParseFilter {
     return this.conf;
   }
 
+  /** Classifies the parse text and outlinks, the DOM tree is not used. */
+  @Override
+  public boolean needsDOM() {
+    return false;
+  }
+
   @Override
   public ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc) {
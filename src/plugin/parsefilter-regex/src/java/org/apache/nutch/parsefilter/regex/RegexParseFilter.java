@@ -66,6 +66,12 @@ public class RegexParseFilter implements HtmlParseFilter {
     this.regexFile = regexFile;
   }
 
+  /** Regular expressions are matched on the raw HTML and the text. */
+  @Override
+  public boolean needsDOM() {
+    return false;
+  }
+
   public ParseResult filter(Content content, ParseResult parseResult, HTMLMetaTags metaTags, DocumentFragment doc) {
     Parse parse = parseResult.get(content.getUrl());
     String html = new String(content.getContent());
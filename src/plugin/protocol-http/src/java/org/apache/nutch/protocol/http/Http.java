@@ -40,6 +40,9 @@ public class Http extends HttpBase {
   protected static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  /** Idle keep-alive connections, null if http.keepalive is false */
+  private HttpConnectionPool pool = null;
+
   /**
    * Public default constructor.
    */
@@ -54,6 +57,14 @@ public class Http extends HttpBase {
    */
   public void setConf(Configuration conf) {
     super.setConf(conf);
+    if (pool != null) {
+      pool.close();
+      pool = null;
+    }
+    if (isKeepAlive()) {
+      pool = new HttpConnectionPool(getKeepAliveMaxPerHost(),
+          getKeepAliveIdleTimeout());
+    }
     // Level logLevel = Level.WARNING;
     // if (conf.getBoolean("http.verbose", false)) {
     // logLevel = Level.FINE;
@@ -67,9 +78,13 @@ public class Http extends HttpBase {
     main(http, args);
   }
 
+  HttpConnectionPool getConnectionPool() {
+    return pool;
+  }
+
   protected Response getResponse(URL url, CrawlDatum datum, boolean redirect)
       throws ProtocolException, IOException {
-    return new HttpResponse(this, url, datum);
+    return new HttpResponse(this, url, datum, pool);
   }
 
 }
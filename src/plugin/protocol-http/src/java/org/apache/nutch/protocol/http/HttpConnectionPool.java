@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol.http;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Pool of idle persistent (keep-alive) connections, keyed by scheme, host and
+ * port of the socket, i.e. the proxy if a proxy is used. Connections are
+ * returned to the pool after a response has been completely read and can be
+ * reused by the next request to the same host, which saves the TCP connect
+ * and, for HTTPS, the TLS handshake.
+ *
+ * <p>
+ * At most <code>http.keepalive.max.per.host</code> idle connections are kept
+ * per host, connections idle for longer than
+ * <code>http.keepalive.idle.timeout</code> are closed when the pool is
+ * accessed.
+ */
+public class HttpConnectionPool {
+
+  /** A connection together with its streams and the time of its last use. */
+  public static class HttpConnection {
+    private final String key;
+    private final Socket socket;
+    private final PushbackInputStream in;
+    private final OutputStream out;
+    private long lastUsed;
+    private int requests = 0;
+
+    public HttpConnection(String key, Socket socket) throws IOException {
+      this.key = key;
+      this.socket = socket;
+      this.in = new PushbackInputStream(new BufferedInputStream(
+          socket.getInputStream(), Http.BUFFER_SIZE), Http.BUFFER_SIZE);
+      this.out = socket.getOutputStream();
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public Socket getSocket() {
+      return socket;
+    }
+
+    public PushbackInputStream getInputStream() {
+      return in;
+    }
+
+    public OutputStream getOutputStream() {
+      return out;
+    }
+
+    /** @return number of requests sent over this connection before */
+    public int getRequests() {
+      return requests;
+    }
+
+    public void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  private final Map<String, ArrayDeque<HttpConnection>> idle = new HashMap<>();
+  private final int maxPerHost;
+  private final long idleTimeout;
+  private long lastEviction = System.currentTimeMillis();
+
+  public HttpConnectionPool(int maxPerHost, long idleTimeout) {
+    this.maxPerHost = maxPerHost;
+    this.idleTimeout = idleTimeout;
+  }
+
+  public static String getKey(String scheme, String host, int port) {
+    return scheme + "://" + host.toLowerCase() + ":" + port;
+  }
+
+  /**
+   * Get an idle connection to the given host.
+   *
+   * @return the most recently used idle connection or null if there is none
+   */
+  public synchronized HttpConnection get(String key) {
+    long now = System.currentTimeMillis();
+    evictIdle(now);
+    ArrayDeque<HttpConnection> connections = idle.get(key);
+    if (connections == null) {
+      return null;
+    }
+    HttpConnection conn;
+    while ((conn = connections.pollLast()) != null) {
+      if (now - conn.lastUsed < idleTimeout && !conn.socket.isClosed()) {
+        break;
+      }
+      conn.close();
+    }
+    if (connections.isEmpty()) {
+      idle.remove(key);
+    }
+    return conn;
+  }
+
+  /**
+   * Return a connection to the pool after a request. The connection is closed
+   * if the host has already enough idle connections.
+   */
+  public synchronized void release(HttpConnection conn) {
+    long now = System.currentTimeMillis();
+    conn.lastUsed = now;
+    conn.requests++;
+    ArrayDeque<HttpConnection> connections = idle.get(conn.key);
+    if (connections == null) {
+      connections = new ArrayDeque<>(maxPerHost);
+      idle.put(conn.key, connections);
+    }
+    if (connections.size() >= maxPerHost) {
+      // close the least recently used one
+      connections.pollFirst().close();
+    }
+    connections.addLast(conn);
+    evictIdle(now);
+  }
+
+  /** Close all connections idle for too long, at most twice per timeout. */
+  private void evictIdle(long now) {
+    if (now - lastEviction < idleTimeout / 2) {
+      return;
+    }
+    lastEviction = now;
+    Iterator<ArrayDeque<HttpConnection>> it = idle.values().iterator();
+    while (it.hasNext()) {
+      ArrayDeque<HttpConnection> connections = it.next();
+      // ordered by time of last use
+      HttpConnection conn;
+      while ((conn = connections.peekFirst()) != null
+          && now - conn.lastUsed >= idleTimeout) {
+        connections.pollFirst().close();
+      }
+      if (connections.isEmpty()) {
+        it.remove();
+      }
+    }
+  }
+
+  /** Close all idle connections. */
+  public synchronized void close() {
+    for (ArrayDeque<HttpConnection> connections : idle.values()) {
+      for (HttpConnection conn : connections) {
+        conn.close();
+      }
+    }
+    idle.clear();
+  }
+
+  /** @return number of idle connections */
+  public synchronized int size() {
+    int size = 0;
+    for (ArrayDeque<HttpConnection> connections : idle.values()) {
+      size += connections.size();
+    }
+    return size;
+  }
+}
@@ -16,7 +16,6 @@
  */
 package org.apache.nutch.protocol.http;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
@@ -25,6 +24,8 @@ import java.io.OutputStream;
 import java.io.PushbackInputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -41,6 +42,7 @@ import org.apache.nutch.metadata.SpellCheckedMetadata;
 import org.apache.nutch.net.protocols.HttpDateFormat;
 import org.apache.nutch.net.protocols.Response;
 import org.apache.nutch.protocol.ProtocolException;
+import org.apache.nutch.protocol.http.HttpConnectionPool.HttpConnection;
 import org.apache.nutch.protocol.http.api.HttpBase;
 import org.apache.nutch.protocol.http.api.HttpException;
 
@@ -57,6 +59,9 @@ public class HttpResponse implements Response {
   private Metadata headers = new SpellCheckedMetadata();
   // used for storing the http headers verbatim
   private StringBuffer httpHeaders;
+  // whether the message body has been read completely, so that the
+  // connection can be reused
+  private boolean complete = false;
   
   protected enum Scheme {
     HTTP, HTTPS,
@@ -73,9 +78,28 @@ public class HttpResponse implements Response {
    */
   public HttpResponse(HttpBase http, URL url, CrawlDatum datum)
       throws ProtocolException, IOException {
+    this(http, url, datum, null);
+  }
+
+  /**
+   * Constructor which sends the request over a persistent connection, taken
+   * from and returned to the given pool.
+   *
+   * @param http
+   * @param url
+   * @param datum
+   * @param pool
+   *          pool of keep-alive connections, or null to open a new connection
+   *          and close it after the response is read
+   * @throws ProtocolException
+   * @throws IOException
+   */
+  public HttpResponse(HttpBase http, URL url, CrawlDatum datum,
+      HttpConnectionPool pool) throws ProtocolException, IOException {
 
     this.http = http;
     this.url = url;
+    this.conf = http.getConf();
 
     Scheme scheme = null;
 
@@ -111,132 +135,62 @@ public class HttpResponse implements Response {
       port = url.getPort();
       portString = ":" + port;
     }
-    Socket socket = null;
 
-    try {
-      socket = new Socket(); // create the socket
-      socket.setSoTimeout(http.getTimeout());
+    String sockHost = http.useProxy(url) ? http.getProxyHost() : host;
+    int sockPort = http.useProxy(url) ? http.getProxyPort() : port;
+    String poolKey = HttpConnectionPool.getKey(url.getProtocol(), sockHost,
+        sockPort);
 
-      // connect
-      String sockHost = http.useProxy(url) ? http.getProxyHost() : host;
-      int sockPort = http.useProxy(url) ? http.getProxyPort() : port;
-      InetSocketAddress sockAddr = new InetSocketAddress(sockHost, sockPort);
-      socket.connect(sockAddr, http.getTimeout());
+    byte[] reqBytes = getRequest(http, url, datum, host, portString, path,
+        pool != null);
 
-      if (scheme == Scheme.HTTPS) {
-        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory
-            .getDefault();
-        SSLSocket sslsocket = (SSLSocket) factory
-            .createSocket(socket, sockHost, sockPort, true);
-        sslsocket.setUseClientMode(true);
-
-        // Get the protocols and ciphers supported by this JVM
-        Set<String> protocols = new HashSet<String>(
-            Arrays.asList(sslsocket.getSupportedProtocols()));
-        Set<String> ciphers = new HashSet<String>(
-            Arrays.asList(sslsocket.getSupportedCipherSuites()));
-
-        // Intersect with preferred protocols and ciphers
-        protocols.retainAll(http.getTlsPreferredProtocols());
-        ciphers.retainAll(http.getTlsPreferredCipherSuites());
-
-        sslsocket.setEnabledProtocols(
-            protocols.toArray(new String[protocols.size()]));
-        sslsocket.setEnabledCipherSuites(
-            ciphers.toArray(new String[ciphers.size()]));
-
-        sslsocket.startHandshake();
-        socket = sslsocket;
-      }
-
-      this.conf = http.getConf();
-      if (sockAddr != null
-          && conf.getBoolean("store.ip.address", false) == true) {
-        headers.add("_ip_", sockAddr.getAddress().getHostAddress());
-      }
-
-      // make request
-      OutputStream req = socket.getOutputStream();
-
-      StringBuffer reqStr = new StringBuffer("GET ");
-      if (http.useProxy(url)) {
-        reqStr.append(url.getProtocol() + "://" + host + portString + path);
-      } else {
-        reqStr.append(path);
-      }
-
-      reqStr.append(" HTTP/1.0\r\n");
-
-      reqStr.append("Host: ");
-      reqStr.append(host);
-      reqStr.append(portString);
-      reqStr.append("\r\n");
-
-      reqStr.append("Accept-Encoding: x-gzip, gzip, deflate\r\n");
-
-      String userAgent = http.getUserAgent();
-      if ((userAgent == null) || (userAgent.length() == 0)) {
-        if (Http.LOG.isErrorEnabled()) {
-          Http.LOG.error("User-agent is not set!");
+    HttpConnection conn = null;
+    boolean reusable = false;
+    try {
+      PushbackInputStream in = null;
+      // send the request, over an idle keep-alive connection if there is one;
+      // if the server has closed it in the meantime, resend it over a new one
+      while (in == null) {
+        conn = (pool != null ? pool.get(poolKey) : null);
+        boolean reused = (conn != null);
+        if (!reused) {
+          conn = connect(http, scheme, poolKey, sockHost, sockPort);
+        }
+        try {
+          OutputStream req = conn.getOutputStream();
+          req.write(reqBytes);
+          req.flush();
+          in = conn.getInputStream();
+          // wait for the response to start
+          int first = in.read();
+          if (first == -1) {
+            throw new EOFException();
+          }
+          in.unread(first);
+        } catch (IOException e) {
+          conn.close();
+          conn = null;
+          in = null;
+          if (!reused || !isStaleConnection(e)) {
+            throw e;
+          }
+          if (Http.LOG.isTraceEnabled()) {
+            Http.LOG.trace("stale keep-alive connection to " + poolKey
+                + ", reconnecting");
+          }
         }
-      } else {
-        reqStr.append("User-Agent: ");
-        reqStr.append(userAgent);
-        reqStr.append("\r\n");
-      }
-
-      String acceptLanguage = http.getAcceptLanguage();
-      if (!acceptLanguage.isEmpty()) {
-        reqStr.append("Accept-Language: ");
-        reqStr.append(acceptLanguage);
-        reqStr.append("\r\n");
-      }
-
-      String acceptCharset = http.getAcceptCharset();
-      if (!acceptCharset.isEmpty()) {
-        reqStr.append("Accept-Charset: ");
-        reqStr.append(acceptCharset);
-        reqStr.append("\r\n");
-      }
-
-      String accept = http.getAccept();
-      if (!accept.isEmpty()) {
-        reqStr.append("Accept: ");
-        reqStr.append(accept);
-        reqStr.append("\r\n");
-      }
-
-      if (http.isCookieEnabled()
-          && datum.getMetaData().containsKey(HttpBase.COOKIE)) {
-        String cookie = ((Text) datum.getMetaData().get(HttpBase.COOKIE))
-            .toString();
-        reqStr.append("Cookie: ");
-        reqStr.append(cookie);
-        reqStr.append("\r\n");
       }
 
-      if (http.isIfModifiedSinceEnabled() && datum.getModifiedTime() > 0) {
-        reqStr.append("If-Modified-Since: " + HttpDateFormat
-            .toString(datum.getModifiedTime()));
-        reqStr.append("\r\n");
+      if (conf.getBoolean("store.ip.address", false) == true) {
+        headers.add("_ip_",
+            conn.getSocket().getInetAddress().getHostAddress());
       }
-      reqStr.append("\r\n");
 
       // store the request in the metadata?
       if (conf.getBoolean("store.http.request", false) == true) {
-        headers.add("_request_", reqStr.toString());
+        headers.add("_request_", new String(reqBytes));
       }
 
-      byte[] reqBytes = reqStr.toString().getBytes();
-
-      req.write(reqBytes);
-      req.flush();
-
-      PushbackInputStream in = // process response
-          new PushbackInputStream(
-              new BufferedInputStream(socket.getInputStream(),
-                  Http.BUFFER_SIZE), Http.BUFFER_SIZE);
-
       StringBuffer line = new StringBuffer();
 
       // store the http headers verbatim
@@ -246,10 +200,12 @@ public class HttpResponse implements Response {
 
       headers.add("nutch.fetch.time", Long.toString(System.currentTimeMillis()));
 
+      String statusLine = null;
       boolean haveSeenNonContinueStatus = false;
       while (!haveSeenNonContinueStatus) {
         // parse status code line
         this.code = parseStatusLine(in, line);
+        statusLine = line.toString();
         if (httpHeaders != null)
           httpHeaders.append(line).append("\n");
         // parse headers
@@ -258,12 +214,17 @@ public class HttpResponse implements Response {
       }
 
       String transferEncoding = getHeader(Response.TRANSFER_ENCODING);
-      if (transferEncoding != null && "chunked"
+      if (pool != null && (code == 204 || code == 304)) {
+        // no message body, must not wait for the server to close
+        content = new byte[0];
+        complete = true;
+      } else if (transferEncoding != null && "chunked"
           .equalsIgnoreCase(transferEncoding.trim())) {
         readChunkedContent(in, line);
       } else {
         readPlainContent(in);
       }
+      reusable = (pool != null && complete && isKeepAlive(statusLine));
 
       String contentEncoding = getHeader(Response.CONTENT_ENCODING);
       if ("gzip".equals(contentEncoding) || "x-gzip".equals(contentEncoding)) {
@@ -282,10 +243,179 @@ public class HttpResponse implements Response {
       }
 
     } finally {
-      if (socket != null)
-        socket.close();
+      if (conn != null) {
+        if (reusable)
+          pool.release(conn);
+        else
+          conn.close();
+      }
+    }
+
+  }
+
+  /**
+   * @return true if sending a request over an idle keep-alive connection
+   *         failed because the server has closed the connection: end of
+   *         stream before the first byte of the response, connection reset
+   *         or broken pipe. A timeout is not, the server may still be
+   *         processing the request.
+   */
+  static boolean isStaleConnection(IOException e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof SocketTimeoutException) {
+        return false;
+      }
+      if (t instanceof EOFException) {
+        return true;
+      }
+      if (t instanceof SocketException) {
+        String msg = t.getMessage();
+        return msg != null && (msg.contains("Connection reset")
+            || msg.contains("Broken pipe"));
+      }
     }
+    return false;
+  }
+
+  /** Open a new connection, including the TLS handshake for HTTPS. */
+  private static HttpConnection connect(HttpBase http, Scheme scheme,
+      String key, String sockHost, int sockPort) throws IOException {
+    Socket socket = new Socket(); // create the socket
+    try {
+      socket.setSoTimeout(http.getTimeout());
+
+      // connect
+      InetSocketAddress sockAddr = new InetSocketAddress(sockHost, sockPort);
+      socket.connect(sockAddr, http.getTimeout());
+
+      if (scheme == Scheme.HTTPS) {
+        SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory
+            .getDefault();
+        SSLSocket sslsocket = (SSLSocket) factory
+            .createSocket(socket, sockHost, sockPort, true);
+        sslsocket.setUseClientMode(true);
 
+        // Get the protocols and ciphers supported by this JVM
+        Set<String> protocols = new HashSet<String>(
+            Arrays.asList(sslsocket.getSupportedProtocols()));
+        Set<String> ciphers = new HashSet<String>(
+            Arrays.asList(sslsocket.getSupportedCipherSuites()));
+
+        // Intersect with preferred protocols and ciphers
+        protocols.retainAll(http.getTlsPreferredProtocols());
+        ciphers.retainAll(http.getTlsPreferredCipherSuites());
+
+        sslsocket.setEnabledProtocols(
+            protocols.toArray(new String[protocols.size()]));
+        sslsocket.setEnabledCipherSuites(
+            ciphers.toArray(new String[ciphers.size()]));
+
+        sslsocket.startHandshake();
+        socket = sslsocket;
+      }
+
+      return new HttpConnection(key, socket);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  private static byte[] getRequest(HttpBase http, URL url, CrawlDatum datum,
+      String host, String portString, String path, boolean keepAlive) {
+    StringBuffer reqStr = new StringBuffer("GET ");
+    if (http.useProxy(url)) {
+      reqStr.append(url.getProtocol() + "://" + host + portString + path);
+    } else {
+      reqStr.append(path);
+    }
+
+    if (keepAlive) {
+      // persistent connections are the default in HTTP/1.1
+      reqStr.append(" HTTP/1.1\r\n");
+    } else {
+      reqStr.append(" HTTP/1.0\r\n");
+    }
+
+    reqStr.append("Host: ");
+    reqStr.append(host);
+    reqStr.append(portString);
+    reqStr.append("\r\n");
+
+    if (keepAlive) {
+      reqStr.append("Connection: keep-alive\r\n");
+    }
+
+    reqStr.append("Accept-Encoding: x-gzip, gzip, deflate\r\n");
+
+    String userAgent = http.getUserAgent();
+    if ((userAgent == null) || (userAgent.length() == 0)) {
+      if (Http.LOG.isErrorEnabled()) {
+        Http.LOG.error("User-agent is not set!");
+      }
+    } else {
+      reqStr.append("User-Agent: ");
+      reqStr.append(userAgent);
+      reqStr.append("\r\n");
+    }
+
+    String acceptLanguage = http.getAcceptLanguage();
+    if (!acceptLanguage.isEmpty()) {
+      reqStr.append("Accept-Language: ");
+      reqStr.append(acceptLanguage);
+      reqStr.append("\r\n");
+    }
+
+    String acceptCharset = http.getAcceptCharset();
+    if (!acceptCharset.isEmpty()) {
+      reqStr.append("Accept-Charset: ");
+      reqStr.append(acceptCharset);
+      reqStr.append("\r\n");
+    }
+
+    String accept = http.getAccept();
+    if (!accept.isEmpty()) {
+      reqStr.append("Accept: ");
+      reqStr.append(accept);
+      reqStr.append("\r\n");
+    }
+
+    if (http.isCookieEnabled()
+        && datum.getMetaData().containsKey(HttpBase.COOKIE)) {
+      String cookie = ((Text) datum.getMetaData().get(HttpBase.COOKIE))
+          .toString();
+      reqStr.append("Cookie: ");
+      reqStr.append(cookie);
+      reqStr.append("\r\n");
+    }
+
+    if (http.isIfModifiedSinceEnabled() && datum.getModifiedTime() > 0) {
+      reqStr.append("If-Modified-Since: " + HttpDateFormat
+          .toString(datum.getModifiedTime()));
+      reqStr.append("\r\n");
+    }
+    reqStr.append("\r\n");
+
+    return reqStr.toString().getBytes();
+  }
+
+  /**
+   * Whether the server keeps the connection open after the response: default
+   * for HTTP/1.1 unless "Connection: close" is sent, for HTTP/1.0 only if
+   * "Connection: keep-alive" is sent.
+   */
+  private boolean isKeepAlive(String statusLine) {
+    String connection = getHeader("Connection");
+    if (connection != null) {
+      connection = connection.trim().toLowerCase();
+      if (connection.contains("close")) {
+        return false;
+      }
+      if (connection.contains("keep-alive")) {
+        return true;
+      }
+    }
+    return statusLine != null && statusLine.startsWith("HTTP/1.1");
   }
 
   /*
@@ -332,9 +462,12 @@ public class HttpResponse implements Response {
         throw new HttpException("bad content length: " + contentLengthString);
       }
     }
+    // without content length the body ends when the connection is closed
+    boolean delimited = (contentLength != Integer.MAX_VALUE);
     if (http.getMaxContent() >= 0 && contentLength > http.getMaxContent()) {
       // limit the download size
       contentLength = http.getMaxContent();
+      delimited = false;
     }
 
     ByteArrayOutputStream out = new ByteArrayOutputStream(Http.BUFFER_SIZE);
@@ -344,6 +477,7 @@ public class HttpResponse implements Response {
     // do not try to read if the contentLength is 0
     if (contentLength == 0) {
       content = new byte[0];
+      complete = delimited;
       return;
     }
 
@@ -364,6 +498,7 @@ public class HttpResponse implements Response {
       }
     }
     content = out.toByteArray();
+    complete = delimited && length == contentLength;
   }
 
   /**
@@ -375,6 +510,7 @@ public class HttpResponse implements Response {
   private void readChunkedContent(PushbackInputStream in, StringBuffer line)
       throws HttpException, IOException {
     boolean doneChunks = false;
+    boolean truncated = false;
     int contentBytesRead = 0;
     byte[] bytes = new byte[Http.BUFFER_SIZE];
     ByteArrayOutputStream out = new ByteArrayOutputStream(Http.BUFFER_SIZE);
@@ -412,8 +548,10 @@ public class HttpResponse implements Response {
       }
 
       if (http.getMaxContent() >= 0 && (contentBytesRead + chunkLen) > http
-          .getMaxContent())
+          .getMaxContent()) {
         chunkLen = http.getMaxContent() - contentBytesRead;
+        truncated = true;
+      }
 
       // read one chunk
       int chunkBytesRead = 0;
@@ -450,6 +588,7 @@ public class HttpResponse implements Response {
 
     content = out.toByteArray();
     parseHeaders(in, line, null);
+    complete = !truncated;
 
   }
 
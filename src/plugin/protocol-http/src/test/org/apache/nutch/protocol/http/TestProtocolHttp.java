@@ -18,8 +18,21 @@
 package org.apache.nutch.protocol.http;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
@@ -71,7 +84,9 @@ public class TestProtocolHttp {
 
   @After
   public void tearDown() throws Exception {
-    server.stop();
+    if (server != null) {
+      server.stop();
+    }
   }
 
   @Test
@@ -91,6 +106,160 @@ public class TestProtocolHttp {
     fetchPage("/redirection", 302);
   }
 
+  @Test
+  public void testKeepAlive() throws Exception {
+    startServer(47505, false);
+    conf.setBoolean("http.keepalive", true);
+    http.setConf(conf);
+    fetchPage("/nonexists.html", 404);
+    assertEquals(1, http.getConnectionPool().size());
+    // the idle connection is reused
+    fetchPage("/nonexists.html", 404);
+    fetchPage("/nonexists.html", 404);
+    assertEquals(1, http.getConnectionPool().size());
+  }
+
+  @Test
+  public void testStaleConnection() {
+    assertTrue(HttpResponse.isStaleConnection(new EOFException()));
+    assertTrue(HttpResponse.isStaleConnection(new SocketException(
+        "Connection reset")));
+    assertTrue(HttpResponse.isStaleConnection(new SocketException(
+        "Broken pipe (Write failed)")));
+    assertTrue(HttpResponse.isStaleConnection(new IOException(
+        new SocketException("Connection reset"))));
+    assertFalse(HttpResponse.isStaleConnection(new SocketTimeoutException(
+        "Read timed out")));
+    assertFalse(HttpResponse.isStaleConnection(new IOException("other")));
+  }
+
+  @Test
+  public void testKeepAliveClosedByServer() throws Exception {
+    // the server closes every connection after the first response
+    try (KeepAliveServer ka = new KeepAliveServer(1)) {
+      setUpKeepAlive();
+      assertEquals(200, http.getResponse(ka.getURL(), new CrawlDatum(), true)
+          .getCode());
+      // wait for the server to close the connection
+      Thread.sleep(200);
+      // the request is resent over a new connection
+      assertEquals(200, http.getResponse(ka.getURL(), new CrawlDatum(), true)
+          .getCode());
+      assertEquals(2, ka.connections.get());
+      assertEquals(2, ka.requests.get());
+    }
+  }
+
+  @Test
+  public void testKeepAliveTimeout() throws Exception {
+    // the server answers only the first request of a connection
+    try (KeepAliveServer ka = new KeepAliveServer(-1)) {
+      setUpKeepAlive();
+      conf.setInt("http.timeout", 1000);
+      http.setConf(conf);
+      assertEquals(200, http.getResponse(ka.getURL(), new CrawlDatum(), true)
+          .getCode());
+      try {
+        http.getResponse(ka.getURL(), new CrawlDatum(), true);
+        fail("read timeout expected");
+      } catch (SocketTimeoutException e) {
+        // expected
+      }
+      // the request is not resent after the timeout
+      assertEquals(1, ka.connections.get());
+      assertEquals(2, ka.requests.get());
+    }
+  }
+
+  private void setUpKeepAlive() {
+    conf = new Configuration();
+    conf.addResource("nutch-default.xml");
+    conf.addResource("nutch-site-test.xml");
+    conf.setBoolean("http.keepalive", true);
+    http = new Http();
+    http.setConf(conf);
+  }
+
+  /**
+   * Minimal HTTP/1.1 server which answers the first request of every
+   * connection. After the first response it either closes the connection or
+   * reads further requests without answering them.
+   */
+  private static class KeepAliveServer extends Thread implements
+      AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final boolean closeAfterResponse;
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * @param responses
+     *          1 to close the connection after the first response, -1 to
+     *          keep it open without answering
+     */
+    KeepAliveServer(int responses) throws IOException {
+      serverSocket = new ServerSocket(0);
+      closeAfterResponse = (responses == 1);
+      setDaemon(true);
+      start();
+    }
+
+    URL getURL() throws IOException {
+      return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), "/");
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          final Socket socket = serverSocket.accept();
+          connections.incrementAndGet();
+          new Thread() {
+            public void run() {
+              serve(socket);
+            }
+          }.start();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private void serve(Socket socket) {
+      try {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            socket.getInputStream(), "ISO-8859-1"));
+        OutputStream out = socket.getOutputStream();
+        boolean answered = false;
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (!line.isEmpty()) {
+            continue;
+          }
+          // end of request headers
+          requests.incrementAndGet();
+          if (!answered) {
+            out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n"
+                + "Content-Length: 2\r\n\r\nok").getBytes("ISO-8859-1"));
+            out.flush();
+            answered = true;
+            if (closeAfterResponse) {
+              break;
+            }
+          }
+        }
+        socket.close();
+      } catch (IOException e) {
+        // connection closed by the client
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+
   /**
    * Starts the Jetty server at a specified port and redirection parameter.
    * 
@@ -11,6 +11,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.crawl.Inlinks;
 import org.apache.nutch.indexer.NutchDocument;
@@ -82,11 +83,10 @@ public class DepthScoringFilter extends Configured implements ScoringFilter {
     while (it.hasNext()) {
       Entry<Text, CrawlDatum> e = it.next();
       // record increased depth
-      e.getValue().getMetaData()
-          .put(DEPTH_KEY_W, new IntWritable(curDepth + 1));
+      e.getValue().setMetaInt(DEPTH_KEY_W, curDepth + 1);
       // record maxDepth if any
       if (customMaxDepth != null) {
-        e.getValue().getMetaData().put(MAX_DEPTH_KEY_W, customMaxDepth);
+        e.getValue().setMetaInt(MAX_DEPTH_KEY_W, customMaxDepth.get());
       }
     }
     return adjust;
@@ -97,21 +97,9 @@ public class DepthScoringFilter extends Configured implements ScoringFilter {
   public float generatorSortValue(Text url, CrawlDatum datum, float initSort)
       throws ScoringFilterException {
     // boost up by current depth
-    int curDepth, curMaxDepth;
-    IntWritable maxDepth = (IntWritable) datum.getMetaData().get(
-        MAX_DEPTH_KEY_W);
-    if (maxDepth != null) {
-      curMaxDepth = maxDepth.get();
-    } else {
-      curMaxDepth = defaultMaxDepth;
-    }
-    IntWritable depth = (IntWritable) datum.getMetaData().get(DEPTH_KEY_W);
-    if (depth == null) {
-      // penalize
-      curDepth = curMaxDepth;
-    } else {
-      curDepth = depth.get();
-    }
+    int curMaxDepth = datum.getMetaInt(MAX_DEPTH_KEY_W, defaultMaxDepth);
+    // penalize if not set
+    int curDepth = datum.getMetaInt(DEPTH_KEY_W, curMaxDepth);
     int mul = curMaxDepth - curDepth;
     return initSort * (1 + mul);
   }
@@ -128,12 +116,11 @@ public class DepthScoringFilter extends Configured implements ScoringFilter {
     // the datum might already have some values set
     // e.g. obtained from redirection
     // in which case we don't want to override them
-    if (datum.getMetaData().get(MAX_DEPTH_KEY_W) == null)
-      datum.getMetaData()
-          .put(MAX_DEPTH_KEY_W, new IntWritable(defaultMaxDepth));
+    if (!datum.hasMetaData(MAX_DEPTH_KEY_W))
+      datum.setMetaInt(MAX_DEPTH_KEY_W, defaultMaxDepth);
     // initial depth is 1
-    if (datum.getMetaData().get(DEPTH_KEY_W) == null)
-      datum.getMetaData().put(DEPTH_KEY_W, new IntWritable(1));
+    if (!datum.hasMetaData(DEPTH_KEY_W))
+      datum.setMetaInt(DEPTH_KEY_W, 1);
   }
 
   @Override
@@ -148,11 +135,10 @@ public class DepthScoringFilter extends Configured implements ScoringFilter {
       int depth = Integer.parseInt(depthString);
       datum.getMetaData().put(MAX_DEPTH_KEY_W, new IntWritable(depth));
     } else { // put the default
-      datum.getMetaData()
-          .put(MAX_DEPTH_KEY_W, new IntWritable(defaultMaxDepth));
+      datum.setMetaInt(MAX_DEPTH_KEY_W, defaultMaxDepth);
     }
     // initial depth is 1
-    datum.getMetaData().put(DEPTH_KEY_W, new IntWritable(1));
+    datum.setMetaInt(DEPTH_KEY_W, 1);
   }
 
   @Override
@@ -171,12 +157,11 @@ public class DepthScoringFilter extends Configured implements ScoringFilter {
   @Override
   public void passScoreBeforeParsing(Text url, CrawlDatum datum, Content content)
       throws ScoringFilterException {
-    IntWritable depth = (IntWritable) datum.getMetaData().get(DEPTH_KEY_W);
+    Writable depth = datum.getMetaData(DEPTH_KEY_W);
     if (depth != null) {
       content.getMetadata().set(DEPTH_KEY, depth.toString());
     }
-    IntWritable maxdepth = (IntWritable) datum.getMetaData().get(
-        MAX_DEPTH_KEY_W);
+    Writable maxdepth = datum.getMetaData(MAX_DEPTH_KEY_W);
     if (maxdepth != null) {
       content.getMetadata().set(MAX_DEPTH_KEY, maxdepth.toString());
     }
@@ -188,20 +173,16 @@ public class DepthScoringFilter extends Configured implements ScoringFilter {
     // find a minimum of all depths
     int newDepth = DEFAULT_MAX_DEPTH;
     if (old != null) {
-      IntWritable oldDepth = (IntWritable) old.getMetaData().get(DEPTH_KEY_W);
-      if (oldDepth != null) {
-        newDepth = oldDepth.get();
+      if (old.hasMetaData(DEPTH_KEY_W)) {
+        newDepth = old.getMetaInt(DEPTH_KEY_W, newDepth);
       } else {
         // not set ?
         initialScore(url, old);
       }
     }
     for (CrawlDatum lnk : inlinked) {
-      IntWritable depth = (IntWritable) lnk.getMetaData().get(DEPTH_KEY_W);
-      if (depth != null && depth.get() < newDepth) {
-        newDepth = depth.get();
-      }
+      newDepth = Math.min(newDepth, lnk.getMetaInt(DEPTH_KEY_W, newDepth));
     }
-    datum.getMetaData().put(DEPTH_KEY_W, new IntWritable(newDepth));
+    datum.setMetaInt(DEPTH_KEY_W, newDepth);
   }
 }
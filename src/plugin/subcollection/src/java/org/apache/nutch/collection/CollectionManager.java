@@ -51,6 +51,9 @@ public class CollectionManager extends Configured {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  private static final ObjectCache.Key<CollectionManager> KEY = ObjectCache.Key
+      .of("collectionmanager", CollectionManager.class);
+
   transient Map<String, Subcollection> collectionMap = new HashMap<String, Subcollection>();
 
   transient URL configfile;
@@ -109,21 +112,17 @@ public class CollectionManager extends Configured {
   }
 
   public static CollectionManager getCollectionManager(Configuration conf) {
-    String key = "collectionmanager";
     ObjectCache objectCache = ObjectCache.get(conf);
-    CollectionManager impl = (CollectionManager) objectCache.getObject(key);
-    if (impl == null) {
+    return objectCache.get(KEY, () -> {
       try {
         if (LOG.isInfoEnabled()) {
           LOG.info("Instantiating CollectionManager");
         }
-        impl = new CollectionManager(conf);
-        objectCache.setObject(key, impl);
+        return new CollectionManager(conf);
       } catch (Exception e) {
         throw new RuntimeException("Couldn't create CollectionManager", e);
       }
-    }
-    return impl;
+    });
   }
 
   /**
@@ -29,6 +29,7 @@ import org.apache.hadoop.conf.Configuration;
 import dk.brics.automaton.RegExp;
 import dk.brics.automaton.RunAutomaton;
 import org.apache.nutch.net.*;
+import org.apache.nutch.urlfilter.api.LiteralExtractor;
 import org.apache.nutch.urlfilter.api.RegexRule;
 import org.apache.nutch.urlfilter.api.RegexURLFilterBase;
 
@@ -111,6 +112,11 @@ public class AutomatonURLFilter extends RegexURLFilterBase {
     protected boolean match(String url) {
       return automaton.run(url);
     }
+
+    protected String[] requiredLiterals() {
+      return LiteralExtractor.extract(regex(),
+          LiteralExtractor.Syntax.AUTOMATON);
+    }
   }
 
 }
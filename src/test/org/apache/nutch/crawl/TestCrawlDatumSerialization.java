@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.ShortWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.nutch.crawl.CrawlDBTestUtil.URLCrawlDatum;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.protocol.ProtocolStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCrawlDatumSerialization {
+
+  private static CrawlDatum createDatum(float score) {
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 3600,
+        score);
+    datum.setFetchTime(1500000000000L);
+    datum.setModifiedTime(1400000000000L);
+    datum.setSignature(new byte[] { 1, 2, 3, 4 });
+    datum.getMetaData().put(Nutch.WRITABLE_GENERATE_TIME_KEY,
+        new LongWritable(1500000000000L));
+    datum.getMetaData().put(new Text("_depth_"), new IntWritable(2));
+    datum.getMetaData().put(new Text("custom"), new Text("value"));
+    // class not in the dictionary
+    datum.getMetaData().put(new Text("short"), new ShortWritable((short) 7));
+    return datum;
+  }
+
+  private static byte[] serialize(CrawlDatum datum, boolean compact)
+      throws Exception {
+    DataOutputBuffer out = new DataOutputBuffer();
+    if (compact) {
+      datum.writeCompact(out);
+    } else {
+      datum.write(out);
+    }
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static CrawlDatum deserialize(byte[] bytes) throws Exception {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    CrawlDatum datum = new CrawlDatum();
+    datum.readFields(in);
+    return datum;
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    CrawlDatum datum = createDatum(1.0f);
+    byte[] regular = serialize(datum, false);
+    byte[] compact = serialize(datum, true);
+    Assert.assertTrue(compact.length < regular.length);
+    Assert.assertEquals(datum, deserialize(regular));
+    Assert.assertEquals(datum, deserialize(compact));
+    Assert.assertEquals(datum.toString(), deserialize(compact).toString());
+
+    // ProtocolStatus does not implement hashCode(), compare the value only
+    CrawlDatum withStatus = createDatum(1.0f);
+    withStatus.getMetaData().put(Nutch.WRITABLE_PROTO_STATUS_KEY,
+        ProtocolStatus.STATUS_NOTFOUND);
+    Assert.assertEquals(ProtocolStatus.STATUS_NOTFOUND,
+        deserialize(serialize(withStatus, true)).getMetaData().get(
+            Nutch.WRITABLE_PROTO_STATUS_KEY));
+
+    // a datum without metadata
+    CrawlDatum empty = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 10);
+    Assert.assertEquals(empty, deserialize(serialize(empty, true)));
+
+    // compact to regular
+    Assert.assertEquals(datum,
+        deserialize(serialize(deserialize(compact), false)));
+  }
+
+  @Test
+  public void testMetaDataPassThrough() throws Exception {
+    byte[] compact = serialize(createDatum(1.0f), true);
+    CrawlDatum datum = deserialize(compact);
+    datum.setScore(2.0f);
+    CrawlDatum copy = new CrawlDatum();
+    copy.set(datum);
+    byte[] rewritten = serialize(copy, true);
+    Assert.assertEquals(compact.length, rewritten.length);
+    Assert.assertEquals(createDatum(2.0f), deserialize(rewritten));
+
+    // modified metadata is encoded again
+    datum.getMetaData().put(new Text("_depth_"), new IntWritable(3));
+    Assert.assertEquals(new IntWritable(3),
+        deserialize(serialize(datum, true)).getMetaData().get(
+            new Text("_depth_")));
+  }
+
+  @Test
+  public void testTypedMetaData() throws Exception {
+    Text depth = new Text("_depth_");
+    for (boolean compact : new boolean[] { false, true }) {
+      CrawlDatum datum = deserialize(serialize(createDatum(1.0f), compact));
+      Assert.assertEquals(2, datum.getMetaInt(depth, -1));
+      Assert.assertEquals(1500000000000L,
+          datum.getMetaLong(Nutch.WRITABLE_GENERATE_TIME_KEY, -1L));
+      Assert.assertTrue(datum.hasMetaData(new Text("custom")));
+      Assert.assertFalse(datum.hasMetaData(new Text("missing")));
+      Assert.assertEquals(-1, datum.getMetaInt(new Text("missing"), -1));
+      // wrong type
+      Assert.assertEquals(-1, datum.getMetaInt(new Text("custom"), -1));
+      Assert.assertEquals(new Text("value"), datum.getMetaData(new Text(
+          "custom")));
+      // after a value of a class without known size
+      Assert.assertEquals(new ShortWritable((short) 7),
+          datum.getMetaData(new Text("short")));
+
+      datum.setMetaFloat(Nutch.WRITABLE_FIXED_INTERVAL_KEY, 2.5f);
+      datum.setMetaInt(depth, 3);
+      CrawlDatum read = deserialize(serialize(datum, compact));
+      Assert.assertEquals(2.5f,
+          read.getMetaFloat(Nutch.WRITABLE_FIXED_INTERVAL_KEY, 0f), 0f);
+      Assert.assertEquals(3, read.getMetaInt(depth, -1));
+    }
+
+    // lookups on compact metadata do not decode it
+    byte[] compact = serialize(createDatum(1.0f), true);
+    CrawlDatum datum = deserialize(compact);
+    datum.getMetaInt(depth, -1);
+    datum.getMetaLong(Nutch.WRITABLE_GENERATE_TIME_KEY, -1L);
+    datum.setMetaInt(depth, 2);
+    Assert.assertArrayEquals(compact, serialize(datum, true));
+  }
+
+  @Test
+  public void testCopyOnWrite() throws Exception {
+    Text depth = new Text("_depth_");
+    CrawlDatum datum = createDatum(1.0f);
+    CrawlDatum copy = new CrawlDatum();
+    copy.set(datum);
+    copy.setMetaInt(depth, 5);
+    Assert.assertEquals(2, datum.getMetaInt(depth, -1));
+    datum.getMetaData().put(depth, new IntWritable(7));
+    Assert.assertEquals(5, copy.getMetaInt(depth, -1));
+    Assert.assertEquals(7, datum.getMetaInt(depth, -1));
+
+    CrawlDatum merged = new CrawlDatum();
+    merged.putAllMetaData(datum);
+    Assert.assertEquals(7, merged.getMetaInt(depth, -1));
+    merged.setMetaInt(depth, 1);
+    Assert.assertEquals(7, datum.getMetaInt(depth, -1));
+  }
+
+  @Test
+  public void testRawComparator() throws Exception {
+    CrawlDatum.Comparator comparator = new CrawlDatum.Comparator();
+    CrawlDatum d1 = createDatum(1.0f);
+    CrawlDatum d2 = createDatum(2.0f);
+    byte[] b1 = serialize(d1, true);
+    byte[] b2 = serialize(d2, true);
+    Assert.assertEquals(Integer.signum(d1.compareTo(d2)),
+        Integer.signum(comparator.compare(b1, 0, b1.length, b2, 0, b2.length)));
+    Assert.assertEquals(Integer.signum(d2.compareTo(d1)),
+        Integer.signum(comparator.compare(b2, 0, b2.length, b1, 0, b1.length)));
+  }
+
+  private static byte firstValueVersion(Configuration conf, Path crawlDb)
+      throws Exception {
+    Path data = new Path(new Path(new Path(crawlDb, CrawlDb.CURRENT_NAME),
+        "part-00000"), MapFile.DATA_FILE_NAME);
+    SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+        SequenceFile.Reader.file(data));
+    try {
+      DataOutputBuffer key = new DataOutputBuffer();
+      SequenceFile.ValueBytes value = reader.createValueBytes();
+      Assert.assertTrue(reader.nextRaw(key, value) > 0);
+      DataOutputBuffer out = new DataOutputBuffer();
+      value.writeUncompressedBytes(out);
+      return out.getData()[0];
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testConverter() throws Exception {
+    Configuration conf = CrawlDBTestUtil.createConfiguration();
+    FileSystem fs = FileSystem.get(conf);
+    Path testDir = new Path("build/test/test-crawldb-convert-"
+        + new java.util.Random().nextInt());
+    Path crawlDb = new Path(testDir, "crawldb");
+    try {
+      List<URLCrawlDatum> list = new ArrayList<URLCrawlDatum>();
+      for (int i = 0; i < 10; i++) {
+        list.add(new URLCrawlDatum(new Text("http://example.com/" + i),
+            createDatum(i)));
+      }
+      CrawlDBTestUtil.createCrawlDb(conf, fs, crawlDb, list);
+
+      CrawlDbConverter converter = new CrawlDbConverter(conf);
+      converter.convert(crawlDb, true, false);
+      Assert.assertEquals(8, firstValueVersion(conf, crawlDb));
+      CrawlDbReader reader = new CrawlDbReader();
+      for (URLCrawlDatum row : list) {
+        Assert.assertEquals(row.datum,
+            reader.get(crawlDb.toString(), row.url.toString(), new JobConf(
+                conf)));
+      }
+      reader.close();
+
+      converter.convert(crawlDb, false, false);
+      Assert.assertEquals(7, firstValueVersion(conf, crawlDb));
+      reader = new CrawlDbReader();
+      for (URLCrawlDatum row : list) {
+        Assert.assertEquals(row.datum,
+            reader.get(crawlDb.toString(), row.url.toString(), new JobConf(
+                conf)));
+      }
+      reader.close();
+    } finally {
+      fs.delete(testDir, true);
+    }
+  }
+}
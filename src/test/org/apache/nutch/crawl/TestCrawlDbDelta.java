@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.InputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.nutch.crawl.CrawlDBTestUtil.URLCrawlDatum;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that incremental (delta) updates of the CrawlDb, read merged with
+ * the base, give the same CrawlDb as full updates.
+ */
+public class TestCrawlDbDelta {
+
+  private static final String URL_A = "http://a.example.com/";
+  private static final String URL_B = "http://b.example.com/";
+  private static final String URL_C = "http://c.example.com/";
+  private static final String URL_D = "http://d.example.com/";
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path testDir;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createConfiguration();
+    fs = FileSystem.get(conf);
+    testDir = new Path("build/test/test-crawldb-delta-"
+        + new java.util.Random().nextInt());
+    fs.mkdirs(testDir);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testDir, true);
+  }
+
+  private void createCrawlDb(Path crawlDb, long time) throws Exception {
+    List<URLCrawlDatum> list = new ArrayList<URLCrawlDatum>();
+    for (String url : new String[] { URL_A, URL_B, URL_C }) {
+      CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 3600,
+          1.0f);
+      datum.setFetchTime(time);
+      list.add(new URLCrawlDatum(new Text(url), datum));
+    }
+    CrawlDBTestUtil.createCrawlDb(conf, fs, crawlDb, list);
+  }
+
+  /** Create a segment with one fetched URL and one outlink. */
+  private Path createSegment(String name, long time, String fetched,
+      String linked) throws Exception {
+    Path segment = new Path(testDir, name);
+    CrawlDatum fetch = new CrawlDatum(CrawlDatum.STATUS_FETCH_SUCCESS, 3600,
+        1.0f);
+    fetch.setFetchTime(time);
+    MapFile.Writer fetchWriter = new MapFile.Writer(conf, new Path(new Path(
+        segment, CrawlDatum.FETCH_DIR_NAME), "part-00000"),
+        MapFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(CrawlDatum.class));
+    fetchWriter.append(new Text(fetched), fetch);
+    fetchWriter.close();
+    CrawlDatum link = new CrawlDatum(CrawlDatum.STATUS_LINKED, 3600, 0.5f);
+    SequenceFile.Writer parseWriter = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(new Path(new Path(segment,
+            CrawlDatum.PARSE_DIR_NAME), "part-00000")),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(CrawlDatum.class));
+    parseWriter.append(new Text(linked), link);
+    parseWriter.close();
+    return segment;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private Map<String, CrawlDatum> readAll(Path crawlDb) throws Exception {
+    JobConf job = new JobConf(conf);
+    job.setInputFormat(SequenceFileInputFormat.class);
+    CrawlDb.addInputPath(job, crawlDb);
+    InputFormat format = job.getInputFormat();
+    Map<String, CrawlDatum> records = new TreeMap<String, CrawlDatum>();
+    for (InputSplit split : format.getSplits(job, 1)) {
+      RecordReader<Writable, Writable> reader = format.getRecordReader(split,
+          job, Reporter.NULL);
+      Writable key = reader.createKey();
+      Writable value = reader.createValue();
+      while (reader.next(key, value)) {
+        Assert.assertNull("duplicate " + key,
+            records.put(key.toString(), (CrawlDatum) value));
+        value = reader.createValue();
+      }
+      reader.close();
+    }
+    return records;
+  }
+
+  /** Read a CrawlDb through the new MapReduce API. */
+  private Map<String, CrawlDatum> readAllNewApi(Path crawlDb)
+      throws Exception {
+    Job job = Job.getInstance(conf);
+    CrawlDb.addInputPath(job, crawlDb);
+    CrawlDbInputFormat format = new CrawlDbInputFormat();
+    Map<String, CrawlDatum> records = new TreeMap<String, CrawlDatum>();
+    for (org.apache.hadoop.mapreduce.InputSplit split : format.getSplits(job)) {
+      TaskAttemptContextImpl context = new TaskAttemptContextImpl(
+          job.getConfiguration(), new TaskAttemptID());
+      org.apache.hadoop.mapreduce.RecordReader<Text, CrawlDatum> reader = format
+          .createRecordReader(split, context);
+      reader.initialize(split, context);
+      while (reader.nextKeyValue()) {
+        CrawlDatum value = new CrawlDatum();
+        value.set(reader.getCurrentValue());
+        Assert.assertNull("duplicate " + reader.getCurrentKey(),
+            records.put(reader.getCurrentKey().toString(), value));
+      }
+      reader.close();
+    }
+    return records;
+  }
+
+  private void assertSameRecords(Map<String, CrawlDatum> expected,
+      Map<String, CrawlDatum> actual) {
+    Assert.assertEquals(expected.keySet(), actual.keySet());
+    for (String url : expected.keySet()) {
+      if (url.equals(URL_D)) {
+        // added with the current time as fetch time
+        Assert.assertEquals(expected.get(url).getStatus(), actual.get(url)
+            .getStatus());
+      } else {
+        Assert.assertEquals(url, expected.get(url), actual.get(url));
+      }
+    }
+  }
+
+  @Test
+  public void testDeltaUpdate() throws Exception {
+    long time = System.currentTimeMillis();
+    Path fullDb = new Path(testDir, "crawldb-full");
+    Path deltaDb = new Path(testDir, "crawldb-delta");
+    createCrawlDb(fullDb, time);
+    createCrawlDb(deltaDb, time);
+    Path[] segments = {
+        createSegment("segment1", time + 1000, URL_A, URL_D),
+        // URL_D is only contained in the first delta
+        createSegment("segment2", time + 2000, URL_D, URL_B) };
+
+    CrawlDb crawlDb = new CrawlDb(conf);
+    for (Path segment : segments) {
+      crawlDb.update(fullDb, new Path[] { segment }, false, false, true,
+          false, false);
+      crawlDb.update(deltaDb, new Path[] { segment }, false, false, true,
+          false, true);
+    }
+    Assert.assertEquals(0, CrawlDb.getDeltas(conf, fullDb).length);
+    Assert.assertEquals(2, CrawlDb.getDeltas(conf, deltaDb).length);
+
+    // left-overs of failed jobs are not taken for deltas
+    Path deltas = new Path(deltaDb, CrawlDb.DELTAS_NAME);
+    fs.mkdirs(new Path(deltas, "_temporary"));
+    fs.mkdirs(new Path(deltas, "tmp-12345"));
+    fs.create(new Path(deltas, ".123.crc")).close();
+    Assert.assertEquals(2, CrawlDb.getDeltas(conf, deltaDb).length);
+
+    Map<String, CrawlDatum> expected = readAll(fullDb);
+    Assert.assertEquals(4, expected.size());
+    Assert.assertEquals(CrawlDatum.STATUS_DB_FETCHED, expected.get(URL_D)
+        .getStatus());
+    assertSameRecords(expected, readAll(deltaDb));
+    assertSameRecords(expected, readAllNewApi(deltaDb));
+
+    // point lookups
+    CrawlDbReader reader = new CrawlDbReader();
+    try {
+      for (String url : new String[] { URL_A, URL_B, URL_C }) {
+        Assert.assertEquals(url, expected.get(url),
+            reader.get(deltaDb.toString(), url, new JobConf(conf)));
+      }
+    } finally {
+      reader.close();
+    }
+
+    // fold the deltas into the base
+    crawlDb.compact(deltaDb, false);
+    Assert.assertEquals(0, CrawlDb.getDeltas(conf, deltaDb).length);
+    assertSameRecords(expected, readAll(deltaDb));
+    assertSameRecords(expected, readAllNewApi(deltaDb));
+  }
+}
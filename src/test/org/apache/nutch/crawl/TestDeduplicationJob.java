@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the mapper and reducers of the near-duplicate detection of
+ * {@link DeduplicationJob} in memory.
+ */
+public class TestDeduplicationJob {
+
+  private static JobConf createJob(int maxDistance, int maxGroup) {
+    JobConf job = new JobConf(CrawlDBTestUtil.createConfiguration());
+    job.set("deduplication.group.mode", "none");
+    job.set("deduplication.compare.order", "score,fetchTime,urlLength");
+    job.setInt("deduplication.simhash.max.distance", maxDistance);
+    job.setInt("deduplication.simhash.max.group", maxGroup);
+    return job;
+  }
+
+  private static CrawlDatum fetched(long simHash, float score) {
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 3600,
+        score);
+    datum.setFetchTime(1500000000000L);
+    datum.setSignature(SimHashSignature.toBytes(simHash));
+    return datum;
+  }
+
+  /** @return the URLs marked as duplicate */
+  private static Set<String> dedup(JobConf job, Map<String, CrawlDatum> docs)
+      throws Exception {
+    // map and shuffle
+    Map<BytesWritable, List<CrawlDatum>> groups = new TreeMap<>();
+    DeduplicationJob.BandFilter mapper = new DeduplicationJob.BandFilter();
+    mapper.configure(job);
+    for (Map.Entry<String, CrawlDatum> doc : docs.entrySet()) {
+      mapper.map(new Text(doc.getKey()), doc.getValue(), (key, value) -> {
+        CrawlDatum copy = new CrawlDatum();
+        copy.set(value);
+        groups.computeIfAbsent(key, k -> new ArrayList<>()).add(copy);
+      }, Reporter.NULL);
+    }
+
+    Map<Text, List<CrawlDatum>> candidates = new TreeMap<>();
+    DeduplicationJob.NearDuplicateReducer reducer = new DeduplicationJob.NearDuplicateReducer();
+    reducer.configure(job);
+    for (Map.Entry<BytesWritable, List<CrawlDatum>> group : groups.entrySet()) {
+      reducer.reduce(group.getKey(), group.getValue().iterator(),
+          (key, value) -> {
+            CrawlDatum copy = new CrawlDatum();
+            copy.set(value);
+            candidates.computeIfAbsent(new Text(key), k -> new ArrayList<>())
+                .add(copy);
+          }, Reporter.NULL);
+    }
+
+    Set<String> duplicates = new TreeSet<>();
+    DeduplicationJob.NearDuplicateResolver resolver = new DeduplicationJob.NearDuplicateResolver();
+    resolver.configure(job);
+    for (Map.Entry<Text, List<CrawlDatum>> doc : candidates.entrySet()) {
+      resolver.reduce(doc.getKey(), doc.getValue().iterator(),
+          (key, value) -> {
+            Assert.assertEquals(CrawlDatum.STATUS_DB_DUPLICATE,
+                value.getStatus());
+            duplicates.add(key.toString());
+          }, Reporter.NULL);
+    }
+    return duplicates;
+  }
+
+  @Test
+  public void testChain() throws Exception {
+    Map<String, CrawlDatum> docs = new TreeMap<>();
+    // A ~ B and B ~ C, but C is not near A
+    docs.put("http://a.example.com/", fetched(0L, 3.0f));
+    docs.put("http://b.example.com/", fetched(0x7L, 2.0f));
+    docs.put("http://c.example.com/", fetched(0x3fL, 1.0f));
+    // near A only
+    docs.put("http://d.example.com/", fetched(0x100L, 0.5f));
+    // not near to any other document
+    docs.put("http://e.example.com/", fetched(0xffff0000L, 1.0f));
+
+    Set<String> duplicates = dedup(createJob(3, 1000), docs);
+    // C is kept: its only better near-duplicate B is removed
+    Assert.assertEquals(new TreeSet<>(Arrays.asList(
+        "http://b.example.com/", "http://d.example.com/")), duplicates);
+  }
+
+  @Test
+  public void testEqualRankKept() throws Exception {
+    Map<String, CrawlDatum> docs = new TreeMap<>();
+    docs.put("http://a.example.com/", fetched(0L, 1.0f));
+    docs.put("http://b.example.com/", fetched(0x1L, 1.0f));
+    Assert.assertTrue(dedup(createJob(3, 1000), docs).isEmpty());
+  }
+
+  @Test
+  public void testMaxGroup() throws Exception {
+    Map<String, CrawlDatum> docs = new TreeMap<>();
+    for (int i = 0; i < 10; i++) {
+      docs.put("http://" + i + ".example.com/", fetched(1L << i, 10 - i));
+    }
+    // only the two best documents of the group are compared
+    Set<String> duplicates = dedup(createJob(2, 2), docs);
+    Assert.assertEquals(
+        new TreeSet<>(Arrays.asList("http://1.example.com/")),
+        duplicates);
+  }
+
+  @Test
+  public void testIdenticalSignatures() throws Exception {
+    Map<String, CrawlDatum> docs = new TreeMap<>();
+    Set<String> expected = new TreeSet<>();
+    for (int i = 0; i < 50; i++) {
+      String url = "http://" + i + ".example.com/";
+      docs.put(url, fetched(0x5555L, 100 - i));
+      if (i > 0) {
+        expected.add(url);
+      }
+    }
+    // near the best of the identical documents
+    docs.put("http://near.example.com/", fetched(0x5554L, 1.0f));
+    expected.add("http://near.example.com/");
+    // more identical documents than max. group size
+    Assert.assertEquals(expected, dedup(createJob(3, 10), docs));
+  }
+
+  @Test
+  public void testExactSignatures() throws Exception {
+    Map<String, CrawlDatum> docs = new TreeMap<>();
+    Set<String> expected = new TreeSet<>();
+    byte[] md5 = new byte[16];
+    for (int i = 0; i < 50; i++) {
+      String url = "http://" + i + ".example.com/";
+      CrawlDatum datum = fetched(0L, 100 - i);
+      datum.setSignature(md5);
+      docs.put(url, datum);
+      if (i > 0) {
+        expected.add(url);
+      }
+    }
+    Assert.assertEquals(expected, dedup(createJob(3, 10), docs));
+  }
+
+  @Test
+  public void testTooManyTables() {
+    try {
+      new DeduplicationJob.SimHashTables(7, 24, 100);
+      Assert.fail("distance 7 requires 792 tables");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    Assert.assertEquals(10, new DeduplicationJob.SimHashTables(3, 24, 100)
+        .size());
+  }
+
+  @Test
+  public void testTables() {
+    Random random = new Random(13);
+    for (int maxDistance = 0; maxDistance <= 12; maxDistance++) {
+      DeduplicationJob.SimHashTables tables;
+      try {
+        tables = new DeduplicationJob.SimHashTables(maxDistance, 24, 4096);
+      } catch (IllegalArgumentException e) {
+        Assert.assertTrue("distance " + maxDistance, maxDistance > 7);
+        continue;
+      }
+      Assert.assertTrue(tables.size() <= 4096);
+      Assert.assertTrue("key bits for distance " + maxDistance,
+          tables.getKeyBits() >= 24);
+      for (int n = 0; n < 100; n++) {
+        long simHash = random.nextLong();
+        long near = simHash;
+        int flips = random.nextInt(maxDistance + 1);
+        for (int f = 0; f < flips; f++) {
+          near ^= 1L << random.nextInt(64);
+        }
+        boolean shared = false;
+        for (int t = 0; t < tables.size() && !shared; t++) {
+          shared = tables.key(t, simHash) == tables.key(t, near);
+        }
+        Assert.assertTrue("distance " + maxDistance, shared);
+      }
+    }
+  }
+}
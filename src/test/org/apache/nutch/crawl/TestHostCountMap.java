@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestHostCountMap {
+
+  @Test
+  public void testCountsAndSpill() throws Exception {
+    File dir = new File(System.getProperty("test.build.data", "/tmp"));
+    dir.mkdirs();
+    HostCountMap counts = new HostCountMap(1000, dir);
+    try {
+      for (int i = 0; i < 5000; i++) {
+        long id = HostCountMap.hash("host" + i + ".example.com");
+        Assert.assertEquals(HostCountMap.NOT_FOUND, counts.get(id));
+        counts.put(id, HostCountMap.value(1, i));
+      }
+      Assert.assertTrue(counts.isSpilled());
+      Assert.assertEquals(5000, counts.size());
+      for (int i = 0; i < 5000; i++) {
+        long value = counts.get(HostCountMap.hash("HOST" + i + ".example.com"));
+        Assert.assertEquals(1, HostCountMap.segment(value));
+        Assert.assertEquals(i, HostCountMap.count(value));
+      }
+      long id = HostCountMap.hash("host1.example.com");
+      counts.put(id, HostCountMap.value(3, 7));
+      Assert.assertEquals(5000, counts.size());
+      Assert.assertEquals(HostCountMap.value(3, 7), counts.get(id));
+    } finally {
+      counts.close();
+    }
+  }
+
+  @Test
+  public void testFindHost() {
+    int[] bounds = new int[2];
+    String url = "http://WWW.Example.com:8080/path?q";
+    Assert.assertTrue(Generator.Selector.findHost(url, bounds));
+    Assert.assertEquals("WWW.Example.com",
+        url.substring(bounds[0], bounds[1]));
+    Assert.assertEquals(HostCountMap.hash("www.example.com"),
+        HostCountMap.hash(url, bounds[0], bounds[1]));
+    url = "https://example.com";
+    Assert.assertTrue(Generator.Selector.findHost(url, bounds));
+    Assert.assertEquals("example.com", url.substring(bounds[0], bounds[1]));
+    Assert.assertFalse(Generator.Selector.findHost("ftp://example.com/",
+        bounds));
+    Assert.assertFalse(Generator.Selector.findHost(
+        "http://user@example.com/", bounds));
+    Assert.assertFalse(Generator.Selector.findHost("http://example.com:x/",
+        bounds));
+  }
+}
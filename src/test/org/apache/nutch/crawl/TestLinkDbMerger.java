@@ -101,7 +101,17 @@ public class TestLinkDbMerger {
 
   @Test
   public void testMerge() throws Exception {
+    merge(NutchConfiguration.create());
+  }
+
+  @Test
+  public void testStreamingMerge() throws Exception {
     Configuration conf = NutchConfiguration.create();
+    conf.setBoolean(LinkDbMerger.MERGE_STREAMING, true);
+    merge(conf);
+  }
+
+  private void merge(Configuration conf) throws Exception {
     FileSystem fs = FileSystem.get(conf);
     fs.mkdirs(testDir);
     Path linkdb1 = new Path(testDir, "linkdb1");
@@ -137,8 +147,38 @@ public class TestLinkDbMerger {
     fs.delete(testDir, true);
   }
 
+  @Test
+  public void testMaxInlinksAndAnchors() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt("linkdb.max.inlinks", 3);
+    conf.setBoolean(LinkDbMerger.DEDUP_ANCHORS, true);
+    TreeMap<String, String[]> init = new TreeMap<String, String[]>();
+    init.put(url10, new String[] { "http://a.com/1", "http://a.com/2",
+        "http://b.com/1", "http://c.com/1", "http://d.com/1" });
+    Path linkdb = new Path(testDir, "linkdb");
+    Path output = new Path(testDir, "output");
+    createLinkDb(conf, fs, linkdb, init, "same anchor");
+    new LinkDbMerger(conf).merge(output, new Path[] { linkdb }, false, false);
+    reader = new LinkDbReader(conf, output);
+    Inlinks inlinks = reader.getInlinks(new Text(url10));
+    Assert.assertEquals(3, inlinks.size());
+    int fromA = 0;
+    Iterator<Inlink> it = inlinks.iterator();
+    while (it.hasNext()) {
+      if (it.next().getFromUrl().startsWith("http://a.com/")) {
+        fromA++;
+      }
+    }
+    Assert.assertTrue(fromA <= 1);
+  }
+
   private void createLinkDb(Configuration config, FileSystem fs, Path linkdb,
       TreeMap<String, String[]> init) throws Exception {
+    createLinkDb(config, fs, linkdb, init, null);
+  }
+
+  private void createLinkDb(Configuration config, FileSystem fs, Path linkdb,
+      TreeMap<String, String[]> init, String anchor) throws Exception {
     LOG.debug("* creating linkdb: " + linkdb);
     Path dir = new Path(linkdb, LinkDb.CURRENT_NAME);
     
@@ -152,7 +192,7 @@ public class TestLinkDbMerger {
       Inlinks inlinks = new Inlinks();
       String[] vals = init.get(key);
       for (int i = 0; i < vals.length; i++) {
-        Inlink in = new Inlink(vals[i], vals[i]);
+        Inlink in = new Inlink(vals[i], anchor != null ? anchor : vals[i]);
         inlinks.add(in);
       }
       writer.append(new Text(key), inlinks);
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDBTestUtil.URLCrawlDatum;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.parse.ParseImpl;
+import org.apache.nutch.protocol.Content;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link SimHashSignature} and the detection of near-duplicates by the
+ * {@link DeduplicationJob}.
+ */
+public class TestSimHashSignature {
+
+  private static final String[] WORDS = { "catalog", "dataset", "metadata",
+      "service", "record", "harvest", "ocean", "climate", "sensor",
+      "station", "temperature", "salinity", "download", "license", "format",
+      "contact", "keyword", "version", "update", "resource" };
+
+  private static String randomText(Random random, int length) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      text.append("w").append(random.nextInt(10000)).append(' ');
+    }
+    return text.toString();
+  }
+
+  private byte[] signature(Configuration conf, String text) {
+    SimHashSignature sig = new SimHashSignature();
+    sig.setConf(conf);
+    Content content = new Content("http://example.com/", "http://example.com/",
+        text.getBytes(), "text/plain", new Metadata(), conf);
+    return sig.calculate(content, new ParseImpl(text, null));
+  }
+
+  @Test
+  public void testSignature() {
+    Configuration conf = CrawlDBTestUtil.createConfiguration();
+    Random random = new Random(7);
+    String text = randomText(random, 500);
+    byte[] sig = signature(conf, text);
+    Assert.assertEquals(SimHashSignature.LENGTH, sig.length);
+    Assert.assertArrayEquals(sig, signature(conf, text));
+    Assert.assertEquals(SimHashSignature.toLong(sig),
+        SimHashSignature.toLong(SimHashSignature.toBytes(SimHashSignature
+            .toLong(sig))));
+
+    // small changes give close signatures
+    String changed = text + " page generated 2017 contact webmaster";
+    int near = SimHashSignature.distance(SimHashSignature.toLong(sig),
+        SimHashSignature.toLong(signature(conf, changed)));
+    // a page with a different vocabulary
+    StringBuilder other = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      other.append("v").append(random.nextInt(10000)).append(' ');
+    }
+    int far = SimHashSignature.distance(SimHashSignature.toLong(sig),
+        SimHashSignature.toLong(signature(conf, other.toString())));
+    Assert.assertTrue("near distance " + near, near <= 6);
+    Assert.assertTrue("far distance " + far, far > 10);
+
+    // no text: MD5 of the content
+    Assert.assertEquals(16, signature(conf, "").length);
+  }
+
+  private static CrawlDatum fetched(byte[] signature, float score) {
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 3600,
+        score);
+    datum.setFetchTime(1500000000000L);
+    datum.setSignature(signature);
+    return datum;
+  }
+
+  @Test
+  public void testNearDuplicates() throws Exception {
+    Configuration conf = CrawlDBTestUtil.createConfiguration();
+    FileSystem fs = FileSystem.get(conf);
+    Path testDir = new Path("build/test/test-dedup-simhash-"
+        + new Random().nextInt());
+    Path crawlDb = new Path(testDir, "crawldb");
+    try {
+      Random random = new Random(11);
+      String page = randomText(random, 300);
+      List<URLCrawlDatum> list = new ArrayList<URLCrawlDatum>();
+      // templated mirrors, the original has the highest score
+      list.add(new URLCrawlDatum(new Text("http://a.example.com/page"),
+          fetched(signature(conf, page), 2.0f)));
+      for (int i = 0; i < 3; i++) {
+        list.add(new URLCrawlDatum(new Text("http://mirror" + i
+            + ".example.com/page"), fetched(signature(conf, page
+            + " mirror" + i), 1.0f)));
+      }
+      // different pages
+      list.add(new URLCrawlDatum(new Text("http://b.example.com/"), fetched(
+          signature(conf, randomText(random, 300)), 1.0f)));
+      list.add(new URLCrawlDatum(new Text("http://c.example.com/"), fetched(
+          signature(conf, randomText(random, 300)), 1.0f)));
+      // exact duplicates with MD5 signatures are still detected
+      byte[] md5 = signature(conf, "");
+      list.add(new URLCrawlDatum(new Text("http://d.example.com/"), fetched(
+          md5, 2.0f)));
+      list.add(new URLCrawlDatum(new Text("http://e.example.com/"), fetched(
+          md5, 1.0f)));
+      list.sort((r1, r2) -> r1.url.compareTo(r2.url));
+      CrawlDBTestUtil.createCrawlDb(conf, fs, crawlDb, list);
+
+      DeduplicationJob dedup = new DeduplicationJob();
+      dedup.setConf(conf);
+      // too many band tables for 24 bit keys
+      Assert.assertEquals(1, dedup.run(new String[] { crawlDb.toString(),
+          "-nearDuplicates", "-maxDistance", "6" }));
+      conf.setInt("deduplication.simhash.key.bits", 16);
+      Assert.assertEquals(0, dedup.run(new String[] { crawlDb.toString(),
+          "-nearDuplicates", "-maxDistance", "6" }));
+
+      Map<String, Byte> status = new HashMap<>();
+      MapFile.Reader reader = new MapFile.Reader(new Path(new Path(crawlDb,
+          CrawlDb.CURRENT_NAME), "part-00000"), conf);
+      Text url = new Text();
+      CrawlDatum datum = new CrawlDatum();
+      while (reader.next(url, datum)) {
+        status.put(url.toString(), datum.getStatus());
+      }
+      reader.close();
+      Assert.assertEquals(8, status.size());
+      Assert.assertEquals(CrawlDatum.STATUS_DB_FETCHED,
+          (byte) status.get("http://a.example.com/page"));
+      for (int i = 0; i < 3; i++) {
+        Assert.assertEquals(CrawlDatum.STATUS_DB_DUPLICATE,
+            (byte) status.get("http://mirror" + i + ".example.com/page"));
+      }
+      Assert.assertEquals(CrawlDatum.STATUS_DB_FETCHED,
+          (byte) status.get("http://b.example.com/"));
+      Assert.assertEquals(CrawlDatum.STATUS_DB_FETCHED,
+          (byte) status.get("http://c.example.com/"));
+      Assert.assertEquals(CrawlDatum.STATUS_DB_FETCHED,
+          (byte) status.get("http://d.example.com/"));
+      Assert.assertEquals(CrawlDatum.STATUS_DB_DUPLICATE,
+          (byte) status.get("http://e.example.com/"));
+    } finally {
+      fs.delete(testDir, true);
+    }
+  }
+}
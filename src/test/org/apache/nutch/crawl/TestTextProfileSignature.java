@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.parse.ParseImpl;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that {@link TextProfileSignature} calculates the same signatures as
+ * the original HashMap-based algorithm.
+ */
+public class TestTextProfileSignature {
+
+  private static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFG0123456789äöüßéÄÖÜ";
+  private static final String SEPARATORS = " \n\t.,;-! ";
+
+  private void assertSameSignature(Configuration conf, String text) {
+    TextProfileSignature sig = new TextProfileSignature();
+    sig.setConf(conf);
+    byte[] expected = TextProfileSignature.calculateProfile(text,
+        conf.getInt("db.signature.text_profile.min_token_len", 2),
+        conf.getFloat("db.signature.text_profile.quant_rate", 0.01f));
+    Assert.assertArrayEquals(text, expected,
+        sig.calculate(null, new ParseImpl(text, null)));
+  }
+
+  private static String randomText(Random random, int vocabulary, int length) {
+    String[] words = new String[vocabulary];
+    for (int i = 0; i < vocabulary; i++) {
+      StringBuilder word = new StringBuilder();
+      int wordLength = 1 + random.nextInt(12);
+      for (int j = 0; j < wordLength; j++) {
+        word.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+      }
+      words[i] = word.toString();
+    }
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      // skewed word frequencies, many ties
+      int w = (int) (vocabulary * Math.pow(random.nextDouble(), 3));
+      text.append(words[w]);
+      text.append(SEPARATORS.charAt(random.nextInt(SEPARATORS.length())));
+    }
+    return text.toString();
+  }
+
+  @Test
+  public void testSameSignature() {
+    Configuration conf = NutchConfiguration.create();
+    Random random = new Random(42);
+    assertSameSignature(conf, "a b c");
+    assertSameSignature(conf, "single");
+    assertSameSignature(conf, "The quick brown fox jumps over the lazy dog");
+    for (int i = 0; i < 200; i++) {
+      int vocabulary = 1 + random.nextInt(i < 100 ? 50 : 5000);
+      int length = random.nextInt(i < 100 ? 500 : 50000);
+      assertSameSignature(conf, randomText(random, vocabulary, length) + "x");
+    }
+
+    conf.setInt("db.signature.text_profile.min_token_len", 0);
+    conf.setFloat("db.signature.text_profile.quant_rate", 0.05f);
+    for (int i = 0; i < 50; i++) {
+      assertSameSignature(conf, randomText(random, 1 + random.nextInt(2000),
+          random.nextInt(20000)));
+    }
+  }
+
+  @Test
+  public void testHashCollisions() {
+    // "an" and "c0" have the same hash code, so have all combinations of both
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 64; i++) {
+      for (int j = 0; j < 6; j++) {
+        text.append((i & (1 << j)) == 0 ? "an" : "c0");
+      }
+      for (int n = 0; n <= i % 4; n++) {
+        text.append(' ');
+      }
+      text.append("word").append(i % 7).append(' ');
+    }
+    String tokens = text.toString();
+    assertSameSignature(NutchConfiguration.create(), tokens + tokens);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.nutch.crawl.CrawlDBTestUtil;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.crawl.NutchWritable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Server;
+
+/**
+ * Runs fetches through the {@link FetchTaskDispatcher} without a MapReduce
+ * job: pages are served by a local HTTP server, the fetch list is put into
+ * the queues directly.
+ */
+public class TestFetchTaskDispatcher {
+
+  private Configuration conf;
+  private Server server;
+  private FetchItemQueues queues;
+  private AtomicInteger activeThreads;
+  private Map<String, Byte> fetched;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createConfiguration();
+    conf.setBoolean(FetchTaskDispatcher.TASKS_ENABLED, true);
+    conf.setInt(FetchTaskDispatcher.TASKS_MAX, 2);
+    conf.setFloat("fetcher.server.delay", 0.0f);
+    server = CrawlDBTestUtil.getServer(
+        conf.getInt("content.server.port", 50000),
+        "build/test/data/fetch-test-site");
+    server.start();
+    activeThreads = new AtomicInteger(0);
+    fetched = new ConcurrentHashMap<String, Byte>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+  }
+
+  private String url(String page) {
+    return "http://127.0.0.1:" + server.getConnectors()[0].getPort() + "/"
+        + page;
+  }
+
+  private FetchTaskDispatcher createDispatcher(String... urls) {
+    queues = FetchItemQueues.create(conf);
+    for (String url : urls) {
+      queues.addFetchItem(new Text(url), new CrawlDatum());
+    }
+    // the feeder is never started, all items are queued
+    QueueFeeder feeder = new QueueFeeder(null, queues, urls.length);
+    return new FetchTaskDispatcher(conf, activeThreads, queues, feeder,
+        new AtomicInteger(0), new AtomicLong(System.currentTimeMillis()),
+        Reporter.NULL, new AtomicInteger(0), "20150101000000", false,
+        (key, value) -> {
+          if (value.get() instanceof CrawlDatum) {
+            fetched.put(key.toString(),
+                ((CrawlDatum) value.get()).getStatus());
+          }
+        }, true, new AtomicInteger(0), new AtomicLong(0));
+  }
+
+  private void assertQueuesReleased() {
+    for (String id : new String[] { "http://127.0.0.1", "http://localhost" }) {
+      FetchItemQueue queue = queues.getFetchItemQueue(id);
+      Assert.assertEquals(id, 0, queue.getInProgressSize());
+    }
+  }
+
+  @Test
+  public void testMaxTasks() {
+    Assert.assertEquals(2, FetchTaskDispatcher.getMaxTasks(conf));
+    conf.unset(FetchTaskDispatcher.TASKS_MAX);
+    Assert.assertEquals(conf.getInt("fetcher.threads.fetch", 10),
+        FetchTaskDispatcher.getMaxTasks(conf));
+    conf.setInt(FetchTaskDispatcher.TASKS_MAX, 0);
+    conf.setInt("fetcher.threads.fetch", 7);
+    Assert.assertEquals(7, FetchTaskDispatcher.getMaxTasks(conf));
+  }
+
+  @Test
+  public void testFetch() throws Exception {
+    String[] pages = { "index.html", "pagea.html", "pageb.html",
+        "dup_of_pagea.html", "nested_spider_trap.html" };
+    String[] urls = new String[pages.length + 2];
+    for (int i = 0; i < pages.length; i++) {
+      urls[i] = url(pages[i]);
+    }
+    // nobody listens on port 1: the fetches fail
+    urls[pages.length] = "http://localhost:1/a.html";
+    urls[pages.length + 1] = "http://localhost:1/b.html";
+
+    FetchTaskDispatcher dispatcher = createDispatcher(urls);
+    dispatcher.start();
+    dispatcher.join(60000);
+    Assert.assertFalse(dispatcher.isAlive());
+
+    Assert.assertEquals(urls.length, fetched.size());
+    for (int i = 0; i < pages.length; i++) {
+      Assert.assertEquals(urls[i], CrawlDatum.STATUS_FETCH_SUCCESS,
+          (byte) fetched.get(urls[i]));
+    }
+    for (int i = pages.length; i < urls.length; i++) {
+      Assert.assertEquals(urls[i], CrawlDatum.STATUS_FETCH_RETRY,
+          (byte) fetched.get(urls[i]));
+    }
+    Assert.assertEquals(0, queues.getTotalSize());
+    assertQueuesReleased();
+    Assert.assertEquals(0, dispatcher.getRunningTasks());
+    Assert.assertEquals(0, activeThreads.get());
+  }
+
+  @Test
+  public void testHalt() throws Exception {
+    // after the first fetch the queue is blocked for a minute
+    conf.setFloat("fetcher.server.delay", 60.0f);
+    FetchTaskDispatcher dispatcher = createDispatcher(url("index.html"),
+        url("pagea.html"), url("pageb.html"));
+    dispatcher.start();
+    for (int i = 0; i < 100 && fetched.isEmpty(); i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(1, fetched.size());
+
+    dispatcher.setHalted(true);
+    dispatcher.join(5000);
+    Assert.assertFalse(dispatcher.isAlive());
+
+    // the remaining items are not fetched
+    Assert.assertEquals(1, fetched.size());
+    Assert.assertEquals(2, queues.getTotalSize());
+    Assert.assertEquals(0,
+        queues.getFetchItemQueue("http://127.0.0.1").getInProgressSize());
+    Assert.assertEquals(0, activeThreads.get());
+  }
+}
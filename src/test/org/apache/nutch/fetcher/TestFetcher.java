@@ -179,6 +179,14 @@ public class TestFetcher {
     Assert.assertTrue(urls.containsAll(handledurls));
   }
 
+  @Test
+  public void testFetchTasks() throws IOException, ClassNotFoundException,
+      InterruptedException {
+    // same fetch list, fetched by the FetchTaskDispatcher
+    conf.setBoolean(FetchTaskDispatcher.TASKS_ENABLED, true);
+    testFetch();
+  }
+
   private void addUrl(ArrayList<String> urls, String page) {
     urls.add("http://127.0.0.1:" + server.getConnectors()[0].getPort() + "/"
         + page);
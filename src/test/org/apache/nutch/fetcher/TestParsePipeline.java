@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.nutch.crawl.CrawlDBTestUtil;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.parse.ParseImpl;
+import org.apache.nutch.protocol.Content;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Hands over fetched pages to the parse threads of a {@link ParsePipeline}
+ * and checks the output.
+ */
+public class TestParsePipeline {
+
+  private Configuration conf;
+  /** output in the order written: the URL and the class of the value */
+  private List<String[]> output;
+
+  @Before
+  public void setUp() {
+    conf = CrawlDBTestUtil.createConfiguration();
+    output = new ArrayList<String[]>();
+  }
+
+  private ParsePipeline createPipeline(int threads, int queueSize) {
+    FetchItemQueues queues = FetchItemQueues.create(conf);
+    QueueFeeder feeder = new QueueFeeder(null, queues, 1);
+    List<FetcherThread> workers = new ArrayList<FetcherThread>();
+    for (int i = 0; i < threads; i++) {
+      workers.add(new FetcherThread(conf, new AtomicInteger(0), queues,
+          feeder, new AtomicInteger(0), new AtomicLong(0), Reporter.NULL,
+          new AtomicInteger(0), "20150101000000", true, (key, value) -> {
+            synchronized (output) {
+              output.add(new String[] { key.toString(),
+                  value.get().getClass().getSimpleName() });
+            }
+          }, true, new AtomicInteger(0), new AtomicLong(0)));
+    }
+    return new ParsePipeline(workers, queueSize, Reporter.NULL);
+  }
+
+  private static ParsePipeline.ParseTask task(int i) {
+    String url = "http://www.example.com/" + i + ".html";
+    String html = "<html><head><title>Page " + i
+        + "</title></head><body><p>Page " + i + "</p><a href=\"" + (i + 1)
+        + ".html\">next</a></body></html>";
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_FETCH_SUCCESS, 3600);
+    Content content = new Content(url, url, html.getBytes(), "text/html",
+        new Metadata(), CrawlDBTestUtil.createConfiguration());
+    return new ParsePipeline.ParseTask(new Text(url), datum, content, 0, null,
+        null);
+  }
+
+  /** @return the URLs in the order of the given output type */
+  private List<String> getUrls(Class<? extends Writable> type) {
+    List<String> urls = new ArrayList<String>();
+    synchronized (output) {
+      for (String[] o : output) {
+        if (o[1].equals(type.getSimpleName())) {
+          urls.add(o[0]);
+        }
+      }
+    }
+    return urls;
+  }
+
+  private static List<String> expectedUrls(int n) {
+    List<String> urls = new ArrayList<String>();
+    for (int i = 0; i < n; i++) {
+      urls.add("http://www.example.com/" + i + ".html");
+    }
+    return urls;
+  }
+
+  private static int countParseThreads() {
+    int count = 0;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      if (t.getName().startsWith("ParserThread-") && t.isAlive()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testOutput() throws Exception {
+    ParsePipeline pipeline = createPipeline(1, 2);
+    pipeline.start();
+    for (int i = 0; i < 20; i++) {
+      pipeline.put(task(i));
+    }
+    Assert.assertTrue(pipeline.finish(60000));
+    Assert.assertEquals(0, pipeline.getPending());
+
+    // one parse thread: pages are written in the order handed over
+    Assert.assertEquals(expectedUrls(20), getUrls(ParseImpl.class));
+    Assert.assertEquals(expectedUrls(20), getUrls(CrawlDatum.class));
+    Assert.assertEquals(expectedUrls(20), getUrls(Content.class));
+
+    // per page: fetch datum, content, parse
+    Map<String, List<String>> types = new HashMap<String, List<String>>();
+    for (String[] o : output) {
+      if (!types.containsKey(o[0])) {
+        types.put(o[0], new ArrayList<String>());
+      }
+      types.get(o[0]).add(o[1]);
+    }
+    for (String url : expectedUrls(20)) {
+      Assert.assertEquals(url, "[CrawlDatum, Content, ParseImpl]",
+          types.get(url).toString());
+    }
+  }
+
+  @Test
+  public void testThreads() throws Exception {
+    ParsePipeline pipeline = createPipeline(4, 4);
+    pipeline.start();
+    for (int i = 0; i < 40; i++) {
+      pipeline.put(task(i));
+    }
+    Assert.assertTrue(pipeline.finish(60000));
+    Assert.assertEquals(0, pipeline.getPending());
+
+    // every page is parsed exactly once
+    List<String> urls = getUrls(ParseImpl.class);
+    Collections.sort(urls);
+    List<String> expected = expectedUrls(40);
+    Collections.sort(expected);
+    Assert.assertEquals(expected, urls);
+  }
+
+  @Test
+  public void testFinishDrainsQueue() throws Exception {
+    ParsePipeline pipeline = createPipeline(2, 10);
+    // pages queued before the parse threads are started
+    for (int i = 0; i < 10; i++) {
+      pipeline.put(task(i));
+    }
+    Assert.assertEquals(10, pipeline.getQueueSize());
+    pipeline.start();
+    Assert.assertTrue(pipeline.finish(60000));
+
+    Assert.assertEquals(0, pipeline.getPending());
+    Assert.assertEquals(10, getUrls(ParseImpl.class).size());
+    Assert.assertEquals(0, countParseThreads());
+  }
+
+  @Test
+  public void testHalt() throws Exception {
+    ParsePipeline pipeline = createPipeline(2, 10);
+    for (int i = 0; i < 10; i++) {
+      pipeline.put(task(i));
+    }
+    // halted before started: nothing is parsed
+    pipeline.halt();
+    pipeline.start();
+    for (int i = 0; i < 50 && countParseThreads() > 0; i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(0, countParseThreads());
+    Assert.assertEquals(0, pipeline.getQueueSize());
+    Assert.assertTrue(output.isEmpty());
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.fetcher;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestShardedFetchItemQueues {
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = NutchConfiguration.create();
+    conf.set(FetchItemQueues.QUEUES_CLASS,
+        ShardedFetchItemQueues.class.getName());
+    conf.setInt(ShardedFetchItemQueues.STRIPES, 4);
+    conf.setFloat("fetcher.server.delay", 60.0f);
+  }
+
+  private void add(FetchItemQueues queues, String url) {
+    queues.addFetchItem(new Text(url), new CrawlDatum());
+  }
+
+  @Test
+  public void testCreate() {
+    Assert.assertTrue(FetchItemQueues
+        .create(conf) instanceof ShardedFetchItemQueues);
+    conf.unset(FetchItemQueues.QUEUES_CLASS);
+    Assert.assertEquals(FetchItemQueues.class,
+        FetchItemQueues.create(conf).getClass());
+  }
+
+  @Test
+  public void testPoliteness() {
+    FetchItemQueues queues = FetchItemQueues.create(conf);
+    add(queues, "http://a.example.com/1");
+    add(queues, "http://a.example.com/2");
+    add(queues, "http://b.example.com/1");
+    Assert.assertEquals(3, queues.getTotalSize());
+    Assert.assertEquals(2, queues.getQueueCount());
+
+    FetchItem first = queues.getFetchItem();
+    FetchItem second = queues.getFetchItem();
+    Assert.assertNotNull(first);
+    Assert.assertNotNull(second);
+    Assert.assertNotEquals(first.getQueueID(), second.getQueueID());
+    // both hosts are busy
+    Assert.assertNull(queues.getFetchItem());
+
+    // host a is released but has to wait for the crawl delay
+    FetchItem fromA = "http://a.example.com".equals(first.getQueueID()) ? first
+        : second;
+    queues.finishFetchItem(fromA);
+    Assert.assertNull(queues.getFetchItem());
+
+    // released as soon as possible, the next item is ready
+    queues.getFetchItemQueue(fromA.getQueueID()).addInProgressFetchItem(fromA);
+    queues.finishFetchItem(fromA, true);
+    FetchItem next = queues.getFetchItem();
+    Assert.assertNotNull(next);
+    Assert.assertEquals(fromA.getQueueID(), next.getQueueID());
+    Assert.assertEquals(0, queues.getTotalSize());
+  }
+
+  @Test
+  public void testReapAndEmpty() {
+    FetchItemQueues queues = FetchItemQueues.create(conf);
+    add(queues, "http://a.example.com/1");
+    FetchItem fit = queues.getFetchItem();
+    Assert.assertEquals(1, queues.getQueueCount());
+    queues.finishFetchItem(fit, true);
+    Assert.assertEquals(0, queues.getQueueCount());
+
+    for (int i = 0; i < 10; i++) {
+      add(queues, "http://host" + i + ".example.com/");
+    }
+    Assert.assertEquals(10, queues.emptyQueues());
+    Assert.assertEquals(0, queues.getTotalSize());
+    Assert.assertNull(queues.getFetchItem());
+  }
+}
@@ -80,4 +80,36 @@ public class TestURLNormalizers {
           pos1 < pos2);
     }
   }
+
+  @Test
+  public void testCache() throws MalformedURLException {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(URLNormalizers.URLNORMALIZER_CACHE_SIZE, 2);
+    URLNormalizers normalizers = new URLNormalizers(conf,
+        URLNormalizers.SCOPE_DEFAULT);
+    String url = "http://www.example.com//path/to//somewhere.html";
+    String normalized = "http://www.example.com/path/to/somewhere.html";
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(normalized,
+          normalizers.normalize(url, URLNormalizers.SCOPE_DEFAULT));
+      normalizers.normalize("http://www.example.com/" + i,
+          URLNormalizers.SCOPE_DEFAULT);
+    }
+    Assert.assertNull(normalizers.normalize(null,
+        URLNormalizers.SCOPE_DEFAULT));
+  }
+
+  @Test
+  public void testResultCache() {
+    URLResultCache cache = new URLResultCache(URLResultCache.Kind.FILTER, 2);
+    cache.put("http://a/", "http://a/");
+    cache.put("http://b/", null);
+    Assert.assertSame(URLResultCache.REJECTED, cache.get("http://b/"));
+    Assert.assertEquals("http://a/", cache.get("http://a/"));
+    // least recently used is evicted
+    cache.put("http://c/", "http://c/");
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNull(cache.get("http://b/"));
+    Assert.assertEquals("http://a/", cache.get("http://a/"));
+  }
 }
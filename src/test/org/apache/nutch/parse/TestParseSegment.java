@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Parses a segment with one and with several parser threads per map task.
+ */
+public class TestParseSegment {
+
+  private static final int NUM_PAGES = 40;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path testDir;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = NutchConfiguration.create();
+    fs = FileSystem.get(conf);
+    testDir = new Path("build/test/test-parse-segment-"
+        + new Random().nextInt(Integer.MAX_VALUE));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testDir, true);
+  }
+
+  private static String url(int i) {
+    return "http://example.com/page" + (100 + i) + ".html";
+  }
+
+  private Path createSegment(String name) throws Exception {
+    Path segment = new Path(testDir, name);
+    MapFile.Writer writer = new MapFile.Writer(conf, new Path(new Path(
+        segment, Content.DIR_NAME), "part-00000"),
+        MapFile.Writer.keyClass(Text.class),
+        MapFile.Writer.valueClass(Content.class));
+    for (int i = 0; i < NUM_PAGES; i++) {
+      String html = "<html><head><title>Page " + i
+          + "</title></head><body><p>text of page " + i
+          + "</p><a href=\"" + url((i + 1) % NUM_PAGES)
+          + "\">next</a></body></html>";
+      Metadata metadata = new Metadata();
+      metadata.set(Nutch.FETCH_STATUS_KEY,
+          Integer.toString(CrawlDatum.STATUS_FETCH_SUCCESS));
+      writer.append(new Text(url(i)), new Content(url(i), url(i),
+          html.getBytes("UTF-8"), "text/html", metadata, conf));
+    }
+    writer.close();
+    return segment;
+  }
+
+  private Map<String, String> readParseText(Path segment) throws Exception {
+    Map<String, String> texts = new HashMap<>();
+    MapFile.Reader reader = new MapFile.Reader(new Path(new Path(segment,
+        ParseText.DIR_NAME), "part-00000"), conf);
+    Text key = new Text();
+    ParseText text = new ParseText();
+    while (reader.next(key, text)) {
+      texts.put(key.toString(), text.getText());
+    }
+    reader.close();
+    return texts;
+  }
+
+  @Test
+  public void testParseThreads() throws Exception {
+    Path single = createSegment("single");
+    new ParseSegment(conf).parse(single);
+
+    Configuration threadedConf = new Configuration(conf);
+    threadedConf.setInt(ParseSegment.THREADS, 4);
+    threadedConf.setInt(ParseSegment.QUEUE_DEPTH, 2);
+    Path threaded = createSegment("threaded");
+    new ParseSegment(threadedConf).parse(threaded);
+
+    Map<String, String> expected = readParseText(single);
+    Assert.assertEquals(NUM_PAGES, expected.size());
+    Assert.assertEquals("Page 7 text of page 7 next", expected.get(url(7)));
+    Assert.assertEquals(expected, readParseText(threaded));
+  }
+}
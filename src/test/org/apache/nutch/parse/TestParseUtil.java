@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the parser timeout of {@link ParseUtil} when parsers are run in the
+ * calling thread.
+ */
+public class TestParseUtil {
+
+  private Configuration conf;
+  private Content content;
+
+  @Before
+  public void setUp() {
+    conf = NutchConfiguration.create();
+    conf.setInt("parser.timeout", 1);
+    content = new Content("http://www.example.com/", "http://www.example.com/",
+        new byte[0], "text/plain", new Metadata(), conf);
+  }
+
+  /** Parser which runs for the given time and records its thread. */
+  private static class SlowParser implements Parser {
+
+    private final long millis;
+    private final boolean interruptible;
+    volatile Thread thread;
+    volatile boolean interrupted;
+
+    SlowParser(long millis, boolean interruptible) {
+      this.millis = millis;
+      this.interruptible = interruptible;
+    }
+
+    public ParseResult getParse(Content c) {
+      thread = Thread.currentThread();
+      long end = System.currentTimeMillis() + millis;
+      while (System.currentTimeMillis() < end) {
+        if (interruptible) {
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            interrupted = true;
+            break;
+          }
+        } else if (Thread.currentThread().isInterrupted()) {
+          interrupted = true;
+        }
+      }
+      return new ParseStatus(ParseStatus.SUCCESS).getEmptyParseResult(
+          c.getUrl(), null);
+    }
+
+    public void setConf(Configuration conf) {
+    }
+
+    public Configuration getConf() {
+      return null;
+    }
+  }
+
+  private ParseUtil createParseUtil() {
+    ParseUtil parseUtil = new ParseUtil(conf);
+    parseUtil.setParseInCallerThread(true);
+    return parseUtil;
+  }
+
+  @Test
+  public void testParse() {
+    ParseUtil parseUtil = createParseUtil();
+    SlowParser parser = new SlowParser(0, true);
+    Assert.assertNotNull(parseUtil.runParser(parser, content));
+    Assert.assertSame(Thread.currentThread(), parser.thread);
+    Assert.assertEquals(0, parseUtil.getTimeouts());
+  }
+
+  @Test
+  public void testTimeout() {
+    ParseUtil parseUtil = createParseUtil();
+    SlowParser parser = new SlowParser(60000, true);
+    long start = System.currentTimeMillis();
+    Assert.assertNull(parseUtil.runParser(parser, content));
+    Assert.assertTrue(System.currentTimeMillis() - start < 30000);
+    Assert.assertTrue(parser.interrupted);
+    Assert.assertEquals(1, parseUtil.getTimeouts());
+    // the parse did not run (and does not go on running) in another thread
+    Assert.assertSame(Thread.currentThread(), parser.thread);
+    // the interrupt does not hit the calling thread after the parse
+    Assert.assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  @Test
+  public void testTimeoutIgnored() {
+    ParseUtil parseUtil = createParseUtil();
+    // the parser does not stop when interrupted, but returns after 2 sec.
+    SlowParser parser = new SlowParser(2000, false);
+    Assert.assertNull(parseUtil.runParser(parser, content));
+    Assert.assertTrue(parser.interrupted);
+    Assert.assertEquals(1, parseUtil.getTimeouts());
+    Assert.assertFalse(Thread.currentThread().isInterrupted());
+
+    // next parse is not affected
+    Assert.assertNotNull(parseUtil.runParser(new SlowParser(0, true),
+        content));
+    Assert.assertEquals(1, parseUtil.getTimeouts());
+  }
+}
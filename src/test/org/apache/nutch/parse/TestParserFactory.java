@@ -17,6 +17,8 @@
 
 package org.apache.nutch.parse;
 
+import java.util.Map;
+
 // Nutch imports
 import org.apache.nutch.plugin.Extension;
 import org.apache.hadoop.conf.Configuration;
@@ -102,4 +104,25 @@ public class TestParserFactory {
         .getClass().getName());
   }
 
+  /** Unit test for the counts of content types using the default parsers */
+  @Test
+  public void testFallbackCounts() throws Exception {
+    // mapped to a parser which is not available
+    parserFactory.getParsers("text/html", "http://foo.com");
+    parserFactory.getParsers("text/html; charset=UTF-8", "http://foo.com");
+    // not mapped, only claimed by the wildcard parser
+    parserFactory.getParsers("foo/bar", "http://foo.com");
+    // mapped
+    parserFactory.getParsers("application/x-javascript", "http://foo.com");
+
+    Map<String, Long> counts = new ParserFactory(conf).getFallbackCounts();
+    Assert.assertEquals(2, counts.size());
+    Assert.assertEquals(2L, (long) counts.get("text/html"));
+    Assert.assertEquals(1L, (long) counts.get("foo/bar"));
+
+    // same parser instances on every call
+    Assert.assertSame(parserFactory.getParsers("foo/bar", "http://foo.com")[0],
+        parserFactory.getParsers("text/html", "http://foo.com")[0]);
+  }
+
 }
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.plugin;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.net.URLNormalizers;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link PluginMetrics} of instrumented plugin chains.
+ */
+public class TestPluginMetrics {
+
+  @Test
+  public void testBuckets() {
+    Assert.assertEquals(0, PluginMetrics.bucket(0));
+    Assert.assertEquals(0, PluginMetrics.bucket(999));
+    Assert.assertEquals(1, PluginMetrics.bucket(1000));
+    Assert.assertEquals(1, PluginMetrics.bucket(3999));
+    Assert.assertEquals(2, PluginMetrics.bucket(4000));
+    Assert.assertEquals(6, PluginMetrics.bucket(1500000));
+    Assert.assertEquals(PluginMetrics.NUM_BUCKETS - 1,
+        PluginMetrics.bucket(10000000000L));
+    for (int b = 1; b < PluginMetrics.NUM_BUCKETS - 1; b++) {
+      long limit = PluginMetrics.getBucketLimit(b);
+      Assert.assertEquals(b, PluginMetrics.bucket(limit * 1000 - 1));
+      Assert.assertEquals(b + 1, PluginMetrics.bucket(limit * 1000));
+    }
+  }
+
+  private static PluginMetrics.Timer getTimer(String name) {
+    for (PluginMetrics.Timer timer : PluginMetrics.getTimers()) {
+      if (timer.getName().equals(name)) {
+        return timer;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testDisabled() {
+    Configuration conf = NutchConfiguration.create();
+    Assert.assertNull(PluginMetrics.getTimers(conf,
+        "org.apache.nutch.net.URLNormalizer", new Object[] { "" }));
+  }
+
+  @Test
+  public void testURLNormalizers() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setBoolean(PluginMetrics.ENABLED, true);
+    conf.set(PluginMetrics.REPORTERS, "");
+    conf.set("plugin.includes", "urlnormalizer-basic");
+    URLNormalizers normalizers = new URLNormalizers(conf,
+        URLNormalizers.SCOPE_DEFAULT);
+
+    PluginMetrics.Timer timer = getTimer("URLNormalizer.BasicURLNormalizer");
+    Assert.assertNotNull(timer);
+    Assert.assertEquals("URLNormalizer", timer.getExtensionPoint());
+    long calls = timer.getCalls();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals("http://example.com/" + i,
+          normalizers.normalize("http://example.com/a/../" + i,
+              URLNormalizers.SCOPE_DEFAULT));
+    }
+    Assert.assertEquals(calls + 10, timer.getCalls());
+    long histogramCalls = 0;
+    for (long count : timer.getHistogram()) {
+      histogramCalls += count;
+    }
+    Assert.assertEquals(timer.getCalls(), histogramCalls);
+    Assert.assertTrue(timer.getNanos() > 0);
+
+    StringWriter dump = new StringWriter();
+    FilePluginMetricsReporter.write(PluginMetrics.getTimers(),
+        new PrintWriter(dump));
+    String[] lines = dump.toString().split("\n");
+    Assert.assertTrue(lines[0].startsWith("plugin\tcalls\trejected\t"));
+    boolean found = false;
+    for (String line : lines) {
+      if (line.startsWith(timer.getName() + "\t")) {
+        String[] fields = line.split("\t");
+        Assert.assertEquals(5 + PluginMetrics.NUM_BUCKETS, fields.length);
+        found = true;
+      }
+    }
+    Assert.assertTrue(found);
+
+    JmxPluginMetricsReporter jmx = new JmxPluginMetricsReporter();
+    jmx.setConf(conf);
+    jmx.register(timer);
+    Assert.assertEquals(timer.getCalls(), ManagementFactory
+        .getPlatformMBeanServer().getAttribute(
+            JmxPluginMetricsReporter.getObjectName(timer), "Calls"));
+  }
+}
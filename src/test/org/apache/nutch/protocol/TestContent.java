@@ -17,9 +17,14 @@
 
 package org.apache.nutch.protocol;
 
+import java.util.Arrays;
+
 import org.apache.nutch.metadata.Metadata;
 import org.apache.nutch.metadata.SpellCheckedMetadata;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.WritableTestUtils;
 import org.apache.tika.mime.MimeTypes;
@@ -50,6 +55,59 @@ public class TestContent {
     Assert.assertEquals("text/html", r.getMetadata().get("Content-Type"));
     Assert.assertEquals("text/html", r.getMetadata().get("content-type"));
     Assert.assertEquals("text/html", r.getMetadata().get("CONTENTYPE"));
+    // content type detection does not add to the persisted metadata
+    Assert.assertEquals(2, r.getMetadata().size());
+  }
+
+  private static byte[] serialize(Content content) throws Exception {
+    DataOutputBuffer out = new DataOutputBuffer();
+    content.write(out);
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static Content deserialize(byte[] bytes, Configuration conf)
+      throws Exception {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    Content content = ReflectionUtils.newInstance(Content.class, conf);
+    content.readFields(in);
+    return content;
+  }
+
+  @Test
+  public void testLazyContent() throws Exception {
+    Metadata metaData = new Metadata();
+    metaData.add("Content-Type", "text/html");
+    metaData.add("Set-Cookie", "a=1");
+    metaData.add("Set-Cookie", "b=2");
+    Content r = new Content("http://www.foo.com/", "http://www.foo.com/",
+        "<html></html>".getBytes("UTF8"), "text/html", metaData, conf);
+    byte[] bytes = serialize(r);
+
+    Configuration lazyConf = new Configuration(conf);
+    lazyConf.setBoolean(Content.LAZY, true);
+    Content lazy = deserialize(bytes, lazyConf);
+    Assert.assertTrue(lazy.isLazy());
+    // written as read, also after read access
+    Assert.assertArrayEquals(bytes, serialize(lazy));
+    Assert.assertEquals("http://www.foo.com/", lazy.getUrl());
+    Assert.assertEquals(r, lazy);
+    Assert.assertArrayEquals(bytes, serialize(lazy));
+
+    // modified records are written from the fields
+    lazy.getMetadata().add("X-Test", "test");
+    Content read = deserialize(serialize(lazy), conf);
+    Assert.assertFalse(read.isLazy());
+    Assert.assertEquals("test", read.getMetadata().get("X-Test"));
+    Assert.assertArrayEquals(new String[] { "a=1", "b=2" }, read
+        .getMetadata().getValues("Set-Cookie"));
+
+    // the instance is reused by record readers
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    lazy.readFields(in);
+    Assert.assertArrayEquals(bytes, serialize(lazy));
+    Assert.assertEquals(r, lazy);
   }
 
   /** Unit tests for getContentType(String, String, byte[]) method. */
@@ -60,8 +60,8 @@ public class TestProtocolFactory {
     }
 
     // cache key
-    Object protocol = ObjectCache.get(conf).getObject(
-        Protocol.X_POINT_ID + "http");
+    Object protocol = ObjectCache.get(conf).getIfPresent(
+        ObjectCache.Key.of(Protocol.X_POINT_ID + "http", Protocol.class));
     Assert.assertNotNull(protocol);
     Assert.assertEquals(httpProtocol, protocol);
 
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.protocol;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import crawlercommons.robots.BaseRobotRules;
+import crawlercommons.robots.SimpleRobotRulesParser;
+
+public class TestRobotRulesCache {
+
+  private static final String ROBOTS_TXT = "User-agent: *\n"
+      + "Disallow: /private/\n" + "Crawl-delay: 5\n";
+
+  private Configuration conf;
+  private BaseRobotRules rules;
+
+  @Before
+  public void setUp() {
+    conf = NutchConfiguration.create();
+    rules = new SimpleRobotRulesParser().parseContent(
+        "http://example.com/robots.txt", ROBOTS_TXT.getBytes(), "text/plain",
+        "nutch");
+  }
+
+  @Test
+  public void testEviction() {
+    conf.setInt(RobotRulesCache.CACHE_SIZE, 10);
+    RobotRulesCache cache = new RobotRulesCache();
+    cache.setConf(conf);
+    for (int i = 0; i < 100; i++) {
+      cache.put("http:host" + i + ":80", rules);
+    }
+    Assert.assertEquals(10, cache.size());
+    Assert.assertNull(cache.get("http:host0:80"));
+    Assert.assertSame(rules, cache.get("http:host99:80"));
+  }
+
+  @Test
+  public void testExpiry() throws InterruptedException {
+    conf.setLong(RobotRulesCache.CACHE_TTL_MIN, 0);
+    RobotRulesCache cache = new RobotRulesCache();
+    cache.setConf(conf);
+    cache.put("http:a:80", RobotRulesParser.EMPTY_RULES, 0);
+    Assert.assertNull(cache.get("http:a:80"));
+    // never expires before the crawl-delay has passed
+    cache.put("http:b:80", rules, 0);
+    Assert.assertSame(rules, cache.get("http:b:80"));
+    cache.put("http:c:80", RobotRulesParser.EMPTY_RULES);
+    Assert.assertSame(RobotRulesParser.EMPTY_RULES, cache.get("http:c:80"));
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    Path snapshot = new Path(System.getProperty("test.build.data", "/tmp"),
+        "robots-cache-" + System.currentTimeMillis());
+    FileSystem fs = snapshot.getFileSystem(conf);
+    try {
+      RobotRulesCache cache = new RobotRulesCache();
+      cache.setConf(conf);
+      cache.put("http:b:80", rules);
+      cache.put("http:a:80", RobotRulesParser.FORBID_ALL_RULES);
+      cache.saveSnapshot(conf, snapshot);
+
+      conf.set(RobotRulesCache.CACHE_SNAPSHOT, snapshot.toString());
+      RobotRulesCache warm = new RobotRulesCache();
+      warm.setConf(conf);
+      Assert.assertEquals(2, warm.size());
+      BaseRobotRules loaded = warm.get("http:b:80");
+      Assert.assertEquals(rules, loaded);
+      Assert.assertEquals(5000, loaded.getCrawlDelay());
+      Assert.assertFalse(loaded.isAllowed("http://b/private/x.html"));
+      Assert.assertTrue(warm.get("http:a:80").isAllowNone());
+    } finally {
+      fs.delete(snapshot, true);
+    }
+  }
+
+  @Test
+  public void testMergeSnapshots() throws Exception {
+    Path snapshot = new Path(System.getProperty("test.build.data", "/tmp"),
+        "robots-cache-merge-" + System.currentTimeMillis());
+    FileSystem fs = snapshot.getFileSystem(conf);
+    conf.set(RobotRulesCache.CACHE_SNAPSHOT, snapshot.toString());
+    try {
+      // snapshot of a previous job
+      RobotRulesCache previous = new RobotRulesCache();
+      previous.setConf(conf);
+      previous.put("http:a:80", RobotRulesParser.FORBID_ALL_RULES, 3600000);
+      previous.put("http:c:80", rules);
+      previous.saveSnapshot(conf, snapshot);
+
+      // two tasks of the next job, both warmed from the snapshot
+      for (int task = 0; task < 2; task++) {
+        Configuration taskConf = new Configuration(conf);
+        taskConf.set("mapreduce.task.attempt.id",
+            "attempt_1_0001_m_00000" + task + "_0");
+        RobotRulesCache cache = new RobotRulesCache();
+        cache.setConf(taskConf);
+        cache.put("http:t" + task + ":80", rules);
+        if (task == 1) {
+          // re-fetched, expires later
+          cache.put("http:a:80", RobotRulesParser.EMPTY_RULES);
+        }
+        cache.saveSnapshot(taskConf);
+      }
+      Path tasks = RobotRulesCache.getTaskSnapshots(snapshot);
+      Assert.assertEquals(2, fs.listStatus(tasks).length);
+
+      RobotRulesParser.mergeCacheSnapshots(conf);
+      Assert.assertFalse(fs.exists(tasks));
+      RobotRulesCache merged = new RobotRulesCache();
+      merged.setConf(conf);
+      Assert.assertEquals(4, merged.size());
+      Assert.assertEquals(rules, merged.get("http:c:80"));
+      Assert.assertEquals(rules, merged.get("http:t0:80"));
+      Assert.assertEquals(rules, merged.get("http:t1:80"));
+      Assert.assertFalse(merged.get("http:a:80").isAllowNone());
+    } finally {
+      fs.delete(snapshot, true);
+      fs.delete(RobotRulesCache.getTaskSnapshots(snapshot), true);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.scoring.webgraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the scores of the MapReduce and the in-memory engines of
+ * {@link LinkRank}.
+ */
+public class TestLinkRank {
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path testDir;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = NutchConfiguration.create();
+    conf.setInt("link.analyze.num.iterations", 5);
+    fs = FileSystem.get(conf);
+    testDir = new Path("build/test/test-linkrank-"
+        + new Random().nextInt(Integer.MAX_VALUE));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testDir, true);
+  }
+
+  /**
+   * Creates a random WebGraph with one page per domain, and two pages on the
+   * same domain with identical links to test the limit of inlinks per domain.
+   */
+  private Map<String, List<String>> createGraph() {
+    Random random = new Random(42);
+    Map<String, List<String>> graph = new TreeMap<>();
+    for (int i = 0; i < 50; i++) {
+      graph.put("http://site" + i + ".com/", new ArrayList<>());
+    }
+    List<String> urls = new ArrayList<>(graph.keySet());
+    for (String url : urls) {
+      TreeSet<String> outlinks = new TreeSet<>();
+      int numOutlinks = random.nextInt(6);
+      for (int i = 0; i < numOutlinks; i++) {
+        String target = urls.get(random.nextInt(urls.size()));
+        if (!target.equals(url)) {
+          outlinks.add(target);
+        }
+      }
+      graph.get(url).addAll(outlinks);
+    }
+    graph.put("http://same.org/a", new ArrayList<>());
+    graph.put("http://same.org/b", new ArrayList<>());
+    graph.get("http://same.org/a").add("http://site1.com/");
+    graph.get("http://same.org/b").add("http://site1.com/");
+    return graph;
+  }
+
+  private void writeWebGraph(Path webGraphDb, Map<String, List<String>> graph)
+      throws Exception {
+    // two parts to check that the partitioning is kept
+    Path nodeDb = new Path(webGraphDb, WebGraph.NODE_DIR);
+    Path outlinkDb = new Path(webGraphDb, WebGraph.OUTLINK_DIR);
+    MapFile.Writer[] nodeWriters = new MapFile.Writer[2];
+    MapFile.Writer[] outlinkWriters = new MapFile.Writer[2];
+    for (int i = 0; i < 2; i++) {
+      nodeWriters[i] = new MapFile.Writer(conf, new Path(nodeDb, "part-0000"
+          + i), MapFile.Writer.keyClass(Text.class),
+          MapFile.Writer.valueClass(Node.class));
+      outlinkWriters[i] = new MapFile.Writer(conf, new Path(outlinkDb,
+          "part-0000" + i), MapFile.Writer.keyClass(Text.class),
+          MapFile.Writer.valueClass(LinkDatum.class));
+    }
+    for (Map.Entry<String, List<String>> entry : graph.entrySet()) {
+      int part = entry.getKey().hashCode() & 1;
+      Node node = new Node();
+      node.setNumOutlinks(entry.getValue().size());
+      nodeWriters[part].append(new Text(entry.getKey()), node);
+      for (String target : entry.getValue()) {
+        outlinkWriters[part].append(new Text(entry.getKey()), new LinkDatum(
+            target, "", 0L));
+      }
+    }
+    for (int i = 0; i < 2; i++) {
+      nodeWriters[i].close();
+      outlinkWriters[i].close();
+    }
+  }
+
+  private Map<String, Float> readScores(Path webGraphDb) throws Exception {
+    Map<String, Float> scores = new HashMap<>();
+    Path nodeDb = new Path(webGraphDb, WebGraph.NODE_DIR);
+    for (Path part : new Path[] { new Path(nodeDb, "part-00000"),
+        new Path(nodeDb, "part-00001") }) {
+      if (!fs.exists(part)) {
+        continue;
+      }
+      MapFile.Reader reader = new MapFile.Reader(part, conf);
+      Text key = new Text();
+      Node node = new Node();
+      while (reader.next(key, node)) {
+        scores.put(key.toString(), node.getInlinkScore());
+      }
+      reader.close();
+    }
+    return scores;
+  }
+
+  @Test
+  public void testInMemoryLinkRank() throws Exception {
+    Map<String, List<String>> graph = createGraph();
+    Path mapReduceDb = new Path(testDir, "mapreduce");
+    Path inMemoryDb = new Path(testDir, "inmemory");
+    writeWebGraph(mapReduceDb, graph);
+    writeWebGraph(inMemoryDb, graph);
+
+    new LinkRank(conf).analyze(mapReduceDb);
+    Configuration inMemoryConf = new Configuration(conf);
+    inMemoryConf.setBoolean(InMemoryLinkRank.IN_MEMORY, true);
+    inMemoryConf.setInt(InMemoryLinkRank.THREADS, 2);
+    new LinkRank(inMemoryConf).analyze(inMemoryDb);
+
+    Map<String, Float> expected = readScores(mapReduceDb);
+    Map<String, Float> scores = readScores(inMemoryDb);
+    Assert.assertEquals(graph.size(), expected.size());
+    Assert.assertEquals(expected.keySet(), scores.keySet());
+    for (String url : expected.keySet()) {
+      Assert.assertEquals(url, expected.get(url), scores.get(url), 1e-5f);
+    }
+    Assert.assertTrue(fs.exists(new Path(new Path(inMemoryDb,
+        WebGraph.NODE_DIR), "part-00001")));
+    Assert.assertFalse(fs.exists(new Path(inMemoryDb, "linkrank")));
+  }
+
+  @Test
+  public void testConvergence() throws Exception {
+    Map<String, List<String>> graph = createGraph();
+    Path fullDb = new Path(testDir, "full");
+    Path deltaDb = new Path(testDir, "delta");
+    writeWebGraph(fullDb, graph);
+    writeWebGraph(deltaDb, graph);
+
+    Configuration inMemoryConf = new Configuration(conf);
+    inMemoryConf.setBoolean(InMemoryLinkRank.IN_MEMORY, true);
+    inMemoryConf.setInt("link.analyze.num.iterations", 1000);
+    inMemoryConf.setFloat(LinkRank.TOLERANCE, 1e-6f);
+    new LinkRank(inMemoryConf).analyze(fullDb);
+    inMemoryConf.setBoolean(InMemoryLinkRank.DELTA_ITERATIONS, true);
+    new LinkRank(inMemoryConf).analyze(deltaDb);
+
+    Map<String, Float> expected = readScores(fullDb);
+    Map<String, Float> scores = readScores(deltaDb);
+    Assert.assertEquals(expected.keySet(), scores.keySet());
+    for (String url : expected.keySet()) {
+      Assert.assertEquals(url, expected.get(url), scores.get(url), 1e-4f);
+    }
+  }
+}
@@ -87,4 +87,67 @@ public class TestEncodingDetector {
     Assert.assertEquals("utf-8", encoding.toLowerCase());
   }
 
+  private static String guess(Configuration conf, byte[] data,
+      String contentType, String sniffed) {
+    Metadata metadata = new Metadata();
+    if (contentType != null) {
+      metadata.set(Response.CONTENT_TYPE, contentType);
+    }
+    Content content = new Content("http://www.example.com",
+        "http://www.example.com/", data, "text/plain", metadata, conf);
+    EncodingDetector detector = new EncodingDetector(conf);
+    detector.autoDetectClues(content, true, sniffed);
+    return detector.guessEncoding(content, "windows-1252").toLowerCase();
+  }
+
+  @Test
+  public void testBOM() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(EncodingDetector.MIN_CONFIDENCE_KEY, 50);
+    byte[] data = new byte[contentInOctets.length + 3];
+    data[0] = (byte) 0xEF;
+    data[1] = (byte) 0xBB;
+    data[2] = (byte) 0xBF;
+    System.arraycopy(contentInOctets, 0, data, 3, contentInOctets.length);
+    Assert.assertEquals("utf-8",
+        guess(conf, data, "text/plain; charset=ISO-8859-2", "windows-1251"));
+    Assert.assertEquals("UTF-16LE",
+        EncodingDetector.detectBOM(new byte[] { (byte) 0xFF, (byte) 0xFE }));
+    Assert.assertNull(EncodingDetector.detectBOM(contentInOctets));
+  }
+
+  @Test
+  public void testDeclaredTrusted() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(EncodingDetector.MIN_CONFIDENCE_KEY, 50);
+    Assert.assertEquals("utf-8",
+        guess(conf, contentInOctets, "text/plain; charset=UTF-16", null));
+    conf.setBoolean(EncodingDetector.DECLARED_TRUSTED_KEY, true);
+    Assert.assertEquals("utf-16",
+        guess(conf, contentInOctets, "text/plain; charset=UTF-16", null));
+    Assert.assertEquals("iso-8859-2",
+        guess(conf, contentInOctets, null, "ISO-8859-2"));
+    // unsupported charset is not trusted
+    Assert.assertEquals("utf-8",
+        guess(conf, contentInOctets, "text/plain; charset=x-unknown", null));
+  }
+
+  @Test
+  public void testMaxBytes() throws UnsupportedEncodingException {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(EncodingDetector.MIN_CONFIDENCE_KEY, 50);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      sb.append("Hello world! ");
+    }
+    for (int i = 0; i < 100; i++) {
+      sb.append("Приве́т ");
+    }
+    byte[] data = sb.toString().getBytes("utf-8");
+    Assert.assertEquals("utf-8", guess(conf, data, null, null));
+    // only ASCII characters in the first 1000 bytes
+    conf.setInt(EncodingDetector.MAX_BYTES_KEY, 1000);
+    Assert.assertNotEquals("utf-8", guess(conf, data, null, null));
+  }
+
 }
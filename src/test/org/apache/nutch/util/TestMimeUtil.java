@@ -114,6 +114,59 @@ public class TestMimeUtil extends TestCase {
     }
   }
 
+  /** trusted Content-Type is accepted without magic resolution */
+  public void testTrustedTypes() {
+    byte[] html = textBasedFormats[1][3].getBytes(defaultCharset);
+    Configuration conf = NutchConfiguration.create();
+    MimeUtil mimeUtil = new MimeUtil(conf);
+    assertEquals("text/html", mimeUtil.autoResolveContentType(
+        "application/xml", urlPrefix + "test.xml", html));
+    conf.set("mime.type.trusted", "text/plain, application/xml");
+    mimeUtil = new MimeUtil(conf);
+    assertEquals("application/xml", mimeUtil.autoResolveContentType(
+        "application/xml; charset=utf-8", urlPrefix + "test.xml", html));
+    // not trusted
+    assertEquals("text/html", mimeUtil.autoResolveContentType(
+        "application/xhtml+xml", urlPrefix + "test.html", html));
+  }
+
+  /** magic resolution only inspects the first bytes */
+  public void testMagicMaxBytes() {
+    byte[] html = ("\n\n\n\n\n\n\n\n" + textBasedFormats[1][3])
+        .getBytes(defaultCharset);
+    Configuration conf = NutchConfiguration.create();
+    assertEquals("text/html", new MimeUtil(conf).autoResolveContentType("",
+        urlPrefix, html));
+    conf.setInt("mime.type.magic.max.bytes", 4);
+    assertFalse("text/html".equals(new MimeUtil(conf).autoResolveContentType(
+        "", urlPrefix, html)));
+  }
+
+  /** URL resolution is cached by file name extension */
+  public void testGetExtension() {
+    assertEquals(".html", MimeUtil.getExtension("http://localhost/a/b.HTML"));
+    assertEquals(".tar.gz",
+        MimeUtil.getExtension("http://localhost/a.b/c.tar.gz?d=e.f#g"));
+    assertNull(MimeUtil.getExtension("http://localhost/a.b/c"));
+    assertNull(MimeUtil.getExtension("http://localhost/a.b/c.?d=e.f"));
+    assertNull(MimeUtil.getExtension("http://localhost/"));
+    assertNull(MimeUtil.getExtension("http://localhost/c.this-is-not-an-extension"));
+    // bare hosts
+    assertNull(MimeUtil.getExtension("http://www.example.com"));
+    assertNull(MimeUtil.getExtension("http://www.example.com/"));
+    assertNull(MimeUtil.getExtension("http://www.example.com:8080"));
+    assertNull(MimeUtil.getExtension("http://www.example.com?a=b.html"));
+    assertNull(MimeUtil.getExtension("http://www.example.com?a=b/c.html"));
+    assertNull(MimeUtil.getExtension("http://www.example.com#a.html"));
+    assertEquals(".html", MimeUtil.getExtension("file:/a/b.html"));
+
+    MimeUtil mimeUtil = new MimeUtil(NutchConfiguration.create());
+    for (int i = 0; i < 2; i++) {
+      assertEquals("application/pdf", mimeUtil.autoResolveContentType(null,
+          urlPrefix + "doc" + i + ".pdf?x=" + i, new byte[0]));
+    }
+  }
+
   /** test binary file formats (real files) */
   public void testBinaryFiles() throws IOException {
     for (String[] testPage : binaryFiles) {
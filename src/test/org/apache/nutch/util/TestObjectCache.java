@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Tests {@link ObjectCache}. */
+public class TestObjectCache {
+
+  private static final ObjectCache.Key<String> KEY = ObjectCache.Key.of(
+      "test", String.class);
+
+  @Test
+  public void testGet() throws Exception {
+    Configuration conf = new Configuration(false);
+    ObjectCache cache = ObjectCache.get(conf);
+    Assert.assertSame(cache, ObjectCache.get(conf));
+    Assert.assertNotSame(cache, ObjectCache.get(new Configuration(false)));
+    Assert.assertSame(cache, ObjectCache.get(conf));
+
+    Assert.assertNull(cache.getIfPresent(KEY));
+    Assert.assertEquals("a", cache.get(KEY, () -> "a"));
+    Assert.assertEquals("a", cache.get(KEY, () -> "b"));
+    Assert.assertEquals("a", cache.getIfPresent(KEY));
+    Assert.assertEquals(2, cache.getMisses());
+    Assert.assertEquals(2, cache.getHits());
+
+    // failed and null loads are not cached
+    ObjectCache.Key<String> other = ObjectCache.Key.of("other", String.class);
+    try {
+      cache.get(other, () -> {
+        throw new IOException("failed");
+      });
+      Assert.fail("exception of loader not thrown");
+    } catch (IOException e) {
+      // expected
+    }
+    Assert.assertNull(cache.get(other, () -> null));
+    Assert.assertEquals("c", cache.get(other, () -> "c"));
+    Assert.assertEquals(2, cache.size());
+
+    // wrong type
+    try {
+      cache.get(ObjectCache.Key.of("test", Integer.class), () -> 1);
+      Assert.fail("type of cached object not checked");
+    } catch (ClassCastException e) {
+      // expected
+    }
+
+    // recursive load
+    try {
+      cache.get(ObjectCache.Key.of("recursive", String.class),
+          () -> cache.get(ObjectCache.Key.of("recursive", String.class),
+              () -> "r"));
+      Assert.fail("recursive load not detected");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    Assert.assertNull(cache.getIfPresent(ObjectCache.Key.of("recursive",
+        String.class)));
+  }
+
+  /** The untyped methods share the entries with the typed ones. */
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testLegacyMethods() throws Exception {
+    ObjectCache cache = ObjectCache.get(new Configuration(false));
+    cache.put(KEY, "a");
+    Assert.assertEquals("a", cache.getObject("test"));
+    cache.setObject("test", "b");
+    Assert.assertEquals("b", cache.getIfPresent(KEY));
+    Assert.assertEquals("b", cache.get(KEY, () -> "c"));
+    cache.setObject("test", null);
+    Assert.assertNull(cache.getObject("test"));
+    Assert.assertNull(cache.getIfPresent(KEY));
+  }
+
+  @Test
+  public void testConcurrentLoad() throws Exception {
+    ObjectCache cache = ObjectCache.get(new Configuration(false));
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<String>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        return cache.get(KEY, () -> {
+          loads.incrementAndGet();
+          Thread.sleep(50);
+          return new String("loaded");
+        });
+      }));
+    }
+    start.countDown();
+    String first = results.get(0).get();
+    for (Future<String> result : results) {
+      Assert.assertSame(first, result.get());
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+    Assert.assertEquals(1, loads.get());
+    Assert.assertEquals(1, cache.getMisses());
+    Assert.assertTrue(cache.getLoadTimeNanos() > 0);
+  }
+
+  @Test
+  public void testMaxEntries() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setInt(ObjectCache.MAX_ENTRIES, 2);
+    ObjectCache cache = ObjectCache.get(conf);
+    for (int i = 0; i < 5; i++) {
+      final String value = "v" + i;
+      cache.get(ObjectCache.Key.of("k" + i, String.class), () -> value);
+    }
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNull(cache.getIfPresent(ObjectCache.Key.of("k0",
+        String.class)));
+    Assert.assertEquals("v4", cache.getIfPresent(ObjectCache.Key.of("k4",
+        String.class)));
+  }
+}